@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.PureJavaCrc32;
+import org.apache.hadoop.util.PureJavaCrc32C;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CRC implementations, one chunk at a time, and {@link DataChecksum}
+ * over many chunks, which uses the native code when libhadoop is loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+  private static byte[] randomBytes(int length) {
+    byte[] b = new byte[length];
+    new Random(0).nextBytes(b);
+    return b;
+  }
+
+  /** A chunk checksummed by a single implementation. */
+  @State(Scope.Thread)
+  public static class Chunk {
+    @Param({"512", "4096", "65536"})
+    int chunkSize;
+
+    /**
+     * CRC32C is the checksum returned by DataChecksum, the JDK one where
+     * it has it.
+     */
+    @Param({"CRC32", "PureJavaCrc32", "CRC32C", "PureJavaCrc32C"})
+    String implementation;
+
+    byte[] data;
+    Checksum sum;
+
+    @Setup
+    public void setup() {
+      data = randomBytes(chunkSize);
+      if (implementation.equals("CRC32")) {
+        sum = new CRC32();
+      } else if (implementation.equals("PureJavaCrc32")) {
+        sum = new PureJavaCrc32();
+      } else if (implementation.equals("CRC32C")) {
+        sum = DataChecksum.newCrc32C();
+      } else if (implementation.equals("PureJavaCrc32C")) {
+        sum = new PureJavaCrc32C();
+      } else {
+        throw new IllegalArgumentException(implementation);
+      }
+    }
+  }
+
+  /** Many chunks checksummed as a DataChecksum does on HDFS I/O. */
+  @State(Scope.Thread)
+  public static class Chunks {
+    @Param({"CRC32", "CRC32C"})
+    DataChecksum.Type type;
+
+    @Param({"512"})
+    int bytesPerChecksum;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    final int length = 1024 * 1024;
+    DataChecksum checksum;
+    ByteBuffer data;
+    ByteBuffer sums;
+
+    @Setup
+    public void setup() {
+      checksum = DataChecksum.newDataChecksum(type, bytesPerChecksum);
+      int sumsLength = length / bytesPerChecksum * checksum.getChecksumSize();
+      if (direct) {
+        data = ByteBuffer.allocateDirect(length);
+        sums = ByteBuffer.allocateDirect(sumsLength);
+      } else {
+        data = ByteBuffer.allocate(length);
+        sums = ByteBuffer.allocate(sumsLength);
+      }
+      data.put(randomBytes(length));
+      data.flip();
+      checksum.calculateChunkedSums(data, sums);
+    }
+  }
+
+  @Benchmark
+  public long update(Chunk chunk) {
+    chunk.sum.reset();
+    chunk.sum.update(chunk.data, 0, chunk.data.length);
+    return chunk.sum.getValue();
+  }
+
+  @Benchmark
+  public ByteBuffer calculateChunkedSums(Chunks chunks) {
+    chunks.checksum.calculateChunkedSums(chunks.data, chunks.sums);
+    return chunks.sums;
+  }
+
+  @Benchmark
+  public ByteBuffer verifyChunkedSums(Chunks chunks) throws ChecksumException {
+    chunks.checksum.verifyChunkedSums(chunks.data, chunks.sums, "benchmark", 0);
+    return chunks.sums;
+  }
+}
@@ -0,0 +1,389 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.hadoop.io.BoundedByteBufferPool;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a page-cached file in chunks the way the ShuffleHandler streams a
+ * map output over SSL: into a new heap buffer for every chunk, as Netty's
+ * ChunkedFile does, or into direct buffers from a pool with positional
+ * reads, as FadvisedChunkedFile does when
+ * mapreduce.shuffle.ssl.file.buffer.pooled is enabled. The pooled buffer is
+ * released right away, where the shuffle releases it once written.
+ *
+ * The chunks are also sent to a reader on this host that discards them:
+ * encrypted with the JSSE SSLEngine, as the SslHandler does with pooled
+ * chunks, or with {@link FileChannel#transferTo}, as FadvisedFileRegion
+ * does when the shuffle is not encrypted. The readers run on threads of
+ * their own, next to the benchmark threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ChunkReadBenchmark {
+  private static final String PASSWORD = "benchmark";
+
+  /** The file, shared by all the threads. */
+  @State(Scope.Benchmark)
+  public static class Spill {
+    @Param({"256"})
+    int fileMB;
+
+    @Param({"61440"})
+    int chunkSize;
+
+    @Param({"256"})
+    int maxBuffers;
+
+    File file;
+    long length;
+    ByteBufferPool pool;
+    SSLContext ssl;
+
+    @Setup
+    public void setup() throws IOException {
+      file = File.createTempFile("ChunkReadBenchmark", ".out");
+      length = fileMB * 1024L * 1024L;
+      byte[] b = new byte[1024 * 1024];
+      new Random(0).nextBytes(b);
+      OutputStream out = new FileOutputStream(file);
+      try {
+        for (int i = 0; i < fileMB; i++) {
+          out.write(b);
+        }
+      } finally {
+        out.close();
+      }
+      pool = new BoundedByteBufferPool(maxBuffers);
+      ssl = createSSLContext();
+    }
+
+    @TearDown
+    public void tearDown() {
+      file.delete();
+    }
+
+    /**
+     * A context whose key is a new self-signed certificate, trusted by the
+     * engines it creates.
+     */
+    private static SSLContext createSSLContext() throws IOException {
+      File keyStore = File.createTempFile("ChunkReadBenchmark", ".jks");
+      try {
+        if (!keyStore.delete()) {
+          throw new IOException("Could not delete " + keyStore);
+        }
+        Process keytool = new ProcessBuilder(
+            new File(System.getProperty("java.home"), "bin/keytool")
+                .getPath(),
+            "-genkeypair", "-keyalg", "RSA", "-keysize", "2048",
+            "-alias", "shuffle", "-dname", "CN=localhost", "-validity", "1",
+            "-keystore", keyStore.getPath(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true).start();
+        IOUtils.copyBytes(keytool.getInputStream(), System.out, 4096, false);
+        if (keytool.waitFor() != 0) {
+          throw new IOException("keytool failed to create " + keyStore);
+        }
+        KeyStore ks = KeyStore.getInstance("JKS");
+        InputStream in = new FileInputStream(keyStore);
+        try {
+          ks.load(in, PASSWORD.toCharArray());
+        } finally {
+          in.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, PASSWORD.toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+            TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return context;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (GeneralSecurityException e) {
+        throw new IOException(e);
+      } finally {
+        keyStore.delete();
+      }
+    }
+  }
+
+  /** A thread streaming the file from start to end, over and over. */
+  @State(Scope.Thread)
+  public static class Reader {
+    RandomAccessFile raf;
+    FileChannel channel;
+    long position;
+
+    @Setup
+    public void setup(Spill spill) throws IOException {
+      raf = new RandomAccessFile(spill.file, "r");
+      channel = raf.getChannel();
+    }
+
+    @TearDown
+    public void tearDown() {
+      IOUtils.cleanup(null, raf);
+    }
+
+    int nextSize(Spill spill) {
+      if (position >= spill.length) {
+        position = 0;
+      }
+      return (int) Math.min(spill.chunkSize, spill.length - position);
+    }
+  }
+
+  /**
+   * A connection to a reader on this host that discards what it is sent,
+   * with an SSL engine that has finished its handshake.
+   */
+  @State(Scope.Thread)
+  public static class Connection {
+    SocketChannel channel;
+    Thread reader;
+    SSLEngine engine;
+    ByteBuffer packet;
+
+    @Setup
+    public void setup(Spill spill) throws IOException {
+      ServerSocketChannel server = ServerSocketChannel.open();
+      final SocketChannel peer;
+      try {
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel = SocketChannel.open(server.getLocalAddress());
+        peer = server.accept();
+      } finally {
+        server.close();
+      }
+      reader = new Thread("ChunkReadBenchmark reader") {
+        @Override
+        public void run() {
+          ByteBuffer buf = ByteBuffer.allocateDirect(256 * 1024);
+          try {
+            while (peer.read(buf) >= 0) {
+              buf.clear();
+            }
+          } catch (IOException e) {
+            // closed
+          } finally {
+            IOUtils.cleanup(null, peer);
+          }
+        }
+      };
+      reader.setDaemon(true);
+      reader.start();
+
+      engine = spill.ssl.createSSLEngine();
+      engine.setUseClientMode(false);
+      SSLEngine client = spill.ssl.createSSLEngine();
+      client.setUseClientMode(true);
+      handshake(engine, client);
+      packet = ByteBuffer.allocateDirect(
+          engine.getSession().getPacketBufferSize());
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+      IOUtils.cleanup(null, channel);
+      reader.join();
+    }
+
+    void write(ByteBuffer buf) throws IOException {
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+    }
+
+    /** Run the handshake of two engines in memory. */
+    private static void handshake(SSLEngine server, SSLEngine client)
+        throws IOException {
+      int size = 4 * server.getSession().getPacketBufferSize();
+      ByteBuffer toServer = ByteBuffer.allocate(size);
+      ByteBuffer toClient = ByteBuffer.allocate(size);
+      server.beginHandshake();
+      client.beginHandshake();
+      while (isHandshaking(server) || isHandshaking(client)) {
+        boolean progress = step(client, toClient, toServer);
+        progress |= step(server, toServer, toClient);
+        if (!progress) {
+          throw new SSLException("SSL handshake is stuck");
+        }
+      }
+    }
+
+    private static boolean isHandshaking(SSLEngine engine) {
+      return engine.getHandshakeStatus()
+          != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    /**
+     * Let an engine take in what it was sent and send what it has to.
+     * @return whether the engine consumed or produced anything
+     */
+    private static boolean step(SSLEngine engine, ByteBuffer in,
+        ByteBuffer out) throws IOException {
+      ByteBuffer app =
+          ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+      boolean progress = false;
+      SSLEngineResult result;
+      in.flip();
+      do {
+        result = engine.unwrap(in, app);
+        runTasks(engine);
+        progress |= result.bytesConsumed() > 0;
+      } while (result.bytesConsumed() > 0 && in.hasRemaining());
+      in.compact();
+      do {
+        result = engine.wrap(ByteBuffer.allocate(0), out);
+        runTasks(engine);
+        progress |= result.bytesProduced() > 0;
+      } while (result.bytesProduced() > 0);
+      return progress;
+    }
+
+    private static void runTasks(SSLEngine engine) {
+      Runnable task;
+      while ((task = engine.getDelegatedTask()) != null) {
+        task.run();
+      }
+    }
+  }
+
+  @Benchmark
+  public byte[] allocate(Spill spill, Reader reader) throws IOException {
+    int size = reader.nextSize(spill);
+    byte[] chunk = new byte[size];
+    reader.raf.seek(reader.position);
+    reader.raf.readFully(chunk);
+    reader.position += size;
+    return chunk;
+  }
+
+  @Benchmark
+  public int pooled(Spill spill, Reader reader) throws IOException {
+    int size = reader.nextSize(spill);
+    ByteBuffer buffer = spill.pool.getBuffer(true, spill.chunkSize);
+    try {
+      read(spill, reader, buffer, size);
+      return buffer.get(size - 1);
+    } finally {
+      spill.pool.putBuffer(buffer);
+    }
+  }
+
+  @Benchmark
+  public int ssl(Spill spill, Reader reader, Connection connection)
+      throws IOException {
+    int size = reader.nextSize(spill);
+    ByteBuffer buffer = spill.pool.getBuffer(true, spill.chunkSize);
+    try {
+      read(spill, reader, buffer, size);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        connection.packet.clear();
+        SSLEngineResult result =
+            connection.engine.wrap(buffer, connection.packet);
+        if (result.getStatus() != SSLEngineResult.Status.OK) {
+          throw new SSLException("Unexpected wrap result " + result);
+        }
+        connection.packet.flip();
+        connection.write(connection.packet);
+      }
+      return size;
+    } finally {
+      spill.pool.putBuffer(buffer);
+    }
+  }
+
+  @Benchmark
+  public long sendfile(Spill spill, Reader reader, Connection connection)
+      throws IOException {
+    int size = reader.nextSize(spill);
+    long sent = 0;
+    while (sent < size) {
+      sent += reader.channel.transferTo(reader.position + sent, size - sent,
+          connection.channel);
+    }
+    reader.position += size;
+    return sent;
+  }
+
+  /** Read the next chunk with positional reads, as FadvisedChunkedFile. */
+  private static void read(Spill spill, Reader reader, ByteBuffer buffer,
+      int size) throws IOException {
+    buffer.clear();
+    buffer.limit(size);
+    while (buffer.hasRemaining()) {
+      if (reader.channel.read(buffer,
+          reader.position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of " + spill.file);
+      }
+    }
+    reader.position += size;
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compressing and decompressing a buffer of text-like data with the
+ * codecs, with pooled (de)compressors as the framework uses them. Codecs
+ * that need the native library, like lz4 and snappy, are benchmarked by
+ * passing them with <code>-p codec=...</code>. zstandard uses the native
+ * library if it is loaded and the Java implementation otherwise. The
+ * compression ratio of each codec is printed at the setup of a trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+  /** The codec, by a name or an alias known to CompressionCodecFactory. */
+  @Param({"default", "gzip", "bzip2", "zstandard"})
+  String codec;
+
+  @Param({"65536", "1048576"})
+  int size;
+
+  private CompressionCodec compressionCodec;
+  private Compressor compressor;
+  private Decompressor decompressor;
+  private byte[] data;
+  private byte[] compressed;
+  private byte[] decompressed;
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = new Configuration();
+    compressionCodec = new CompressionCodecFactory(conf).getCodecByName(codec);
+    if (compressionCodec == null) {
+      throw new IllegalArgumentException("Unknown codec " + codec);
+    }
+    compressor = CodecPool.getCompressor(compressionCodec);
+    decompressor = CodecPool.getDecompressor(compressionCodec);
+    data = textLikeData(size);
+    decompressed = new byte[size];
+    compress();
+    compressed = Arrays.copyOf(out.getData(), out.getLength());
+    System.out.println(String.format("%n%s of %d bytes: %d compressed, " +
+        "ratio %.2f", codec, size, compressed.length,
+        (double) size / compressed.length));
+  }
+
+  @TearDown
+  public void tearDown() {
+    CodecPool.returnCompressor(compressor);
+    CodecPool.returnDecompressor(decompressor);
+  }
+
+  /** Words of a small vocabulary, which compress about as well as logs. */
+  static byte[] textLikeData(int size) {
+    Random r = new Random(0);
+    String[] words = new String[512];
+    for (int i = 0; i < words.length; i++) {
+      StringBuilder w = new StringBuilder();
+      for (int j = 2 + r.nextInt(8); j > 0; j--) {
+        w.append((char) ('a' + r.nextInt(26)));
+      }
+      words[i] = w.toString();
+    }
+    byte[] b = new byte[size];
+    int pos = 0;
+    while (pos < size) {
+      String w = words[r.nextInt(words.length)];
+      for (int i = 0; i < w.length() && pos < size; i++) {
+        b[pos++] = (byte) w.charAt(i);
+      }
+      if (pos < size) {
+        b[pos++] = (byte) (r.nextInt(16) == 0 ? '\n' : ' ');
+      }
+    }
+    return b;
+  }
+
+  @Benchmark
+  public int compress() throws IOException {
+    out.reset();
+    CompressionOutputStream cout;
+    if (compressor != null) {
+      compressor.reset();
+      cout = compressionCodec.createOutputStream(out, compressor);
+    } else {
+      cout = compressionCodec.createOutputStream(out);
+    }
+    cout.write(data, 0, data.length);
+    cout.finish();
+    return out.getLength();
+  }
+
+  @Benchmark
+  public byte[] decompress() throws IOException {
+    in.reset(compressed, compressed.length);
+    CompressionInputStream cin;
+    if (decompressor != null) {
+      decompressor.reset();
+      cin = compressionCodec.createInputStream(in, decompressor);
+    } else {
+      cin = compressionCodec.createInputStream(in);
+    }
+    IOUtils.readFully(cin, decompressed, 0, decompressed.length);
+    return decompressed;
+  }
+}
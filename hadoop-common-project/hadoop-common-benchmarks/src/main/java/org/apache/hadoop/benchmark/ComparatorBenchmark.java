@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raw comparisons of {@link WritableComparator}, which go through
+ * FastByteComparisons, on keys that differ in their last byte only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparatorBenchmark {
+
+  @Param({"8", "64", "1024"})
+  int length;
+
+  private byte[] a;
+  private byte[] b;
+  private Text textA;
+  private Text textB;
+  private byte[] serializedA;
+  private byte[] serializedB;
+  private WritableComparator textComparator;
+
+  @Setup
+  public void setup() throws IOException {
+    a = new byte[length];
+    new Random(0).nextBytes(a);
+    for (int i = 0; i < length; i++) {
+      // printable, so that the keys are valid Text as well
+      a[i] = (byte) ('a' + (a[i] & 0xff) % 26);
+    }
+    b = a.clone();
+    b[length - 1]++;
+    textA = new Text(a);
+    textB = new Text(b);
+    serializedA = serialize(textA);
+    serializedB = serialize(textB);
+    textComparator = WritableComparator.get(Text.class);
+  }
+
+  private static byte[] serialize(Text t) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    t.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  @Benchmark
+  public int compareBytes() {
+    return WritableComparator.compareBytes(a, 0, a.length, b, 0, b.length);
+  }
+
+  @Benchmark
+  public int compareSerializedText() {
+    return textComparator.compare(serializedA, 0, serializedA.length,
+        serializedB, 0, serializedB.length);
+  }
+
+  @Benchmark
+  public int compareText() {
+    return textA.compareTo(textB);
+  }
+
+  @Benchmark
+  public int hashBytes() {
+    return WritableComparator.hashBytes(a, a.length);
+  }
+}
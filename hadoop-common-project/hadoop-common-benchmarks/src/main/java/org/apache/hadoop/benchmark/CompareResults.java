@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.util.ExitUtil;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compare two JMH result files in JSON, the results of a baseline build
+ * and of the build under test. Every benchmark found in both is printed
+ * with its scores and the change, and those that got slower by more than
+ * the threshold, and by more than the errors of the two scores, are marked
+ * as regressions. The exit status is 1 if there are any.
+ */
+public class CompareResults {
+
+  private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+  /** The score of a benchmark with a set of parameters. */
+  static class Score {
+    final String mode;
+    final double score;
+    final double error;
+    final String unit;
+
+    Score(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = Double.isNaN(error) ? 0 : error;
+      this.unit = unit;
+    }
+  }
+
+  static Map<String, Score> read(File file) throws IOException {
+    JsonNode results = new ObjectMapper().readTree(file);
+    Map<String, Score> scores = new LinkedHashMap<String, Score>();
+    for (JsonNode result : results) {
+      StringBuilder name = new StringBuilder(
+          result.get("benchmark").getTextValue());
+      JsonNode params = result.get("params");
+      if (params != null) {
+        // sorted, so that the names match whatever the order in the file
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Iterator<Map.Entry<String, JsonNode>> i = params.getFields();
+            i.hasNext();) {
+          Map.Entry<String, JsonNode> param = i.next();
+          sorted.put(param.getKey(), param.getValue().asText());
+        }
+        name.append(sorted);
+      }
+      JsonNode metric = result.get("primaryMetric");
+      scores.put(name.toString(), new Score(result.get("mode").getTextValue(),
+          metric.get("score").asDouble(), metric.get("scoreError").asDouble(),
+          metric.get("scoreUnit").getTextValue()));
+    }
+    return scores;
+  }
+
+  /**
+   * @return the relative change from the baseline that is worse, positive
+   *         when slower, whichever way the scores go in the mode.
+   */
+  static double slowdown(Score baseline, Score current) {
+    double change = (current.score - baseline.score) / baseline.score;
+    // throughput is better higher, the time modes lower
+    return "thrpt".equals(baseline.mode) ? -change : change;
+  }
+
+  static boolean isRegression(Score baseline, Score current,
+      double thresholdPercent) {
+    return slowdown(baseline, current) * 100 > thresholdPercent &&
+        Math.abs(current.score - baseline.score) >
+            baseline.error + current.error;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: " + CompareResults.class.getName() +
+          " <baseline.json> <current.json> [threshold percent, default " +
+          DEFAULT_THRESHOLD_PERCENT + "]");
+      ExitUtil.terminate(2);
+    }
+    Map<String, Score> baseline = read(new File(args[0]));
+    Map<String, Score> current = read(new File(args[1]));
+    double threshold = args.length > 2 ? Double.parseDouble(args[2])
+        : DEFAULT_THRESHOLD_PERCENT;
+
+    int regressions = 0;
+    for (Map.Entry<String, Score> e : current.entrySet()) {
+      Score before = baseline.get(e.getKey());
+      if (before == null) {
+        System.out.println(e.getKey() + ": new");
+        continue;
+      }
+      Score after = e.getValue();
+      boolean regression = isRegression(before, after, threshold);
+      if (regression) {
+        regressions++;
+      }
+      System.out.println(String.format("%s: %.3f -> %.3f %s (%+.1f%% slower)%s",
+          e.getKey(), before.score, after.score, after.unit,
+          slowdown(before, after) * 100, regression ? " REGRESSION" : ""));
+    }
+    System.out.println(regressions + " regressions of more than " +
+        threshold + "%");
+    ExitUtil.terminate(regressions > 0 ? 1 : 0);
+  }
+}
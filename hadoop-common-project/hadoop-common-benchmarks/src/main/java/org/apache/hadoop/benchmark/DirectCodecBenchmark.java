@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectCompressionCodec;
+import org.apache.hadoop.io.compress.DirectCompressor;
+import org.apache.hadoop.io.compress.DirectDecompressionCodec;
+import org.apache.hadoop.io.compress.DirectDecompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One block of the data of {@link CodecBenchmark} compressed and
+ * decompressed through the streams, which copy it through byte arrays into
+ * the direct buffers of the native (de)compressor, and with the direct
+ * (de)compressor from and to pooled direct buffers. Needs the native
+ * library, and the size is at most the buffer size of the codec, so both
+ * do the same work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectCodecBenchmark {
+
+  @Param({"lz4", "snappy"})
+  String codec;
+
+  @Param({"4096", "65536"})
+  int size;
+
+  private CompressionCodec compressionCodec;
+  private Compressor compressor;
+  private Decompressor decompressor;
+  private DirectCompressor directCompressor;
+  private DirectDecompressor directDecompressor;
+  private byte[] data;
+  private byte[] compressed;
+  private byte[] decompressed;
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private ByteBuffer directData;
+  private ByteBuffer directCompressed;
+  private ByteBuffer directBlock;
+  private ByteBuffer directDecompressed;
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = new Configuration();
+    compressionCodec = new CompressionCodecFactory(conf).getCodecByName(codec);
+    if (!(compressionCodec instanceof DirectCompressionCodec) ||
+        !(compressionCodec instanceof DirectDecompressionCodec)) {
+      throw new IllegalArgumentException("No direct codec " + codec);
+    }
+    directCompressor =
+        ((DirectCompressionCodec) compressionCodec).createDirectCompressor();
+    directDecompressor = ((DirectDecompressionCodec) compressionCodec)
+        .createDirectDecompressor();
+    if (directCompressor == null || directDecompressor == null) {
+      throw new IllegalStateException("The native library is not loaded");
+    }
+    compressor = CodecPool.getCompressor(compressionCodec);
+    decompressor = CodecPool.getDecompressor(compressionCodec);
+
+    data = CodecBenchmark.textLikeData(size);
+    decompressed = new byte[size];
+    compress();
+    compressed = Arrays.copyOf(out.getData(), out.getLength());
+
+    directData = CodecPool.getDirectBuffer(size);
+    directData.put(data);
+    directData.flip();
+    directCompressed = CodecPool.getDirectBuffer(
+        directCompressor.maxCompressedLength(size));
+    compressDirect();
+    directCompressed.flip();
+    directBlock = CodecPool.getDirectBuffer(directCompressed.remaining());
+    directBlock.put(directCompressed);
+    directBlock.flip();
+    directDecompressed = CodecPool.getDirectBuffer(size);
+  }
+
+  @TearDown
+  public void tearDown() {
+    CodecPool.returnCompressor(compressor);
+    CodecPool.returnDecompressor(decompressor);
+    CodecPool.returnDirectBuffer(directData);
+    CodecPool.returnDirectBuffer(directCompressed);
+    CodecPool.returnDirectBuffer(directBlock);
+    CodecPool.returnDirectBuffer(directDecompressed);
+  }
+
+  @Benchmark
+  public int compress() throws IOException {
+    out.reset();
+    compressor.reset();
+    CompressionOutputStream cout =
+        compressionCodec.createOutputStream(out, compressor);
+    cout.write(data, 0, data.length);
+    cout.finish();
+    return out.getLength();
+  }
+
+  @Benchmark
+  public byte[] decompress() throws IOException {
+    in.reset(compressed, compressed.length);
+    decompressor.reset();
+    CompressionInputStream cin =
+        compressionCodec.createInputStream(in, decompressor);
+    IOUtils.readFully(cin, decompressed, 0, decompressed.length);
+    return decompressed;
+  }
+
+  @Benchmark
+  public int compressDirect() throws IOException {
+    directData.rewind();
+    directCompressed.clear();
+    directCompressor.compress(directData, directCompressed);
+    return directCompressed.position();
+  }
+
+  @Benchmark
+  public int decompressDirect() throws IOException {
+    directBlock.rewind();
+    directDecompressed.clear();
+    directDecompressor.decompress(directBlock, directDecompressed);
+    return directDecompressed.position();
+  }
+}
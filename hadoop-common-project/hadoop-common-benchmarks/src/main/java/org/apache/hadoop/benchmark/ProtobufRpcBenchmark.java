@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.ipc.ProtobufRpcEngine.RpcResponseWrapper;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.protobuf.ProtobufRpcEngineProtos.RequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcStatusProto;
+import org.apache.hadoop.tools.proto.GetUserMappingsProtocolProtos.GetGroupsForUserRequestProto;
+import org.apache.hadoop.tools.proto.GetUserMappingsProtocolProtos.GetGroupsForUserResponseProto;
+import org.apache.hadoop.util.ProtoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * The serialization of a call of {@link
+ * org.apache.hadoop.ipc.ProtobufRpcEngine} as it goes on the wire: the RPC
+ * header, the request header and the request on the client, the response
+ * header and the response on the server, and the parsing of both on the
+ * other side. The response carries the given number of groups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtobufRpcBenchmark {
+
+  private static final String PROTOCOL =
+      "org.apache.hadoop.tools.GetUserMappingsProtocol";
+
+  @Param({"1", "100"})
+  int groups;
+
+  private final byte[] clientId = new byte[16];
+  private int callId = 0;
+  private GetGroupsForUserRequestProto request;
+  private GetGroupsForUserResponseProto response;
+  private byte[] requestBytes;
+  private byte[] responseBytes;
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+
+  @Setup
+  public void setup() throws IOException {
+    request = GetGroupsForUserRequestProto.newBuilder()
+        .setUser("benchmark-user").build();
+    GetGroupsForUserResponseProto.Builder b =
+        GetGroupsForUserResponseProto.newBuilder();
+    for (int i = 0; i < groups; i++) {
+      b.addGroups("group" + i);
+    }
+    response = b.build();
+    writeRequest();
+    requestBytes = Arrays.copyOf(out.getData(), out.getLength());
+    writeResponse();
+    responseBytes = Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  @Benchmark
+  public int writeRequest() throws IOException {
+    out.reset();
+    RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
+        RPC.RpcKind.RPC_PROTOCOL_BUFFER,
+        RpcRequestHeaderProto.OperationProto.RPC_FINAL_PACKET, callId++,
+        0, clientId);
+    RequestHeaderProto requestHeader = RequestHeaderProto.newBuilder()
+        .setMethodName("getGroupsForUser")
+        .setDeclaringClassProtocolName(PROTOCOL)
+        .setClientProtocolVersion(1).build();
+    header.writeDelimitedTo(out);
+    requestHeader.writeDelimitedTo(out);
+    request.writeDelimitedTo(out);
+    return out.getLength();
+  }
+
+  @Benchmark
+  public GetGroupsForUserRequestProto readRequest() throws IOException {
+    in.reset(requestBytes, requestBytes.length);
+    RpcRequestHeaderProto.parseDelimitedFrom(in);
+    RequestHeaderProto.parseDelimitedFrom(in);
+    return GetGroupsForUserRequestProto.parseDelimitedFrom(in);
+  }
+
+  @Benchmark
+  public int writeResponse() throws IOException {
+    out.reset();
+    RpcResponseHeaderProto header = RpcResponseHeaderProto.newBuilder()
+        .setCallId(callId++).setStatus(RpcStatusProto.SUCCESS)
+        .setServerIpcVersionNum(RpcConstants.CURRENT_VERSION)
+        .setClientId(ByteString.copyFrom(clientId)).build();
+    header.writeDelimitedTo(out);
+    new RpcResponseWrapper(response).write(out);
+    return out.getLength();
+  }
+
+  @Benchmark
+  public GetGroupsForUserResponseProto readResponse() throws IOException {
+    in.reset(responseBytes, responseBytes.length);
+    RpcResponseHeaderProto.parseDelimitedFrom(in);
+    return GetGroupsForUserResponseProto.parseDelimitedFrom(in);
+  }
+}
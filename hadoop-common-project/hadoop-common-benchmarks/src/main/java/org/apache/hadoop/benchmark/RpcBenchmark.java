@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.tools.GetUserMappingsProtocol;
+import org.apache.hadoop.tools.proto.GetUserMappingsProtocolProtos.GetGroupsForUserRequestProto;
+import org.apache.hadoop.tools.proto.GetUserMappingsProtocolProtos.GetUserMappingsProtocolService;
+import org.apache.hadoop.tools.protocolPB.GetUserMappingsProtocolPB;
+import org.apache.hadoop.tools.protocolPB.GetUserMappingsProtocolServerSideTranslatorPB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Message;
+
+/**
+ * Round trips of a batch of concurrent calls of {@link
+ * GetUserMappingsProtocol} to a server on this host, over a connection for
+ * each of the given number of users. The calls are made either by a thread
+ * each, waiting for their responses, or by one thread in asynchronous mode
+ * that is called back with them; the responses are read by a thread for
+ * each connection, or by the given number of selector threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcBenchmark {
+
+  @Param({"0", "2"})
+  int selectorThreads;
+
+  @Param({"8"})
+  int connections;
+
+  @Param({"64"})
+  int calls;
+
+  private RPC.Server server;
+  private final List<GetUserMappingsProtocolPB> proxies =
+      new ArrayList<GetUserMappingsProtocolPB>();
+  private ExecutorService callers;
+  private GetGroupsForUserRequestProto request;
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY,
+        selectorThreads);
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        calls);
+    RPC.setProtocolEngine(conf, GetUserMappingsProtocolPB.class,
+        ProtobufRpcEngine.class);
+
+    GetUserMappingsProtocol impl = new GetUserMappingsProtocol() {
+      @Override
+      public String[] getGroupsForUser(String user) {
+        return new String[] { user };
+      }
+    };
+    server = new RPC.Builder(conf)
+        .setProtocol(GetUserMappingsProtocolPB.class)
+        .setInstance(GetUserMappingsProtocolService
+            .newReflectiveBlockingService(
+                new GetUserMappingsProtocolServerSideTranslatorPB(impl)))
+        .setBindAddress("localhost").setPort(0).setNumHandlers(4).build();
+    server.start();
+
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    long version = RPC.getProtocolVersion(GetUserMappingsProtocolPB.class);
+    for (int i = 0; i < connections; i++) {
+      // a connection for each user
+      UserGroupInformation ugi =
+          UserGroupInformation.createRemoteUser("user" + i);
+      proxies.add(RPC.getProxy(GetUserMappingsProtocolPB.class, version,
+          addr, ugi, conf, NetUtils.getDefaultSocketFactory(conf)));
+    }
+    callers = Executors.newFixedThreadPool(calls,
+        new ThreadFactoryBuilder().setDaemon(true).build());
+    request = GetGroupsForUserRequestProto.newBuilder()
+        .setUser("benchmark-user").build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    callers.shutdownNow();
+    for (GetUserMappingsProtocolPB proxy : proxies) {
+      RPC.stopProxy(proxy);
+    }
+    server.stop();
+  }
+
+  @Benchmark
+  public void blocking() throws Exception {
+    final List<Future<Message>> futures = new ArrayList<Future<Message>>();
+    for (int i = 0; i < calls; i++) {
+      final GetUserMappingsProtocolPB proxy = proxies.get(i % connections);
+      futures.add(callers.submit(new Callable<Message>() {
+        @Override
+        public Message call() throws Exception {
+          return proxy.getGroupsForUser(null, request);
+        }
+      }));
+    }
+    for (Future<Message> f : futures) {
+      f.get();
+    }
+  }
+
+  @Benchmark
+  public void callback() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(calls);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final FutureCallback<Message> done = new FutureCallback<Message>() {
+      @Override
+      public void onSuccess(Message response) {
+        latch.countDown();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        error.set(t);
+        latch.countDown();
+      }
+    };
+    Client.setAsynchronousMode(true);
+    try {
+      for (int i = 0; i < calls; i++) {
+        proxies.get(i % connections).getGroupsForUser(null, request);
+        Futures.addCallback(ProtobufRpcEngine.getAsyncReturnFuture(), done);
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+    }
+    latch.await();
+    if (error.get() != null) {
+      throw new IOException(error.get());
+    }
+  }
+}
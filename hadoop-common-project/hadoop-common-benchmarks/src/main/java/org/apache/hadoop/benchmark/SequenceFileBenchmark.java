@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing {@link SequenceFile}s to memory and reading them from the local
+ * file system, per record, with and without compression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceFileBenchmark {
+
+  private static final int RECORDS = 10000;
+
+  @Param({"NONE", "RECORD", "BLOCK"})
+  CompressionType compression;
+
+  @Param({"100"})
+  int valueLength;
+
+  private Configuration conf;
+  private CompressionCodec codec;
+  private final Text[] keys = new Text[RECORDS];
+  private final BytesWritable[] values = new BytesWritable[RECORDS];
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private File file;
+  private final Text key = new Text();
+  private final BytesWritable value = new BytesWritable();
+
+  @Setup
+  public void setup() throws IOException {
+    conf = new Configuration();
+    codec = ReflectionUtils.newInstance(DefaultCodec.class, conf);
+    Random r = new Random(0);
+    for (int i = 0; i < RECORDS; i++) {
+      keys[i] = new Text(String.format("key%09d", i));
+      byte[] b = new byte[valueLength];
+      // half random, so that the values compress somewhat
+      for (int j = 0; j < b.length; j += 2) {
+        b[j] = (byte) r.nextInt();
+      }
+      values[i] = new BytesWritable(b);
+    }
+    file = File.createTempFile("SequenceFileBenchmark", ".seq");
+    file.delete();
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(new Path(file.getAbsolutePath())),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class),
+        SequenceFile.Writer.compression(compression, codec));
+    try {
+      append(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+    new File(file.getParentFile(), "." + file.getName() + ".crc").delete();
+  }
+
+  private void append(SequenceFile.Writer writer) throws IOException {
+    for (int i = 0; i < RECORDS; i++) {
+      writer.append(keys[i], values[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public int write() throws IOException {
+    out.reset();
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.stream(new FSDataOutputStream(out, null)),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class),
+        SequenceFile.Writer.compression(compression, codec));
+    try {
+      append(writer);
+    } finally {
+      writer.close();
+    }
+    return out.getLength();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public int read() throws IOException {
+    SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(new Path(file.getAbsolutePath())));
+    int records = 0;
+    try {
+      while (reader.next(key, value)) {
+        records++;
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+}
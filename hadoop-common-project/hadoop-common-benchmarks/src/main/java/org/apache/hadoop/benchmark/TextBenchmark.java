@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding, decoding and serialization of {@link Text}, and reading it
+ * without decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+
+  @Param({"16", "256", "4096"})
+  int length;
+
+  /** Whether the string has ASCII characters only. */
+  @Param({"true", "false"})
+  boolean ascii;
+
+  private String string;
+  private Text text;
+  private byte[] utf8;
+  private String needle;
+  private final Text target = new Text();
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+
+  @Setup
+  public void setup() {
+    StringBuilder b = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      if (!ascii && i % 8 == 3) {
+        b.append('\u00e9');
+      } else if (!ascii && i % 8 == 7) {
+        b.append('\u4e2d');
+      } else {
+        b.append((char) ('a' + i % 26));
+      }
+    }
+    string = b.toString();
+    text = new Text(string);
+    utf8 = Arrays.copyOf(text.getBytes(), text.getLength());
+    // not found, so that the whole text is searched
+    needle = ascii ? "0123" : "0\u00e923";
+  }
+
+  @Benchmark
+  public Text encode() {
+    target.set(string);
+    return target;
+  }
+
+  @Benchmark
+  public String decode() {
+    return text.toString();
+  }
+
+  @Benchmark
+  public int find() {
+    return text.find(needle);
+  }
+
+  @Benchmark
+  public int charAt() {
+    int sum = 0;
+    for (int i = 0; i < text.getLength(); i++) {
+      sum += text.charAt(i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int charSequence() {
+    CharSequence chars = text.asCharSequence();
+    int sum = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      sum += chars.charAt(i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Text setBytes() {
+    target.set(utf8);
+    return target;
+  }
+
+  @Benchmark
+  public int validate() throws MalformedInputException {
+    Text.validateUTF8(utf8);
+    return utf8.length;
+  }
+
+  @Benchmark
+  public Text writeAndRead() throws IOException {
+    out.reset();
+    text.write(out);
+    in.reset(out.getData(), out.getLength());
+    target.readFields(in);
+    return target;
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The variable length long encoding of {@link WritableUtils}, on values of
+ * up to the given number of bits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VIntBenchmark {
+
+  private static final int VALUES = 1024;
+
+  @Param({"7", "16", "31", "63"})
+  int bits;
+
+  private final long[] values = new long[VALUES];
+  private byte[] encoded;
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+
+  @Setup
+  public void setup() throws IOException {
+    Random r = new Random(0);
+    for (int i = 0; i < VALUES; i++) {
+      values[i] = r.nextLong() >> (64 - bits);
+    }
+    for (long v : values) {
+      WritableUtils.writeVLong(out, v);
+    }
+    encoded = Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public int write() throws IOException {
+    out.reset();
+    for (long v : values) {
+      WritableUtils.writeVLong(out, v);
+    }
+    return out.getLength();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public long read() throws IOException {
+    in.reset(encoded, encoded.length);
+    long sum = 0;
+    for (int i = 0; i < VALUES; i++) {
+      sum += WritableUtils.readVLong(in);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public long readFromBytes() throws IOException {
+    long sum = 0;
+    int pos = 0;
+    for (int i = 0; i < VALUES; i++) {
+      sum += WritableComparator.readVLong(encoded, pos);
+      pos += WritableUtils.decodeVIntSize(encoded[pos]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VALUES)
+  public int size() {
+    int size = 0;
+    for (long v : values) {
+      size += WritableUtils.getVIntSize(v);
+    }
+    return size;
+  }
+}
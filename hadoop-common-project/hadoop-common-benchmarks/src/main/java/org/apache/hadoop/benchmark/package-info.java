@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * JMH microbenchmarks of the hot paths of Hadoop Common.
+ *
+ * <p>Run them from the module directory with
+ * <pre>
+ *   mvn package exec:exec -Djmh.args="[regexp] [JMH options]"
+ * </pre>
+ * which writes the results as JSON to <code>target/jmh-result.json</code>,
+ * or another file given with <code>-Djmh.result</code>. Parameters are
+ * overridden as usual, e.g. <code>-p chunkSize=512</code>, and the native
+ * code is used when <code>-Djava.library.path</code> is passed to the
+ * benchmark JVM with <code>-jvmArgsAppend</code>.
+ *
+ * <p>Two result files are compared with {@link
+ * org.apache.hadoop.benchmark.CompareResults}, which reports the benchmarks
+ * that got slower by more than a threshold.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+package org.apache.hadoop.benchmark;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
@@ -35,8 +35,10 @@
 import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
 import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -55,17 +57,23 @@
 import java.util.StringTokenizer;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -630,6 +638,7 @@ public void setDeprecatedProperties() {
         }
       }
     }
+    propertiesChanged();
   }
 
   /**
@@ -668,6 +677,7 @@ private String[] handleDeprecation(DeprecationContext deprecations,
 	      getOverlay().containsKey(deprecatedKey)) {
 	    getProps().setProperty(n, getOverlay().getProperty(deprecatedKey));
 	    getOverlay().setProperty(n, getOverlay().getProperty(deprecatedKey));
+	    propertiesChanged();
 	  }
     }
     return names.toArray(new String[names.size()]);
@@ -704,6 +714,27 @@ private void handleDeprecation() {
   private Properties properties;
   private Properties overlay;
   private ClassLoader classLoader;
+
+  /**
+   * An immutable copy of the properties, from which the getters read when
+   * snapshot reads are enabled.
+   */
+  private static class Snapshot {
+    private final Map<String, String> properties;
+    private final DeprecationContext deprecations;
+
+    Snapshot(Map<String, String> properties,
+        DeprecationContext deprecations) {
+      this.properties = properties;
+      this.deprecations = deprecations;
+    }
+  }
+
+  private volatile boolean snapshotReads = false;
+  private final AtomicReference<Snapshot> snapshot =
+      new AtomicReference<Snapshot>();
+  // counts the changes to the properties, to tell a stale snapshot
+  private final AtomicLong modifications = new AtomicLong();
   {
     classLoader = Thread.currentThread().getContextClassLoader();
     if (classLoader == null) {
@@ -761,6 +792,7 @@ public Configuration(Configuration other) {
     }
     this.classLoader = other.classLoader;
     this.loadDefaults = other.loadDefaults;
+    this.snapshotReads = other.snapshotReads;
     setQuietMode(other.getQuietMode());
   }
 
@@ -919,6 +951,112 @@ public void addResource(Configuration conf) {
   public synchronized void reloadConfiguration() {
     properties = null;                            // trigger reload
     finalParameters.clear();                      // clear site-limits
+    propertiesChanged();
+  }
+
+  /**
+   * Set whether the getters read from an immutable snapshot of the
+   * properties. With snapshot reads {@link #get(String)},
+   * {@link #get(String, String)} and {@link #getRaw(String)} take no locks,
+   * so that many threads can read the configuration at the same time. Every
+   * change made through this class discards the snapshot, and the next read
+   * takes a new one, so this suits configurations that are read much more
+   * often than they are changed. Changes made to the {@link Properties}
+   * returned by {@link #getProps()} are not seen by the getters until the
+   * configuration is changed otherwise.
+   *
+   * @param snapshotReads whether to read from a snapshot.
+   */
+  @InterfaceStability.Unstable
+  public void setSnapshotReads(boolean snapshotReads) {
+    this.snapshotReads = snapshotReads;
+    snapshot.set(null);
+  }
+
+  /**
+   * @return whether the getters read from a snapshot of the properties.
+   * @see #setSnapshotReads(boolean)
+   */
+  @InterfaceStability.Unstable
+  public boolean getSnapshotReads() {
+    return snapshotReads;
+  }
+
+  private void propertiesChanged() {
+    modifications.incrementAndGet();
+    snapshot.set(null);
+  }
+
+  /**
+   * Get the snapshot of the properties, taking a new one if there is none
+   * or the deprecations have changed since it was taken. The deprecated
+   * properties are resolved for all keys before the copy, as
+   * {@link #handleDeprecation(DeprecationContext, String)} does for a
+   * single key on every read without a snapshot.
+   */
+  private Map<String, String> getSnapshot(DeprecationContext deprecations) {
+    Snapshot current = snapshot.get();
+    if (current != null && current.deprecations == deprecations) {
+      return current.properties;
+    }
+    long version;
+    Properties props;
+    synchronized (this) {
+      handleDeprecation();
+      version = modifications.get();
+      props = (Properties) getProps().clone();
+    }
+    Map<String, String> copy = new HashMap<String, String>(props.size());
+    for (Map.Entry<Object, Object> item : props.entrySet()) {
+      if (item.getKey() instanceof String &&
+          item.getValue() instanceof String) {
+        copy.put((String) item.getKey(), (String) item.getValue());
+      }
+    }
+    Snapshot next = new Snapshot(Collections.unmodifiableMap(copy),
+        deprecations);
+    snapshot.set(next);
+    // a change made while copying may be missing from the copy
+    if (modifications.get() != version) {
+      snapshot.compareAndSet(next, null);
+    }
+    return next.properties;
+  }
+
+  /**
+   * Look up a property in the snapshot, as the getters do in the
+   * properties without snapshot reads.
+   */
+  private String getFromSnapshot(String name, String defaultValue,
+      boolean substitute) {
+    DeprecationContext deprecations = deprecationContext.get();
+    Map<String, String> props = getSnapshot(deprecations);
+    name = name.trim();
+    String result = null;
+    DeprecatedKeyInfo keyInfo = deprecations.getDeprecatedKeyMap().get(name);
+    boolean found = false;
+    if (keyInfo != null) {
+      warnOnceIfDeprecated(deprecations, name);
+      for (String newKey : keyInfo.newKeys) {
+        if (newKey != null) {
+          result = lookup(props, newKey, defaultValue, substitute);
+          found = true;
+        }
+      }
+    }
+    if (!found) {
+      result = lookup(props, name, defaultValue, substitute);
+    }
+    return result;
+  }
+
+  private String lookup(Map<String, String> props, String name,
+      String defaultValue, boolean substitute) {
+    String value = props.get(name);
+    if (value == null) {
+      value = defaultValue;
+    }
+    return substitute ? substituteVars(value) : value;
   }
   
   private synchronized void addResourceObject(Resource resource) {
@@ -1059,6 +1197,9 @@ private String substituteVars(String expr) {
    *         or null if no such property exists.
    */
   public String get(String name) {
+    if (snapshotReads) {
+      return getFromSnapshot(name, null, true);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -1151,6 +1292,9 @@ public String getTrimmed(String name, String defaultValue) {
    *         its replacing property and null if no such property exists.
    */
   public String getRaw(String name) {
+    if (snapshotReads) {
+      return getFromSnapshot(name, null, false);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -1253,6 +1397,7 @@ public void set(String name, String value, String source) {
         updatingResource.put(n, new String[] {altSource});
       }
     }
+    propertiesChanged();
   }
 
   private void warnOnceIfDeprecated(DeprecationContext deprecations, String name) {
@@ -1281,6 +1426,7 @@ public synchronized void unset(String name) {
       getOverlay().remove(n);
       getProps().remove(n);
     }
+    propertiesChanged();
   }
 
   /**
@@ -1314,6 +1460,9 @@ private synchronized Properties getOverlay() {
    *         doesn't exist.                    
    */
   public String get(String name, String defaultValue) {
+    if (snapshotReads) {
+      return getFromSnapshot(name, defaultValue, true);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -2546,6 +2695,7 @@ public int size() {
   public void clear() {
     getProps().clear();
     getOverlay().clear();
+    propertiesChanged();
   }
 
   /**
@@ -2594,38 +2744,381 @@ public Map<String, String> getPropsWithPrefix(String confPrefix) {
     return configMap;
   }
 
-  private Document parse(DocumentBuilder builder, URL url)
-      throws IOException, SAXException {
-    if (!quietmode) {
-      LOG.debug("parsing URL " + url);
+  /**
+   * A property read from a configuration resource, before deprecations and
+   * final parameters are applied to it.
+   */
+  private static class ParsedProperty {
+    private final String name;
+    private final String value;
+    private final boolean finalParameter;
+    private final String[] source;
+
+    ParsedProperty(String name, String value, boolean finalParameter,
+        String[] source) {
+      this.name = name;
+      this.value = value;
+      this.finalParameter = finalParameter;
+      this.source = source;
     }
-    if (url == null) {
-      return null;
+  }
+
+  /**
+   * The properties of a classpath resource, with the modification time and
+   * length of the file holding it when it was parsed.
+   */
+  private static class ParsedResource {
+    private final long lastModified;
+    private final long length;
+    private final List<ParsedProperty> properties;
+
+    ParsedResource(long lastModified, long length,
+        List<ParsedProperty> properties) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.properties = Collections.unmodifiableList(properties);
     }
+  }
 
+  /**
+   * The classpath resources parsed so far in this JVM, keyed by name and URL,
+   * so that the default and site resources are parsed once rather than by
+   * every configuration that loads them.
+   */
+  private static final ConcurrentMap<String, ParsedResource>
+      PARSED_RESOURCES = new ConcurrentHashMap<String, ParsedResource>();
+
+  private static final String XINCLUDE_NS = "http://www.w3.org/2001/XInclude";
+
+  private static final XMLInputFactory XML_INPUT_FACTORY =
+      XMLInputFactory.newInstance();
+
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+  }
+
+  private static DocumentBuilder newDocumentBuilder(boolean isRestricted)
+      throws ParserConfigurationException {
+    DocumentBuilderFactory docBuilderFactory
+      = DocumentBuilderFactory.newInstance();
+    //ignore all comments inside the xml file
+    docBuilderFactory.setIgnoringComments(true);
+
+    docBuilderFactory.setNamespaceAware(true);
+    if (isRestricted) {
+      docBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      docBuilderFactory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+      docBuilderFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+      docBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      docBuilderFactory.setXIncludeAware(false);
+      docBuilderFactory.setExpandEntityReferences(false);
+    } else {
+      //allow includes in the xml file
+      try {
+        docBuilderFactory.setXIncludeAware(true);
+      } catch (UnsupportedOperationException e) {
+        LOG.error("Failed to set setXIncludeAware(true) for parser "
+                + docBuilderFactory
+                + ":" + e,
+            e);
+      }
+    }
+    return docBuilderFactory.newDocumentBuilder();
+  }
+
+  private InputStream openStream(URL url) throws IOException {
     URLConnection connection = url.openConnection();
     if (connection instanceof JarURLConnection) {
       // Disable caching for JarURLConnection to avoid sharing JarFile
       // with other users.
       connection.setUseCaches(false);
     }
-    return parse(builder, connection.getInputStream(), url.toString());
+    return connection.getInputStream();
+  }
+
+  private List<ParsedProperty> parse(URL url, String name,
+      boolean isRestricted) throws IOException, SAXException,
+      ParserConfigurationException {
+    if (!quietmode) {
+      LOG.debug("parsing URL " + url);
+    }
+    if (url == null) {
+      return null;
+    }
+    if (!isRestricted) {
+      List<ParsedProperty> result =
+          parseStreaming(openStream(url), url.toString(), name);
+      if (result != null) {
+        return result;
+      }
+    }
+    return parse(newDocumentBuilder(isRestricted), openStream(url),
+        url.toString(), name, isRestricted);
+  }
+
+  private List<ParsedProperty> parse(File file, String systemId,
+      String name, boolean isRestricted) throws IOException, SAXException,
+      ParserConfigurationException {
+    if (!isRestricted) {
+      List<ParsedProperty> result = parseStreaming(new BufferedInputStream(
+          new FileInputStream(file)), systemId, name);
+      if (result != null) {
+        return result;
+      }
+    }
+    return parse(newDocumentBuilder(isRestricted), new BufferedInputStream(
+        new FileInputStream(file)), systemId, name, isRestricted);
   }
 
-  private Document parse(DocumentBuilder builder, InputStream is,
-      String systemId) throws IOException, SAXException {
+  private List<ParsedProperty> parse(DocumentBuilder builder, InputStream is,
+      String systemId, String name, boolean isRestricted)
+      throws IOException, SAXException {
     if (!quietmode) {
       LOG.debug("parsing input stream " + is);
     }
     if (is == null) {
       return null;
     }
+    Document doc;
     try {
-      return (systemId == null) ? builder.parse(is) : builder.parse(is,
+      doc = (systemId == null) ? builder.parse(is) : builder.parse(is,
           systemId);
     } finally {
       is.close();
     }
+    List<ParsedProperty> result = new ArrayList<ParsedProperty>();
+    parse(doc.getDocumentElement(), name, result);
+    return result;
+  }
+
+  private void parse(Element root, String name, List<ParsedProperty> result) {
+    if (!"configuration".equals(root.getTagName()))
+      LOG.fatal("bad conf file: top-level element not <configuration>");
+    NodeList props = root.getChildNodes();
+    for (int i = 0; i < props.getLength(); i++) {
+      Node propNode = props.item(i);
+      if (!(propNode instanceof Element))
+        continue;
+      Element prop = (Element)propNode;
+      if ("configuration".equals(prop.getTagName())) {
+        parse(prop, name, result);
+        continue;
+      }
+      if (!"property".equals(prop.getTagName()))
+        LOG.warn("bad conf file: element not <property>");
+      NodeList fields = prop.getChildNodes();
+      String attr = null;
+      String value = null;
+      boolean finalParameter = false;
+      LinkedList<String> source = new LinkedList<String>();
+      for (int j = 0; j < fields.getLength(); j++) {
+        Node fieldNode = fields.item(j);
+        if (!(fieldNode instanceof Element))
+          continue;
+        Element field = (Element)fieldNode;
+        if ("name".equals(field.getTagName()) && field.hasChildNodes())
+          attr = StringInterner.weakIntern(
+              ((Text)field.getFirstChild()).getData().trim());
+        if ("value".equals(field.getTagName()) && field.hasChildNodes())
+          value = StringInterner.weakIntern(
+              ((Text)field.getFirstChild()).getData());
+        if ("final".equals(field.getTagName()) && field.hasChildNodes())
+          finalParameter = "true".equals(((Text)field.getFirstChild()).getData());
+        if ("source".equals(field.getTagName()) && field.hasChildNodes())
+          source.add(StringInterner.weakIntern(
+              ((Text)field.getFirstChild()).getData()));
+      }
+      source.add(name);
+      if (attr != null) {
+        result.add(new ParsedProperty(attr, value, finalParameter,
+            source.toArray(new String[source.size()])));
+      }
+    }
+  }
+
+  /**
+   * Read the properties of a resource with a streaming parser, which is
+   * much cheaper than building its document.
+   * @return the properties, or null if the resource has a DTD or includes,
+   * or could not be read, for the document parser to read it instead.
+   */
+  private List<ParsedProperty> parseStreaming(InputStream is,
+      String systemId, String name) throws IOException {
+    List<ParsedProperty> result = new ArrayList<ParsedProperty>();
+    XMLStreamReader reader = null;
+    try {
+      reader = XML_INPUT_FACTORY.createXMLStreamReader(systemId, is);
+      // for each open element, whether it is a <configuration>
+      ArrayDeque<Boolean> open = new ArrayDeque<Boolean>();
+      String attr = null;
+      String value = null;
+      boolean finalParameter = false;
+      List<String> source = new ArrayList<String>();
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+        case XMLStreamConstants.DTD:
+          // entities and includes are left to the document parser
+          return null;
+        case XMLStreamConstants.START_ELEMENT:
+          String prefix = reader.getPrefix();
+          if (XINCLUDE_NS.equals(reader.getNamespaceURI())
+              || (prefix != null && !prefix.isEmpty())) {
+            return null;
+          }
+          String tag = reader.getLocalName();
+          if (open.isEmpty()) {
+            if (!"configuration".equals(tag))
+              LOG.fatal("bad conf file: top-level element not <configuration>");
+            open.push(true);
+          } else if (open.peek()) {
+            if ("configuration".equals(tag)) {
+              open.push(true);
+            } else {
+              if (!"property".equals(tag))
+                LOG.warn("bad conf file: element not <property>");
+              attr = null;
+              value = null;
+              finalParameter = false;
+              source.clear();
+              open.push(false);
+            }
+          } else if ("name".equals(tag)) {
+            String text = readElementText(reader);
+            if (text != null)
+              attr = StringInterner.weakIntern(text.trim());
+          } else if ("value".equals(tag)) {
+            String text = readElementText(reader);
+            if (text != null)
+              value = StringInterner.weakIntern(text);
+          } else if ("final".equals(tag)) {
+            String text = readElementText(reader);
+            if (text != null)
+              finalParameter = "true".equals(text);
+          } else if ("source".equals(tag)) {
+            String text = readElementText(reader);
+            if (text != null)
+              source.add(StringInterner.weakIntern(text));
+          } else {
+            skipElement(reader);
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          if (!open.pop()) {
+            source.add(name);
+            if (attr != null) {
+              result.add(new ParsedProperty(attr, value, finalParameter,
+                  source.toArray(new String[source.size()])));
+            }
+          }
+          break;
+        default:
+          break;
+        }
+      }
+      return result;
+    } catch (XMLStreamException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Streaming parser could not read " + systemId, e);
+      }
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // the stream is closed below
+        }
+      }
+      is.close();
+    }
+  }
+
+  /**
+   * Read the text of the current element, as the first child of the element
+   * in its document.
+   * @return the text, or null if the element is empty
+   */
+  private static String readElementText(XMLStreamReader reader)
+      throws XMLStreamException {
+    String text = reader.getElementText();
+    return text.isEmpty() ? null : text;
+  }
+
+  private static void skipElement(XMLStreamReader reader)
+      throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Get the properties of a classpath resource, parsing it only if it has not
+   * been parsed in this JVM or its file has changed since.
+   */
+  private List<ParsedProperty> parseClasspathResource(URL url, String name,
+      boolean isRestricted) throws IOException, SAXException,
+      ParserConfigurationException {
+    long[] modification = url == null || isRestricted
+        ? null : getModificationInfo(url);
+    if (modification == null) {
+      return parse(url, name, isRestricted);
+    }
+    String key = name + "@" + url;
+    ParsedResource parsed = PARSED_RESOURCES.get(key);
+    if (parsed != null && parsed.lastModified == modification[0]
+        && parsed.length == modification[1]) {
+      if (!quietmode) {
+        LOG.debug("using parsed URL " + url);
+      }
+      return parsed.properties;
+    }
+    List<ParsedProperty> properties = parse(url, name, isRestricted);
+    if (properties != null) {
+      PARSED_RESOURCES.put(key,
+          new ParsedResource(modification[0], modification[1], properties));
+    }
+    return properties;
+  }
+
+  /**
+   * Get the modification time and length of the local file or jar a resource
+   * is read from.
+   * @return the two, or null if the resource is not in a local file
+   */
+  private static long[] getModificationInfo(URL url) {
+    try {
+      URL fileUrl = url;
+      if ("jar".equals(url.getProtocol())) {
+        String path = url.getPath();
+        int separator = path.indexOf("!/");
+        if (separator < 0) {
+          return null;
+        }
+        fileUrl = new URL(path.substring(0, separator));
+      }
+      if (!"file".equals(fileUrl.getProtocol())) {
+        return null;
+      }
+      File file = new File(fileUrl.toURI());
+      long lastModified = file.lastModified();
+      if (lastModified == 0) {
+        return null;
+      }
+      return new long[] { lastModified, file.length() };
+    } catch (IOException e) {
+      return null;
+    } catch (URISyntaxException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
   }
 
   private void loadResources(Properties properties,
@@ -2655,42 +3148,15 @@ private Resource loadResource(Properties properties, Resource wrapper, boolean q
     try {
       Object resource = wrapper.getResource();
       name = wrapper.getName();
-      
-      DocumentBuilderFactory docBuilderFactory 
-        = DocumentBuilderFactory.newInstance();
-      //ignore all comments inside the xml file
-      docBuilderFactory.setIgnoringComments(true);
       boolean isRestricted = wrapper.isParserRestricted();
-
-      docBuilderFactory.setNamespaceAware(true);
-      if (isRestricted) {
-        docBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-        docBuilderFactory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-        docBuilderFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-        docBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        docBuilderFactory.setXIncludeAware(false);
-        docBuilderFactory.setExpandEntityReferences(false);
-      } else {
-        //allow includes in the xml file
-        try {
-          docBuilderFactory.setXIncludeAware(true);
-        } catch (UnsupportedOperationException e) {
-          LOG.error("Failed to set setXIncludeAware(true) for parser "
-                  + docBuilderFactory
-                  + ":" + e,
-              e);
-        }
-      }
-      DocumentBuilder builder = docBuilderFactory.newDocumentBuilder();
-      Document doc = null;
-      Element root = null;
+      List<ParsedProperty> parsed = null;
       boolean returnCachedProperties = false;
       
       if (resource instanceof URL) {                  // an URL resource
-        doc = parse(builder, (URL)resource);
+        parsed = parse((URL)resource, name, isRestricted);
       } else if (resource instanceof String) {        // a CLASSPATH resource
         URL url = getResource((String)resource);
-        doc = parse(builder, url);
+        parsed = parseClasspathResource(url, name, isRestricted);
       } else if (resource instanceof Path) {          // a file resource
         // Can't use FileSystem API or we get an infinite loop
         // since FileSystem uses Configuration API.  Use java.io.File instead.
@@ -2700,88 +3166,48 @@ private Resource loadResource(Properties properties, Resource wrapper, boolean q
           if (!quiet) {
             LOG.debug("parsing File " + file);
           }
-          doc = parse(builder, new BufferedInputStream(
-              new FileInputStream(file)), ((Path)resource).toString());
+          parsed = parse(file, ((Path)resource).toString(), name,
+              isRestricted);
         }
       } else if (resource instanceof InputStream) {
-        doc = parse(builder, (InputStream) resource, null);
+        parsed = parse(newDocumentBuilder(isRestricted),
+            (InputStream) resource, null, name, isRestricted);
         returnCachedProperties = true;
       } else if (resource instanceof Properties) {
         overlay(properties, (Properties)resource);
       } else if (resource instanceof Element) {
-        root = (Element)resource;
+        parsed = new ArrayList<ParsedProperty>();
+        parse((Element)resource, name, parsed);
       }
 
-      if (root == null) {
-        if (doc == null) {
-          if (quiet) {
-            return null;
-          }
-          throw new RuntimeException(resource + " not found");
+      if (parsed == null) {
+        if (quiet) {
+          return null;
         }
-        root = doc.getDocumentElement();
+        throw new RuntimeException(resource + " not found");
       }
       Properties toAddTo = properties;
       if(returnCachedProperties) {
         toAddTo = new Properties();
       }
-      if (!"configuration".equals(root.getTagName()))
-        LOG.fatal("bad conf file: top-level element not <configuration>");
-      NodeList props = root.getChildNodes();
       DeprecationContext deprecations = deprecationContext.get();
-      for (int i = 0; i < props.getLength(); i++) {
-        Node propNode = props.item(i);
-        if (!(propNode instanceof Element))
-          continue;
-        Element prop = (Element)propNode;
-        if ("configuration".equals(prop.getTagName())) {
-          loadResource(toAddTo, new Resource(prop, name,
-              wrapper.isParserRestricted()), quiet);
-          continue;
-        }
-        if (!"property".equals(prop.getTagName()))
-          LOG.warn("bad conf file: element not <property>");
-        NodeList fields = prop.getChildNodes();
-        String attr = null;
-        String value = null;
-        boolean finalParameter = false;
-        LinkedList<String> source = new LinkedList<String>();
-        for (int j = 0; j < fields.getLength(); j++) {
-          Node fieldNode = fields.item(j);
-          if (!(fieldNode instanceof Element))
-            continue;
-          Element field = (Element)fieldNode;
-          if ("name".equals(field.getTagName()) && field.hasChildNodes())
-            attr = StringInterner.weakIntern(
-                ((Text)field.getFirstChild()).getData().trim());
-          if ("value".equals(field.getTagName()) && field.hasChildNodes())
-            value = StringInterner.weakIntern(
-                ((Text)field.getFirstChild()).getData());
-          if ("final".equals(field.getTagName()) && field.hasChildNodes())
-            finalParameter = "true".equals(((Text)field.getFirstChild()).getData());
-          if ("source".equals(field.getTagName()) && field.hasChildNodes())
-            source.add(StringInterner.weakIntern(
-                ((Text)field.getFirstChild()).getData()));
-        }
-        source.add(name);
-        
+      for (ParsedProperty prop : parsed) {
+        String attr = prop.name;
         // Ignore this parameter if it has already been marked as 'final'
-        if (attr != null) {
-          if (deprecations.getDeprecatedKeyMap().containsKey(attr)) {
-            DeprecatedKeyInfo keyInfo =
-                deprecations.getDeprecatedKeyMap().get(attr);
-            keyInfo.clearAccessed();
-            for (String key:keyInfo.newKeys) {
-              // update new keys with deprecated key's value 
-              loadProperty(toAddTo, name, key, value, finalParameter, 
-                  source.toArray(new String[source.size()]));
-            }
-          }
-          else {
-            loadProperty(toAddTo, name, attr, value, finalParameter, 
-                source.toArray(new String[source.size()]));
+        if (deprecations.getDeprecatedKeyMap().containsKey(attr)) {
+          DeprecatedKeyInfo keyInfo =
+              deprecations.getDeprecatedKeyMap().get(attr);
+          keyInfo.clearAccessed();
+          for (String key:keyInfo.newKeys) {
+            // update new keys with deprecated key's value 
+            loadProperty(toAddTo, name, key, prop.value, prop.finalParameter,
+                prop.source);
           }
         }
+        else {
+          loadProperty(toAddTo, name, attr, prop.value, prop.finalParameter,
+              prop.source);
+        }
       }
       
       if (returnCachedProperties) {
@@ -149,6 +149,37 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT =
       false;
 
+  /**
+   * Number of threads the bzip2 codec compresses the blocks of a stream on,
+   * and decodes them ahead of the reader on
+   */
+  public static final String IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY =
+      "io.compression.codec.bzip2.threads";
+
+  /** Default value for IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY */
+  public static final int IO_COMPRESSION_CODEC_BZIP2_THREADS_DEFAULT = 1;
+
+  /** Compression level of the zstd codec */
+  public static final String IO_COMPRESSION_CODEC_ZSTD_LEVEL_KEY =
+      "io.compression.codec.zstd.level";
+
+  /** Default value for IO_COMPRESSION_CODEC_ZSTD_LEVEL_KEY */
+  public static final int IO_COMPRESSION_CODEC_ZSTD_LEVEL_DEFAULT = 3;
+
+  /**
+   * Internal buffer size for zstd compressor/decompressors, 0 for the sizes
+   * the native library recommends
+   */
+  public static final String IO_COMPRESSION_CODEC_ZSTD_BUFFER_SIZE_KEY =
+      "io.compression.codec.zstd.buffersize";
+
+  /** Default value for IO_COMPRESSION_CODEC_ZSTD_BUFFER_SIZE_KEY */
+  public static final int IO_COMPRESSION_CODEC_ZSTD_BUFFER_SIZE_DEFAULT = 0;
+
+  /** Path of a dictionary for the zstd codec, none if empty */
+  public static final String IO_COMPRESSION_CODEC_ZSTD_DICTIONARY_KEY =
+      "io.compression.codec.zstd.dictionary";
+
   /**
    * Service Authorization
    */
@@ -302,6 +333,10 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String  IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
       "ipc.client.async.calls.max";
   public static final int     IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+  /** Threads reading responses with a selector; 0 for one per connection. */
+  public static final String  IPC_CLIENT_SELECTOR_THREADS_KEY =
+      "ipc.client.selector.threads";
+  public static final int     IPC_CLIENT_SELECTOR_THREADS_DEFAULT = 0;
   public static final String  IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY = "ipc.client.fallback-to-simple-auth-allowed";
   public static final boolean IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT = false;
 
@@ -148,6 +148,16 @@ public class CommonConfigurationKeysPublic {
   /** Default value for IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY */
   public static final int     IO_SEQFILE_COMPRESS_BLOCKSIZE_DEFAULT = 1000000;
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_SEQFILE_BLOCK_INDEX_KEY =
+    "io.seqfile.block.index";
+  /** Default value for IO_SEQFILE_BLOCK_INDEX_KEY */
+  public static final boolean IO_SEQFILE_BLOCK_INDEX_DEFAULT = false;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_SEQFILE_READ_AHEAD_KEY =
+    "io.seqfile.read.ahead";
+  /** Default value for IO_SEQFILE_READ_AHEAD_KEY */
+  public static final boolean IO_SEQFILE_READ_AHEAD_DEFAULT = false;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  IO_FILE_BUFFER_SIZE_KEY =
     "io.file.buffer.size";
   /** Default value for IO_FILE_BUFFER_SIZE_KEY */
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A ByteBufferPool that caches at most a given number of released buffers
+ * of each kind, heap or direct. Buffers released while the pool is full are
+ * left to the garbage collector, so the memory held by the pool is bounded
+ * by the busiest period rather than growing with every burst of requests.
+ * It returns the most recently released cached buffer with at least the
+ * capacity requested.
+ */
+@InterfaceAudience.LimitedPrivate({"MapReduce"})
+@InterfaceStability.Unstable
+public final class BoundedByteBufferPool implements ByteBufferPool {
+  private final int maxBuffers;
+
+  private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+
+  private final ArrayDeque<ByteBuffer> directBuffers =
+      new ArrayDeque<ByteBuffer>();
+
+  /**
+   * @param maxBuffers the most buffers of each kind kept for reuse
+   */
+  public BoundedByteBufferPool(int maxBuffers) {
+    Preconditions.checkArgument(maxBuffers >= 0,
+        "maxBuffers must not be negative: %s", maxBuffers);
+    this.maxBuffers = maxBuffers;
+  }
+
+  private ArrayDeque<ByteBuffer> getBufferQueue(boolean direct) {
+    return direct ? directBuffers : buffers;
+  }
+
+  @Override
+  public synchronized ByteBuffer getBuffer(boolean direct, int length) {
+    Iterator<ByteBuffer> it = getBufferQueue(direct).iterator();
+    while (it.hasNext()) {
+      ByteBuffer buffer = it.next();
+      if (buffer.capacity() >= length) {
+        it.remove();
+        buffer.clear();
+        return buffer;
+      }
+    }
+    return direct ? ByteBuffer.allocateDirect(length) :
+                    ByteBuffer.allocate(length);
+  }
+
+  @Override
+  public synchronized void putBuffer(ByteBuffer buffer) {
+    ArrayDeque<ByteBuffer> queue = getBufferQueue(buffer.isDirect());
+    if (queue.size() < maxBuffers) {
+      // most recently used first, as it is the most likely to be cached
+      queue.addFirst(buffer);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size(boolean direct) {
+    return getBufferQueue(direct).size();
+  }
+}
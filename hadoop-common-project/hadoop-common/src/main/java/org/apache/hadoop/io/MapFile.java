@@ -605,6 +605,15 @@ private synchronized int seekInternal(WritableComparable key,
           seekPosition = firstPosition;           // use beginning of file
         else
           seekPosition = positions[seekIndex];    // else use index
+
+        // the blocks of the data may be finer than the index
+        SequenceFile.BlockIndex blocks = data.getBlockIndex();
+        if (blocks != null) {
+          int block = blocks.findBlock(key, comparator);
+          if (block != -1 && blocks.getOffset(block) > seekPosition) {
+            seekPosition = blocks.getOffset(block);
+          }
+        }
       }
       data.seek(seekPosition);
       
@@ -20,6 +20,11 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
 
@@ -51,6 +56,11 @@
 import org.apache.hadoop.util.PriorityQueue;
 import org.apache.hadoop.util.Time;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 /** 
  * <code>SequenceFile</code>s are flat files consisting of binary key/value 
  * pairs.
@@ -189,6 +199,30 @@
  * <p>The compressed blocks of key lengths and value lengths consist of the 
  * actual lengths of individual keys/values encoded in ZeroCompressedInteger 
  * format.</p>
+ *
+ * <h5 id="#BlockIndex">Block Index</h5>
+ * <p>A block-compressed file written with {@link Writer#blockIndex(boolean)}
+ * has version SEQ7, and after the last block it has:</p>
+ * <ul>
+ * <li>
+ * A sync-marker followed by a block of no records, which ends the blocks.
+ * </li>
+ * <li>
+ * An entry for every block
+ *   <ul>
+ *     <li>Offset of the sync-marker before the block</li>
+ *     <li>Number of records in the block</li>
+ *     <li>Length of the first key of the block</li>
+ *     <li>The first key of the block, uncompressed</li>
+ *   </ul>
+ * </li>
+ * <li>
+ * Offset of the sync-marker that ends the blocks, the number of entries and
+ * the sync, so that the index can be found from the end of the file.
+ * </li>
+ * </ul>
+ * <p>{@link Reader#getBlockIndex()} reads it for seeking by key without
+ * scanning, see {@link Reader#seekToBlock(WritableComparable)}.</p>
  * 
  * @see CompressionCodec
  */
@@ -202,6 +236,7 @@ private SequenceFile() {}                         // no public ctor
   private static final byte BLOCK_COMPRESS_VERSION = (byte)4;
   private static final byte CUSTOM_COMPRESS_VERSION = (byte)5;
   private static final byte VERSION_WITH_METADATA = (byte)6;
+  private static final byte VERSION_WITH_BLOCK_INDEX = (byte)7;
   private static byte[] VERSION = new byte[] {
     (byte)'S', (byte)'E', (byte)'Q', VERSION_WITH_METADATA
   };
@@ -210,6 +245,10 @@ private SequenceFile() {}                         // no public ctor
   private static final int SYNC_HASH_SIZE = 16;   // number of bytes in hash 
   private static final int SYNC_SIZE = 4+SYNC_HASH_SIZE; // escape + hash
 
+  /** The offset of the end of the blocks, the number of entries and the sync
+   * at the end of a file with a block index. */
+  private static final int BLOCK_INDEX_TRAILER_SIZE = 8+4+SYNC_HASH_SIZE;
+
   /** The number of bytes between sync points.*/
   public static final int SYNC_INTERVAL = 100*SYNC_SIZE; 
 
@@ -821,6 +860,90 @@ public String toString() {
     }
   }
   
+  /**
+   * The index of the blocks of a block-compressed file written with
+   * {@link Writer#blockIndex(boolean)}.
+   */
+  public static class BlockIndex {
+    private final long[] offsets;
+    private final int[] records;
+    private final byte[][] firstKeys;
+    private final long end;
+
+    BlockIndex(long[] offsets, int[] records, byte[][] firstKeys, long end) {
+      this.offsets = offsets;
+      this.records = records;
+      this.firstKeys = firstKeys;
+      this.end = end;
+    }
+
+    /** Returns the number of blocks. */
+    public int size() {
+      return offsets.length;
+    }
+
+    /**
+     * Returns the offset of a block, a position to
+     * {@link Reader#seek(long)} to.
+     */
+    public long getOffset(int block) {
+      return offsets[block];
+    }
+
+    /** Returns the number of records in a block. */
+    public int getRecordCount(int block) {
+      return records[block];
+    }
+
+    /** Returns the serialized first key of a block. */
+    public byte[] getFirstKey(int block) {
+      return Arrays.copyOf(firstKeys[block], firstKeys[block].length);
+    }
+
+    /** Returns the offset of the end of the blocks. */
+    public long getEnd() {
+      return end;
+    }
+
+    /**
+     * Find the block where the records with a key, or with the keys after
+     * it, start in a file sorted by the comparator: the last block whose
+     * first key is before the key, or the first block.
+     * @param key the serialized key
+     * @param start the offset of the key
+     * @param length the length of the key
+     * @param comparator the order of the keys in the file
+     * @return the block, or -1 if there are no blocks
+     */
+    public int findBlock(byte[] key, int start, int length,
+                         RawComparator<?> comparator) {
+      int low = 0;
+      int high = offsets.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        byte[] firstKey = firstKeys[mid];
+        if (comparator.compare(firstKey, 0, firstKey.length,
+                               key, start, length) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return offsets.length == 0 ? -1 : Math.max(high, 0);
+    }
+
+    /**
+     * Find the block where the records with a key, or with the keys after
+     * it, start, see {@link #findBlock(byte[], int, int, RawComparator)}.
+     */
+    public int findBlock(Writable key, RawComparator<?> comparator)
+      throws IOException {
+      DataOutputBuffer buffer = new DataOutputBuffer();
+      key.write(buffer);
+      return findBlock(buffer.getData(), 0, buffer.getLength(), comparator);
+    }
+  }
+
   /** Write key/value pairs to a sequence-format file. */
   public static class Writer implements java.io.Closeable, Syncable {
     private Configuration conf;
@@ -839,6 +962,7 @@ public static class Writer implements java.io.Closeable, Syncable {
     Compressor compressor = null;
 
     private boolean appendMode = false;
+    boolean blockIndex = false;           // write an index of the blocks
 
     protected Serializer keySerializer;
     protected Serializer uncompressedValSerializer;
@@ -948,6 +1072,13 @@ static class ProgressableOption extends Options.ProgressableOption
       }
     }
 
+    static class BlockIndexOption extends Options.BooleanOption
+                                  implements Option {
+      BlockIndexOption(boolean value) {
+        super(value);
+      }
+    }
+
     private static class CompressionOption implements Option {
       private final CompressionType value;
       private final CompressionCodec codec;
@@ -1025,6 +1156,18 @@ public static Option compression(CompressionType value,
         CompressionCodec codec) {
       return new CompressionOption(value, codec);
     }
+
+    /**
+     * Create an option to write an index of the blocks at the end of a
+     * block-compressed file, for seeking by key. It is ignored for the other
+     * compression types and when appending. The default is the value of
+     * <code>io.seqfile.block.index</code>.
+     * @param value whether to write the index
+     * @return a new option
+     */
+    public static Option blockIndex(boolean value) {
+      return new BlockIndexOption(value);
+    }
     
     /**
      * Construct a uncompressed writer from a set of options.
@@ -1055,6 +1198,8 @@ public static Option compression(CompressionType value,
         Options.getOption(MetadataOption.class, opts);
       CompressionOption compressionTypeOption =
         Options.getOption(CompressionOption.class, opts);
+      BlockIndexOption blockIndexOption =
+        Options.getOption(BlockIndexOption.class, opts);
       // check consistency of options
       if ((fileOption == null) == (streamOption == null)) {
         throw new IllegalArgumentException("file or stream must be specified");
@@ -1147,6 +1292,11 @@ public static Option compression(CompressionType value,
       Metadata metadata = metadataOption == null ?
           new Metadata() : metadataOption.getValue();
       this.compress = compressionTypeOption.getValue();
+      this.blockIndex = isBlockCompressed() && !appendMode &&
+        (blockIndexOption == null ? conf.getBoolean(
+            CommonConfigurationKeysPublic.IO_SEQFILE_BLOCK_INDEX_KEY,
+            CommonConfigurationKeysPublic.IO_SEQFILE_BLOCK_INDEX_DEFAULT) :
+         blockIndexOption.getValue());
       final CompressionCodec codec = compressionTypeOption.getCodec();
       if (codec != null &&
           (codec instanceof GzipCodec) &&
@@ -1210,7 +1360,8 @@ public Writer(FileSystem fs, Configuration conf, Path name,
     /** Write and flush the file header. */
     private void writeFileHeader() 
       throws IOException {
-      out.write(VERSION);
+      out.write(VERSION, 0, VERSION.length - 1);
+      out.write(blockIndex ? VERSION_WITH_BLOCK_INDEX : VERSION[3]);
       Text.writeString(out, keyClass.getName());
       Text.writeString(out, valClass.getName());
       
@@ -1508,6 +1659,9 @@ static class BlockCompressWriter extends Writer {
     private DataOutputBuffer valBuffer = new DataOutputBuffer();
 
     private final int compressionBlockSize;
+
+    private DataOutputBuffer indexBuffer = new DataOutputBuffer();
+    private int indexEntries = 0;
     
     BlockCompressWriter(Configuration conf,
                         Option... options) throws IOException {
@@ -1539,6 +1693,9 @@ void writeBuffer(DataOutputBuffer uncompressedDataBuffer)
     @Override
     public synchronized void sync() throws IOException {
       if (noBufferedRecords > 0) {
+        if (writesBlockIndex()) {
+          addIndexEntry();
+        }
         super.sync();
         
         // No. of records
@@ -1565,11 +1722,43 @@ public synchronized void sync() throws IOException {
       
     }
     
+    // not the temp files of the sorter, which have no sync either
+    private boolean writesBlockIndex() {
+      return blockIndex && sync != null;
+    }
+
+    /** Add the block about to be written to the index. */
+    private void addIndexEntry() throws IOException {
+      int firstKeyLength =
+        WritableComparator.readVInt(keyLenBuffer.getData(), 0);
+      WritableUtils.writeVLong(indexBuffer, out.getPos());
+      WritableUtils.writeVInt(indexBuffer, noBufferedRecords);
+      WritableUtils.writeVInt(indexBuffer, firstKeyLength);
+      indexBuffer.write(keyBuffer.getData(), 0, firstKeyLength);
+      indexEntries++;
+    }
+
+    /** End the blocks and write the index after them. */
+    private void writeBlockIndex() throws IOException {
+      long blocksEnd = out.getPos();
+      out.writeInt(SYNC_ESCAPE);
+      out.write(sync);
+      WritableUtils.writeVInt(out, 0);            // a block of no records
+      out.write(indexBuffer.getData(), 0, indexBuffer.getLength());
+      out.writeLong(blocksEnd);
+      out.writeInt(indexEntries);
+      out.write(sync);
+      out.flush();
+    }
+
     /** Close the file. */
     @Override
     public synchronized void close() throws IOException {
       if (out != null) {
         sync();
+        if (writesBlockIndex()) {
+          writeBlockIndex();
+        }
       }
       super.close();
     }
@@ -1698,6 +1887,34 @@ public static class Reader implements java.io.Closeable {
     private Deserializer keyDeserializer;
     private Deserializer valDeserializer;
 
+    private Path path;
+    private long fileLength = -1;
+    private BlockIndex blockIndex;
+
+    // reading ahead, the streams of the blocks are read from the buffers of
+    // the current one, and the next is read by the read-ahead thread with
+    // the buffers and filters above
+    private boolean readAhead;
+    private ExecutorService readAheadExecutor;
+    private Future<DecompressedBlock> readAheadFuture;
+    private DecompressedBlock currentBlock;
+    private DecompressedBlock readAheadBlock;
+    private long blockEnd;
+    private DataOutputBuffer readAheadCompressed;
+
+    /** A block decompressed by the read-ahead thread. */
+    private static class DecompressedBlock {
+      private int records;
+      private long end;
+      // key lengths, keys, value lengths and values
+      private final DataOutputBuffer[] buffers = {
+        new DataOutputBuffer(), new DataOutputBuffer(),
+        new DataOutputBuffer(), new DataOutputBuffer()
+      };
+      private final byte[] syncCheck = new byte[SYNC_HASH_SIZE];
+      private final byte[] chunk = new byte[4096];
+    }
+
     /**
      * A tag interface for all of the Reader options
      */
@@ -1748,6 +1965,18 @@ public static Option bufferSize(int value) {
       return new BufferSizeOption(value);
     }
 
+    /**
+     * Create an option to read and decompress the next block of a
+     * block-compressed file on a background thread while the records of the
+     * current one are read. The default is the value of
+     * <code>io.seqfile.read.ahead</code>.
+     * @param value whether to read ahead
+     * @return a new option
+     */
+    public static Option readAhead(boolean value) {
+      return new ReadAheadOption(value);
+    }
+
     private static class FileOption extends Options.PathOption 
                                     implements Option {
       private FileOption(Path value) {
@@ -1784,6 +2013,13 @@ private BufferSizeOption(int value) {
       }
     }
 
+    private static class ReadAheadOption extends Options.BooleanOption
+                                         implements Option {
+      private ReadAheadOption(boolean value) {
+        super(value);
+      }
+    }
+
     // only used directly
     private static class OnlyHeaderOption extends Options.BooleanOption 
                                           implements Option {
@@ -1802,6 +2038,8 @@ public Reader(Configuration conf, Option... opts) throws IOException {
       BufferSizeOption bufOpt = Options.getOption(BufferSizeOption.class,opts);
       OnlyHeaderOption headerOnly = 
         Options.getOption(OnlyHeaderOption.class, opts);
+      ReadAheadOption readAheadOpt =
+        Options.getOption(ReadAheadOption.class, opts);
       // check for consistency
       if ((fileOpt == null) == (streamOpt == null)) {
         throw new 
@@ -1823,11 +2061,19 @@ public Reader(Configuration conf, Option... opts) throws IOException {
           ? fs.getFileStatus(filename).getLen()
           : lenOpt.getValue();
         file = openFile(fs, filename, bufSize, len);
+        if (lenOpt == null) {
+          fileLength = len;
+        }
       } else {
         len = null == lenOpt ? Long.MAX_VALUE : lenOpt.getValue();
         file = streamOpt.getValue();
       }
       long start = startOpt == null ? 0 : startOpt.getValue();
+      path = filename;
+      readAhead = readAheadOpt == null ?
+        conf.getBoolean(CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_KEY,
+            CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_DEFAULT) :
+        readAheadOpt.getValue();
       // really set up
       initialize(filename, file, start, len, conf, headerOnly != null);
     }
@@ -1924,8 +2170,8 @@ private void init(boolean tempReader) throws IOException {
 
       // Set 'version'
       version = versionBlock[3];
-      if (version > VERSION[3])
-        throw new VersionMismatchException(VERSION[3], version);
+      if (version > VERSION_WITH_BLOCK_INDEX)
+        throw new VersionMismatchException(VERSION_WITH_BLOCK_INDEX, version);
 
       if (version < BLOCK_COMPRESS_VERSION) {
         UTF8 className = new UTF8();
@@ -2011,6 +2257,21 @@ private void init(boolean tempReader) throws IOException {
                                                    valLenDecompressor);
           valLenIn = new DataInputStream(valLenInFilter);
         }
+
+        readAhead = readAhead && blockCompressed;
+        if (readAhead) {
+          keyLenIn = new DataInputBuffer();
+          keyIn = new DataInputBuffer();
+          valLenIn = new DataInputBuffer();
+          valIn = new DataInputBuffer();
+          currentBlock = new DecompressedBlock();
+          readAheadBlock = new DecompressedBlock();
+          readAheadCompressed = new DataOutputBuffer();
+          readAheadExecutor = Executors.newSingleThreadExecutor(
+              new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("SequenceFile read-ahead for " + filename)
+              .build());
+        }
         
         SerializationFactory serializationFactory =
           new SerializationFactory(conf);
@@ -2053,6 +2314,11 @@ private Deserializer getDeserializer(SerializationFactory sf, Class c) {
     /** Close the file. */
     @Override
     public synchronized void close() throws IOException {
+      if (readAheadExecutor != null) {
+        stopReadAhead();
+        readAheadExecutor.shutdown();
+      }
+
       // Return the decompressors to the pool
       CodecPool.returnDecompressor(keyLenDecompressor);
       CodecPool.returnDecompressor(keyDecompressor);
@@ -2165,6 +2431,11 @@ private synchronized void readBuffer(DataInputBuffer buffer,
     
     /** Read the next 'compressed' block */
     private synchronized void readBlock() throws IOException {
+      if (readAhead) {
+        nextReadAheadBlock();
+        return;
+      }
+
       // Check if we need to throw away a whole block of 
       // 'values' due to 'lazy decompression' 
       if (lazyDecompress && !valuesDecompressed) {
@@ -2175,6 +2446,7 @@ private synchronized void readBlock() throws IOException {
       // Reset internal states
       noBufferedKeys = 0; noBufferedValues = 0; noBufferedRecords = 0;
       valuesDecompressed = false;
+      long blockStart = in.getPos();
 
       //Process sync
       if (sync != null) {
@@ -2187,6 +2459,12 @@ private synchronized void readBlock() throws IOException {
 
       // Read number of records in this block
       noBufferedRecords = WritableUtils.readVInt(in);
+      if (noBufferedRecords == 0 && version >= VERSION_WITH_BLOCK_INDEX) {
+        // the empty block before the index, stay at the end
+        in.seek(blockStart);
+        valuesDecompressed = true;
+        throw new EOFException();
+      }
       
       // Read key lengths and keys
       readBuffer(keyLenBuffer, keyLenInFilter);
@@ -2202,6 +2480,110 @@ private synchronized void readBlock() throws IOException {
       }
     }
 
+    /** Take the block read ahead, and start reading the one after it. */
+    private void nextReadAheadBlock() throws IOException {
+      if (readAheadFuture == null) {
+        startReadAhead();
+      }
+      DecompressedBlock block;
+      try {
+        block = Uninterruptibles.getUninterruptibly(readAheadFuture);
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new IOException(e.getCause());
+      } finally {
+        readAheadFuture = null;
+      }
+      readAheadBlock = currentBlock;
+      currentBlock = block;
+      blockEnd = block.end;
+      noBufferedRecords = noBufferedKeys = noBufferedValues = block.records;
+      valuesDecompressed = true;
+      syncSeen = true;
+
+      DataInputStream[] ins = { keyLenIn, keyIn, valLenIn, valIn };
+      for (int i = 0; i < ins.length; i++) {
+        ((DataInputBuffer) ins[i]).reset(block.buffers[i].getData(),
+            block.buffers[i].getLength());
+      }
+      // a block past the end of the reader is read only when asked for
+      if (blockEnd < end) {
+        startReadAhead();
+      }
+    }
+
+    @VisibleForTesting
+    synchronized boolean isReadingAhead() {
+      return readAheadFuture != null;
+    }
+
+    private void startReadAhead() {
+      final DecompressedBlock block = readAheadBlock;
+      readAheadFuture = readAheadExecutor.submit(
+          new Callable<DecompressedBlock>() {
+            @Override
+            public DecompressedBlock call() throws IOException {
+              return decompressBlock(block);
+            }
+          });
+    }
+
+    /**
+     * Wait for the block being read ahead and drop it, so that the stream
+     * can be used, positioned at the end of the current block.
+     */
+    private void stopReadAhead() throws IOException {
+      if (readAheadFuture != null) {
+        try {
+          Uninterruptibles.getUninterruptibly(readAheadFuture);
+        } catch (ExecutionException e) {
+          // it fails again if the block is read again
+        }
+        readAheadFuture = null;
+        in.seek(blockEnd);
+      }
+    }
+
+    /**
+     * Read the next block and decompress it into the given one. This runs
+     * on the read-ahead thread, while the reader waits for it or does not
+     * use the stream.
+     */
+    private DecompressedBlock decompressBlock(DecompressedBlock block)
+        throws IOException {
+      long blockStart = in.getPos();
+      if (sync != null) {
+        in.readInt();
+        in.readFully(block.syncCheck);
+        if (!Arrays.equals(sync, block.syncCheck))
+          throw new IOException("File is corrupt!");
+      }
+      block.records = WritableUtils.readVInt(in);
+      if (block.records == 0 && version >= VERSION_WITH_BLOCK_INDEX) {
+        in.seek(blockStart);
+        throw new EOFException();
+      }
+
+      DataInputBuffer[] compressed =
+        { keyLenBuffer, keyBuffer, valLenBuffer, valBuffer };
+      CompressionInputStream[] filters =
+        { keyLenInFilter, keyInFilter, valLenInFilter, valInFilter };
+      for (int i = 0; i < compressed.length; i++) {
+        readAheadCompressed.reset();
+        readAheadCompressed.write(in, WritableUtils.readVInt(in));
+        compressed[i].reset(readAheadCompressed.getData(),
+            readAheadCompressed.getLength());
+        filters[i].resetState();
+        DataOutputBuffer buffer = block.buffers[i];
+        buffer.reset();
+        for (int n; (n = filters[i].read(block.chunk)) != -1;) {
+          buffer.write(block.chunk, 0, n);
+        }
+      }
+      block.end = in.getPos();
+      return block;
+    }
+
     /** 
      * Position valLenIn/valIn to the 'value' 
      * corresponding to the 'current' key 
@@ -2486,7 +2868,7 @@ public synchronized int nextRaw(DataOutputBuffer key, ValueBytes val)
         
         // Read 'key'
         if (noBufferedKeys == 0) {
-          if (in.getPos() >= end) 
+          if (getPosition() >= end) 
             return -1;
 
           try { 
@@ -2536,7 +2918,7 @@ public synchronized int nextRawKey(DataOutputBuffer key)
         
         // Read 'key'
         if (noBufferedKeys == 0) {
-          if (in.getPos() >= end) 
+          if (getPosition() >= end) 
             return -1;
 
           try { 
@@ -2666,6 +3048,7 @@ synchronized void ignoreSync() {
      * position, use {@link SequenceFile.Reader#sync(long)}.
      */
     public synchronized void seek(long position) throws IOException {
+      stopReadAhead();
       in.seek(position);
       if (blockCompressed) {                      // trigger block read
         noBufferedKeys = 0;
@@ -2675,6 +3058,7 @@ public synchronized void seek(long position) throws IOException {
 
     /** Seek to the next sync mark past a given position.*/
     public synchronized void sync(long position) throws IOException {
+      stopReadAhead();
       if (position+SYNC_SIZE >= end) {
         seek(end);
         return;
@@ -2714,7 +3098,84 @@ public synchronized void sync(long position) throws IOException {
 
     /** Return the current byte position in the input file. */
     public synchronized long getPosition() throws IOException {
-      return in.getPos();
+      // the stream is past the block being read ahead
+      return readAheadFuture != null ? blockEnd : in.getPos();
+    }
+
+    /**
+     * Returns the index of the blocks of the file, read from its end the
+     * first time, or null if it was written without one.
+     */
+    public synchronized BlockIndex getBlockIndex() throws IOException {
+      if (blockIndex == null && version >= VERSION_WITH_BLOCK_INDEX) {
+        blockIndex = readBlockIndex();
+      }
+      return blockIndex;
+    }
+
+    private BlockIndex readBlockIndex() throws IOException {
+      long length = fileLength;
+      if (length < 0) {
+        if (path == null) {
+          throw new IOException("Can not find the block index of " + this +
+                                " without the length of the file");
+        }
+        length = path.getFileSystem(conf).getFileStatus(path).getLen();
+      }
+      if (length - BLOCK_INDEX_TRAILER_SIZE < headerEnd) {
+        throw new IOException(this + " has no block index at its end");
+      }
+
+      stopReadAhead();
+      long position = in.getPos();
+      try {
+        in.seek(length - BLOCK_INDEX_TRAILER_SIZE);
+        long blocksEnd = in.readLong();
+        int entries = in.readInt();
+        byte[] check = new byte[SYNC_HASH_SIZE];
+        in.readFully(check);
+        if (!Arrays.equals(sync, check) || blocksEnd < headerEnd ||
+            entries < 0) {
+          throw new IOException(this + " has no block index at its end");
+        }
+        in.seek(blocksEnd + SYNC_SIZE);
+        if (WritableUtils.readVInt(in) != 0) {
+          throw new IOException("File is corrupt!");
+        }
+
+        long[] offsets = new long[entries];
+        int[] records = new int[entries];
+        byte[][] firstKeys = new byte[entries][];
+        for (int i = 0; i < entries; i++) {
+          offsets[i] = WritableUtils.readVLong(in);
+          records[i] = WritableUtils.readVInt(in);
+          firstKeys[i] = new byte[WritableUtils.readVInt(in)];
+          in.readFully(firstKeys[i]);
+        }
+        return new BlockIndex(offsets, records, firstKeys, blocksEnd);
+      } finally {
+        in.seek(position);
+      }
+    }
+
+    /**
+     * Position the reader of a file sorted by key at the block where the
+     * records with the key, or with the keys after it, start, found with the
+     * block index, so that they are read next without scanning the blocks
+     * before.
+     * @param key the key to look for
+     * @return true if positioned, false if the file has no block index
+     * @throws IOException
+     */
+    public synchronized boolean seekToBlock(WritableComparable<?> key)
+      throws IOException {
+      BlockIndex index = getBlockIndex();
+      if (index == null) {
+        return false;
+      }
+      int block = index.findBlock(key, WritableComparator.get(key.getClass()));
+      seek(block == -1 ? index.getEnd() : index.getOffset(block));
+      return true;
     }
 
     /** Returns the name of the file. */
@@ -22,11 +22,9 @@
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.text.CharacterIterator;
@@ -53,16 +51,6 @@
 public class Text extends BinaryComparable
     implements WritableComparable<BinaryComparable> {
   
-  private static ThreadLocal<CharsetEncoder> ENCODER_FACTORY =
-    new ThreadLocal<CharsetEncoder>() {
-      @Override
-      protected CharsetEncoder initialValue() {
-        return Charset.forName("UTF-8").newEncoder().
-               onMalformedInput(CodingErrorAction.REPORT).
-               onUnmappableCharacter(CodingErrorAction.REPORT);
-    }
-  };
-  
   private static ThreadLocal<CharsetDecoder> DECODER_FACTORY =
     new ThreadLocal<CharsetDecoder>() {
     @Override
@@ -77,6 +65,7 @@ protected CharsetDecoder initialValue() {
   
   private byte[] bytes;
   private int length;
+  private CharView charView;
 
   public Text() {
     bytes = EMPTY_BYTES;
@@ -134,11 +123,17 @@ public int getLength() {
    *          trailing byte
    */
   public int charAt(int position) {
-    if (position > this.length) return -1; // too long
+    if (position >= this.length) return -1; // too long
     if (position < 0) return -1; // duh.
-      
-    ByteBuffer bb = (ByteBuffer)ByteBuffer.wrap(bytes).position(position);
-    return bytesToCodePoint(bb.slice());
+
+    int extraBytesToRead = bytesFromUTF8[bytes[position] & 0xFF];
+    if (extraBytesToRead < 0) return -1; // trailing byte!
+    if (position + extraBytesToRead >= length) return -1; // cut short
+    int ch = 0;
+    for (int i = position; i <= position + extraBytesToRead; i++) {
+      ch = (ch << 6) + (bytes[i] & 0xFF);
+    }
+    return ch - offsetsFromUTF8[extraBytesToRead];
   }
   
   public int find(String what) {
@@ -150,57 +145,62 @@ public int find(String what) {
    * buffer, starting as position <code>start</code>. The starting
    * position is measured in bytes and the return value is in
    * terms of byte position in the buffer. The backing buffer is
-   * not converted to a string for this operation.
+   * not converted to a string for this operation, and a search
+   * string of ASCII characters is not encoded either.
    * @return byte position of the first occurence of the search
    *         string in the UTF-8 buffer or -1 if not found
    */
   public int find(String what, int start) {
-    try {
-      ByteBuffer src = ByteBuffer.wrap(this.bytes,0,this.length);
-      ByteBuffer tgt = encode(what);
-      byte b = tgt.get();
-      src.position(start);
-          
-      while (src.hasRemaining()) {
-        if (b == src.get()) { // matching first byte
-          src.mark(); // save position in loop
-          tgt.mark(); // save position in target
-          boolean found = true;
-          int pos = src.position()-1;
-          while (tgt.hasRemaining()) {
-            if (!src.hasRemaining()) { // src expired first
-              tgt.reset();
-              src.reset();
-              found = false;
-              break;
-            }
-            if (!(tgt.get() == src.get())) {
-              tgt.reset();
-              src.reset();
-              found = false;
-              break; // no match
-            }
+    if (start < 0) {
+      start = 0;
+    }
+    int whatLength = what.length();
+    boolean ascii = true;
+    for (int i = 0; i < whatLength && ascii; i++) {
+      ascii = what.charAt(i) < 0x80;
+    }
+    if (ascii) {
+      // its chars are its bytes
+      outer:
+      for (int i = start; i <= length - whatLength; i++) {
+        for (int j = 0; j < whatLength; j++) {
+          if (bytes[i + j] != (byte) what.charAt(j)) {
+            continue outer;
           }
-          if (found) return pos;
         }
+        return i;
       }
-      return -1; // not found
-    } catch (CharacterCodingException e) {
-      // can't get here
-      e.printStackTrace();
       return -1;
     }
-  }  
+    int utf8Length = encodedLength(what, 0);
+    byte[] tgt = new byte[utf8Length];
+    encode(what, 0, tgt, 0, true);
+    outer:
+    for (int i = start; i <= length - utf8Length; i++) {
+      for (int j = 0; j < utf8Length; j++) {
+        if (bytes[i + j] != tgt[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1; // not found
+  }
+
   /** Set to contain the contents of a string. 
    */
   public void set(String string) {
-    try {
-      ByteBuffer bb = encode(string, true);
-      bytes = bb.array();
-      length = bb.limit();
-    }catch(CharacterCodingException e) {
-      throw new RuntimeException("Should not have happened ", e); 
+    int len = string.length();
+    setCapacity(len, false);
+    int ascii = encodeAscii(string, bytes);
+    if (ascii < len) {
+      len = ascii + encodedLength(string, ascii);
+      if (bytes.length < len) {
+        bytes = Arrays.copyOf(bytes, len);
+      }
+      encode(string, ascii, bytes, ascii, true);
     }
+    length = len;
   }
 
   /** Set to a utf8 byte array
@@ -282,6 +282,79 @@ public String toString() {
       throw new RuntimeException("Should not have happened " , e); 
     }
   }
+
+  /**
+   * Returns a {@link CharSequence} over the characters of this text, for
+   * APIs such as regular expressions that take one, without converting it
+   * to a string. Text of ASCII characters is read from the bytes as they
+   * are; other text is decoded into a buffer that is kept for the next
+   * call. The same object is returned by every call, and it is valid until
+   * the text changes.
+   */
+  public CharSequence asCharSequence() {
+    if (charView == null) {
+      charView = new CharView();
+    }
+    charView.update();
+    return charView;
+  }
+
+  /** The characters of a text, see {@link #asCharSequence()}. */
+  private final class CharView implements CharSequence {
+    private char[] chars = new char[0];
+    private int charCount;
+    private boolean ascii;
+
+    void update() {
+      ascii = isAscii(bytes, 0, length);
+      if (ascii) {
+        charCount = length;
+        return;
+      }
+      if (chars.length < length) {
+        chars = new char[length];
+      }
+      charCount = decodeValid(bytes, 0, length, chars);
+      if (charCount < 0) {
+        String s = Text.this.toString();
+        if (chars.length < s.length()) {
+          chars = new char[s.length()];
+        }
+        charCount = s.length();
+        s.getChars(0, charCount, chars, 0);
+      }
+    }
+
+    @Override
+    public int length() {
+      return charCount;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= charCount) {
+        throw new IndexOutOfBoundsException("index " + index
+            + ", length " + charCount);
+      }
+      return ascii ? (char) bytes[index] : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || end > charCount || start > end) {
+        throw new IndexOutOfBoundsException("start " + start + ", end "
+            + end + ", length " + charCount);
+      }
+      return ascii ? asciiString(bytes, start, end - start)
+          : new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return ascii ? asciiString(bytes, 0, charCount)
+          : new String(chars, 0, charCount);
+    }
+  }
   
   /** deserialize 
    */
@@ -381,12 +454,12 @@ public int compare(byte[] b1, int s1, int l1,
    * replace by a default value.
    */
   public static String decode(byte[] utf8) throws CharacterCodingException {
-    return decode(ByteBuffer.wrap(utf8), true);
+    return decode(utf8, 0, utf8.length, true);
   }
   
   public static String decode(byte[] utf8, int start, int length) 
     throws CharacterCodingException {
-    return decode(ByteBuffer.wrap(utf8, start, length), true);
+    return decode(utf8, start, length, true);
   }
   
   /**
@@ -398,6 +471,15 @@ public static String decode(byte[] utf8, int start, int length)
    */
   public static String decode(byte[] utf8, int start, int length, boolean replace) 
     throws CharacterCodingException {
+    if (isAscii(utf8, start, length)) {
+      return asciiString(utf8, start, length);
+    }
+    char[] chars = new char[length];
+    int count = decodeValid(utf8, start, length, chars);
+    if (count >= 0) {
+      return new String(chars, 0, count);
+    }
+    // malformed, let the decoder report or replace it
     return decode(ByteBuffer.wrap(utf8, start, length), replace);
   }
   
@@ -442,18 +524,174 @@ public static ByteBuffer encode(String string)
    */
   public static ByteBuffer encode(String string, boolean replace)
     throws CharacterCodingException {
-    CharsetEncoder encoder = ENCODER_FACTORY.get();
-    if (replace) {
-      encoder.onMalformedInput(CodingErrorAction.REPLACE);
-      encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    byte[] bytes = new byte[string.length()];
+    int ascii = encodeAscii(string, bytes);
+    if (ascii < bytes.length) {
+      bytes = Arrays.copyOf(bytes, ascii + encodedLength(string, ascii));
+      if (!encode(string, ascii, bytes, ascii, replace)) {
+        throw new MalformedInputException(1);
+      }
     }
-    ByteBuffer bytes = 
-      encoder.encode(CharBuffer.wrap(string.toCharArray()));
-    if (replace) {
-      encoder.onMalformedInput(CodingErrorAction.REPORT);
-      encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Copies the chars of the string up to the first that is not ASCII into
+   * the array, which has room for all of them.
+   * @return the index of the first char that is not ASCII, or the length
+   */
+  private static int encodeAscii(String string, byte[] utf8) {
+    int n = string.length();
+    int i = 0;
+    // a loop of its own, which compiles to much faster code
+    for (; i < n; i++) {
+      char ch = string.charAt(i);
+      if (ch >= 0x80) {
+        break;
+      }
+      utf8[i] = (byte) ch;
     }
-    return bytes;
+    return i;
+  }
+
+  /**
+   * @return the number of bytes the chars of the string from the given
+   *         one on are encoded to, with each unpaired surrogate replaced
+   *         by a single '?' as the encoder does
+   */
+  private static int encodedLength(String string, int from) {
+    int n = string.length();
+    int size = n - from;
+    for (int i = from; i < n; i++) {
+      char ch = string.charAt(i);
+      if (ch < 0x80) {
+        continue;
+      } else if (ch < 0x800) {
+        size += 1;
+      } else if (!Character.isSurrogate(ch)) {
+        size += 2;
+      } else if (Character.isHighSurrogate(ch) && i + 1 < n
+          && Character.isLowSurrogate(string.charAt(i + 1))) {
+        size += 2; // 4 bytes for the 2 chars
+        i++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Encodes the chars of the string from the given one on into the array
+   * at the given offset, where there is room for their
+   * {@link #encodedLength(String, int)}.
+   * @return false if the string has an unpaired surrogate and
+   *         <code>replace</code> is false
+   */
+  private static boolean encode(String string, int from, byte[] utf8,
+      int offset, boolean replace) {
+    int n = string.length();
+    int p = offset;
+    for (int i = from; i < n; i++) {
+      char ch = string.charAt(i);
+      if (ch < 0x80) {
+        utf8[p++] = (byte) ch;
+      } else if (ch < 0x800) {
+        utf8[p++] = (byte) (0xC0 | (ch >> 6));
+        utf8[p++] = (byte) (0x80 | (ch & 0x3F));
+      } else if (!Character.isSurrogate(ch)) {
+        utf8[p++] = (byte) (0xE0 | (ch >> 12));
+        utf8[p++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+        utf8[p++] = (byte) (0x80 | (ch & 0x3F));
+      } else if (Character.isHighSurrogate(ch) && i + 1 < n
+          && Character.isLowSurrogate(string.charAt(i + 1))) {
+        int cp = Character.toCodePoint(ch, string.charAt(++i));
+        utf8[p++] = (byte) (0xF0 | (cp >> 18));
+        utf8[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        utf8[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        utf8[p++] = (byte) (0x80 | (cp & 0x3F));
+      } else if (replace) {
+        utf8[p++] = (byte) '?';
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAscii(byte[] utf8, int start, int length) {
+    for (int i = start; i < start + length; i++) {
+      if (utf8[i] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static String asciiString(byte[] ascii, int start, int length) {
+    // copies the bytes as chars, with no decoder
+    return new String(ascii, 0, start, length);
+  }
+
+  /**
+   * Decodes valid UTF-8 into the array, which has room for as many chars
+   * as there are bytes, as the decoder would.
+   * @return the number of chars, or -1 if the input is malformed
+   */
+  private static int decodeValid(byte[] utf8, int start, int length,
+      char[] chars) {
+    int end = start + length;
+    int n = 0;
+    int p = start;
+    while (p < end) {
+      int b = utf8[p];
+      if (b >= 0) {
+        chars[n++] = (char) b;
+        p++;
+        continue;
+      }
+      b &= 0xFF;
+      if (b < 0xC2) {
+        return -1; // a trail byte, or overlong
+      } else if (b < 0xE0) {
+        if (p + 1 >= end || !isTrail(utf8[p + 1])) {
+          return -1;
+        }
+        chars[n++] = (char) (((b & 0x1F) << 6) | (utf8[p + 1] & 0x3F));
+        p += 2;
+      } else if (b < 0xF0) {
+        if (p + 2 >= end || !isTrail(utf8[p + 1]) || !isTrail(utf8[p + 2])) {
+          return -1;
+        }
+        int b1 = utf8[p + 1] & 0xFF;
+        if ((b == 0xE0 && b1 < 0xA0) || (b == 0xED && b1 > 0x9F)) {
+          return -1; // overlong, or a surrogate
+        }
+        chars[n++] = (char) (((b & 0x0F) << 12) | ((b1 & 0x3F) << 6)
+            | (utf8[p + 2] & 0x3F));
+        p += 3;
+      } else if (b <= 0xF4) {
+        if (p + 3 >= end || !isTrail(utf8[p + 1]) || !isTrail(utf8[p + 2])
+            || !isTrail(utf8[p + 3])) {
+          return -1;
+        }
+        int b1 = utf8[p + 1] & 0xFF;
+        if ((b == 0xF0 && b1 < 0x90) || (b == 0xF4 && b1 > 0x8F)) {
+          return -1; // overlong, or past U+10FFFF
+        }
+        int cp = ((b & 0x07) << 18) | ((b1 & 0x3F) << 12)
+            | ((utf8[p + 2] & 0x3F) << 6) | (utf8[p + 3] & 0x3F);
+        chars[n++] = Character.highSurrogate(cp);
+        chars[n++] = Character.lowSurrogate(cp);
+        p += 4;
+      } else {
+        return -1;
+      }
+    }
+    return n;
+  }
+
+  private static boolean isTrail(byte b) {
+    return (b & 0xC0) == 0x80;
   }
 
   static final public int DEFAULT_MAX_LEN = 1024 * 1024;
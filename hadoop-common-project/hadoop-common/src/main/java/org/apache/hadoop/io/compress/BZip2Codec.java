@@ -22,6 +22,8 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.io.Charsets;
 import org.apache.hadoop.conf.Configurable;
@@ -29,12 +31,15 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.compress.bzip2.BZip2Constants;
 import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
 import org.apache.hadoop.io.compress.bzip2.Bzip2Factory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * This class provides output and input streams for bzip2 compression
  * and decompression.  It uses the native bzip2 library on the system
@@ -52,6 +57,10 @@
  * pure-Java mode; therefore, if a SplitCompressionInputStream is
  * requested, the pure-Java implementation is used, regardless of the
  * setting of the configuration parameter mentioned above.
+ *
+ * With io.compression.codec.bzip2.threads above 1, the pure-Java streams
+ * compress that many blocks at once, and decode that many blocks ahead of
+ * the reader, each stream on its own threads.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
@@ -118,6 +127,10 @@ public CompressionOutputStream createOutputStream(OutputStream out)
   @Override
   public CompressionOutputStream createOutputStream(OutputStream out,
       Compressor compressor) throws IOException {
+    int threads = getThreads(conf);
+    if (threads > 1) {
+      return new BZip2CompressionOutputStream(out, threads);
+    }
     return Bzip2Factory.isNativeBzip2Loaded(conf) ?
       new CompressorStream(out, compressor, 
                            conf.getInt("io.file.buffer.size", 4*1024)) :
@@ -172,6 +185,10 @@ public CompressionInputStream createInputStream(InputStream in)
   @Override
   public CompressionInputStream createInputStream(InputStream in,
       Decompressor decompressor) throws IOException {
+    int threads = getThreads(conf);
+    if (threads > 1) {
+      return new BZip2CompressionInputStream(in, threads);
+    }
     return Bzip2Factory.isNativeBzip2Loaded(conf) ? 
       new DecompressorStream(in, decompressor,
                              conf.getInt("io.file.buffer.size", 4*1024)) :
@@ -268,18 +285,38 @@ public String getDefaultExtension() {
     return ".bz2";
   }
 
+  private static int getThreads(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_THREADS_DEFAULT);
+  }
+
+  private static ExecutorService createExecutor(int threads, String name) {
+    return Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat(name + " #%d").build());
+  }
+
   private static class BZip2CompressionOutputStream extends
       CompressionOutputStream {
 
     // class data starts here//
     private CBZip2OutputStream output;
     private boolean needsReset; 
+    private final int threads;
+    private ExecutorService executor;
+    private boolean readingAhead;
     // class data ends here//
 
     public BZip2CompressionOutputStream(OutputStream out)
         throws IOException {
+      this(out, 1);
+    }
+
+    BZip2CompressionOutputStream(OutputStream out, int threads) {
       super(out);
       needsReset = true;
+      this.threads = threads;
     }
 
     private void writeStreamHeader() throws IOException {
@@ -306,7 +343,15 @@ private void internalReset() throws IOException {
       if (needsReset) {
         needsReset = false;
         writeStreamHeader();
-        this.output = new CBZip2OutputStream(out);
+        if (threads > 1) {
+          if (executor == null) {
+            executor = createExecutor(threads, "BZip2Codec compressor");
+          }
+          this.output = new CBZip2OutputStream(out,
+              CBZip2OutputStream.MAX_BLOCKSIZE, executor, threads);
+        } else {
+          this.output = new CBZip2OutputStream(out);
+        }
       }
     }    
     
@@ -337,9 +382,16 @@ public void close() throws IOException {
         // recognized by BZip2CompressionInputStream.
         internalReset();
       }
-      this.output.flush();
-      this.output.close();
-      needsReset = true;
+      try {
+        this.output.flush();
+        this.output.close();
+      } finally {
+        needsReset = true;
+        if (executor != null) {
+          executor.shutdown();
+          executor = null;
+        }
+      }
     }
 
   }// end of class BZip2CompressionOutputStream
@@ -370,6 +422,9 @@ private static class BZip2CompressionInputStream extends
     private boolean isSubHeaderStripped = false;
     private READ_MODE readMode = READ_MODE.CONTINUOUS;
     private long startingPos = 0L;
+    private final int threads;
+    private ExecutorService executor;
+    private boolean readingAhead;
 
     // Following state machine handles different states of compressed stream
     // position
@@ -389,18 +444,29 @@ public BZip2CompressionInputStream(InputStream in) throws IOException {
       this(in, 0L, Long.MAX_VALUE, READ_MODE.CONTINUOUS);
     }
 
+    BZip2CompressionInputStream(InputStream in, int threads)
+        throws IOException {
+      this(in, 0L, Long.MAX_VALUE, READ_MODE.CONTINUOUS, threads);
+    }
+
     public BZip2CompressionInputStream(InputStream in, long start, long end,
         READ_MODE readMode) throws IOException {
+      this(in, start, end, readMode, 1);
+    }
+
+    private BZip2CompressionInputStream(InputStream in, long start, long end,
+        READ_MODE readMode, int threads) throws IOException {
       super(in, start, end);
       needsReset = false;
       bufferedIn = new BufferedInputStream(super.in);
       this.startingPos = super.getPos();
       this.readMode = readMode;
+      this.threads = threads;
       if (this.startingPos == 0) {
         // We only strip header if it is start of file
         bufferedIn = readStreamHeader();
       }
-      input = new CBZip2InputStream(bufferedIn, readMode);
+      input = createInput(bufferedIn);
       if (this.isHeaderStripped) {
         input.updateReportedByteCount(HEADER_LEN);
       }
@@ -447,10 +513,33 @@ private BufferedInputStream readStreamHeader() throws IOException {
 
     }// end of method
 
+    /**
+     * Decodes the blocks ahead of the reader if reading continuously with
+     * more than one thread.
+     */
+    private CBZip2InputStream createInput(BufferedInputStream in)
+        throws IOException {
+      if (threads > 1 && readMode == READ_MODE.CONTINUOUS) {
+        if (executor == null) {
+          executor = createExecutor(threads, "BZip2Codec read-ahead");
+        }
+        readingAhead = true;
+        return new CBZip2InputStream(in, executor, threads);
+      }
+      return new CBZip2InputStream(in, readMode);
+    }
+
     public void close() throws IOException {
       if (!needsReset) {
-        input.close();
-        needsReset = true;
+        try {
+          input.close();
+        } finally {
+          needsReset = true;
+          if (executor != null) {
+            executor.shutdown();
+            executor = null;
+          }
+        }
       }
     }
 
@@ -489,6 +578,10 @@ public int read(byte[] b, int off, int len) throws IOException {
 
       int result = 0;
       result = this.input.read(b, off, len);
+      if (readingAhead) {
+        // the end of blocks decoded ahead is not announced
+        this.updatePos(false);
+      }
       if (result == BZip2Constants.END_OF_BLOCK) {
         this.posSM = POS_ADVERTISEMENT_STATE_MACHINE.ADVERTISE;
       }
@@ -515,7 +608,7 @@ private void internalReset() throws IOException {
       if (needsReset) {
         needsReset = false;
         BufferedInputStream bufferedIn = readStreamHeader();
-        input = new CBZip2InputStream(bufferedIn, this.readMode);
+        input = createInput(bufferedIn);
       }
     }    
     
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.io.compress;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.Set;
@@ -28,6 +29,8 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.util.ReflectionUtils;
 
 import com.google.common.cache.CacheBuilder;
@@ -57,6 +60,14 @@ public class CodecPool {
   private static final Map<Class<Decompressor>, Set<Decompressor>> decompressorPool =
     new HashMap<Class<Decompressor>, Set<Decompressor>>();
 
+  /**
+   * A global pool of the direct buffers given to {@link DirectCompressor}s
+   * and {@link DirectDecompressor}s, which are as expensive to allocate as
+   * the buffers of the native codecs themselves.
+   */
+  private static final ByteBufferPool directBufferPool =
+      new ElasticByteBufferPool();
+
   private static <T> LoadingCache<Class<T>, AtomicInteger> createCache(
       Class<T> klass) {
     return CacheBuilder.newBuilder().build(
@@ -227,6 +238,34 @@ public static void returnDecompressor(Decompressor decompressor) {
     }
   }
 
+  /**
+   * Get a direct {@link ByteBuffer} from the pool or a new one, for the
+   * source or destination of a {@link DirectCompressor} or
+   * {@link DirectDecompressor}. Its capacity may be larger than asked for.
+   *
+   * @param length the number of bytes needed
+   * @return a direct buffer with position 0 and limit <code>length</code>
+   */
+  public static ByteBuffer getDirectBuffer(int length) {
+    ByteBuffer buffer = directBufferPool.getBuffer(true, length);
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Return a buffer got from {@link #getDirectBuffer(int)} to the pool.
+   * It must not be used afterwards.
+   *
+   * @param buffer the buffer to be returned to the pool
+   */
+  public static void returnDirectBuffer(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    directBufferPool.putBuffer(buffer);
+  }
+
   /**
    * Return the number of leased {@link Compressor}s for this
    * {@link CompressionCodec}
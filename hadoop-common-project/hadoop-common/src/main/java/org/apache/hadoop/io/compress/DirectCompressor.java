@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Specification of a direct ByteBuffer 'compressor'. Each call compresses
+ * all the remaining bytes of the source into one raw block of the codec
+ * format, the same as a single block written by the stream compressor
+ * without its length headers.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectCompressor {
+  /**
+   * Compress the remaining bytes of <code>src</code> into
+   * <code>dst</code>, advancing the positions of both.
+   *
+   * @param src the direct buffer to compress
+   * @param dst the direct buffer to write to, with at least
+   *            {@link #maxCompressedLength(int)} bytes remaining
+   * @throws IOException if <code>dst</code> is too small
+   */
+  public void compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+
+  /**
+   * @param uncompressedLength the number of bytes to compress
+   * @return the largest size they can compress to
+   */
+  public int maxCompressedLength(int uncompressedLength);
+}
@@ -25,14 +25,17 @@
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.lz4.Lz4Compressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Compressor.Lz4DirectCompressor;
 import org.apache.hadoop.io.compress.lz4.Lz4Decompressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Decompressor.Lz4DirectDecompressor;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
  * This class creates lz4 compressors/decompressors.
  */
-public class Lz4Codec implements Configurable, CompressionCodec {
+public class Lz4Codec implements Configurable, CompressionCodec,
+    DirectCompressionCodec, DirectDecompressionCodec {
 
   static {
     NativeCodeLoader.isNativeCodeLoaded();
@@ -214,6 +217,28 @@ public Decompressor createDecompressor() {
     return new Lz4Decompressor(bufferSize);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    if (!isNativeCodeLoaded()) {
+      return null;
+    }
+    boolean useLz4HC = conf.getBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT);
+    return new Lz4DirectCompressor(useLz4HC);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    return isNativeCodeLoaded() ? new Lz4DirectDecompressor() : null;
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.zstd.BuiltInZStandardCompressor;
+import org.apache.hadoop.io.compress.zstd.BuiltInZStandardDecompressor;
+import org.apache.hadoop.io.compress.zstd.ZStandardCompressor;
+import org.apache.hadoop.io.compress.zstd.ZStandardDecompressor;
+
+/**
+ * This class creates zstd compressors/decompressors. They are those of the
+ * native zstd library when libhadoop was built with it, and the Java ones
+ * that write and read the same format otherwise. The level, and a
+ * dictionary both sides must use, are set in the configuration.
+ */
+public class ZStandardCodec implements Configurable, CompressionCodec {
+  /** The buffer size of the Java compressor and decompressor by default. */
+  private static final int BUILT_IN_BUFFER_SIZE = 64 * 1024;
+
+  private Configuration conf;
+
+  private String dictionaryPath;
+  private byte[] dictionary;
+
+  /**
+   * Set the configuration to be used by this object.
+   *
+   * @param conf the configuration object.
+   */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  /**
+   * Return the configuration used by this object.
+   *
+   * @return the configuration object used by this object.
+   */
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Are the native zstd libraries loaded & initialized?
+   */
+  public static boolean isNativeCodeLoaded() {
+    return ZStandardCompressor.isNativeCodeLoaded() &&
+        ZStandardDecompressor.isNativeCodeLoaded();
+  }
+
+  public static String getLibraryName() {
+    return ZStandardCompressor.getLibraryName();
+  }
+
+  public static int getCompressionLevel(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_LEVEL_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_LEVEL_DEFAULT);
+  }
+
+  private static int getCompressionBufferSize(Configuration conf) {
+    int size = getBufferSize(conf);
+    return size != 0 ? size : isNativeCodeLoaded()
+        ? ZStandardCompressor.getRecommendedBufferSize()
+        : BUILT_IN_BUFFER_SIZE;
+  }
+
+  private static int getDecompressionBufferSize(Configuration conf) {
+    int size = getBufferSize(conf);
+    return size != 0 ? size : isNativeCodeLoaded()
+        ? ZStandardDecompressor.getRecommendedBufferSize()
+        : BUILT_IN_BUFFER_SIZE;
+  }
+
+  private static int getBufferSize(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_BUFFER_SIZE_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_BUFFER_SIZE_DEFAULT);
+  }
+
+  /**
+   * @return the dictionary of the configuration, read once for each path,
+   *         or an empty one
+   */
+  private synchronized byte[] getDictionary() throws IOException {
+    String path = conf.getTrimmed(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_DICTIONARY_KEY, "");
+    if (!path.equals(dictionaryPath)) {
+      byte[] b = new byte[0];
+      if (!path.isEmpty()) {
+        Path p = new Path(path);
+        FileSystem fs = p.getFileSystem(conf);
+        long length = fs.getFileStatus(p).getLen();
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException("zstd dictionary " + p + " is too large");
+        }
+        b = new byte[(int) length];
+        FSDataInputStream in = fs.open(p);
+        try {
+          IOUtils.readFully(in, b, 0, b.length);
+        } finally {
+          in.close();
+        }
+      }
+      dictionary = b;
+      dictionaryPath = path;
+    }
+    return dictionary;
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream}.
+   *
+   * @param out the location for the final output stream
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out)
+      throws IOException {
+    return CompressionCodec.Util.
+        createOutputStreamWithCodecPool(this, conf, out);
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream} with the given {@link Compressor}.
+   *
+   * @param out        the location for the final output stream
+   * @param compressor compressor to use
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out,
+                                                    Compressor compressor)
+      throws IOException {
+    byte[] dict = getDictionary();
+    compressor.setDictionary(dict, 0, dict.length);
+    return new CompressorStream(out, compressor,
+        getCompressionBufferSize(conf));
+  }
+
+  /**
+   * Get the type of {@link Compressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of compressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return isNativeCodeLoaded() ? ZStandardCompressor.class
+        : BuiltInZStandardCompressor.class;
+  }
+
+  /**
+   * Create a new {@link Compressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new compressor for use by this codec
+   */
+  @Override
+  public Compressor createCompressor() {
+    int level = getCompressionLevel(conf);
+    return isNativeCodeLoaded()
+        ? new ZStandardCompressor(level, getCompressionBufferSize(conf))
+        : new BuiltInZStandardCompressor(level);
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * input stream.
+   *
+   * @param in the stream to read compressed bytes from
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in)
+      throws IOException {
+    return CompressionCodec.Util.
+        createInputStreamWithCodecPool(this, conf, in);
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * {@link InputStream} with the given {@link Decompressor}.
+   *
+   * @param in           the stream to read compressed bytes from
+   * @param decompressor decompressor to use
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in,
+                                                  Decompressor decompressor)
+      throws IOException {
+    byte[] dict = getDictionary();
+    decompressor.setDictionary(dict, 0, dict.length);
+    return new DecompressorStream(in, decompressor,
+        getDecompressionBufferSize(conf));
+  }
+
+  /**
+   * Get the type of {@link Decompressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of decompressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return isNativeCodeLoaded() ? ZStandardDecompressor.class
+        : BuiltInZStandardDecompressor.class;
+  }
+
+  /**
+   * Create a new {@link Decompressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new decompressor for use by this codec
+   */
+  @Override
+  public Decompressor createDecompressor() {
+    return isNativeCodeLoaded()
+        ? new ZStandardDecompressor(getDecompressionBufferSize(conf))
+        : new BuiltInZStandardDecompressor();
+  }
+
+  /**
+   * Get the default filename extension for this kind of compression.
+   *
+   * @return <code>.zst</code>.
+   */
+  @Override
+  public String getDefaultExtension() {
+    return ".zst";
+  }
+}
@@ -26,6 +26,7 @@
 import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.hadoop.io.compress.SplittableCompressionCodec.READ_MODE;
 
@@ -70,6 +71,11 @@
  * </p>
  *
  * <p>
+ * In CONTINUOUS mode, the blocks can also be decoded ahead of the reader in
+ * parallel, see {@link #CBZip2InputStream(InputStream, ExecutorService, int)}.
+ * </p>
+ *
+ * <p>
  * Instances of this class are not threadsafe.
  * </p>
  */
@@ -148,12 +154,22 @@ public enum STATE {
   */
   private CBZip2InputStream.Data data;
 
+  /**
+  * Decodes the blocks ahead of the reader, if not null.
+  */
+  private ReadAheadDecoder readAhead;
+
   /**
   * This method reports the processed bytes so far. Please note that this
   * statistic is only updated on block boundaries and only when the stream is
   * initiated in BYBLOCK mode.
   */
   public long getProcessedByteCount() {
+    if (readAhead != null) {
+      // blocks decoded ahead count once read off
+      return reportedBytesReadFromCompressedStream
+          + readAhead.getProcessedByteCount();
+    }
     return reportedBytesReadFromCompressedStream;
   }
 
@@ -330,6 +346,86 @@ public CBZip2InputStream(final InputStream in) throws IOException {
     this(in, READ_MODE.CONTINUOUS);
   }
 
+  /**
+  * Constructs a new CBZip2InputStream which decompresses bytes read from the
+  * specified stream in CONTINUOUS mode, decoding up to
+  * <tt>parallelism</tt> blocks ahead of the reader at once on the given
+  * executor. As the blocks are found by their delimiter, the compressed
+  * data of those being decoded is held in memory.
+  *
+  * <p>
+  * As for {@link #CBZip2InputStream(InputStream, READ_MODE)}, callers have
+  * to skip the magic <tt>"BZ"</tt>. The stream is read from on the first
+  * read.
+  * </p>
+  *
+  * @throws NullPointerException
+  *             if <tt>in == null</tt> or <tt>executor == null</tt>
+  * @throws IllegalArgumentException
+  *             if <tt>parallelism < 1</tt>
+  */
+  public CBZip2InputStream(final InputStream in,
+      final ExecutorService executor, final int parallelism) {
+    super();
+    if (in == null || executor == null) {
+      throw new NullPointerException();
+    }
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism(" + parallelism
+          + ") < 1");
+    }
+    this.in = new BufferedInputStream(in, 1024 * 9);
+    this.readAhead = new ReadAheadDecoder(this.in, executor, parallelism);
+  }
+
+  /**
+  * Constructs a stream that decodes the single block whose header, after
+  * its block delimiter, starts at the first bit of the specified stream.
+  * The block is read with {@link #readBlock(byte[], int, int)}.
+  */
+  CBZip2InputStream(final InputStream in, final int blockSize100k)
+      throws IOException {
+    super();
+    this.in = new BufferedInputStream(in, 1024 * 9);
+    this.blockSize100k = blockSize100k;
+    this.readMode = READ_MODE.BYBLOCK;
+    initBlock();
+    setupBlock();
+  }
+
+  /**
+  * Reads the block of a stream constructed for a single block.
+  *
+  * @return the number of bytes read, or -1 at the end of the block, whose
+  *         CRC was then checked.
+  */
+  int readBlock(final byte[] dest, final int offs, final int len)
+      throws IOException {
+    int destOffs = offs;
+    for (final int hi = offs + len; destOffs < hi;) {
+      final int b = read0();
+      if (b < 0) {
+        break;
+      }
+      dest[destOffs++] = (byte) b;
+    }
+    return destOffs > offs ? destOffs - offs : -1;
+  }
+
+  /**
+  * @return the number of bits of the compressed stream decoded so far.
+  */
+  long getBitsRead() {
+    return this.bytesReadFromCompressedStream * 8 - this.bsLive;
+  }
+
+  /**
+  * @return the CRC of the last block, as stored in the stream.
+  */
+  int getStoredBlockCRC() {
+    return this.storedBlockCRC;
+  }
+
   private void changeStateToProcessABlock() throws IOException {
     if (skipResult == true) {
       initBlock();
@@ -392,6 +488,10 @@ public int read(final byte[] dest, final int offs, final int len)
       throw new IOException("stream closed");
     }
 
+    if (readAhead != null) {
+      return readAhead.read(dest, offs, len);
+    }
+
     if(lazyInitialization){
       this.init();
       this.lazyInitialization = false;
@@ -589,6 +689,9 @@ public void close() throws IOException {
       } finally {
         this.data = null;
         this.in = null;
+        if (this.readAhead != null) {
+          this.readAhead.close();
+        }
       }
     }
   }
@@ -26,9 +26,18 @@
 
 import java.io.OutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 /**
  * An output stream that compresses into the BZip2 format (without the file
  * header chars) into another stream.
@@ -127,6 +136,12 @@
  * </p>
  *
  * <p>
+ * The blocks can be compressed in parallel on an executor, see
+ * {@link #CBZip2OutputStream(OutputStream, int, ExecutorService, int)}.
+ * Each block being compressed then takes the memory of one more stream.
+ * </p>
+ *
+ * <p>
  * Instances of this class are not threadsafe.
  * </p>
  *
@@ -558,6 +573,21 @@ private static void hbMakeCodeLengths(final byte[] len, final int[] freq,
 
   private OutputStream out;
 
+  /**
+  * Compresses the blocks if not null, at most maxPendingBlocks at once.
+  * They are written in order as they complete.
+  */
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final ArrayDeque<Future<CBZip2OutputStream>> pendingBlocks;
+  private final ArrayDeque<CBZip2OutputStream> idleEncoders;
+
+  /**
+  * The compressed block of an encoder of the blocks of another stream,
+  * to the last full byte. The rest is in bsBuff.
+  */
+  private final DataOutputBuffer blockBuffer;
+
   /**
   * Chooses a blocksize based on the given length of the data to compress.
   *
@@ -623,6 +653,42 @@ public CBZip2OutputStream(final OutputStream out) throws IOException {
   */
   public CBZip2OutputStream(final OutputStream out, final int blockSize)
       throws IOException {
+    this(out, blockSize, null, 1);
+  }
+
+  /**
+  * Constructs a new <tt>CBZip2OutputStream</tt> with specified blocksize,
+  * that compresses up to <tt>parallelism</tt> blocks at once on the given
+  * executor. The output is the same as that of a stream compressing on
+  * the caller's thread.
+  *
+  * <p>
+  * <b>Attention: </b>The caller is resonsible to write the two BZip2 magic
+  * bytes <tt>"BZ"</tt> to the specified stream prior to calling this
+  * constructor.
+  * </p>
+  *
+  * @param out
+  *            the destination stream.
+  * @param blockSize
+  *            the blockSize as 100k units.
+  * @param executor
+  *            the executor to compress the blocks on, or <tt>null</tt>
+  *            to compress them on the caller's thread.
+  * @param parallelism
+  *            the number of blocks to compress at once.
+  *
+  * @throws IOException
+  *             if an I/O error occurs in the specified stream.
+  * @throws IllegalArgumentException
+  *             if <code>(blockSize < 1) || (blockSize > 9)</code> or
+  *             <code>parallelism < 1</code>.
+  * @throws NullPointerException
+  *             if <code>out == null</code>.
+  */
+  public CBZip2OutputStream(final OutputStream out, final int blockSize,
+      final ExecutorService executor, final int parallelism)
+      throws IOException {
     super();
 
     if (blockSize < 1) {
@@ -633,12 +699,41 @@ public CBZip2OutputStream(final OutputStream out, final int blockSize)
       throw new IllegalArgumentException("blockSize(" + blockSize
           + ") > 9");
     }
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism(" + parallelism
+          + ") < 1");
+    }
 
     this.blockSize100k = blockSize;
     this.out = out;
+    this.executor = executor;
+    this.maxPendingBlocks = parallelism;
+    if (executor != null) {
+      this.pendingBlocks = new ArrayDeque<Future<CBZip2OutputStream>>();
+      this.idleEncoders = new ArrayDeque<CBZip2OutputStream>();
+    } else {
+      this.pendingBlocks = null;
+      this.idleEncoders = null;
+    }
+    this.blockBuffer = null;
     init();
   }
 
+  /**
+  * Constructs an encoder of the blocks of a stream compressing in
+  * parallel.
+  */
+  private CBZip2OutputStream(final int blockSize100k) {
+    super();
+    this.blockSize100k = blockSize100k;
+    this.executor = null;
+    this.maxPendingBlocks = 1;
+    this.pendingBlocks = null;
+    this.idleEncoders = null;
+    this.blockBuffer = new DataOutputBuffer();
+    this.data = new Data(blockSize100k);
+  }
+
   @Override
   public void write(final int b) throws IOException {
     if (this.out != null) {
@@ -720,10 +815,19 @@ public void finish() throws IOException {
         }
         this.currentChar = -1;
         endBlock();
+        if (this.pendingBlocks != null) {
+          while (!this.pendingBlocks.isEmpty()) {
+            writeEncodedBlock(this.pendingBlocks.poll());
+          }
+        }
         endCompression();
       } finally {
         this.out = null;
         this.data = null;
+        if (this.pendingBlocks != null) {
+          this.pendingBlocks.clear();
+          this.idleEncoders.clear();
+        }
       }
     }
   }
@@ -793,6 +897,94 @@ private void endBlock() throws IOException {
       return;
     }
 
+    if (this.executor != null) {
+      submitBlock();
+    } else {
+      writeBlock();
+    }
+  }
+
+  /**
+  * Hands the block over to an idle encoder to compress on the executor,
+  * and takes the memory of the encoder for the next block. This first
+  * writes the blocks compressed so far, and waits for the oldest one if
+  * as many as allowed are pending.
+  */
+  private void submitBlock() throws IOException {
+    while (!this.pendingBlocks.isEmpty()
+        && (this.pendingBlocks.size() >= this.maxPendingBlocks
+            || this.pendingBlocks.peek().isDone())) {
+      writeEncodedBlock(this.pendingBlocks.poll());
+    }
+
+    CBZip2OutputStream encoder = this.idleEncoders.poll();
+    if (encoder == null) {
+      encoder = new CBZip2OutputStream(this.blockSize100k);
+    }
+    final Data full = this.data;
+    this.data = encoder.data;
+    encoder.data = full;
+    encoder.last = this.last;
+    encoder.blockCRC = this.blockCRC;
+
+    final CBZip2OutputStream blockEncoder = encoder;
+    this.pendingBlocks.add(this.executor.submit(
+        new Callable<CBZip2OutputStream>() {
+          @Override
+          public CBZip2OutputStream call() throws IOException {
+            return blockEncoder.encodeBlock();
+          }
+        }));
+  }
+
+  /**
+  * Compresses the block handed over to this encoder into its buffer.
+  */
+  private CBZip2OutputStream encodeBlock() throws IOException {
+    this.blockBuffer.reset();
+    this.bsBuff = 0;
+    this.bsLive = 0;
+    this.out = this.blockBuffer;
+    try {
+      writeBlock();
+    } finally {
+      this.out = null;
+    }
+    return this;
+  }
+
+  /**
+  * Waits for a block compressed by an encoder, and appends its bits to the
+  * stream.
+  */
+  private void writeEncodedBlock(final Future<CBZip2OutputStream> block)
+      throws IOException {
+    final CBZip2OutputStream encoder;
+    try {
+      encoder = Uninterruptibles.getUninterruptibly(block);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+
+    final byte[] buf = encoder.blockBuffer.getData();
+    for (int i = 0, n = encoder.blockBuffer.getLength(); i < n; i++) {
+      bsW(8, buf[i] & 0xff);
+    }
+    int bsBuffShadow = encoder.bsBuff;
+    int bsLiveShadow = encoder.bsLive;
+    while (bsLiveShadow >= 8) {
+      bsW(8, bsBuffShadow >>> 24);
+      bsBuffShadow <<= 8;
+      bsLiveShadow -= 8;
+    }
+    if (bsLiveShadow > 0) {
+      bsW(bsLiveShadow, bsBuffShadow >>> (32 - bsLiveShadow));
+    }
+    this.idleEncoders.add(encoder);
+  }
+
+  private void writeBlock() throws IOException {
     /* sort the block and establish posn of original string */
     blockSort();
 
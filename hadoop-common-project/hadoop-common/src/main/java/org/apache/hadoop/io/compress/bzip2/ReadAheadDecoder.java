@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Decodes the blocks of a bzip2 stream ahead of its reader, in parallel.
+ * Blocks have no length, so they are found by scanning the compressed data
+ * for their 48 bit delimiter, which may also occur by chance inside a
+ * block. The reader only takes a block that starts where the one before
+ * ended; if the data it was decoded from was cut short at such a false
+ * delimiter, the reader decodes it again from all the data after it.
+ * Streams concatenated after the first, as written by pbzip2, are decoded
+ * in turn.
+ */
+final class ReadAheadDecoder {
+  private static final int DELIMITER_BIT_LENGTH = 48;
+  private static final long DELIMITER_MASK =
+      (1L << DELIMITER_BIT_LENGTH) - 1;
+
+  /** The number of bytes read from the stream at once. */
+  private static final int READ_SIZE = 64 * 1024;
+
+  /** A block or end of stream delimiter found in the data. */
+  private static final class Delimiter {
+    /** The bit of the stream the delimiter starts at. */
+    final long pos;
+    final boolean eos;
+    /** The block after a block delimiter, once it is being decoded. */
+    Future<Block> block;
+
+    Delimiter(long pos, boolean eos) {
+      this.pos = pos;
+      this.eos = eos;
+    }
+  }
+
+  /** A decoded block, whose CRC was checked. */
+  private static final class Block {
+    byte[] data;
+    int length;
+    int crc;
+    /** The bit of the stream after the block. */
+    long end;
+  }
+
+  private final InputStream in;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private int blockSize100k;
+
+  /** The compressed data, from byte bufStart of the stream on. */
+  private byte[] buf = new byte[READ_SIZE];
+  private int bufLen;
+  private long bufStart;
+  private boolean eof;
+
+  /** The next byte of the stream to scan, and the last bits scanned. */
+  private long scanPos;
+  private long scanBits;
+
+  /** The delimiters found from the expected one on. */
+  private final ArrayDeque<Delimiter> delimiters = new ArrayDeque<Delimiter>();
+  /** The last delimiter found, whose block is not decoded yet. */
+  private Delimiter lastFound;
+  private int blocksInFlight;
+
+  /** The bit of the stream the next delimiter should start at. */
+  private long expected;
+  private int computedCombinedCRC;
+  private boolean started;
+  private boolean done;
+
+  /** The ends of delimiters to be found where there are none, sorted. */
+  private long[] falseDelimiters;
+
+  private Block current;
+  private int currentPos;
+  /** The bytes of the stream up to the end of the last block read. */
+  private long processed;
+
+  ReadAheadDecoder(InputStream in, ExecutorService executor,
+      int parallelism) {
+    this.in = in;
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  int read(final byte[] dest, final int offs, final int len)
+      throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (current == null || currentPos == current.length) {
+      if (!started) {
+        start();
+      }
+      if (done) {
+        return BZip2Constants.END_OF_STREAM;
+      }
+      current = nextBlock();
+      currentPos = 0;
+    }
+    final int n = Math.min(len, current.length - currentPos);
+    System.arraycopy(current.data, currentPos, dest, offs, n);
+    currentPos += n;
+    if (currentPos == current.length) {
+      processed = (current.end + 7) >>> 3;
+    }
+    return n;
+  }
+
+  /**
+   * Find block delimiters that end at the given bits of the stream as well,
+   * as if they occurred there by chance inside blocks.
+   */
+  @VisibleForTesting
+  void setFalseDelimiters(long... ends) {
+    falseDelimiters = ends.clone();
+    Arrays.sort(falseDelimiters);
+  }
+
+  /**
+   * @return the number of bytes of the compressed stream up to the end of
+   *         the last block read off.
+   */
+  long getProcessedByteCount() {
+    return processed;
+  }
+
+  void close() {
+    for (Delimiter d : delimiters) {
+      if (d.block != null) {
+        d.block.cancel(false);
+      }
+    }
+    delimiters.clear();
+    lastFound = null;
+    current = null;
+    buf = null;
+    done = true;
+  }
+
+  private void start() throws IOException {
+    started = true;
+    fillTo(16);
+    if (bufLen < 2 || buf[0] != 'h') {
+      throw new IOException("Stream is not BZip2 formatted: expected 'h'"
+          + " as first byte but got '"
+          + (bufLen > 0 ? (char) buf[0] : "EOF") + "'");
+    }
+    startStream(0);
+  }
+
+  /**
+   * Starts on the stream whose 'h' and block size are at the given byte,
+   * which is in the data read.
+   */
+  private void startStream(long pos) throws IOException {
+    final int blockSize = buf[(int) (pos + 1 - bufStart)];
+    if ((blockSize < '1') || (blockSize > '9')) {
+      throw new IOException("Stream is not BZip2 formatted: illegal "
+          + "blocksize " + (char) blockSize);
+    }
+    blockSize100k = blockSize - '0';
+    expected = (pos + 2) * 8;
+    scanPos = pos + 2;
+    scanBits = 0;
+    computedCombinedCRC = 0;
+  }
+
+  /**
+   * Starts on the stream concatenated after the one that ends at the given
+   * bit, if there is one. Anything else after it is an error.
+   *
+   * @return false at the end of the data.
+   */
+  private boolean nextStream(long end) throws IOException {
+    final long next = (end + 7) >>> 3;
+    fillTo((next + 4) * 8);
+    final long available = bufStart + bufLen - next;
+    if (available <= 0) {
+      return false;
+    }
+    final int i = (int) (next - bufStart);
+    if (available < 4 || buf[i] != 'B' || buf[i + 1] != 'Z'
+        || buf[i + 2] != 'h') {
+      throw new IOException("Trailing data after the end of the bzip2"
+          + " stream at byte " + next);
+    }
+    // drop what was found after the end of the stream, from its header on
+    for (Delimiter d : delimiters) {
+      if (d.block != null) {
+        d.block.cancel(false);
+      }
+    }
+    delimiters.clear();
+    lastFound = null;
+    blocksInFlight = 0;
+    startStream(next + 2);
+    return true;
+  }
+
+  /**
+   * @return the next block of the stream, or null at the end of the last
+   *         stream, with done set and the combined CRCs checked.
+   */
+  private Block nextBlock() throws IOException {
+    while (true) {
+      final Delimiter d = delimiters.peek();
+      if (d == null) {
+        if (!findNext()) {
+          throw new IOException("unexpected end of stream");
+        }
+      } else if (d.pos < expected) {
+        // a false delimiter inside a block read already
+        delimiters.poll();
+        if (d.block != null) {
+          d.block.cancel(false);
+          blocksInFlight--;
+        }
+      } else if (d.pos > expected) {
+        throw new IOException("bad block header");
+      } else if (d.eos) {
+        fillTo(d.pos + DELIMITER_BIT_LENGTH + 32);
+        final long crcPos = d.pos + DELIMITER_BIT_LENGTH;
+        if (bufStart * 8 + (long) bufLen * 8 < crcPos + 32) {
+          throw new IOException("unexpected end of stream");
+        }
+        final int storedCombinedCRC = (int) getBits(crcPos, 32);
+        if (storedCombinedCRC != computedCombinedCRC) {
+          done = true;
+          throw new IOException("crc error");
+        }
+        if (!nextStream(crcPos + 32)) {
+          done = true;
+          delimiters.clear();
+          return null;
+        }
+      } else if (d.block == null) {
+        findNext();
+      } else {
+        readAhead();
+        Block block;
+        try {
+          block = Uninterruptibles.getUninterruptibly(d.block);
+        } catch (ExecutionException e) {
+          // cut short at a false delimiter, or corrupt
+          block = decode(d.pos, Long.MAX_VALUE);
+        }
+        delimiters.poll();
+        blocksInFlight--;
+        expected = block.end;
+        computedCombinedCRC = (computedCombinedCRC << 1)
+            | (computedCombinedCRC >>> 31);
+        computedCombinedCRC ^= block.crc;
+        return block;
+      }
+    }
+  }
+
+  /** Finds delimiters until as many blocks as allowed are being decoded. */
+  private void readAhead() throws IOException {
+    while (blocksInFlight < parallelism && findNext()) {
+    }
+  }
+
+  /**
+   * Scans the data for the next delimiter, and starts decoding the block
+   * after the one found before it, which now has an end.
+   *
+   * @return false if the end of the stream was reached instead.
+   */
+  private boolean findNext() throws IOException {
+    Delimiter found = null;
+    while (found == null) {
+      if (scanPos == bufStart + bufLen) {
+        if (eof || !read()) {
+          break;
+        }
+      }
+      long bits = (scanBits << 8) | (buf[(int) (scanPos - bufStart)] & 0xff);
+      scanBits = bits;
+      scanPos++;
+      // a delimiter may end at any bit of this byte
+      if (scanPos * 8 >= 16 + DELIMITER_BIT_LENGTH) {
+        for (int shift = 7; shift >= 0 && found == null; shift--) {
+          final long candidate = (bits >>> shift) & DELIMITER_MASK;
+          if (candidate == CBZip2InputStream.BLOCK_DELIMITER
+              || candidate == CBZip2InputStream.EOS_DELIMITER
+              || (falseDelimiters != null && Arrays.binarySearch(
+                  falseDelimiters, scanPos * 8 - shift) >= 0)) {
+            final long pos = scanPos * 8 - shift - DELIMITER_BIT_LENGTH;
+            if (pos >= expected) {
+              found = new Delimiter(pos,
+                  candidate == CBZip2InputStream.EOS_DELIMITER);
+            }
+          }
+        }
+        // two delimiters cannot end in the same byte
+      }
+    }
+
+    if (lastFound != null && !lastFound.eos) {
+      submit(lastFound, found != null
+          ? found.pos + DELIMITER_BIT_LENGTH
+          : (bufStart + bufLen) * 8);
+    }
+    lastFound = found;
+    if (found != null) {
+      delimiters.add(found);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Starts decoding the block of the given delimiter on the executor, from
+   * a copy of the data up to the given bit.
+   */
+  private void submit(final Delimiter d, final long end) {
+    final long start = d.pos + DELIMITER_BIT_LENGTH;
+    final byte[] bits = copyBits(start, end);
+    final int blockSize = blockSize100k;
+    d.block = executor.submit(new Callable<Block>() {
+      @Override
+      public Block call() throws IOException {
+        return decode(bits, d.pos, blockSize);
+      }
+    });
+    blocksInFlight++;
+  }
+
+  /**
+   * Decodes the block of the delimiter at the given bit on this thread,
+   * from the data up to the given bit, or up to the most it can take.
+   */
+  private Block decode(long pos, long end) throws IOException {
+    final long maxBits = BZip2Constants.MAX_CODE_LEN
+        * (blockSize100k * (long) BZip2Constants.baseBlockSize + 1)
+        + (1 << 20);
+    end = Math.min(end, pos + DELIMITER_BIT_LENGTH + maxBits);
+    fillTo(end);
+    end = Math.min(end, (bufStart + bufLen) * 8);
+    return decode(copyBits(pos + DELIMITER_BIT_LENGTH, end), pos,
+        blockSize100k);
+  }
+
+  private static Block decode(byte[] bits, long pos, int blockSize100k)
+      throws IOException {
+    final Block block = new Block();
+    try {
+      final CBZip2InputStream decoder = new CBZip2InputStream(
+          new ByteArrayInputStream(bits), blockSize100k);
+      block.data = new byte[blockSize100k * BZip2Constants.baseBlockSize];
+      int n;
+      while ((n = decoder.readBlock(block.data, block.length,
+          block.data.length - block.length)) >= 0) {
+        block.length += n;
+        if (block.length == block.data.length) {
+          block.data = Arrays.copyOf(block.data, 2 * block.data.length);
+        }
+      }
+      block.crc = decoder.getStoredBlockCRC();
+      block.end = pos + DELIMITER_BIT_LENGTH + decoder.getBitsRead();
+    } catch (RuntimeException e) {
+      // the decoder indexes its tables with what it reads
+      throw new IOException("stream corrupted", e);
+    }
+    return block;
+  }
+
+  /** @return the bits of the data from start to end, from the first bit. */
+  private byte[] copyBits(long start, long end) {
+    final int from = (int) ((start >>> 3) - bufStart);
+    final int shift = (int) (start & 7);
+    final byte[] bits = new byte[(int) ((end - start + 7) >>> 3)];
+    final int limit = bufLen;
+    for (int i = 0, j = from; i < bits.length; i++, j++) {
+      final int hi = buf[j] & 0xff;
+      final int lo = j + 1 < limit ? buf[j + 1] & 0xff : 0;
+      bits[i] = (byte) ((hi << shift) | (lo >>> (8 - shift)));
+    }
+    return bits;
+  }
+
+  /** @return up to 32 bits of the data from the given one. */
+  private long getBits(long pos, int n) {
+    final byte[] bits = copyBits(pos, pos + n);
+    long v = 0;
+    for (byte b : bits) {
+      v = (v << 8) | (b & 0xff);
+    }
+    return (v >>> (bits.length * 8 - n)) & ((1L << n) - 1);
+  }
+
+  /** Reads until the data reaches the given bit, or the end. */
+  private void fillTo(long end) throws IOException {
+    while ((bufStart + bufLen) * 8 < end && !eof && read()) {
+    }
+  }
+
+  /**
+   * Reads more data, dropping that before the next expected delimiter.
+   *
+   * @return false at the end of the stream.
+   */
+  private boolean read() throws IOException {
+    if (bufLen + READ_SIZE > buf.length) {
+      final int drop = (int) (Math.min(expected >>> 3, scanPos) - bufStart);
+      if (drop > 0) {
+        System.arraycopy(buf, drop, buf, 0, bufLen - drop);
+        bufStart += drop;
+        bufLen -= drop;
+      }
+      if (bufLen + READ_SIZE > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(2 * buf.length, bufLen + READ_SIZE));
+      }
+    }
+    final int n = in.read(buf, bufLen, READ_SIZE);
+    if (n < 0) {
+      eof = true;
+      return false;
+    }
+    bufLen += n;
+    return true;
+  }
+}
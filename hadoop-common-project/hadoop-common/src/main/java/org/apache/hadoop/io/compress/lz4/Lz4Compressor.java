@@ -26,6 +26,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
@@ -312,5 +313,97 @@ public synchronized void end() {
 
   private native int compressBytesDirectHC();
 
+  /**
+   * @return the largest size that lz4 can compress the given number of
+   *         bytes to, as computed by LZ4_compressBound. Neither LZ4_compress
+   *         nor LZ4_compressHC checks the size of its output.
+   */
+  static int compressBound(int uncompressedLength) {
+    return uncompressedLength + uncompressedLength / 255 + 16;
+  }
+
+  synchronized int compressDirect(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    assert (this instanceof Lz4DirectCompressor);
+
+    int len = src.remaining();
+    int maxLength = compressBound(len);
+    if (dst.remaining() < maxLength) {
+      throw new IOException("Destination buffer has " + dst.remaining() +
+          " bytes remaining, " + maxLength + " are needed to compress " +
+          len + " bytes");
+    }
+    ByteBuffer presliced = dst;
+    if (dst.position() > 0) {
+      dst = dst.slice();
+    }
+
+    Buffer originalCompressed = compressedDirectBuf;
+    Buffer originalUncompressed = uncompressedDirectBuf;
+    int originalBufferSize = directBufferSize;
+    uncompressedDirectBuf = src.slice();
+    uncompressedDirectBufLen = len;
+    compressedDirectBuf = dst;
+    directBufferSize = dst.remaining();
+    int n = 0;
+    try {
+      n = useLz4HC ? compressBytesDirectHC() : compressBytesDirect();
+      presliced.position(presliced.position() + n);
+      src.position(src.limit());
+      bytesRead += len;
+      bytesWritten += n;
+    } finally {
+      compressedDirectBuf = originalCompressed;
+      uncompressedDirectBuf = originalUncompressed;
+      uncompressedDirectBufLen = 0;
+      directBufferSize = originalBufferSize;
+    }
+    return n;
+  }
+
   public native static String getLibraryName();
+
+  /**
+   * A {@link DirectCompressor} for lz4. It compresses the whole source
+   * buffer at once, so it does not allocate direct buffers of its own.
+   */
+  public static class Lz4DirectCompressor extends Lz4Compressor
+      implements DirectCompressor {
+
+    /**
+     * @param useLz4HC use high compression ratio version of lz4,
+     *                 which trades CPU for compression ratio.
+     */
+    public Lz4DirectCompressor(boolean useLz4HC) {
+      super(0, useLz4HC);
+    }
+
+    public Lz4DirectCompressor() {
+      this(false);
+    }
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+      assert dst.isDirect() : "dst.isDirect()";
+      assert src.isDirect() : "src.isDirect()";
+      this.compressDirect(src, dst);
+    }
+
+    @Override
+    public int maxCompressedLength(int uncompressedLength) {
+      return compressBound(uncompressedLength);
+    }
+
+    @Override
+    public synchronized void setInput(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectCompressor");
+    }
+
+    @Override
+    public synchronized int compress(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectCompressor");
+    }
+  }
 }
@@ -25,6 +25,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
@@ -279,4 +280,83 @@ public synchronized void end() {
   private native static void initIDs();
 
   private native int decompressBytesDirect();
+
+  synchronized int decompressDirect(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    assert (this instanceof Lz4DirectDecompressor);
+
+    ByteBuffer presliced = dst;
+    if (dst.position() > 0) {
+      dst = dst.slice();
+    }
+
+    Buffer originalCompressed = compressedDirectBuf;
+    Buffer originalUncompressed = uncompressedDirectBuf;
+    int originalBufferSize = directBufferSize;
+    compressedDirectBuf = src.slice();
+    compressedDirectBufLen = src.remaining();
+    uncompressedDirectBuf = dst;
+    directBufferSize = dst.remaining();
+    int n = 0;
+    try {
+      n = decompressBytesDirect();
+      presliced.position(presliced.position() + n);
+      // lz4 decompresses the whole block or throws an exception
+      src.position(src.limit());
+      finished = true;
+    } finally {
+      compressedDirectBuf = originalCompressed;
+      uncompressedDirectBuf = originalUncompressed;
+      compressedDirectBufLen = 0;
+      directBufferSize = originalBufferSize;
+    }
+    return n;
+  }
+
+  /**
+   * A {@link DirectDecompressor} for lz4. The destination must have room
+   * for the whole block.
+   */
+  public static class Lz4DirectDecompressor extends Lz4Decompressor
+      implements DirectDecompressor {
+
+    private boolean endOfInput;
+
+    public Lz4DirectDecompressor() {
+      super(0);
+    }
+
+    @Override
+    public synchronized boolean finished() {
+      return (endOfInput && super.finished());
+    }
+
+    @Override
+    public synchronized void reset() {
+      super.reset();
+      endOfInput = true;
+    }
+
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst)
+        throws IOException {
+      assert dst.isDirect() : "dst.isDirect()";
+      assert src.isDirect() : "src.isDirect()";
+      assert dst.remaining() > 0 : "dst.remaining() > 0";
+      this.decompressDirect(src, dst);
+      endOfInput = !src.hasRemaining();
+    }
+
+    @Override
+    public synchronized void setInput(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectDecompressor");
+    }
+
+    @Override
+    public synchronized int decompress(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectDecompressor");
+    }
+  }
 }
@@ -26,6 +26,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
@@ -299,5 +300,87 @@ public void end() {
 
   private native int compressBytesDirect();
 
+  /**
+   * @return the largest size that snappy can compress the given number of
+   *         bytes to, as computed by snappy::MaxCompressedLength.
+   */
+  static int compressBound(int uncompressedLength) {
+    return 32 + uncompressedLength + uncompressedLength / 6;
+  }
+
+  int compressDirect(ByteBuffer src, ByteBuffer dst) throws IOException {
+    assert (this instanceof SnappyDirectCompressor);
+
+    int len = src.remaining();
+    int maxLength = compressBound(len);
+    if (dst.remaining() < maxLength) {
+      throw new IOException("Destination buffer has " + dst.remaining() +
+          " bytes remaining, " + maxLength + " are needed to compress " +
+          len + " bytes");
+    }
+    ByteBuffer presliced = dst;
+    if (dst.position() > 0) {
+      dst = dst.slice();
+    }
+
+    Buffer originalCompressed = compressedDirectBuf;
+    Buffer originalUncompressed = uncompressedDirectBuf;
+    int originalBufferSize = directBufferSize;
+    uncompressedDirectBuf = src.slice();
+    uncompressedDirectBufLen = len;
+    compressedDirectBuf = dst;
+    directBufferSize = dst.remaining();
+    int n = 0;
+    try {
+      n = compressBytesDirect();
+      presliced.position(presliced.position() + n);
+      src.position(src.limit());
+      bytesRead += len;
+      bytesWritten += n;
+    } finally {
+      compressedDirectBuf = originalCompressed;
+      uncompressedDirectBuf = originalUncompressed;
+      uncompressedDirectBufLen = 0;
+      directBufferSize = originalBufferSize;
+    }
+    return n;
+  }
+
   public native static String getLibraryName();
+
+  /**
+   * A {@link DirectCompressor} for snappy. It compresses the whole source
+   * buffer at once, so it does not allocate direct buffers of its own.
+   */
+  public static class SnappyDirectCompressor extends SnappyCompressor
+      implements DirectCompressor {
+
+    public SnappyDirectCompressor() {
+      super(0);
+    }
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+      assert dst.isDirect() : "dst.isDirect()";
+      assert src.isDirect() : "src.isDirect()";
+      this.compressDirect(src, dst);
+    }
+
+    @Override
+    public int maxCompressedLength(int uncompressedLength) {
+      return compressBound(uncompressedLength);
+    }
+
+    @Override
+    public void setInput(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectCompressor");
+    }
+
+    @Override
+    public int compress(byte[] b, int off, int len) {
+      throw new UnsupportedOperationException(
+          "byte[] arrays are not supported for DirectCompressor");
+    }
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+
+/**
+ * Reads a zstd bit stream, which is written forwards and read backwards
+ * from its last byte, whose highest set bit marks the end. The bits are
+ * kept in a 64 bit container that is refilled by {@link #reload()}; a
+ * stream has been read exactly when it is at {@link #isEnd()} after its
+ * last field.
+ */
+final class BitReader {
+  static final int UNFINISHED = 0;
+  static final int END_OF_BUFFER = 1;
+  static final int COMPLETED = 2;
+  static final int OVERFLOW = 3;
+
+  private final byte[] b;
+  private final int start;
+  private int ptr;
+  private long container;
+  private int consumed;
+
+  BitReader(byte[] b, int off, int len) throws IOException {
+    if (len < 1) {
+      throw new IOException("Empty bit stream");
+    }
+    this.b = b;
+    this.start = off;
+    int last = b[off + len - 1] & 0xFF;
+    if (last == 0) {
+      throw new IOException("Bit stream has no end mark");
+    }
+    consumed = 8 - highBit(last);
+    if (len >= 8) {
+      ptr = off + len - 8;
+      container = XXHash64.readLong(b, ptr);
+    } else {
+      ptr = off;
+      container = 0;
+      for (int i = len - 1; i >= 0; i--) {
+        container = container << 8 | (b[off + i] & 0xFF);
+      }
+      consumed += (8 - len) * 8;
+    }
+  }
+
+  static int highBit(int v) {
+    return 31 - Integer.numberOfLeadingZeros(v);
+  }
+
+  /** @return the next n bits, 0 <= n <= 56, without consuming them. */
+  long peek(int n) {
+    return (container << (consumed & 63)) >>> 1 >>> (63 - n);
+  }
+
+  void skip(int n) {
+    consumed += n;
+  }
+
+  /** @return the next n bits, 0 <= n <= 31. */
+  int read(int n) {
+    int v = (int) peek(n);
+    consumed += n;
+    return v;
+  }
+
+  /**
+   * Refill the container, after which at least 56 bits can be read unless
+   * the stream is nearly exhausted.
+   * @return the state of the stream, as the reference implementation has it
+   */
+  int reload() {
+    if (consumed > 64) {
+      return OVERFLOW;
+    }
+    if (ptr >= start + 8) {
+      ptr -= consumed >>> 3;
+      consumed &= 7;
+      container = XXHash64.readLong(b, ptr);
+      return UNFINISHED;
+    }
+    if (ptr == start) {
+      return consumed < 64 ? END_OF_BUFFER : COMPLETED;
+    }
+    int n = consumed >>> 3;
+    int state = UNFINISHED;
+    if (ptr - n < start) {
+      n = ptr - start;
+      state = END_OF_BUFFER;
+    }
+    ptr -= n;
+    consumed -= n * 8;
+    container = XXHash64.readLong(b, ptr);
+    return state;
+  }
+
+  /** @return whether every bit has been read, after a {@link #reload()}. */
+  boolean isEnd() {
+    return ptr == start && consumed == 64;
+  }
+}
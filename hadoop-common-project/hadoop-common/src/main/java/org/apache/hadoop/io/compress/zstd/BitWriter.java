@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+/**
+ * Writes a bit stream for {@link BitReader}: fields are added lowest bit
+ * first and the stream is closed with the end mark. Writing past the end
+ * of the space given sets {@link #overflow()} and discards the rest, so
+ * that the caller can fall back to storing the data raw.
+ */
+final class BitWriter {
+  private final byte[] out;
+  private final int end;
+  private int pos;
+  private long container;
+  private int bits;
+  private boolean overflow;
+
+  BitWriter(byte[] out, int off, int end) {
+    this.out = out;
+    this.pos = off;
+    this.end = end;
+  }
+
+  /** Add the low n bits of value, 0 <= n <= 32. */
+  void add(long value, int n) {
+    container |= (value & ((1L << n) - 1)) << bits;
+    bits += n;
+    if (bits >= 32) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    for (; bits >= 8; bits -= 8) {
+      if (pos == end) {
+        overflow = true;
+      } else {
+        out[pos++] = (byte) container;
+      }
+      container >>>= 8;
+    }
+  }
+
+  /** Write the end mark and the last partial byte. */
+  int close() {
+    add(1, 1);
+    flush();
+    if (bits > 0) {
+      if (pos == end) {
+        overflow = true;
+      } else {
+        out[pos++] = (byte) container;
+      }
+    }
+    return pos;
+  }
+
+  boolean overflow() {
+    return overflow;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes the compressed blocks of a frame: the literals section and the
+ * sequences that interleave the literals with matches into the history.
+ * The entropy tables and repeat offsets carry over from block to block.
+ */
+final class BlockDecoder {
+  static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+  private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+  private byte[] litBuf;
+  private int litPos;
+  private int litEnd;
+
+  private final Huffman.DecodingTable ownHuffman =
+      new Huffman.DecodingTable();
+  private Huffman.DecodingTable huffman;
+
+  private final Fse.DecodingTable ownLiteralsLengths =
+      new Fse.DecodingTable(Fse.LL_MAX_LOG);
+  private final Fse.DecodingTable ownOffsets =
+      new Fse.DecodingTable(Fse.OF_MAX_LOG);
+  private final Fse.DecodingTable ownMatchLengths =
+      new Fse.DecodingTable(Fse.ML_MAX_LOG);
+  private Fse.DecodingTable literalsLengths;
+  private Fse.DecodingTable offsets;
+  private Fse.DecodingTable matchLengths;
+  /** The table chosen by the last {@link #readTable}. */
+  private Fse.DecodingTable lastTable;
+
+  private final int[] rep = new int[3];
+
+  /** Start a frame, with the tables of the dictionary if it has them. */
+  void reset(ZStandardDictionary dictionary) {
+    if (dictionary != null && dictionary.huffman != null) {
+      huffman = dictionary.huffman;
+      literalsLengths = dictionary.literalsLengths;
+      offsets = dictionary.offsets;
+      matchLengths = dictionary.matchLengths;
+      System.arraycopy(dictionary.repeats, 0, rep, 0, 3);
+    } else {
+      huffman = null;
+      literalsLengths = null;
+      offsets = null;
+      matchLengths = null;
+      rep[0] = 1;
+      rep[1] = 4;
+      rep[2] = 8;
+    }
+  }
+
+  private static IOException corrupt(String what) {
+    return new IOException("Corrupt zstd block: " + what);
+  }
+
+  /**
+   * Decode the compressed block src[off, off + len) to out at outPos.
+   * Matches may reach back to historyStart.
+   * @return the end of the decoded data in out
+   */
+  int decode(byte[] src, int off, int len, byte[] out, int outPos,
+      int historyStart, int maxSize) throws IOException {
+    int end = off + len;
+    int p = off + decodeLiterals(src, off, end);
+    if (p >= end) {
+      throw corrupt("missing sequences section");
+    }
+    int nbSeq = src[p++] & 0xFF;
+    if (nbSeq >= 128) {
+      if (nbSeq == 255) {
+        if (p + 2 > end) {
+          throw corrupt("truncated sequences header");
+        }
+        nbSeq = (src[p] & 0xFF) + ((src[p + 1] & 0xFF) << 8) + 0x7F00;
+        p += 2;
+      } else {
+        if (p + 1 > end) {
+          throw corrupt("truncated sequences header");
+        }
+        nbSeq = ((nbSeq - 128) << 8) + (src[p++] & 0xFF);
+      }
+    }
+    int outLimit = outPos + maxSize;
+    if (nbSeq > 0) {
+      if (p >= end) {
+        throw corrupt("truncated sequences header");
+      }
+      int modes = src[p++] & 0xFF;
+      if ((modes & 3) != 0) {
+        throw corrupt("reserved bits set");
+      }
+      p = readTable(src, p, end, modes >>> 6, ownLiteralsLengths,
+          Fse.LL_DEFAULT, Fse.LL_MAX_SYMBOL, Fse.LL_MAX_LOG);
+      literalsLengths = lastTable;
+      p = readTable(src, p, end, (modes >>> 4) & 3, ownOffsets,
+          Fse.OF_DEFAULT, Fse.OF_MAX_SYMBOL, Fse.OF_MAX_LOG);
+      offsets = lastTable;
+      p = readTable(src, p, end, (modes >>> 2) & 3, ownMatchLengths,
+          Fse.ML_DEFAULT, Fse.ML_MAX_SYMBOL, Fse.ML_MAX_LOG);
+      matchLengths = lastTable;
+      outPos = decodeSequences(src, p, end - p, nbSeq, out, outPos,
+          historyStart, outLimit);
+    } else if (p != end) {
+      throw corrupt("data after the literals");
+    }
+    int n = litEnd - litPos;
+    if (n > outLimit - outPos) {
+      throw corrupt("too much output");
+    }
+    System.arraycopy(litBuf, litPos, out, outPos, n);
+    return outPos + n;
+  }
+
+  /** @return the length of the literals section */
+  private int decodeLiterals(byte[] src, int off, int end)
+      throws IOException {
+    int b0 = src[off] & 0xFF;
+    int type = b0 & 3;
+    int sizeFormat = (b0 >>> 2) & 3;
+    int header;
+    int regenerated;
+    if (type < 2) {
+      switch (sizeFormat) {
+      case 1:
+        header = 2;
+        break;
+      case 3:
+        header = 3;
+        break;
+      default:
+        header = 1;
+      }
+      if (off + header > end) {
+        throw corrupt("truncated literals header");
+      }
+      regenerated = header == 1 ? b0 >>> 3 : b0 >>> 4 |
+          (src[off + 1] & 0xFF) << 4 |
+          (header == 3 ? (src[off + 2] & 0xFF) << 12 : 0);
+      if (regenerated > MAX_BLOCK_SIZE) {
+        throw corrupt("too many literals");
+      }
+      if (type == 0) {
+        if (off + header + regenerated > end) {
+          throw corrupt("truncated raw literals");
+        }
+        litBuf = src;
+        litPos = off + header;
+        litEnd = litPos + regenerated;
+        return header + regenerated;
+      }
+      if (off + header >= end) {
+        throw corrupt("truncated RLE literals");
+      }
+      Arrays.fill(literals, 0, regenerated, src[off + header]);
+      litBuf = literals;
+      litPos = 0;
+      litEnd = regenerated;
+      return header + 1;
+    }
+
+    header = sizeFormat < 2 ? 3 : sizeFormat + 2;
+    if (off + header > end) {
+      throw corrupt("truncated literals header");
+    }
+    long h = XXHash64.readInt(src, off) & 0xFFFFFFFFL;
+    if (header == 3) {
+      h &= 0xFFFFFF;
+    } else if (header == 5) {
+      h |= (long) (src[off + 4] & 0xFF) << 32;
+    }
+    int sizeBits = header == 3 ? 10 : header == 4 ? 14 : 18;
+    regenerated = (int) (h >>> 4) & ((1 << sizeBits) - 1);
+    int compressed = (int) (h >>> (4 + sizeBits)) & ((1 << sizeBits) - 1);
+    if (regenerated > MAX_BLOCK_SIZE) {
+      throw corrupt("too many literals");
+    }
+    int p = off + header;
+    if (p + compressed > end) {
+      throw corrupt("truncated compressed literals");
+    }
+    int streamsEnd = p + compressed;
+    if (type == 2) {
+      p += ownHuffman.read(src, p, streamsEnd);
+      huffman = ownHuffman;
+    } else if (huffman == null) {
+      throw corrupt("treeless literals without a previous tree");
+    }
+    if (sizeFormat == 0) {
+      huffman.decode1(src, p, streamsEnd - p, literals, 0, regenerated);
+    } else {
+      huffman.decode4(src, p, streamsEnd - p, literals, 0, regenerated);
+    }
+    litBuf = literals;
+    litPos = 0;
+    litEnd = regenerated;
+    return header + compressed;
+  }
+
+  private int readTable(byte[] src, int p, int end, int mode,
+      Fse.DecodingTable own, Fse.DecodingTable predefined, int maxSymbol,
+      int maxLog) throws IOException {
+    switch (mode) {
+    case 0:
+      lastTable = predefined;
+      return p;
+    case 1:
+      if (p >= end || (src[p] & 0xFF) > maxSymbol) {
+        throw corrupt("bad RLE sequence table");
+      }
+      own.rle(src[p] & 0xFF);
+      lastTable = own;
+      return p + 1;
+    case 2:
+      p += own.read(src, p, end, maxSymbol, maxLog);
+      lastTable = own;
+      return p;
+    default:
+      // repeat the table of the previous block
+      lastTable = currentFor(own);
+      if (lastTable == null) {
+        throw corrupt("repeated sequence table without a previous one");
+      }
+      return p;
+    }
+  }
+
+  private Fse.DecodingTable currentFor(Fse.DecodingTable own) {
+    return own == ownLiteralsLengths ? literalsLengths
+        : own == ownOffsets ? offsets : matchLengths;
+  }
+
+  private int decodeSequences(byte[] src, int off, int len, int nbSeq,
+      byte[] out, int outPos, int historyStart, int outLimit)
+      throws IOException {
+    if (len < 1) {
+      throw corrupt("missing sequences bit stream");
+    }
+    Fse.DecodingTable llTable = literalsLengths;
+    Fse.DecodingTable ofTable = offsets;
+    Fse.DecodingTable mlTable = matchLengths;
+    BitReader in = new BitReader(src, off, len);
+    int llState = in.read(llTable.log);
+    int ofState = in.read(ofTable.log);
+    int mlState = in.read(mlTable.log);
+    in.reload();
+    int[] llBase = Fse.LL_BASE;
+    int[] llBits = Fse.LL_BITS;
+    int[] mlBase = Fse.ML_BASE;
+    int[] mlBits = Fse.ML_BITS;
+
+    for (int i = 0; i < nbSeq; i++) {
+      int ofCode = ofTable.symbol[ofState];
+      int llCode = llTable.symbol[llState];
+      int mlCode = mlTable.symbol[mlState];
+      if (ofCode > 30) {
+        throw corrupt("offset code " + ofCode);
+      }
+      int offsetValue = (1 << ofCode) + in.read(ofCode);
+      if (ofCode > 24) {
+        in.reload();
+      }
+      int matchLength = mlBase[mlCode] + in.read(mlBits[mlCode]);
+      int literalsLength = llBase[llCode] + in.read(llBits[llCode]);
+      in.reload();
+
+      int offset;
+      if (offsetValue > 3) {
+        offset = offsetValue - 3;
+        rep[2] = rep[1];
+        rep[1] = rep[0];
+        rep[0] = offset;
+      } else {
+        int index = offsetValue - 1 + (literalsLength == 0 ? 1 : 0);
+        if (index == 0) {
+          offset = rep[0];
+        } else {
+          offset = index == 3 ? rep[0] - 1 : rep[index];
+          if (offset == 0) {
+            throw corrupt("zero offset");
+          }
+          if (index != 1) {
+            rep[2] = rep[1];
+          }
+          rep[1] = rep[0];
+          rep[0] = offset;
+        }
+      }
+
+      if (i + 1 < nbSeq) {
+        llState = llTable.base[llState] + in.read(llTable.bits[llState]);
+        mlState = mlTable.base[mlState] + in.read(mlTable.bits[mlState]);
+        ofState = ofTable.base[ofState] + in.read(ofTable.bits[ofState]);
+        in.reload();
+      }
+
+      if (literalsLength > litEnd - litPos) {
+        throw corrupt("sequence past the literals");
+      }
+      if (literalsLength + matchLength > outLimit - outPos) {
+        throw corrupt("too much output");
+      }
+      System.arraycopy(litBuf, litPos, out, outPos, literalsLength);
+      litPos += literalsLength;
+      outPos += literalsLength;
+      if (offset > outPos - historyStart) {
+        throw corrupt("offset " + offset + " before the window");
+      }
+      int from = outPos - offset;
+      if (offset >= matchLength) {
+        System.arraycopy(out, from, out, outPos, matchLength);
+        outPos += matchLength;
+      } else {
+        for (int end = outPos + matchLength; outPos < end; ) {
+          out[outPos++] = out[from++];
+        }
+      }
+    }
+    if (!in.isEnd()) {
+      throw corrupt("sequences bit stream not consumed");
+    }
+    return outPos;
+  }
+}
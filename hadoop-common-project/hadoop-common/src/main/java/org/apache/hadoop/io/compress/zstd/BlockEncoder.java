@@ -0,0 +1,548 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.util.Arrays;
+
+/**
+ * Compresses blocks for {@link BuiltInZStandardCompressor}. Matches are
+ * found in a hash table, with a chain of earlier positions and lazy
+ * matching at the higher levels. The literals are Huffman coded when that
+ * can be done with direct weights, and each kind of sequence code uses the
+ * predefined table, a single symbol or a table of its own, whichever is
+ * smaller. Tables are not repeated from the previous block, so blocks do
+ * not depend on each other except for their history; the ratio is a
+ * little below that of the native library at the same level.
+ */
+final class BlockEncoder {
+  static final int MIN_MATCH = 4;
+  /** The highest level with its own parameters. */
+  static final int MAX_LEVEL = 9;
+  private static final int MAX_SEQUENCES =
+      BlockDecoder.MAX_BLOCK_SIZE / MIN_MATCH + 1;
+
+  private static final int RAW = 0;
+  private static final int COMPRESSED = 2;
+
+  /** The modes of the tables of sequence codes. */
+  private static final int PREDEFINED = 0;
+  private static final int RLE = 1;
+  private static final int FSE = 2;
+
+  /** Window log, hash log, chain log, search depth and lazy by level. */
+  private static final int[][] LEVELS = {
+    {19, 14, 0, 1, 0},
+    {19, 16, 0, 1, 0},
+    {20, 16, 16, 4, 0},
+    {20, 17, 17, 8, 0},
+    {21, 17, 17, 8, 1},
+    {21, 18, 18, 16, 1},
+    {21, 18, 18, 32, 1},
+    {22, 18, 19, 64, 1},
+    {22, 19, 20, 128, 1},
+  };
+
+  private static final byte[] LL_CODE = new byte[64];
+  private static final byte[] ML_CODE = new byte[128];
+
+  static {
+    for (int code = 0; code <= Fse.LL_MAX_SYMBOL; code++) {
+      int base = Fse.LL_BASE[code];
+      for (int v = base; v < base + (1 << Fse.LL_BITS[code]) && v < 64; v++) {
+        LL_CODE[v] = (byte) code;
+      }
+    }
+    for (int code = 0; code <= Fse.ML_MAX_SYMBOL; code++) {
+      int base = Fse.ML_BASE[code] - 3;
+      for (int v = base; v < base + (1 << Fse.ML_BITS[code]) && v < 128;
+          v++) {
+        ML_CODE[v] = (byte) code;
+      }
+    }
+  }
+
+  private static final Fse.EncodingTable LL_DEFAULT =
+      new Fse.EncodingTable(Fse.LL_MAX_SYMBOL, Fse.LL_DEFAULT_LOG).build(
+          Fse.LL_DEFAULT_NORM, Fse.LL_DEFAULT_NORM.length - 1,
+          Fse.LL_DEFAULT_LOG);
+  private static final Fse.EncodingTable ML_DEFAULT =
+      new Fse.EncodingTable(Fse.ML_MAX_SYMBOL, Fse.ML_DEFAULT_LOG).build(
+          Fse.ML_DEFAULT_NORM, Fse.ML_DEFAULT_NORM.length - 1,
+          Fse.ML_DEFAULT_LOG);
+  private static final Fse.EncodingTable OF_DEFAULT =
+      new Fse.EncodingTable(Fse.OF_MAX_SYMBOL, Fse.OF_DEFAULT_LOG).build(
+          Fse.OF_DEFAULT_NORM, Fse.OF_DEFAULT_NORM.length - 1,
+          Fse.OF_DEFAULT_LOG);
+
+  final int windowLog;
+  private final int windowSize;
+  private final int hashLog;
+  private final int searchDepth;
+  private final boolean lazy;
+  private final int[] hashTable;
+  private final int[] chainTable;
+  private final int chainMask;
+  private int matchPos;
+
+  private final int[] litLengths = new int[MAX_SEQUENCES];
+  private final int[] matchLengths = new int[MAX_SEQUENCES];
+  private final int[] offsets = new int[MAX_SEQUENCES];
+  private int nbSeq;
+  private final byte[] literals = new byte[BlockDecoder.MAX_BLOCK_SIZE];
+  private int litCount;
+
+  private final int[] counts = new int[256];
+  private final byte[] llCodes = new byte[MAX_SEQUENCES];
+  private final byte[] mlCodes = new byte[MAX_SEQUENCES];
+  private final byte[] ofCodes = new byte[MAX_SEQUENCES];
+  private final int[] llCounts = new int[Fse.LL_MAX_SYMBOL + 1];
+  private final int[] mlCounts = new int[Fse.ML_MAX_SYMBOL + 1];
+  private final int[] ofCounts = new int[Fse.OF_MAX_SYMBOL + 1];
+  private final short[] norm = new short[Fse.ML_MAX_SYMBOL + 1];
+  private final Fse.EncodingTable llTable =
+      new Fse.EncodingTable(Fse.LL_MAX_SYMBOL, Fse.LL_MAX_LOG);
+  private final Fse.EncodingTable mlTable =
+      new Fse.EncodingTable(Fse.ML_MAX_SYMBOL, Fse.ML_MAX_LOG);
+  private final Fse.EncodingTable ofTable =
+      new Fse.EncodingTable(Fse.OF_MAX_SYMBOL, Fse.OF_MAX_LOG);
+  /** The table chosen by the last {@link #writeTable}, null for RLE. */
+  private Fse.EncodingTable chosen;
+  private int mode;
+  private final Huffman.Encoder huffman = new Huffman.Encoder();
+
+  /** @param level 1 to {@link #MAX_LEVEL}, clamped if outside */
+  BlockEncoder(int level) {
+    int[] params = LEVELS[Math.max(1, Math.min(level, MAX_LEVEL)) - 1];
+    windowLog = params[0];
+    windowSize = 1 << windowLog;
+    hashLog = params[1];
+    hashTable = new int[1 << hashLog];
+    if (params[2] > 0) {
+      chainTable = new int[1 << params[2]];
+      chainMask = chainTable.length - 1;
+    } else {
+      chainTable = null;
+      chainMask = 0;
+    }
+    searchDepth = params[3];
+    lazy = params[4] != 0;
+    reset();
+  }
+
+  int windowSize() {
+    return windowSize;
+  }
+
+  void reset() {
+    Arrays.fill(hashTable, -1);
+    if (chainTable != null) {
+      Arrays.fill(chainTable, -1);
+    }
+  }
+
+  /** Move the positions in the tables down when the history moves. */
+  void slide(int shift) {
+    slide(hashTable, shift);
+    if (chainTable != null) {
+      slide(chainTable, shift);
+    }
+  }
+
+  private static void slide(int[] table, int shift) {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = Math.max(table[i] - shift, -1);
+    }
+  }
+
+  private int hash(byte[] w, int p) {
+    return (XXHash64.readInt(w, p) * 0x9E3779B1) >>> (32 - hashLog);
+  }
+
+  private void insert(byte[] w, int p) {
+    int h = hash(w, p);
+    if (chainTable != null) {
+      chainTable[p & chainMask] = hashTable[h];
+    }
+    hashTable[h] = p;
+  }
+
+  /** Index the history in w[from, to), such as a dictionary. */
+  void insert(byte[] w, int from, int to) {
+    for (int p = from; p + MIN_MATCH <= to; p++) {
+      insert(w, p);
+    }
+  }
+
+  /**
+   * Compress w[start, end), of at most a block, into a block with its
+   * header at out[pos]. The history before it starts at historyStart. out
+   * must have room for the block stored raw.
+   * @return the end of the block in out
+   */
+  int encode(byte[] w, int historyStart, int start, int end, boolean last,
+      byte[] out, int pos) {
+    int size = end - start;
+    int blockEnd = -1;
+    if (size > 0) {
+      findSequences(w, historyStart, start, end);
+      blockEnd = compressBlock(out, pos + 3, pos + 3 + size - 1);
+    }
+    if (blockEnd < 0) {
+      writeBlockHeader(out, pos, last, RAW, size);
+      System.arraycopy(w, start, out, pos + 3, size);
+      return pos + 3 + size;
+    }
+    writeBlockHeader(out, pos, last, COMPRESSED, blockEnd - pos - 3);
+    return blockEnd;
+  }
+
+  private static void writeBlockHeader(byte[] out, int pos, boolean last,
+      int type, int size) {
+    int header = (last ? 1 : 0) | type << 1 | size << 3;
+    out[pos] = (byte) header;
+    out[pos + 1] = (byte) (header >>> 8);
+    out[pos + 2] = (byte) (header >>> 16);
+  }
+
+  private void findSequences(byte[] w, int historyStart, int start,
+      int end) {
+    nbSeq = 0;
+    litCount = 0;
+    int anchor = start;
+    int p = start;
+    int limit = end - MIN_MATCH;
+    while (p <= limit) {
+      int len = search(w, p, historyStart, end);
+      if (len < MIN_MATCH) {
+        // skip faster through data that does not match
+        p += 1 + ((p - anchor) >>> 6);
+        continue;
+      }
+      int from = matchPos;
+      if (lazy) {
+        while (p < limit) {
+          int next = search(w, p + 1, historyStart, end);
+          if (next <= len) {
+            break;
+          }
+          p++;
+          len = next;
+          from = matchPos;
+        }
+      }
+      while (p > anchor && from > historyStart && w[p - 1] == w[from - 1]) {
+        p--;
+        from--;
+        len++;
+      }
+      addSequence(w, anchor, p - anchor, p - from, len);
+      int matchEnd = p + len;
+      if (chainTable != null) {
+        for (int i = p + 1; i < matchEnd && i <= limit; i++) {
+          insert(w, i);
+        }
+      } else if (matchEnd - 2 <= limit) {
+        insert(w, matchEnd - 2);
+      }
+      p = matchEnd;
+      anchor = p;
+    }
+    System.arraycopy(w, anchor, literals, litCount, end - anchor);
+    litCount += end - anchor;
+  }
+
+  /** @return the longest match for p, at matchPos */
+  private int search(byte[] w, int p, int historyStart, int end) {
+    int h = hash(w, p);
+    int candidate = hashTable[h];
+    hashTable[h] = p;
+    if (chainTable != null) {
+      chainTable[p & chainMask] = candidate;
+    }
+    int lowest = Math.max(historyStart, p - windowSize);
+    int max = end - p;
+    int first = XXHash64.readInt(w, p);
+    int best = 0;
+    for (int depth = searchDepth; candidate >= lowest && depth > 0;
+        depth--) {
+      if (w[candidate + best] == w[p + best] &&
+          XXHash64.readInt(w, candidate) == first) {
+        int len = MIN_MATCH;
+        while (len < max && w[candidate + len] == w[p + len]) {
+          len++;
+        }
+        if (len > best) {
+          best = len;
+          matchPos = candidate;
+          if (len == max) {
+            break;
+          }
+        }
+      }
+      if (chainTable == null) {
+        break;
+      }
+      int next = chainTable[candidate & chainMask];
+      if (next >= candidate) {
+        break;
+      }
+      candidate = next;
+    }
+    return best;
+  }
+
+  private void addSequence(byte[] w, int anchor, int litLength, int offset,
+      int matchLength) {
+    System.arraycopy(w, anchor, literals, litCount, litLength);
+    litCount += litLength;
+    litLengths[nbSeq] = litLength;
+    offsets[nbSeq] = offset;
+    matchLengths[nbSeq] = matchLength;
+    nbSeq++;
+  }
+
+  /**
+   * Write the literals and sequences sections to out[pos, end).
+   * @return the end, or -1 if they do not fit
+   */
+  private int compressBlock(byte[] out, int pos, int end) {
+    pos = compressLiterals(out, pos, end);
+    if (pos < 0 || end - pos < 4) {
+      return -1;
+    }
+    if (nbSeq < 128) {
+      out[pos++] = (byte) nbSeq;
+    } else if (nbSeq < 0x7F00) {
+      out[pos++] = (byte) ((nbSeq >>> 8) + 128);
+      out[pos++] = (byte) nbSeq;
+    } else {
+      out[pos++] = (byte) 255;
+      out[pos++] = (byte) (nbSeq - 0x7F00);
+      out[pos++] = (byte) ((nbSeq - 0x7F00) >>> 8);
+    }
+    if (nbSeq == 0) {
+      return pos;
+    }
+
+    Arrays.fill(llCounts, 0);
+    Arrays.fill(mlCounts, 0);
+    Arrays.fill(ofCounts, 0);
+    for (int n = 0; n < nbSeq; n++) {
+      int llCode = literalsLengthCode(litLengths[n]);
+      int mlCode = matchLengthCode(matchLengths[n]);
+      int ofCode = BitReader.highBit(offsets[n] + 3);
+      llCodes[n] = (byte) llCode;
+      mlCodes[n] = (byte) mlCode;
+      ofCodes[n] = (byte) ofCode;
+      llCounts[llCode]++;
+      mlCounts[mlCode]++;
+      ofCounts[ofCode]++;
+    }
+    int modesPos = pos++;
+    pos = writeTable(llCounts, Fse.LL_MAX_SYMBOL, Fse.LL_MAX_LOG, llTable,
+        LL_DEFAULT, Fse.LL_DEFAULT_NORM, out, pos, end);
+    if (pos < 0) {
+      return -1;
+    }
+    Fse.EncodingTable ll = chosen;
+    int modes = mode << 6;
+    pos = writeTable(ofCounts, Fse.OF_MAX_SYMBOL, Fse.OF_MAX_LOG, ofTable,
+        OF_DEFAULT, Fse.OF_DEFAULT_NORM, out, pos, end);
+    if (pos < 0) {
+      return -1;
+    }
+    Fse.EncodingTable of = chosen;
+    modes |= mode << 4;
+    pos = writeTable(mlCounts, Fse.ML_MAX_SYMBOL, Fse.ML_MAX_LOG, mlTable,
+        ML_DEFAULT, Fse.ML_DEFAULT_NORM, out, pos, end);
+    if (pos < 0) {
+      return -1;
+    }
+    Fse.EncodingTable ml = chosen;
+    modes |= mode << 2;
+    out[modesPos] = (byte) modes;
+
+    // the tables of single symbols take no bits
+    BitWriter bits = new BitWriter(out, pos, end);
+    int n = nbSeq - 1;
+    int mlState = ml != null ? ml.initState(mlCodes[n]) : 0;
+    int ofState = of != null ? of.initState(ofCodes[n]) : 0;
+    int llState = ll != null ? ll.initState(llCodes[n]) : 0;
+    addExtraBits(bits, n);
+    for (n--; n >= 0; n--) {
+      if (of != null) {
+        ofState = of.encode(bits, ofState, ofCodes[n]);
+      }
+      if (ml != null) {
+        mlState = ml.encode(bits, mlState, mlCodes[n]);
+      }
+      if (ll != null) {
+        llState = ll.encode(bits, llState, llCodes[n]);
+      }
+      addExtraBits(bits, n);
+    }
+    if (ml != null) {
+      ml.flush(bits, mlState);
+    }
+    if (of != null) {
+      of.flush(bits, ofState);
+    }
+    if (ll != null) {
+      ll.flush(bits, llState);
+    }
+    pos = bits.close();
+    return bits.overflow() ? -1 : pos;
+  }
+
+  /**
+   * Choose the table for the counts of one kind of code, the predefined
+   * one, a single symbol or one of its own, and write its description to
+   * out[pos, end). The choice is left in {@link #chosen} and
+   * {@link #mode}.
+   * @return the end of the description, or -1 if it does not fit
+   */
+  private int writeTable(int[] counts, int maxSymbol, int maxLog,
+      Fse.EncodingTable own, Fse.EncodingTable predefined,
+      short[] predefinedNorm, byte[] out, int pos, int end) {
+    int max = maxSymbol;
+    while (counts[max] == 0) {
+      max--;
+    }
+    if (pos == end) {
+      return -1;
+    }
+    if (counts[max] == nbSeq && nbSeq > 2) {
+      mode = RLE;
+      chosen = null;
+      out[pos] = (byte) max;
+      return pos + 1;
+    }
+    int predefinedCost = Fse.cost(counts, max, predefinedNorm,
+        predefined.log);
+    int log = Fse.tableLog(nbSeq, max, maxLog);
+    Fse.normalize(counts, nbSeq, max, log, norm);
+    int descriptionEnd = Fse.write(norm, max, log, out, pos, end);
+    if (descriptionEnd >= 0 && (predefinedCost == Integer.MAX_VALUE ||
+        Fse.cost(counts, max, norm, log) + (descriptionEnd - pos) * 8 <
+            predefinedCost)) {
+      mode = FSE;
+      chosen = own.build(norm, max, log);
+      return descriptionEnd;
+    }
+    if (predefinedCost == Integer.MAX_VALUE) {
+      return -1;
+    }
+    mode = PREDEFINED;
+    chosen = predefined;
+    return pos;
+  }
+
+  private void addExtraBits(BitWriter bits, int n) {
+    int llCode = llCodes[n];
+    int mlCode = mlCodes[n];
+    int ofCode = ofCodes[n];
+    bits.add(litLengths[n] - Fse.LL_BASE[llCode], Fse.LL_BITS[llCode]);
+    bits.add(matchLengths[n] - Fse.ML_BASE[mlCode], Fse.ML_BITS[mlCode]);
+    bits.add(offsets[n] + 3 - (1 << ofCode), ofCode);
+  }
+  private static int literalsLengthCode(int length) {
+    return length < 64 ? LL_CODE[length] : BitReader.highBit(length) + 19;
+  }
+
+  private static int matchLengthCode(int length) {
+    int base = length - 3;
+    return base < 128 ? ML_CODE[base] : BitReader.highBit(base) + 36;
+  }
+
+  /** @return the end of the literals section, or -1 if it does not fit */
+  private int compressLiterals(byte[] out, int pos, int end) {
+    int n = litCount;
+    if (end - pos < 3) {
+      return -1;
+    }
+    if (n >= 64) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < n; i++) {
+        counts[literals[i] & 0xFF]++;
+      }
+      if (counts[literals[0] & 0xFF] == n) {
+        int header = rawLiteralsHeader(out, pos, 1, n);
+        if (header < 0 || header >= end) {
+          return -1;
+        }
+        out[header] = literals[0];
+        return header + 1;
+      }
+      if (huffman.build(counts) && huffman.estimate(counts) < n - n / 32) {
+        int p = compressedLiterals(out, pos, end);
+        if (p >= 0) {
+          return p;
+        }
+      }
+    }
+    int header = rawLiteralsHeader(out, pos, 0, n);
+    if (header < 0 || end - header < n) {
+      return -1;
+    }
+    System.arraycopy(literals, 0, out, header, n);
+    return header + n;
+  }
+
+  /** @return the end of the header of raw or RLE literals */
+  private static int rawLiteralsHeader(byte[] out, int pos, int type,
+      int n) {
+    if (n < 32) {
+      out[pos] = (byte) (type | n << 3);
+      return pos + 1;
+    } else if (n < 4096) {
+      out[pos] = (byte) (type | 1 << 2 | n << 4);
+      out[pos + 1] = (byte) (n >>> 4);
+      return pos + 2;
+    } else {
+      out[pos] = (byte) (type | 3 << 2 | n << 4);
+      out[pos + 1] = (byte) (n >>> 4);
+      out[pos + 2] = (byte) (n >>> 12);
+      return pos + 3;
+    }
+  }
+
+  private int compressedLiterals(byte[] out, int pos, int end) {
+    int n = litCount;
+    int header = n < 1024 ? 3 : n < 16384 ? 4 : 5;
+    int sizeBits = header == 3 ? 10 : header == 4 ? 14 : 18;
+    if (end - pos < header + 1 + 64) {
+      return -1;
+    }
+    int p = huffman.writeTree(out, pos + header);
+    boolean single = n < 256;
+    p = single ? huffman.encode1(literals, 0, n, out, p, end)
+        : huffman.encode4(literals, 0, n, out, p, end);
+    if (p < 0 || p - pos - header >= n) {
+      return -1;
+    }
+    int sizeFormat = single ? 0 : header - 2;
+    long compressed = p - pos - header;
+    long h = 2 | sizeFormat << 2 | (long) n << 4 |
+        compressed << (4 + sizeBits);
+    for (int i = 0; i < header; i++) {
+      out[pos + i] = (byte) (h >>> (8 * i));
+    }
+    return p;
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+
+/**
+ * A {@link Compressor} that writes zstd frames in Java, for when the native
+ * library is not there. Levels above {@link BlockEncoder#MAX_LEVEL} compress
+ * as that level does. The frames have no checksum or content size, as
+ * those of the native compressor.
+ */
+public class BuiltInZStandardCompressor implements Compressor {
+  private static final int BLOCK_SIZE = BlockDecoder.MAX_BLOCK_SIZE;
+
+  private int level;
+  private BlockEncoder encoder;
+  private int encoderLevel;
+  private ZStandardDictionary dictionary;
+
+  private byte[] userBuf;
+  private int userOff;
+  private int userLen;
+
+  /** The input, with the history of the block being filled before it. */
+  private byte[] window = new byte[0];
+  private int windowPos;
+  private int blockStart;
+  private int historyStart;
+
+  private final byte[] out = new byte[BLOCK_SIZE + 32];
+  private int outPos;
+  private int outLen;
+
+  private boolean headerWritten;
+  private boolean finish;
+  private boolean lastBlockWritten;
+  private long bytesRead;
+  private long bytesWritten;
+
+  public BuiltInZStandardCompressor(int level) {
+    this.level = level;
+    reset();
+  }
+
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    userBuf = b;
+    userOff = off;
+    userLen = len;
+  }
+
+  @Override
+  public synchronized boolean needsInput() {
+    return outPos == outLen && userLen == 0 &&
+        windowPos - blockStart < BLOCK_SIZE;
+  }
+
+  /**
+   * Compress with the given dictionary, in the format of the zstd
+   * dictionary builder or as raw content, from the next frame on; an empty
+   * one clears it.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    if (len == 0 && dictionary == null) {
+      return;
+    }
+    try {
+      dictionary = len == 0 ? null : ZStandardDictionary.parse(b, off, len);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid zstd dictionary", e);
+    }
+    reset();
+  }
+
+  @Override
+  public synchronized long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public synchronized void finish() {
+    finish = true;
+  }
+
+  @Override
+  public synchronized boolean finished() {
+    return lastBlockWritten && outPos == outLen;
+  }
+
+  @Override
+  public synchronized int compress(byte[] b, int off, int len)
+      throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    while (outPos == outLen) {
+      if (lastBlockWritten) {
+        return 0;
+      }
+      if (!headerWritten) {
+        writeFrameHeader();
+        continue;
+      }
+      if (userLen > 0 && blockStart + BLOCK_SIZE > window.length) {
+        makeRoom();
+      }
+      int take = Math.min(userLen, blockStart + BLOCK_SIZE - windowPos);
+      if (take > 0) {
+        System.arraycopy(userBuf, userOff, window, windowPos, take);
+        windowPos += take;
+        userOff += take;
+        userLen -= take;
+        bytesRead += take;
+      }
+      boolean last = finish && userLen == 0;
+      if (windowPos - blockStart < BLOCK_SIZE && !last) {
+        return 0;
+      }
+      outPos = 0;
+      outLen = encoder.encode(window, historyStart, blockStart, windowPos,
+          last, out, 0);
+      bytesWritten += outLen;
+      blockStart = windowPos;
+      lastBlockWritten = last;
+    }
+    int n = Math.min(len, outLen - outPos);
+    System.arraycopy(out, outPos, b, off, n);
+    outPos += n;
+    return n;
+  }
+
+  private void writeFrameHeader() {
+    int p = 0;
+    writeInt(BuiltInZStandardDecompressor.MAGIC, p);
+    p += 4;
+    int id = dictionary == null ? 0 : dictionary.id;
+    // no checksum or content size, a window descriptor and the dictionary
+    out[p++] = (byte) (id != 0 ? 3 : 0);
+    out[p++] = (byte) ((encoder.windowLog - 10) << 3);
+    if (id != 0) {
+      writeInt(id, p);
+      p += 4;
+    }
+    outPos = 0;
+    outLen = p;
+    bytesWritten += p;
+    headerWritten = true;
+  }
+
+  private void writeInt(int v, int p) {
+    out[p] = (byte) v;
+    out[p + 1] = (byte) (v >>> 8);
+    out[p + 2] = (byte) (v >>> 16);
+    out[p + 3] = (byte) (v >>> 24);
+  }
+
+  /**
+   * Make room for a block from blockStart on. The array grows up to
+   * twice the window, so that the history moves seldom.
+   */
+  private void makeRoom() {
+    int windowSize = encoder.windowSize();
+    int max = 2 * windowSize + BLOCK_SIZE;
+    if (window.length < max) {
+      int size = Math.min(max,
+          Math.max(2 * window.length, blockStart + BLOCK_SIZE));
+      window = Arrays.copyOf(window, size);
+    }
+    if (blockStart + BLOCK_SIZE > window.length) {
+      int shift = blockStart - windowSize;
+      System.arraycopy(window, shift, window, 0, windowPos - shift);
+      encoder.slide(shift);
+      blockStart -= shift;
+      windowPos -= shift;
+      historyStart = Math.max(0, historyStart - shift);
+    }
+  }
+
+  @Override
+  public synchronized void reset() {
+    if (encoder == null || level != encoderLevel) {
+      encoder = new BlockEncoder(level);
+      encoderLevel = level;
+    } else {
+      encoder.reset();
+    }
+    userLen = 0;
+    outPos = 0;
+    outLen = 0;
+    headerWritten = false;
+    finish = false;
+    lastBlockWritten = false;
+    bytesRead = 0;
+    bytesWritten = 0;
+    windowPos = 0;
+    historyStart = 0;
+    if (dictionary != null) {
+      byte[] content = dictionary.content;
+      int n = Math.min(content.length, encoder.windowSize());
+      if (window.length < n + BLOCK_SIZE) {
+        window = new byte[n + BLOCK_SIZE];
+      }
+      System.arraycopy(content, content.length - n, window, 0, n);
+      encoder.insert(window, 0, n);
+      windowPos = n;
+    }
+    blockStart = windowPos;
+  }
+
+  @Override
+  public synchronized void end() {
+    window = new byte[0];
+  }
+
+  @Override
+  public synchronized void reinit(Configuration conf) {
+    if (conf != null) {
+      level = ZStandardCodec.getCompressionLevel(conf);
+    }
+    reset();
+  }
+}
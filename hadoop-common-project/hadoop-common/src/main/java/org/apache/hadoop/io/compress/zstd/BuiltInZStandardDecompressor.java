@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * A {@link Decompressor} of zstd frames in Java, for when the native
+ * library is not there. It decodes everything the zstd format allows
+ * except windows larger than {@link #MAX_WINDOW_SIZE}, and checks the
+ * content checksum and size of a frame when it has them. Like the native
+ * decompressor it is finished at the end of each frame, so that the
+ * {@link org.apache.hadoop.io.compress.DecompressorStream} goes on with
+ * the next one.
+ */
+public class BuiltInZStandardDecompressor implements Decompressor {
+  static final int MAGIC = 0xFD2FB528;
+  static final int SKIPPABLE_MAGIC = 0x184D2A50;
+  /** The largest window decoded, as the native library has by default. */
+  static final int MAX_WINDOW_SIZE = 1 << 27;
+
+  private static final int MAGIC_NUMBER = 0;
+  private static final int FRAME_HEADER_DESCRIPTOR = 1;
+  private static final int FRAME_HEADER = 2;
+  private static final int BLOCK_HEADER = 3;
+  private static final int BLOCK = 4;
+  private static final int CHECKSUM = 5;
+  private static final int SKIPPABLE_SIZE = 6;
+  private static final int SKIPPABLE = 7;
+  private static final int DONE = 8;
+
+  private static final int RAW = 0;
+  private static final int RLE = 1;
+  private static final int COMPRESSED = 2;
+
+  private static final int[] DICTIONARY_ID_SIZES = {0, 1, 2, 4};
+
+  private int state;
+
+  private byte[] userBuf;
+  private int userOff;
+  private int userLen;
+  /** A unit of input, such as a block, that came in several pieces. */
+  private byte[] pending = new byte[16];
+  private int pendingLen;
+  private byte[] unit;
+  private int unitOff;
+
+  private ZStandardDictionary dictionary;
+  private final BlockDecoder blocks = new BlockDecoder();
+  private final XXHash64 checksum = new XXHash64();
+
+  private int descriptor;
+  private boolean hasChecksum;
+  private long windowSize;
+  /** The window and the dictionary, which matches may reach back to. */
+  private long historySize;
+  private int blockMax;
+  private long contentSize;
+  private long decoded;
+  private long skip;
+
+  private boolean lastBlock;
+  private int blockType;
+  private int blockSize;
+
+  /** The decoded data, with history before the output not yet read. */
+  private byte[] window = new byte[0];
+  private int windowPos;
+  private int readPos;
+  private int historyStart;
+
+  public BuiltInZStandardDecompressor() {
+    reset();
+  }
+
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    userBuf = b;
+    userOff = off;
+    userLen = len;
+  }
+
+  @Override
+  public synchronized boolean needsInput() {
+    return state != DONE && readPos == windowPos && userLen == 0;
+  }
+
+  /**
+   * Use the given dictionary, in the format of the zstd dictionary builder
+   * or as raw content, from the next frame on; an empty one clears it.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    if (len == 0 && dictionary == null) {
+      return;
+    }
+    try {
+      dictionary = len == 0 ? null : ZStandardDictionary.parse(b, off, len);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid zstd dictionary", e);
+    }
+  }
+
+  @Override
+  public synchronized boolean needsDictionary() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean finished() {
+    return state == DONE && readPos == windowPos;
+  }
+
+  @Override
+  public synchronized int decompress(byte[] b, int off, int len)
+      throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    while (readPos == windowPos) {
+      if (state == DONE || !step()) {
+        return 0;
+      }
+    }
+    int n = Math.min(len, windowPos - readPos);
+    System.arraycopy(window, readPos, b, off, n);
+    readPos += n;
+    return n;
+  }
+
+  @Override
+  public synchronized int getRemaining() {
+    return userLen;
+  }
+
+  @Override
+  public synchronized void reset() {
+    state = MAGIC_NUMBER;
+    userLen = 0;
+    pendingLen = 0;
+    windowPos = 0;
+    readPos = 0;
+    historyStart = 0;
+  }
+
+  @Override
+  public synchronized void end() {
+    window = new byte[0];
+  }
+
+  /**
+   * Make the next n bytes of input available at unit[unitOff], from the
+   * user buffer if it has them all.
+   * @return false if there is not enough input yet
+   */
+  private boolean fill(int n) {
+    if (pendingLen == 0 && userLen >= n) {
+      unit = userBuf;
+      unitOff = userOff;
+      userOff += n;
+      userLen -= n;
+      return true;
+    }
+    if (userLen == 0) {
+      return false;
+    }
+    if (pending.length < n) {
+      byte[] b = new byte[Math.max(n, 2 * pending.length)];
+      System.arraycopy(pending, 0, b, 0, pendingLen);
+      pending = b;
+    }
+    int take = Math.min(n - pendingLen, userLen);
+    System.arraycopy(userBuf, userOff, pending, pendingLen, take);
+    pendingLen += take;
+    userOff += take;
+    userLen -= take;
+    if (pendingLen < n) {
+      return false;
+    }
+    unit = pending;
+    unitOff = 0;
+    pendingLen = 0;
+    return true;
+  }
+
+  /**
+   * Read the next part of a frame.
+   * @return false if there is not enough input for it
+   */
+  private boolean step() throws IOException {
+    switch (state) {
+    case MAGIC_NUMBER:
+      if (!fill(4)) {
+        return false;
+      }
+      int magic = XXHash64.readInt(unit, unitOff);
+      if (magic == MAGIC) {
+        state = FRAME_HEADER_DESCRIPTOR;
+      } else if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+        state = SKIPPABLE_SIZE;
+      } else {
+        throw new IOException("Not a zstd frame, magic number " +
+            Integer.toHexString(magic));
+      }
+      return true;
+
+    case FRAME_HEADER_DESCRIPTOR:
+      if (!fill(1)) {
+        return false;
+      }
+      descriptor = unit[unitOff] & 0xFF;
+      if ((descriptor & 8) != 0) {
+        throw new IOException("Reserved bit set in zstd frame header");
+      }
+      state = FRAME_HEADER;
+      return true;
+
+    case FRAME_HEADER:
+      if (!fill(frameHeaderSize(descriptor))) {
+        return false;
+      }
+      startFrame();
+      state = BLOCK_HEADER;
+      return true;
+
+    case BLOCK_HEADER:
+      if (!fill(3)) {
+        return false;
+      }
+      int header = (unit[unitOff] & 0xFF) | (unit[unitOff + 1] & 0xFF) << 8 |
+          (unit[unitOff + 2] & 0xFF) << 16;
+      lastBlock = (header & 1) != 0;
+      blockType = (header >>> 1) & 3;
+      blockSize = header >>> 3;
+      if (blockType == 3) {
+        throw new IOException("Reserved zstd block type");
+      }
+      if (blockSize > blockMax) {
+        throw new IOException("zstd block of " + blockSize +
+            " bytes is larger than the maximum of " + blockMax);
+      }
+      state = BLOCK;
+      return true;
+
+    case BLOCK:
+      if (!fill(blockType == RLE ? 1 : blockSize)) {
+        return false;
+      }
+      decodeBlock();
+      state = !lastBlock ? BLOCK_HEADER : hasChecksum ? CHECKSUM : DONE;
+      if (state == DONE) {
+        endFrame();
+      }
+      return true;
+
+    case CHECKSUM:
+      if (!fill(4)) {
+        return false;
+      }
+      if (XXHash64.readInt(unit, unitOff) != (int) checksum.digest()) {
+        throw new IOException("zstd frame checksum mismatch");
+      }
+      endFrame();
+      state = DONE;
+      return true;
+
+    case SKIPPABLE_SIZE:
+      if (!fill(4)) {
+        return false;
+      }
+      skip = XXHash64.readInt(unit, unitOff) & 0xFFFFFFFFL;
+      state = SKIPPABLE;
+      return true;
+
+    case SKIPPABLE:
+      int n = (int) Math.min(skip, userLen);
+      userOff += n;
+      userLen -= n;
+      skip -= n;
+      if (skip > 0) {
+        return false;
+      }
+      state = MAGIC_NUMBER;
+      return true;
+
+    default:
+      throw new IllegalStateException("state " + state);
+    }
+  }
+
+  private static int frameHeaderSize(int descriptor) {
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    int fcsFlag = descriptor >>> 6;
+    int size = singleSegment ? 0 : 1;
+    size += DICTIONARY_ID_SIZES[descriptor & 3];
+    size += fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+    return size;
+  }
+
+  private void startFrame() throws IOException {
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    hasChecksum = (descriptor & 4) != 0;
+    int p = unitOff;
+    if (!singleSegment) {
+      int wd = unit[p++] & 0xFF;
+      long base = 1L << (10 + (wd >>> 3));
+      windowSize = base + (base >>> 3) * (wd & 7);
+    }
+    int dictionaryId = 0;
+    switch (descriptor & 3) {
+    case 1:
+      dictionaryId = unit[p++] & 0xFF;
+      break;
+    case 2:
+      dictionaryId = (unit[p] & 0xFF) | (unit[p + 1] & 0xFF) << 8;
+      p += 2;
+      break;
+    case 3:
+      dictionaryId = XXHash64.readInt(unit, p);
+      p += 4;
+      break;
+    default:
+    }
+    switch (descriptor >>> 6) {
+    case 0:
+      contentSize = singleSegment ? unit[p] & 0xFF : -1;
+      break;
+    case 1:
+      contentSize = ((unit[p] & 0xFF) | (unit[p + 1] & 0xFF) << 8) + 256;
+      break;
+    case 2:
+      contentSize = XXHash64.readInt(unit, p) & 0xFFFFFFFFL;
+      break;
+    default:
+      contentSize = XXHash64.readLong(unit, p);
+    }
+    if (singleSegment) {
+      windowSize = contentSize;
+    }
+    if (windowSize < 0 || windowSize > MAX_WINDOW_SIZE) {
+      throw new IOException("zstd frame needs a window of " + windowSize +
+          " bytes, more than the maximum of " + MAX_WINDOW_SIZE);
+    }
+    blockMax = (int) Math.min(windowSize, BlockDecoder.MAX_BLOCK_SIZE);
+
+    ZStandardDictionary dict = dictionary;
+    if (dictionaryId != 0 && (dict == null || dict.id != dictionaryId)) {
+      throw new IOException("zstd frame needs dictionary " +
+          (dictionaryId & 0xFFFFFFFFL));
+    }
+    blocks.reset(dict);
+    checksum.reset();
+    decoded = 0;
+    windowPos = 0;
+    readPos = 0;
+    historyStart = 0;
+    historySize = windowSize;
+    if (dict != null) {
+      int n = dict.content.length;
+      historySize += n;
+      ensureWindow(n);
+      System.arraycopy(dict.content, 0, window, 0, n);
+      windowPos = n;
+      readPos = n;
+    }
+  }
+
+  private void endFrame() throws IOException {
+    if (contentSize >= 0 && contentSize != decoded) {
+      throw new IOException("zstd frame has " + decoded +
+          " bytes of content instead of " + contentSize);
+    }
+  }
+
+  /**
+   * Make room for n more bytes after windowPos, keeping the history before
+   * it.
+   */
+  private void ensureWindow(int n) {
+    if (windowPos + n <= window.length) {
+      return;
+    }
+    int keep = (int) Math.min(windowPos, historySize);
+    int shift = windowPos - keep;
+    if (keep + n <= window.length && shift >= keep) {
+      System.arraycopy(window, shift, window, 0, keep);
+    } else {
+      // grow up to twice the window, so that the history moves seldom
+      long size = Math.max(2 * (long) window.length, keep + n);
+      size = Math.max(Math.min(size, 2 * historySize + blockMax), keep + n);
+      byte[] b = new byte[(int) size];
+      System.arraycopy(window, shift, b, 0, keep);
+      window = b;
+    }
+    windowPos -= shift;
+    readPos -= shift;
+    historyStart = Math.max(0, historyStart - shift);
+  }
+
+  private void decodeBlock() throws IOException {
+    int size = blockType == COMPRESSED ? blockMax : blockSize;
+    ensureWindow(size);
+    int start = windowPos;
+    switch (blockType) {
+    case RAW:
+      System.arraycopy(unit, unitOff, window, windowPos, blockSize);
+      windowPos += blockSize;
+      break;
+    case RLE:
+      Arrays.fill(window, windowPos, windowPos + blockSize,
+          unit[unitOff]);
+      windowPos += blockSize;
+      break;
+    default:
+      windowPos = blocks.decode(unit, unitOff, blockSize, window, windowPos,
+          historyStart, blockMax);
+    }
+    int n = windowPos - start;
+    decoded += n;
+    if (contentSize >= 0 && decoded > contentSize) {
+      throw new IOException("zstd frame has more content than its size " +
+          contentSize);
+    }
+    if (hasChecksum) {
+      checksum.update(window, start, n);
+    }
+  }
+}
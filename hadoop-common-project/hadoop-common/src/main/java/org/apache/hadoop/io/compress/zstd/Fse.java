@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+
+/**
+ * Finite state entropy tables, as zstd uses them for the literals lengths,
+ * match lengths and offset codes of sequences and for Huffman weights.
+ */
+final class Fse {
+  static final int LL_MAX_SYMBOL = 35;
+  static final int ML_MAX_SYMBOL = 52;
+  static final int OF_MAX_SYMBOL = 31;
+  static final int LL_MAX_LOG = 9;
+  static final int ML_MAX_LOG = 9;
+  static final int OF_MAX_LOG = 8;
+
+  static final int LL_DEFAULT_LOG = 6;
+  static final short[] LL_DEFAULT_NORM = {
+    4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+    2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+    -1, -1, -1, -1
+  };
+  static final int ML_DEFAULT_LOG = 6;
+  static final short[] ML_DEFAULT_NORM = {
+    1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+    1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+    1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+    -1, -1, -1, -1, -1
+  };
+  static final int OF_DEFAULT_LOG = 5;
+  static final short[] OF_DEFAULT_NORM = {
+    1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+    1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1
+  };
+
+  /** Baseline and number of extra bits of each literals length code. */
+  static final int[] LL_BASE = new int[LL_MAX_SYMBOL + 1];
+  static final int[] LL_BITS = {
+    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+    1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+    13, 14, 15, 16
+  };
+  /** Baseline and number of extra bits of each match length code. */
+  static final int[] ML_BASE = new int[ML_MAX_SYMBOL + 1];
+  static final int[] ML_BITS = {
+    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+    1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+    12, 13, 14, 15, 16
+  };
+
+  static {
+    for (int code = 0, base = 0; code <= LL_MAX_SYMBOL; code++) {
+      LL_BASE[code] = base;
+      base += 1 << LL_BITS[code];
+    }
+    for (int code = 0, base = 3; code <= ML_MAX_SYMBOL; code++) {
+      ML_BASE[code] = base;
+      base += 1 << ML_BITS[code];
+    }
+  }
+
+  static final DecodingTable LL_DEFAULT =
+      new DecodingTable(LL_DEFAULT_LOG).build(LL_DEFAULT_NORM,
+          LL_DEFAULT_NORM.length - 1, LL_DEFAULT_LOG);
+  static final DecodingTable ML_DEFAULT =
+      new DecodingTable(ML_DEFAULT_LOG).build(ML_DEFAULT_NORM,
+          ML_DEFAULT_NORM.length - 1, ML_DEFAULT_LOG);
+  static final DecodingTable OF_DEFAULT =
+      new DecodingTable(OF_DEFAULT_LOG).build(OF_DEFAULT_NORM,
+          OF_DEFAULT_NORM.length - 1, OF_DEFAULT_LOG);
+
+  private Fse() {
+  }
+
+  /** The positions of the symbols in a table, shared by both directions. */
+  private static int spread(short[] norm, int maxSymbol, int log,
+      byte[] symbols) {
+    int size = 1 << log;
+    int mask = size - 1;
+    int high = size - 1;
+    for (int s = 0; s <= maxSymbol; s++) {
+      if (norm[s] == -1) {
+        symbols[high--] = (byte) s;
+      }
+    }
+    int step = (size >>> 1) + (size >>> 3) + 3;
+    int pos = 0;
+    for (int s = 0; s <= maxSymbol; s++) {
+      for (int i = 0; i < norm[s]; i++) {
+        symbols[pos] = (byte) s;
+        do {
+          pos = (pos + step) & mask;
+        } while (pos > high);
+      }
+    }
+    return pos;
+  }
+
+  /** A table to decode symbols with. */
+  static final class DecodingTable {
+    int log;
+    final byte[] symbol;
+    final byte[] bits;
+    final int[] base;
+
+    DecodingTable(int maxLog) {
+      symbol = new byte[1 << maxLog];
+      bits = new byte[1 << maxLog];
+      base = new int[1 << maxLog];
+    }
+
+    DecodingTable build(short[] norm, int maxSymbol, int log) {
+      this.log = log;
+      int size = 1 << log;
+      spread(norm, maxSymbol, log, symbol);
+      int[] next = new int[maxSymbol + 1];
+      for (int s = 0; s <= maxSymbol; s++) {
+        next[s] = norm[s] == -1 ? 1 : norm[s];
+      }
+      for (int i = 0; i < size; i++) {
+        int s = symbol[i] & 0xFF;
+        int n = next[s]++;
+        int b = log - BitReader.highBit(n);
+        bits[i] = (byte) b;
+        base[i] = (n << b) - size;
+      }
+      return this;
+    }
+
+    /** A table of one symbol, that takes no bits. */
+    void rle(int s) {
+      log = 0;
+      symbol[0] = (byte) s;
+      bits[0] = 0;
+      base[0] = 0;
+    }
+
+    /**
+     * Read a table description from b[off, end) and build the table.
+     * @return the number of bytes of the description
+     */
+    int read(byte[] b, int off, int end, int maxSymbol, int maxLog)
+        throws IOException {
+      short[] norm = new short[maxSymbol + 1];
+      int bitPos = 0;
+      int log = (int) bits(b, off, end, bitPos, 4) + 5;
+      bitPos += 4;
+      if (log > maxLog) {
+        throw new IOException("FSE table log " + log + " is too large");
+      }
+      int remaining = (1 << log) + 1;
+      int threshold = 1 << log;
+      int nbBits = log + 1;
+      int s = 0;
+      boolean previous0 = false;
+      while (remaining > 1 && s <= maxSymbol) {
+        if (previous0) {
+          int repeat;
+          do {
+            repeat = (int) bits(b, off, end, bitPos, 2);
+            bitPos += 2;
+            s += repeat;
+          } while (repeat == 3);
+          if (s > maxSymbol) {
+            break;
+          }
+        }
+        int max = 2 * threshold - 1 - remaining;
+        int count;
+        int v = (int) bits(b, off, end, bitPos, nbBits);
+        if ((v & (threshold - 1)) < max) {
+          count = v & (threshold - 1);
+          bitPos += nbBits - 1;
+        } else {
+          count = v & (2 * threshold - 1);
+          if (count >= threshold) {
+            count -= max;
+          }
+          bitPos += nbBits;
+        }
+        count--;
+        remaining -= count < 0 ? -count : count;
+        norm[s++] = (short) count;
+        previous0 = count == 0;
+        while (remaining < threshold) {
+          nbBits--;
+          threshold >>= 1;
+        }
+      }
+      int length = (bitPos + 7) >>> 3;
+      if (remaining != 1 || off + length > end) {
+        throw new IOException("Corrupt FSE table description");
+      }
+      build(norm, s - 1, log);
+      return length;
+    }
+
+    /** @return n <= 25 bits at bitPos of b[off, end), zero past the end. */
+    private static long bits(byte[] b, int off, int end, int bitPos, int n) {
+      int p = off + (bitPos >>> 3);
+      long v = 0;
+      for (int i = 3; i >= 0; i--) {
+        v = v << 8 | (p + i < end ? b[p + i] & 0xFF : 0);
+      }
+      return (v >>> (bitPos & 7)) & ((1L << n) - 1);
+    }
+  }
+
+  /** log2 of 0 to 512 in 1/256 bits, for the costs of symbols. */
+  private static final int[] LOG2 = new int[513];
+
+  static {
+    for (int i = 1; i < LOG2.length; i++) {
+      LOG2[i] = (int) Math.round(Math.log(i) / Math.log(2) * 256);
+    }
+  }
+
+  /**
+   * @return the table log for the counts of n symbols up to maxSymbol, at
+   *         most maxLog, as the reference chooses it
+   */
+  static int tableLog(int n, int maxSymbol, int maxLog) {
+    int log = Math.min(maxLog, BitReader.highBit(n - 1) - 2);
+    int min = Math.min(BitReader.highBit(n - 1) + 1,
+        BitReader.highBit(maxSymbol) + 2);
+    return Math.max(5, Math.max(log, min));
+  }
+
+  /**
+   * Scale the counts of n symbols to a total of 1 << log, with at least
+   * 1 for every symbol that occurs.
+   */
+  static void normalize(int[] counts, int n, int maxSymbol, int log,
+      short[] norm) {
+    int total = 1 << log;
+    int sum = 0;
+    int largest = 0;
+    for (int s = 0; s <= maxSymbol; s++) {
+      if (counts[s] == 0) {
+        norm[s] = 0;
+        continue;
+      }
+      int v = (int) Math.max(1,
+          (((long) counts[s] << log) + n / 2) / n);
+      norm[s] = (short) v;
+      sum += v;
+      if (v > norm[largest]) {
+        largest = s;
+      }
+    }
+    // the rounding errors go to the largest, or are taken from the
+    // largest ones while they stay above 1
+    if (sum < total) {
+      norm[largest] += total - sum;
+    }
+    while (sum > total) {
+      int s = 0;
+      for (int i = 1; i <= maxSymbol; i++) {
+        if (norm[i] > norm[s]) {
+          s = i;
+        }
+      }
+      int d = Math.min(sum - total, Math.max(1, norm[s] / 4));
+      norm[s] -= d;
+      sum -= d;
+    }
+  }
+
+  /**
+   * @return the cost in bits of the counts coded with the table, or
+   *         Integer.MAX_VALUE if it cannot code one of them
+   */
+  static int cost(int[] counts, int maxSymbol, short[] norm, int log) {
+    long cost = 0;
+    for (int s = 0; s <= maxSymbol; s++) {
+      if (counts[s] == 0) {
+        continue;
+      }
+      if (s >= norm.length || norm[s] == 0) {
+        return Integer.MAX_VALUE;
+      }
+      int n = norm[s] == -1 ? 1 : norm[s];
+      cost += (long) counts[s] * ((log << 8) - LOG2[n]);
+    }
+    return (int) Math.min(Integer.MAX_VALUE - 1, cost >>> 8);
+  }
+
+  /**
+   * Write the description of a table, as {@link DecodingTable#read} reads
+   * it, to out[pos, end).
+   * @return the end of the description, or -1 if it does not fit
+   */
+  static int write(short[] norm, int maxSymbol, int log, byte[] out,
+      int pos, int end) {
+    long bitStream = log - 5;
+    int bitCount = 4;
+    int remaining = (1 << log) + 1;
+    int threshold = 1 << log;
+    int nbBits = log + 1;
+    boolean previous0 = false;
+    for (int s = 0; s <= maxSymbol && remaining > 1;) {
+      if (previous0) {
+        int start = s;
+        while (norm[s] == 0) {
+          s++;
+        }
+        while (s >= start + 24) {
+          start += 24;
+          bitStream |= 0xFFFFL << bitCount;
+          if (end - pos < 2) {
+            return -1;
+          }
+          out[pos++] = (byte) bitStream;
+          out[pos++] = (byte) (bitStream >>> 8);
+          bitStream >>>= 16;
+        }
+        while (s >= start + 3) {
+          start += 3;
+          bitStream |= 3L << bitCount;
+          bitCount += 2;
+        }
+        bitStream |= (long) (s - start) << bitCount;
+        bitCount += 2;
+      }
+      int count = norm[s++];
+      int max = 2 * threshold - 1 - remaining;
+      remaining -= count < 0 ? -count : count;
+      count++;
+      if (count >= threshold) {
+        count += max;
+      }
+      bitStream |= (long) count << bitCount;
+      bitCount += count < max ? nbBits - 1 : nbBits;
+      previous0 = count == 1;
+      while (remaining < threshold) {
+        nbBits--;
+        threshold >>= 1;
+      }
+      while (bitCount >= 16) {
+        if (end - pos < 2) {
+          return -1;
+        }
+        out[pos++] = (byte) bitStream;
+        out[pos++] = (byte) (bitStream >>> 8);
+        bitStream >>>= 16;
+        bitCount -= 16;
+      }
+    }
+    for (; bitCount > 0; bitCount -= 8) {
+      if (pos == end) {
+        return -1;
+      }
+      out[pos++] = (byte) bitStream;
+      bitStream >>>= 8;
+    }
+    return pos;
+  }
+
+  /** A table to encode symbols with, built as the reference does. */
+  static final class EncodingTable {
+    int log;
+    private final int[] stateTable;
+    private final int[] deltaNbBits;
+    private final int[] deltaFindState;
+    private final byte[] symbols;
+    private final int[] cumul;
+
+    EncodingTable(int maxSymbol, int maxLog) {
+      stateTable = new int[1 << maxLog];
+      symbols = new byte[1 << maxLog];
+      deltaNbBits = new int[maxSymbol + 1];
+      deltaFindState = new int[maxSymbol + 1];
+      cumul = new int[maxSymbol + 2];
+    }
+
+    EncodingTable build(short[] norm, int maxSymbol, int log) {
+      this.log = log;
+      int size = 1 << log;
+      spread(norm, maxSymbol, log, symbols);
+      cumul[0] = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        cumul[s + 1] = cumul[s] + (norm[s] == -1 ? 1 : norm[s]);
+      }
+      for (int i = 0; i < size; i++) {
+        stateTable[cumul[symbols[i] & 0xFF]++] = size + i;
+      }
+      int total = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        int n = norm[s];
+        if (n == 0) {
+          deltaNbBits[s] = ((log + 1) << 16) - size;
+        } else if (n == -1 || n == 1) {
+          deltaNbBits[s] = (log << 16) - size;
+          deltaFindState[s] = total - 1;
+          total++;
+        } else {
+          int maxBitsOut = log - BitReader.highBit(n - 1);
+          int minStatePlus = n << maxBitsOut;
+          deltaNbBits[s] = (maxBitsOut << 16) - minStatePlus;
+          deltaFindState[s] = total - n;
+          total += n;
+        }
+      }
+      return this;
+    }
+    int initState(int s) {
+      int nbBitsOut = (deltaNbBits[s] + (1 << 15)) >> 16;
+      int value = (nbBitsOut << 16) - deltaNbBits[s];
+      return stateTable[(value >> nbBitsOut) + deltaFindState[s]];
+    }
+
+    int encode(BitWriter out, int state, int s) {
+      int nbBitsOut = (state + deltaNbBits[s]) >> 16;
+      out.add(state, nbBitsOut);
+      return stateTable[(state >> nbBitsOut) + deltaFindState[s]];
+    }
+
+    void flush(BitWriter out, int state) {
+      out.add(state, log);
+    }
+  }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Huffman coding of the literals of zstd blocks. */
+final class Huffman {
+  /** The longest codes written; the reference decoder takes one more. */
+  static final int MAX_BITS = 11;
+  private static final int MAX_TABLE_LOG = 12;
+  private static final int MAX_WEIGHT_LOG = 6;
+
+  private Huffman() {
+  }
+
+  /** A table to decode literals with, indexed by the next maxBits bits. */
+  static final class DecodingTable {
+    int maxBits;
+    final byte[] symbol = new byte[1 << MAX_TABLE_LOG];
+    final byte[] bits = new byte[1 << MAX_TABLE_LOG];
+    private final byte[] weights = new byte[256];
+    private Fse.DecodingTable weightTable;
+
+    /**
+     * Read a tree description at b[off, end) and build the table.
+     * @return the number of bytes of the description
+     */
+    int read(byte[] b, int off, int end) throws IOException {
+      if (off >= end) {
+        throw new IOException("Missing Huffman tree description");
+      }
+      int header = b[off] & 0xFF;
+      int n;
+      int length;
+      if (header >= 128) {
+        n = header - 127;
+        length = 1 + (n + 1) / 2;
+        if (off + length > end) {
+          throw new IOException("Truncated Huffman tree description");
+        }
+        for (int i = 0; i < n; i++) {
+          int v = b[off + 1 + i / 2];
+          weights[i] = (byte) ((i & 1) == 0 ? (v >>> 4) & 15 : v & 15);
+        }
+      } else {
+        length = 1 + header;
+        if (off + length > end) {
+          throw new IOException("Truncated Huffman tree description");
+        }
+        n = readFseWeights(b, off + 1, off + length);
+      }
+      build(n);
+      return length;
+    }
+
+    /** Decode weights compressed with two interleaved FSE states. */
+    private int readFseWeights(byte[] b, int off, int end)
+        throws IOException {
+      if (weightTable == null) {
+        weightTable = new Fse.DecodingTable(MAX_WEIGHT_LOG);
+      }
+      Fse.DecodingTable t = weightTable;
+      off += t.read(b, off, end, MAX_TABLE_LOG, MAX_WEIGHT_LOG);
+      BitReader in = new BitReader(b, off, end - off);
+      in.reload();
+      int state1 = in.read(t.log);
+      int state2 = in.read(t.log);
+      int n = 0;
+      while (true) {
+        if (n > 253) {
+          throw new IOException("Too many Huffman weights");
+        }
+        weights[n++] = t.symbol[state1];
+        state1 = t.base[state1] + in.read(t.bits[state1]);
+        if (in.reload() == BitReader.OVERFLOW) {
+          weights[n++] = t.symbol[state2];
+          break;
+        }
+        weights[n++] = t.symbol[state2];
+        state2 = t.base[state2] + in.read(t.bits[state2]);
+        if (in.reload() == BitReader.OVERFLOW) {
+          weights[n++] = t.symbol[state1];
+          break;
+        }
+      }
+      return n;
+    }
+
+    /** Build the table from the first n weights, the last one implied. */
+    private void build(int n) throws IOException {
+      int total = 0;
+      for (int i = 0; i < n; i++) {
+        int w = weights[i];
+        if (w > MAX_TABLE_LOG) {
+          throw new IOException("Huffman weight " + w + " is too large");
+        }
+        total += w == 0 ? 0 : 1 << (w - 1);
+      }
+      if (total == 0) {
+        throw new IOException("Huffman tree without weights");
+      }
+      maxBits = BitReader.highBit(total) + 1;
+      int rest = (1 << maxBits) - total;
+      if (maxBits > MAX_TABLE_LOG || Integer.bitCount(rest) != 1) {
+        throw new IOException("Corrupt Huffman tree description");
+      }
+      weights[n] = (byte) (BitReader.highBit(rest) + 1);
+      int pos = 0;
+      for (int w = 1; w <= maxBits; w++) {
+        for (int s = 0; s <= n; s++) {
+          if (weights[s] == w) {
+            int span = 1 << (w - 1);
+            Arrays.fill(symbol, pos, pos + span, (byte) s);
+            Arrays.fill(bits, pos, pos + span, (byte) (maxBits + 1 - w));
+            pos += span;
+          }
+        }
+      }
+    }
+
+    /** Decode a single stream of src[off, off + len) into dst. */
+    void decode1(byte[] src, int off, int len, byte[] dst, int dstOff,
+        int count) throws IOException {
+      BitReader in = new BitReader(src, off, len);
+      int end = dstOff + count;
+      int shift = maxBits;
+      for (int i = dstOff; i < end; i++) {
+        in.reload();
+        int index = (int) in.peek(shift);
+        dst[i] = symbol[index];
+        in.skip(bits[index]);
+      }
+      in.reload();
+      if (!in.isEnd()) {
+        throw new IOException("Corrupt Huffman literals stream");
+      }
+    }
+
+    /** Decode the four streams of src[off, off + len) into dst. */
+    void decode4(byte[] src, int off, int len, byte[] dst, int dstOff,
+        int count) throws IOException {
+      if (len < 10) {
+        throw new IOException("Truncated Huffman literals jump table");
+      }
+      int size1 = (src[off] & 0xFF) | (src[off + 1] & 0xFF) << 8;
+      int size2 = (src[off + 2] & 0xFF) | (src[off + 3] & 0xFF) << 8;
+      int size3 = (src[off + 4] & 0xFF) | (src[off + 5] & 0xFF) << 8;
+      int size4 = len - 6 - size1 - size2 - size3;
+      int segment = (count + 3) / 4;
+      int last = count - 3 * segment;
+      if (size4 < 1 || last < 0) {
+        throw new IOException("Corrupt Huffman literals jump table");
+      }
+      int p = off + 6;
+      decode1(src, p, size1, dst, dstOff, segment);
+      p += size1;
+      decode1(src, p, size2, dst, dstOff + segment, segment);
+      p += size2;
+      decode1(src, p, size3, dst, dstOff + 2 * segment, segment);
+      p += size3;
+      decode1(src, p, size4, dst, dstOff + 3 * segment, last);
+    }
+  }
+
+  /**
+   * Builds length limited codes for a histogram of literals and writes
+   * them. Only trees that can be described with direct weights, for up to
+   * 128 symbols, are used; the literals are stored raw otherwise.
+   */
+  static final class Encoder {
+    private static final int MAX_DIRECT_SYMBOL = 127;
+
+    final int[] codes = new int[256];
+    final byte[] lengths = new byte[256];
+    private int maxBits;
+    private int maxSymbol;
+    private final int[] sorted = new int[256];
+    private final long[] weight = new long[512];
+    private final int[] parent = new int[512];
+
+    /**
+     * @return whether literals with the counts, of at least two symbols,
+     *         can be coded
+     */
+    boolean build(int[] counts) {
+      maxSymbol = 255;
+      while (maxSymbol >= 0 && counts[maxSymbol] == 0) {
+        maxSymbol--;
+      }
+      if (maxSymbol > MAX_DIRECT_SYMBOL) {
+        return false;
+      }
+      int n = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        if (counts[s] > 0) {
+          // ordered by count, then symbol
+          weight[n] = (long) counts[s] << 8 | s;
+          n++;
+        }
+      }
+      if (n < 2) {
+        return false;
+      }
+      Arrays.sort(weight, 0, n);
+      for (int i = 0; i < n; i++) {
+        sorted[i] = (int) (weight[i] & 0xFF);
+        weight[i] >>>= 8;
+      }
+      // two queues, of the leaves and of the internal nodes in order
+      int leaf = 0;
+      int node = n;
+      for (int next = n; next < 2 * n - 1; next++) {
+        int a = leaf < n && (node >= next || weight[leaf] <= weight[node])
+            ? leaf++ : node++;
+        int b = leaf < n && (node >= next || weight[leaf] <= weight[node])
+            ? leaf++ : node++;
+        weight[next] = weight[a] + weight[b];
+        parent[a] = next;
+        parent[b] = next;
+      }
+      Arrays.fill(lengths, (byte) 0);
+      int[] depth = new int[2 * n - 1];
+      int longest = 0;
+      for (int i = 2 * n - 3; i >= 0; i--) {
+        depth[i] = depth[parent[i]] + 1;
+        if (i < n) {
+          longest = Math.max(longest, depth[i]);
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        lengths[sorted[i]] = (byte) Math.min(depth[i], MAX_BITS);
+      }
+      if (longest > MAX_BITS) {
+        limitLengths(counts);
+      }
+      assignCodes();
+      return true;
+    }
+
+    /** Make the clamped lengths a complete prefix code again. */
+    private void limitLengths(int[] counts) {
+      int full = 1 << MAX_BITS;
+      int kraft = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        if (lengths[s] > 0) {
+          kraft += full >>> lengths[s];
+        }
+      }
+      // lengthen the rarest of the longest codes shorter than the limit
+      while (kraft > full) {
+        int best = -1;
+        for (int s = 0; s <= maxSymbol; s++) {
+          if (lengths[s] > 0 && lengths[s] < MAX_BITS && (best < 0 ||
+              lengths[s] > lengths[best] ||
+              (lengths[s] == lengths[best] && counts[s] < counts[best]))) {
+            best = s;
+          }
+        }
+        kraft -= full >>> (lengths[best] + 1);
+        lengths[best]++;
+      }
+      // and shorten the most frequent codes while there is room
+      while (kraft < full) {
+        int best = -1;
+        for (int s = 0; s <= maxSymbol; s++) {
+          if (lengths[s] > 1 && kraft + (full >>> lengths[s]) <= full &&
+              (best < 0 || counts[s] > counts[best])) {
+            best = s;
+          }
+        }
+        if (best < 0) {
+          break;
+        }
+        kraft += full >>> lengths[best];
+        lengths[best]--;
+      }
+    }
+
+    /** The canonical codes that {@link DecodingTable} decodes. */
+    private void assignCodes() {
+      maxBits = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        maxBits = Math.max(maxBits, lengths[s]);
+      }
+      int pos = 0;
+      for (int len = maxBits; len >= 1; len--) {
+        for (int s = 0; s <= maxSymbol; s++) {
+          if (lengths[s] == len) {
+            codes[s] = pos >>> (maxBits - len);
+            pos += 1 << (maxBits - len);
+          }
+        }
+      }
+    }
+
+    /** @return the size of the tree description and the coded literals. */
+    int estimate(int[] counts) {
+      long bits = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        bits += (long) counts[s] * lengths[s];
+      }
+      return (int) ((bits + 7) >>> 3) + 1 + maxSymbol / 2;
+    }
+
+    /** Write the weights of all but the last symbol. */
+    int writeTree(byte[] out, int pos) {
+      int n = maxSymbol;
+      out[pos++] = (byte) (127 + n);
+      for (int i = 0; i < n; i += 2) {
+        int hi = weight(i);
+        int lo = i + 1 < n ? weight(i + 1) : 0;
+        out[pos++] = (byte) (hi << 4 | lo);
+      }
+      return pos;
+    }
+
+    private int weight(int s) {
+      return lengths[s] == 0 ? 0 : maxBits + 1 - lengths[s];
+    }
+
+    /**
+     * Code src[off, off + len) as one stream into out[pos, end).
+     * @return the end of the stream, or -1 if it does not fit
+     */
+    int encode1(byte[] src, int off, int len, byte[] out, int pos,
+        int end) {
+      BitWriter w = new BitWriter(out, pos, end);
+      for (int i = off + len - 1; i >= off; i--) {
+        int s = src[i] & 0xFF;
+        w.add(codes[s], lengths[s]);
+      }
+      int p = w.close();
+      return w.overflow() ? -1 : p;
+    }
+
+    /** Code src[off, off + len) as four streams with the jump table. */
+    int encode4(byte[] src, int off, int len, byte[] out, int pos,
+        int end) {
+      if (end - pos < 6) {
+        return -1;
+      }
+      int segment = (len + 3) / 4;
+      int p = pos + 6;
+      for (int i = 0; i < 4; i++) {
+        int start = off + i * segment;
+        int n = i < 3 ? segment : len - 3 * segment;
+        int q = encode1(src, start, n, out, p, end);
+        if (q < 0 || (i < 3 && q - p > 0xFFFF)) {
+          return -1;
+        }
+        if (i < 3) {
+          out[pos + 2 * i] = (byte) (q - p);
+          out[pos + 2 * i + 1] = (byte) ((q - p) >>> 8);
+        }
+        p = q;
+      }
+      return p;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress.zstd;
+
+/**
+ * The 64 bit xxHash with seed 0, of which the low 32 bits are the content
+ * checksum of a zstd frame.
+ */
+final class XXHash64 {
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  private long v1, v2, v3, v4;
+  private long length;
+  /** Input that is not a full stripe of 32 bytes yet. */
+  private final byte[] buffer = new byte[32];
+  private int buffered;
+
+  XXHash64() {
+    reset();
+  }
+
+  void reset() {
+    v1 = PRIME1 + PRIME2;
+    v2 = PRIME2;
+    v3 = 0;
+    v4 = -PRIME1;
+    length = 0;
+    buffered = 0;
+  }
+
+  void update(byte[] b, int off, int len) {
+    length += len;
+    if (buffered > 0) {
+      int n = Math.min(len, 32 - buffered);
+      System.arraycopy(b, off, buffer, buffered, n);
+      buffered += n;
+      off += n;
+      len -= n;
+      if (buffered < 32) {
+        return;
+      }
+      stripe(buffer, 0);
+      buffered = 0;
+    }
+    for (; len >= 32; off += 32, len -= 32) {
+      stripe(b, off);
+    }
+    System.arraycopy(b, off, buffer, 0, len);
+    buffered = len;
+  }
+
+  private void stripe(byte[] b, int off) {
+    v1 = round(v1, readLong(b, off));
+    v2 = round(v2, readLong(b, off + 8));
+    v3 = round(v3, readLong(b, off + 16));
+    v4 = round(v4, readLong(b, off + 24));
+  }
+
+  long digest() {
+    long h;
+    if (length >= 32) {
+      h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+          Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      h = merge(h, v1);
+      h = merge(h, v2);
+      h = merge(h, v3);
+      h = merge(h, v4);
+    } else {
+      h = PRIME5;
+    }
+    h += length;
+
+    int i = 0;
+    for (; i + 8 <= buffered; i += 8) {
+      h ^= round(0, readLong(buffer, i));
+      h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+    }
+    if (i + 4 <= buffered) {
+      h ^= (readInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+      h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+      i += 4;
+    }
+    for (; i < buffered; i++) {
+      h ^= (buffer[i] & 0xFF) * PRIME5;
+      h = Long.rotateLeft(h, 11) * PRIME1;
+    }
+
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+  private static long merge(long acc, long v) {
+    acc ^= round(0, v);
+    return acc * PRIME1 + PRIME4;
+  }
+
+  static int readInt(byte[] b, int off) {
+    return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 |
+        (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+  }
+
+  static long readLong(byte[] b, int off) {
+    return (readInt(b, off) & 0xFFFFFFFFL) |
+        ((long) readInt(b, off + 4)) << 32;
+  }
+}
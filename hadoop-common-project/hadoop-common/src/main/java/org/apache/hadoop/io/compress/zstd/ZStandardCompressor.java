@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+import org.apache.hadoop.util.NativeCodeLoader;
+
+/**
+ * A {@link Compressor} based on the streaming API of the native zstd
+ * library. http://facebook.github.io/zstd/
+ */
+public class ZStandardCompressor implements Compressor {
+  private static final Log LOG =
+      LogFactory.getLog(ZStandardCompressor.class.getName());
+
+  private long stream;
+  private int level;
+  private int directBufferSize;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  private ByteBuffer uncompressedDirectBuf = null;
+  private int uncompressedDirectBufOff = 0, uncompressedDirectBufLen = 0;
+  private ByteBuffer compressedDirectBuf = null;
+  private boolean finish, finished;
+  private long bytesRead = 0;
+  private long bytesWritten = 0;
+  private byte[] dictionary;
+
+  private static boolean nativeZStandardLoaded = false;
+
+  static {
+    if (NativeCodeLoader.isNativeCodeLoaded()) {
+      try {
+        // Initialize the native library
+        initIDs();
+        nativeZStandardLoaded = true;
+      } catch (Throwable t) {
+        // Ignore failure to load/initialize native zstd
+        LOG.debug("Cannot load native zstd: " + t);
+      }
+    }
+  }
+
+  public static boolean isNativeCodeLoaded() {
+    return nativeZStandardLoaded;
+  }
+
+  /** @return the output buffer size the library recommends */
+  public static int getRecommendedBufferSize() {
+    return getStreamSize();
+  }
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param level the compression level
+   * @param bufferSize size of the direct buffers to be used.
+   */
+  public ZStandardCompressor(int level, int bufferSize) {
+    this(level, bufferSize, bufferSize);
+  }
+
+  ZStandardCompressor(int level, int inputBufferSize, int outputBufferSize) {
+    this.level = level;
+    this.directBufferSize = outputBufferSize;
+    stream = create();
+    uncompressedDirectBuf = ByteBuffer.allocateDirect(inputBufferSize);
+    compressedDirectBuf = ByteBuffer.allocateDirect(outputBufferSize);
+    compressedDirectBuf.position(outputBufferSize);
+    reset();
+  }
+
+  /**
+   * Prepare the compressor to be used in a new stream with settings defined
+   * in the given Configuration. It will reset the compressor's compression
+   * level.
+   *
+   * @param conf Configuration storing new settings
+   */
+  @Override
+  public synchronized void reinit(Configuration conf) {
+    if (conf != null) {
+      level = ZStandardCodec.getCompressionLevel(conf);
+    }
+    reset();
+  }
+
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    this.userBuf = b;
+    this.userBufOff = off;
+    this.userBufLen = len;
+    setInputFromSavedData();
+  }
+
+  /** Copy as much of the user input as fits to the input buffer. */
+  private void setInputFromSavedData() {
+    if (uncompressedDirectBufOff == uncompressedDirectBufLen) {
+      uncompressedDirectBuf.clear();
+      uncompressedDirectBufOff = 0;
+      uncompressedDirectBufLen = 0;
+    }
+    int len = Math.min(userBufLen, uncompressedDirectBuf.remaining());
+    uncompressedDirectBuf.put(userBuf, userBufOff, len);
+    userBufOff += len;
+    userBufLen -= len;
+    uncompressedDirectBufLen = uncompressedDirectBuf.position();
+  }
+
+  /**
+   * Compress with the given dictionary, in the format of the zstd
+   * dictionary builder or as raw content, from the next frame on; an empty
+   * one clears it.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    if (len == 0 && dictionary == null) {
+      return;
+    }
+    dictionary = len == 0 ? null : Arrays.copyOfRange(b, off, off + len);
+    reset();
+  }
+
+  @Override
+  public synchronized boolean needsInput() {
+    // Consume remaining compressed data?
+    if (compressedDirectBuf.remaining() > 0) {
+      return false;
+    }
+    // Is there input the library has not taken yet?
+    if (uncompressedDirectBufOff < uncompressedDirectBufLen) {
+      return false;
+    }
+    if (userBufLen > 0) {
+      setInputFromSavedData();
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized void finish() {
+    finish = true;
+  }
+
+  @Override
+  public synchronized boolean finished() {
+    // Check if the library has written the end of the frame
+    // and all compressed data has been consumed
+    return finished && compressedDirectBuf.remaining() == 0;
+  }
+
+  @Override
+  public synchronized int compress(byte[] b, int off, int len)
+      throws IOException {
+    checkStream();
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    // Check if there is compressed data
+    int n = compressedDirectBuf.remaining();
+    if (n == 0) {
+      if (finished) {
+        return 0;
+      }
+      if (uncompressedDirectBufOff == uncompressedDirectBufLen &&
+          userBufLen > 0) {
+        setInputFromSavedData();
+      }
+      // Re-initialize the output direct buffer
+      compressedDirectBuf.clear();
+      int consumed = uncompressedDirectBufOff;
+      n = deflateBytesDirect(uncompressedDirectBuf, uncompressedDirectBufOff,
+          uncompressedDirectBufLen, compressedDirectBuf, directBufferSize,
+          finish && userBufLen == 0);
+      bytesRead += uncompressedDirectBufOff - consumed;
+      bytesWritten += n;
+      compressedDirectBuf.limit(n);
+    }
+
+    // Get at most 'len' bytes
+    n = Math.min(n, len);
+    compressedDirectBuf.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * Returns the total number of compressed bytes output so far.
+   *
+   * @return the total (non-negative) number of compressed bytes output so far
+   */
+  @Override
+  public synchronized long getBytesWritten() {
+    checkStream();
+    return bytesWritten;
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes input so far.</p>
+   *
+   * @return the total (non-negative) number of uncompressed bytes input so far
+   */
+  @Override
+  public synchronized long getBytesRead() {
+    checkStream();
+    return bytesRead;
+  }
+
+  @Override
+  public synchronized void reset() {
+    checkStream();
+    init(level, dictionary, stream);
+    finish = false;
+    finished = false;
+    bytesRead = 0;
+    bytesWritten = 0;
+    uncompressedDirectBuf.clear();
+    uncompressedDirectBufOff = 0;
+    uncompressedDirectBufLen = 0;
+    compressedDirectBuf.limit(directBufferSize);
+    compressedDirectBuf.position(directBufferSize);
+    userBufOff = 0;
+    userBufLen = 0;
+  }
+
+  @Override
+  public synchronized void end() {
+    if (stream != 0) {
+      end(stream);
+      stream = 0;
+    }
+  }
+
+  @Override
+  protected void finalize() {
+    end();
+  }
+
+  private void checkStream() {
+    if (stream == 0) {
+      throw new NullPointerException("Stream not initialized");
+    }
+  }
+
+  private native static void initIDs();
+  private native static long create();
+  private native static void init(int level, byte[] dictionary, long stream);
+  private native int deflateBytesDirect(ByteBuffer src, int srcOffset,
+      int srcLen, ByteBuffer dst, int dstLen, boolean end);
+  private native static void end(long strm);
+  private native static int getStreamSize();
+  public native static String getLibraryName();
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.NativeCodeLoader;
+
+/**
+ * A {@link Decompressor} based on the streaming API of the native zstd
+ * library. It is finished at the end of each frame.
+ */
+public class ZStandardDecompressor implements Decompressor {
+  private static final Log LOG =
+      LogFactory.getLog(ZStandardDecompressor.class.getName());
+
+  private long stream;
+  private int directBufferSize;
+  private ByteBuffer compressedDirectBuf = null;
+  private int compressedDirectBufOff, bytesInCompressedBuffer;
+  private ByteBuffer uncompressedDirectBuf = null;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufferBytesToConsume = 0;
+  private boolean finished;
+  private byte[] dictionary;
+
+  private static boolean nativeZStandardLoaded = false;
+
+  static {
+    if (NativeCodeLoader.isNativeCodeLoaded()) {
+      try {
+        // Initialize the native library
+        initIDs();
+        nativeZStandardLoaded = true;
+      } catch (Throwable t) {
+        // Ignore failure to load/initialize native zstd
+        LOG.debug("Cannot load native zstd: " + t);
+      }
+    }
+  }
+
+  public static boolean isNativeCodeLoaded() {
+    return nativeZStandardLoaded;
+  }
+
+  /** @return the output buffer size the library recommends */
+  public static int getRecommendedBufferSize() {
+    return getStreamSize();
+  }
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param bufferSize size of the direct buffers to be used.
+   */
+  public ZStandardDecompressor(int bufferSize) {
+    this.directBufferSize = bufferSize;
+    compressedDirectBuf = ByteBuffer.allocateDirect(directBufferSize);
+    uncompressedDirectBuf = ByteBuffer.allocateDirect(directBufferSize);
+    uncompressedDirectBuf.position(directBufferSize);
+    stream = create();
+    reset();
+  }
+
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    this.userBuf = b;
+    this.userBufOff = off;
+    this.userBufferBytesToConsume = len;
+    setInputFromSavedData();
+  }
+
+  /** Copy as much of the user input as fits to the input buffer. */
+  private void setInputFromSavedData() {
+    compressedDirectBufOff = 0;
+    bytesInCompressedBuffer = Math.min(userBufferBytesToConsume,
+        directBufferSize);
+    compressedDirectBuf.clear();
+    compressedDirectBuf.put(userBuf, userBufOff, bytesInCompressedBuffer);
+    userBufOff += bytesInCompressedBuffer;
+    userBufferBytesToConsume -= bytesInCompressedBuffer;
+  }
+
+  /**
+   * Use the given dictionary, in the format of the zstd dictionary builder
+   * or as raw content, from the next frame on; an empty one clears it.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    if (len == 0 && dictionary == null) {
+      return;
+    }
+    dictionary = len == 0 ? null : Arrays.copyOfRange(b, off, off + len);
+    reset();
+  }
+
+  @Override
+  public synchronized boolean needsInput() {
+    // Consume remaining uncompressed data?
+    if (uncompressedDirectBuf.remaining() > 0) {
+      return false;
+    }
+    // Check if we have consumed all input
+    if (bytesInCompressedBuffer - compressedDirectBufOff <= 0) {
+      // Check if we have consumed all user-input
+      if (userBufferBytesToConsume <= 0) {
+        return true;
+      }
+      setInputFromSavedData();
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized boolean needsDictionary() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean finished() {
+    // the library has reached the end of a frame
+    // and all uncompressed data has been consumed
+    return finished && uncompressedDirectBuf.remaining() == 0;
+  }
+
+  @Override
+  public synchronized int decompress(byte[] b, int off, int len)
+      throws IOException {
+    checkStream();
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    // Check if there is uncompressed data
+    int n = uncompressedDirectBuf.remaining();
+    if (n == 0) {
+      if (finished) {
+        return 0;
+      }
+      if (bytesInCompressedBuffer == compressedDirectBufOff &&
+          userBufferBytesToConsume > 0) {
+        setInputFromSavedData();
+      }
+      // Re-initialize the output direct buffer
+      uncompressedDirectBuf.clear();
+      n = inflateBytesDirect(compressedDirectBuf, compressedDirectBufOff,
+          bytesInCompressedBuffer, uncompressedDirectBuf, 0,
+          directBufferSize);
+      uncompressedDirectBuf.limit(n);
+    }
+
+    // Get at most 'len' bytes
+    n = Math.min(n, len);
+    uncompressedDirectBuf.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * Returns the number of bytes remaining in the input buffers;
+   * normally called when finished() is true to determine amount of
+   * post-frame data.
+   *
+   * @return the total (non-negative) number of unprocessed bytes in input
+   */
+  @Override
+  public synchronized int getRemaining() {
+    checkStream();
+    return userBufferBytesToConsume +
+        (bytesInCompressedBuffer - compressedDirectBufOff);
+  }
+
+  @Override
+  public synchronized void reset() {
+    checkStream();
+    init(dictionary, stream);
+    finished = false;
+    compressedDirectBufOff = 0;
+    bytesInCompressedBuffer = 0;
+    uncompressedDirectBuf.limit(directBufferSize);
+    uncompressedDirectBuf.position(directBufferSize);
+    userBufOff = 0;
+    userBufferBytesToConsume = 0;
+  }
+
+  @Override
+  public synchronized void end() {
+    if (stream != 0) {
+      end(stream);
+      stream = 0;
+    }
+  }
+
+  @Override
+  protected void finalize() {
+    end();
+  }
+
+  private void checkStream() {
+    if (stream == 0) {
+      throw new NullPointerException("Stream not initialized");
+    }
+  }
+
+  private native static void initIDs();
+  private native static long create();
+  private native static void init(byte[] dictionary, long stream);
+  private native int inflateBytesDirect(ByteBuffer src, int srcOffset,
+      int srcLen, ByteBuffer dst, int dstOffset, int dstLen)
+      throws IOException;
+  private native static void end(long strm);
+  private native static int getStreamSize();
+}
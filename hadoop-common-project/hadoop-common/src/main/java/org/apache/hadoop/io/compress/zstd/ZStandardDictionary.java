@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A zstd dictionary: either one in the format of the zstd dictionary
+ * builder, with its ID, entropy tables and repeat offsets for the first
+ * block, or any other bytes as raw content, with ID 0.
+ */
+final class ZStandardDictionary {
+  static final int MAGIC = 0xEC30A437;
+
+  final int id;
+  final byte[] content;
+  /** The tables of a formatted dictionary, null for raw content. */
+  final Huffman.DecodingTable huffman;
+  final Fse.DecodingTable offsets;
+  final Fse.DecodingTable matchLengths;
+  final Fse.DecodingTable literalsLengths;
+  final int[] repeats;
+
+  private ZStandardDictionary(int id, byte[] content,
+      Huffman.DecodingTable huffman, Fse.DecodingTable offsets,
+      Fse.DecodingTable matchLengths, Fse.DecodingTable literalsLengths,
+      int[] repeats) {
+    this.id = id;
+    this.content = content;
+    this.huffman = huffman;
+    this.offsets = offsets;
+    this.matchLengths = matchLengths;
+    this.literalsLengths = literalsLengths;
+    this.repeats = repeats;
+  }
+
+  static ZStandardDictionary parse(byte[] b, int off, int len)
+      throws IOException {
+    if (len < 8 || XXHash64.readInt(b, off) != MAGIC) {
+      return new ZStandardDictionary(0, Arrays.copyOfRange(b, off, off + len),
+          null, null, null, null, null);
+    }
+    int id = XXHash64.readInt(b, off + 4);
+    int end = off + len;
+    int p = off + 8;
+    Huffman.DecodingTable huffman = new Huffman.DecodingTable();
+    p += huffman.read(b, p, end);
+    Fse.DecodingTable offsets = new Fse.DecodingTable(Fse.OF_MAX_LOG);
+    p += offsets.read(b, p, end, Fse.OF_MAX_SYMBOL, Fse.OF_MAX_LOG);
+    Fse.DecodingTable matchLengths = new Fse.DecodingTable(Fse.ML_MAX_LOG);
+    p += matchLengths.read(b, p, end, Fse.ML_MAX_SYMBOL, Fse.ML_MAX_LOG);
+    Fse.DecodingTable literalsLengths =
+        new Fse.DecodingTable(Fse.LL_MAX_LOG);
+    p += literalsLengths.read(b, p, end, Fse.LL_MAX_SYMBOL, Fse.LL_MAX_LOG);
+    if (p + 12 > end) {
+      throw new IOException("Truncated zstd dictionary");
+    }
+    int[] repeats = new int[3];
+    for (int i = 0; i < 3; i++, p += 4) {
+      repeats[i] = XXHash64.readInt(b, p);
+      if (repeats[i] <= 0 || repeats[i] > end - p - 12 + 4 * i) {
+        throw new IOException("Invalid repeat offset in zstd dictionary");
+      }
+    }
+    return new ZStandardDictionary(id, Arrays.copyOfRange(b, p, end),
+        huffman, offsets, matchLengths, literalsLengths, repeats);
+  }
+}
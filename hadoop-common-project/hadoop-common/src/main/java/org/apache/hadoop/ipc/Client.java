@@ -20,6 +20,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 import com.google.common.cache.Cache;
@@ -66,6 +67,10 @@
 import javax.security.sasl.Sasl;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.security.PrivilegedExceptionAction;
 import java.util.*;
 import java.util.Map.Entry;
@@ -91,7 +96,7 @@ public class Client implements AutoCloseable {
 
   private static final ThreadLocal<Integer> callId = new ThreadLocal<Integer>();
   private static final ThreadLocal<Integer> retryCount = new ThreadLocal<Integer>();
-  private static final ThreadLocal<Future<?>> ASYNC_RPC_RESPONSE
+  private static final ThreadLocal<ListenableFuture<?>> ASYNC_RPC_RESPONSE
       = new ThreadLocal<>();
   private static final ThreadLocal<Boolean> asynchronousMode =
       new ThreadLocal<Boolean>() {
@@ -107,6 +112,20 @@ public static <T> Future<T> getAsyncRpcResponse() {
     return (Future<T>) ASYNC_RPC_RESPONSE.get();
   }
 
+  /**
+   * @return the response of the last call of this thread in asynchronous
+   *         mode, as a future that is done as soon as the response is
+   *         received. Its listeners run on the thread that reads the
+   *         response, unless they are given an executor, so they should
+   *         not block. Once it is done, the call no longer counts towards
+   *         the limit of asynchronous calls.
+   */
+  @SuppressWarnings("unchecked")
+  @Unstable
+  public static <T> ListenableFuture<T> getAsyncRpcResponseFuture() {
+    return (ListenableFuture<T>) ASYNC_RPC_RESPONSE.get();
+  }
+
   /** Set call id and retry count for the next call. */
   public static void setCallIdAndRetryCount(int cid, int rc) {
     Preconditions.checkArgument(cid != RpcConstants.INVALID_CALL_ID);
@@ -137,6 +156,11 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
   private final int maxAsyncCalls;
   private final AtomicInteger asyncCallCounter = new AtomicInteger(0);
 
+  /** The number of threads that read the responses of all connections. */
+  private final int selectorThreads;
+  private ResponseSelector[] selectors;
+  private int nextSelector;
+
   /**
    * Executor on which IPC calls' parameters are sent.
    * Deferring the sending of parameters to a separate
@@ -333,6 +357,7 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    private Runnable doneAction;    // run once the call is done
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -371,9 +396,12 @@ protected synchronized void callComplete() {
      * 
      * @param error exception thrown by the call; either local or remote
      */
-    public synchronized void setException(IOException error) {
-      this.error = error;
-      callComplete();
+    public void setException(IOException error) {
+      synchronized (this) {
+        this.error = error;
+        callComplete();
+      }
+      runDoneAction();
     }
     
     /** Set the return value when there is no error. 
@@ -381,9 +409,38 @@ public synchronized void setException(IOException error) {
      * 
      * @param rpcResponse return value of the rpc call.
      */
-    public synchronized void setRpcResponse(Writable rpcResponse) {
-      this.rpcResponse = rpcResponse;
-      callComplete();
+    public void setRpcResponse(Writable rpcResponse) {
+      synchronized (this) {
+        this.rpcResponse = rpcResponse;
+        callComplete();
+      }
+      runDoneAction();
+    }
+
+    /**
+     * Run the given action once the call is done, on the thread that
+     * completes it, or now if it is done already.
+     */
+    void whenDone(Runnable action) {
+      synchronized (this) {
+        if (!done) {
+          doneAction = action;
+          return;
+        }
+      }
+      action.run();
+    }
+
+    /** Run the action outside of the lock of the call. */
+    private void runDoneAction() {
+      final Runnable action;
+      synchronized (this) {
+        action = doneAction;
+        doneAction = null;
+      }
+      if (action != null) {
+        action.run();
+      }
     }
     
     public synchronized Writable getRpcResponse() {
@@ -422,6 +479,14 @@ private class Connection extends Thread {
     private AtomicLong lastActivity = new AtomicLong();// last I/O activity time
     private AtomicBoolean shouldCloseConnection = new AtomicBoolean();  // indicate if the connection is closed
     private IOException closeException; // close reason
+
+    // when the responses are read by a selector instead of this thread
+    private SocketChannel channel;
+    private volatile ResponseSelector selector;
+    private final ByteBuffer responseLength = ByteBuffer.allocate(4);
+    private ByteBuffer response;
+    private volatile long waitingSince; // last time a response was awaited
+    private final AtomicBoolean pingPending = new AtomicBoolean();
     
     private final Object sendRpcRequestLock = new Object();
 
@@ -493,6 +558,13 @@ private void touch() {
     private synchronized boolean addCall(Call call) {
       if (shouldCloseConnection.get())
         return false;
+      if (calls.isEmpty()) {
+        waitingSince = Time.now();
+        if (selector != null) {
+          // the selector waits as long as the connection may be idle
+          selector.wakeup();
+        }
+      }
       calls.put(call.id, call);
       notify();
       return true;
@@ -743,7 +815,8 @@ private synchronized void setupIOstreams(
         Random rand = null;
         while (true) {
           setupConnection();
-          InputStream inStream = NetUtils.getInputStream(socket);
+          final InputStream socketIn = NetUtils.getInputStream(socket);
+          InputStream inStream = socketIn;
           OutputStream outStream = NetUtils.getOutputStream(socket);
           writeConnectionHeader(outStream);
           if (authProtocol == AuthProtocol.SASL) {
@@ -794,6 +867,10 @@ public AuthMethod run()
             }
           }
         
+          // a selector reads the responses, unless SASL wraps them
+          if (selectorThreads > 0 && inStream == socketIn) {
+            channel = socket.getChannel();
+          }
           if (doPing) {
             inStream = new PingInputStream(inStream);
           }
@@ -816,7 +893,12 @@ public AuthMethod run()
 
           // start the receiver thread after the socket connection has been set
           // up
-          start();
+          if (channel != null) {
+            selector = nextSelector();
+            selector.register(this);
+          } else {
+            start();
+          }
           return;
         }
       } catch (Throwable t) {
@@ -1117,73 +1199,200 @@ private void receiveRpcResponse() {
       
       try {
         int totalLen = in.readInt();
-        RpcResponseHeaderProto header = 
-            RpcResponseHeaderProto.parseDelimitedFrom(in);
-        checkResponse(header);
-
-        int headerLen = header.getSerializedSize();
-        headerLen += CodedOutputStream.computeRawVarint32Size(headerLen);
-
-        int callId = header.getCallId();
-        if (LOG.isDebugEnabled())
-          LOG.debug(getName() + " got value #" + callId);
-
-        Call call = calls.get(callId);
-        RpcStatusProto status = header.getStatus();
-        if (status == RpcStatusProto.SUCCESS) {
-          Writable value = ReflectionUtils.newInstance(valueClass, conf);
-          value.readFields(in);                 // read value
+        processRpcResponse(totalLen, in);
+      } catch (IOException e) {
+        markClosed(e);
+      }
+    }
+
+    /* Process a response of the given length from the stream. */
+    private void processRpcResponse(int totalLen, DataInputStream in)
+        throws IOException {
+      RpcResponseHeaderProto header = 
+          RpcResponseHeaderProto.parseDelimitedFrom(in);
+      checkResponse(header);
+
+      int headerLen = header.getSerializedSize();
+      headerLen += CodedOutputStream.computeRawVarint32Size(headerLen);
+
+      int callId = header.getCallId();
+      if (LOG.isDebugEnabled())
+        LOG.debug(getName() + " got value #" + callId);
+
+      Call call = calls.get(callId);
+      RpcStatusProto status = header.getStatus();
+      if (status == RpcStatusProto.SUCCESS) {
+        Writable value = ReflectionUtils.newInstance(valueClass, conf);
+        value.readFields(in);                 // read value
+        calls.remove(callId);
+        call.setRpcResponse(value);
+        
+        // verify that length was correct
+        // only for ProtobufEngine where len can be verified easily
+        if (call.getRpcResponse() instanceof ProtobufRpcEngine.RpcWrapper) {
+          ProtobufRpcEngine.RpcWrapper resWrapper = 
+              (ProtobufRpcEngine.RpcWrapper) call.getRpcResponse();
+          if (totalLen != headerLen + resWrapper.getLength()) { 
+            throw new RpcClientException(
+                "RPC response length mismatch on rpc success");
+          }
+        }
+      } else { // Rpc Request failed
+        // Verify that length was correct
+        if (totalLen != headerLen) {
+          throw new RpcClientException(
+              "RPC response length mismatch on rpc error");
+        }
+        
+        final String exceptionClassName = header.hasExceptionClassName() ?
+              header.getExceptionClassName() : 
+                "ServerDidNotSetExceptionClassName";
+        final String errorMsg = header.hasErrorMsg() ? 
+              header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
+        final RpcErrorCodeProto erCode = 
+                  (header.hasErrorDetail() ? header.getErrorDetail() : null);
+        if (erCode == null) {
+           LOG.warn("Detailed error code not set by server on rpc error");
+        }
+        RemoteException re = 
+            ( (erCode == null) ? 
+                new RemoteException(exceptionClassName, errorMsg) :
+            new RemoteException(exceptionClassName, errorMsg, erCode));
+        if (status == RpcStatusProto.ERROR) {
           calls.remove(callId);
-          call.setRpcResponse(value);
-          
-          // verify that length was correct
-          // only for ProtobufEngine where len can be verified easily
-          if (call.getRpcResponse() instanceof ProtobufRpcEngine.RpcWrapper) {
-            ProtobufRpcEngine.RpcWrapper resWrapper = 
-                (ProtobufRpcEngine.RpcWrapper) call.getRpcResponse();
-            if (totalLen != headerLen + resWrapper.getLength()) { 
-              throw new RpcClientException(
-                  "RPC response length mismatch on rpc success");
+          call.setException(re);
+        } else if (status == RpcStatusProto.FATAL) {
+          // Close the connection
+          markClosed(re);
+        }
+      }
+    }
+
+    /**
+     * Read what has arrived on the channel, and process the responses that
+     * are whole. Only the selector of the connection calls this.
+     */
+    private void readResponses() {
+      try {
+        while (!shouldCloseConnection.get()) {
+          if (response == null) {
+            if (channel.read(responseLength) < 0) {
+              throw new EOFException();
             }
+            if (responseLength.hasRemaining()) {
+              return;
+            }
+            responseLength.flip();
+            int totalLen = responseLength.getInt();
+            responseLength.clear();
+            if (totalLen < 0) {
+              throw new RpcClientException("Invalid response length "
+                  + totalLen);
+            }
+            response = ByteBuffer.allocate(totalLen);
           }
-        } else { // Rpc Request failed
-          // Verify that length was correct
-          if (totalLen != headerLen) {
-            throw new RpcClientException(
-                "RPC response length mismatch on rpc error");
-          }
-          
-          final String exceptionClassName = header.hasExceptionClassName() ?
-                header.getExceptionClassName() : 
-                  "ServerDidNotSetExceptionClassName";
-          final String errorMsg = header.hasErrorMsg() ? 
-                header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
-          final RpcErrorCodeProto erCode = 
-                    (header.hasErrorDetail() ? header.getErrorDetail() : null);
-          if (erCode == null) {
-             LOG.warn("Detailed error code not set by server on rpc error");
+          int n = channel.read(response);
+          if (n < 0) {
+            throw new EOFException();
+          } else if (n > 0) {
+            touch();
+            waitingSince = lastActivity.get();
           }
-          RemoteException re = 
-              ( (erCode == null) ? 
-                  new RemoteException(exceptionClassName, errorMsg) :
-              new RemoteException(exceptionClassName, errorMsg, erCode));
-          if (status == RpcStatusProto.ERROR) {
-            calls.remove(callId);
-            call.setException(re);
-          } else if (status == RpcStatusProto.FATAL) {
-            // Close the connection
-            markClosed(re);
+          if (response.hasRemaining()) {
+            return;
           }
+          final ByteBuffer whole = response;
+          response = null;
+          processRpcResponse(whole.capacity(), new DataInputStream(
+              new ByteArrayInputStream(whole.array())));
         }
       } catch (IOException e) {
         markClosed(e);
       }
     }
+
+    /**
+     * Close the connection when it is idle, timed out, or the client is
+     * stopped, and send a ping when it is time, as the thread of the
+     * connection does when it waits for work or a response.
+     *
+     * @return the milliseconds until the connection is to be checked again.
+     */
+    private long checkTimeouts(long now) {
+      if (shouldCloseConnection.get()) {
+        return 0;
+      }
+      if (!running.get()) {
+        if (calls.isEmpty()) {
+          markClosed(null);
+        } else {
+          markClosed((IOException) new IOException().initCause(
+              new InterruptedException()));
+        }
+        return 0;
+      }
+      if (calls.isEmpty()) {
+        long idle = now - lastActivity.get();
+        if (idle >= maxIdleTime) {
+          markClosed(null);
+          return 0;
+        }
+        return maxIdleTime - idle;
+      }
+      long next = Long.MAX_VALUE;
+      // without pings, a response is awaited for the socket timeout
+      final int timeout = doPing ? rpcTimeout : soTimeout;
+      if (timeout > 0) {
+        long waiting = now - waitingSince;
+        if (waiting >= timeout) {
+          markClosed(new SocketTimeoutException(timeout
+              + " millis timeout while waiting for a response on " + channel));
+          return 0;
+        }
+        next = timeout - waiting;
+      }
+      if (doPing) {
+        long sincePing = now - lastActivity.get();
+        if (sincePing >= pingInterval) {
+          schedulePing();
+          sincePing = 0;
+        }
+        next = Math.min(next, pingInterval - sincePing);
+      }
+      return next;
+    }
+
+    /* Send a ping from the sending threads, which may block. */
+    private void schedulePing() {
+      if (!pingPending.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        sendParamsExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              sendPing();
+            } catch (IOException e) {
+              markClosed(e);
+            } finally {
+              pingPending.set(false);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the client is stopping
+        pingPending.set(false);
+      }
+    }
     
     private synchronized void markClosed(IOException e) {
       if (shouldCloseConnection.compareAndSet(false, true)) {
         closeException = e;
         notifyAll();
+        if (selector != null) {
+          selector.wakeup();
+        }
       }
     }
     
@@ -1237,6 +1446,122 @@ private void cleanupCalls() {
     }
   }
 
+  /**
+   * A thread that reads the responses of the connections assigned to it
+   * with a selector, in place of a thread for each connection.
+   */
+  private class ResponseSelector extends Thread {
+    private final Selector selector;
+    private final Queue<Connection> pending =
+        new ConcurrentLinkedQueue<Connection>();
+    private volatile boolean stopped;
+
+    ResponseSelector(int index) throws IOException {
+      this.selector = Selector.open();
+      setName("IPC Client (" + socketFactory.hashCode()
+          + ") response selector " + index);
+      setDaemon(true);
+    }
+
+    /** Read the responses of the connection, which is set up. */
+    void register(Connection conn) {
+      pending.add(conn);
+      if (stopped) {
+        closePending(new IOException(getName() + " is stopped"));
+      } else {
+        selector.wakeup();
+      }
+    }
+
+    void wakeup() {
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running.get() || !selector.keys().isEmpty()
+            || !pending.isEmpty()) {
+          Connection conn;
+          while ((conn = pending.poll()) != null) {
+            try {
+              conn.channel.register(selector, SelectionKey.OP_READ, conn);
+            } catch (IOException e) {
+              conn.markClosed(e);
+              conn.close();
+            }
+          }
+
+          long timeout = Long.MAX_VALUE;
+          final long now = Time.now();
+          for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+              conn = (Connection) key.attachment();
+              timeout = Math.min(timeout, conn.checkTimeouts(now));
+              closeIfMarked(key);
+            }
+          }
+
+          if (timeout <= 0 || !running.get()) {
+            selector.selectNow();
+          } else {
+            selector.select(timeout == Long.MAX_VALUE ? 0 : timeout);
+          }
+          Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+          while (i.hasNext()) {
+            SelectionKey key = i.next();
+            i.remove();
+            if (key.isValid() && key.isReadable()) {
+              ((Connection) key.attachment()).readResponses();
+              closeIfMarked(key);
+            }
+          }
+        }
+      } catch (Throwable t) {
+        LOG.warn("Unexpected error reading responses on " + getName(), t);
+        IOException e = new IOException("Error reading responses", t);
+        for (SelectionKey key : selector.keys()) {
+          ((Connection) key.attachment()).markClosed(e);
+          closeIfMarked(key);
+        }
+      } finally {
+        stopped = true;
+        closePending(new IOException(getName() + " is stopped"));
+        IOUtils.cleanup(LOG, selector);
+      }
+    }
+
+    private void closeIfMarked(SelectionKey key) {
+      Connection conn = (Connection) key.attachment();
+      if (conn.shouldCloseConnection.get()) {
+        key.cancel();
+        conn.close();
+      }
+    }
+
+    private void closePending(IOException e) {
+      Connection conn;
+      while ((conn = pending.poll()) != null) {
+        conn.markClosed(e);
+        conn.close();
+      }
+    }
+  }
+
+  /** @return the selector for the next connection, in turn. */
+  private synchronized ResponseSelector nextSelector() throws IOException {
+    if (selectors == null) {
+      selectors = new ResponseSelector[selectorThreads];
+    }
+    final int i = nextSelector;
+    nextSelector = (i + 1) % selectors.length;
+    if (selectors[i] == null || !selectors[i].isAlive()) {
+      selectors[i] = new ResponseSelector(i);
+      selectors[i].start();
+    }
+    return selectors[i];
+  }
+
   /** Construct an IPC client whose values are of the given {@link Writable}
    * class. */
   public Client(Class<? extends Writable> valueClass, Configuration conf, 
@@ -1253,6 +1578,9 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
     this.maxAsyncCalls = conf.getInt(
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT);
+    this.selectorThreads = conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_DEFAULT);
   }
 
   /**
@@ -1287,6 +1615,15 @@ public void stop() {
     for (Connection conn : connections.asMap().values()) {
       conn.interrupt();
     }
+    synchronized (this) {
+      if (selectors != null) {
+        for (ResponseSelector selector : selectors) {
+          if (selector != null) {
+            selector.wakeup();
+          }
+        }
+      }
+    }
     
     // wait until all connections are closed
     while (connections.size() > 0) {
@@ -1492,7 +1829,15 @@ public Writable get(long timeout, TimeUnit unit)
         }
       };
 
-      ASYNC_RPC_RESPONSE.set(new AsyncGetFuture<>(asyncGet));
+      final AsyncGetFuture<Writable, IOException> future =
+          new AsyncGetFuture<>(asyncGet);
+      call.whenDone(new Runnable() {
+        @Override
+        public void run() {
+          future.tryGet();
+        }
+      });
+      ASYNC_RPC_RESPONSE.set(future);
       return null;
     } else {
       return getRpcResponse(call, connection, -1, null);
@@ -19,6 +19,9 @@
 package org.apache.hadoop.ipc;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.*;
 import com.google.protobuf.Descriptors.MethodDescriptor;
 import org.apache.commons.logging.Log;
@@ -66,6 +69,8 @@ public class ProtobufRpcEngine implements RpcEngine {
   public static final Log LOG = LogFactory.getLog(ProtobufRpcEngine.class);
   private static final ThreadLocal<AsyncGet<Message, Exception>>
       ASYNC_RETURN_MESSAGE = new ThreadLocal<>();
+  private static final ThreadLocal<ListenableFuture<Message>>
+      ASYNC_RETURN_FUTURE = new ThreadLocal<>();
 
   static { // Register the rpcRequest deserializer for WritableRpcEngine 
     org.apache.hadoop.ipc.Server.registerProtocolEngine(
@@ -80,6 +85,16 @@ public static AsyncGet<Message, Exception> getAsyncReturnMessage() {
     return ASYNC_RETURN_MESSAGE.get();
   }
 
+  /**
+   * @return the return message of the last call of this thread in
+   *         asynchronous mode, as a future that is done when the response
+   *         is received. See {@link Client#getAsyncRpcResponseFuture()}.
+   */
+  @Unstable
+  public static ListenableFuture<Message> getAsyncReturnFuture() {
+    return ASYNC_RETURN_FUTURE.get();
+  }
+
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout) throws IOException {
@@ -266,6 +281,16 @@ public Message get(long timeout, TimeUnit unit) throws Exception {
           }
         };
         ASYNC_RETURN_MESSAGE.set(asyncGet);
+        ASYNC_RETURN_FUTURE.set(Futures.transform(
+            Client.<RpcResponseWrapper>getAsyncRpcResponseFuture(),
+            new AsyncFunction<RpcResponseWrapper, Message>() {
+              @Override
+              public ListenableFuture<Message> apply(RpcResponseWrapper rrw)
+                  throws ServiceException {
+                return Futures.immediateFuture(
+                    getReturnMessage(method, rrw));
+              }
+            }));
         return null;
       } else {
         return getReturnMessage(method, val);
@@ -21,6 +21,9 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
@@ -78,6 +81,46 @@ public static Checksum newCrc32() {
     return new CRC32();
   }
 
+  /**
+   * Create a Crc32C Checksum object. java.util.zip.CRC32C, which the JIT
+   * compiles to the CRC32 instructions of the CPU, is used where the JDK
+   * has it (Java 9 and later), {@link PureJavaCrc32C} otherwise.
+   */
+  public static Checksum newCrc32C() {
+    return JdkCrc32CFactory.isAvailable() ? JdkCrc32CFactory.create()
+        : new PureJavaCrc32C();
+  }
+
+  /**
+   * Creates java.util.zip.CRC32C objects, when the JDK has the class.
+   */
+  private static class JdkCrc32CFactory {
+    private static final MethodHandle NEW_CRC32C = findConstructor();
+
+    private static MethodHandle findConstructor() {
+      try {
+        return MethodHandles.publicLookup().findConstructor(
+            Class.forName("java.util.zip.CRC32C"),
+            MethodType.methodType(void.class));
+      } catch (ReflectiveOperationException e) {
+        // not on this JDK
+        return null;
+      }
+    }
+
+    static boolean isAvailable() {
+      return NEW_CRC32C != null;
+    }
+
+    static Checksum create() {
+      try {
+        return (Checksum) NEW_CRC32C.invoke();
+      } catch (Throwable t) {
+        throw new IllegalStateException("Failed to create a CRC32C", t);
+      }
+    }
+  }
+
   public static DataChecksum newDataChecksum(Type type, int bytesPerChecksum ) {
     if ( bytesPerChecksum <= 0 ) {
       return null;
@@ -89,7 +132,7 @@ public static DataChecksum newDataChecksum(Type type, int bytesPerChecksum ) {
     case CRC32 :
       return new DataChecksum(type, newCrc32(), bytesPerChecksum );
     case CRC32C:
-      return new DataChecksum(type, new PureJavaCrc32C(), bytesPerChecksum);
+      return new DataChecksum(type, newCrc32C(), bytesPerChecksum);
     default:
       return null;  
     }
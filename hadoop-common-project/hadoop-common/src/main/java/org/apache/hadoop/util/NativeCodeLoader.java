@@ -78,6 +78,11 @@ public static boolean isNativeCodeLoaded() {
    * Returns true only if this build was compiled with support for snappy.
    */
   public static native boolean buildSupportsSnappy();
+
+  /**
+   * Returns true only if this build was compiled with support for zstd.
+   */
+  public static native boolean buildSupportsZstd();
   
   /**
    * Returns true only if this build was compiled with support for openssl.
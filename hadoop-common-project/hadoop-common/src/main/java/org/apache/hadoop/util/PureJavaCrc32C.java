@@ -57,21 +57,46 @@ public void reset() {
   public void update(byte[] b, int off, int len) {
     int localCrc = crc;
 
-    while(len > 7) {
+    while(len > 15) {
       final int c0 =(b[off+0] ^ localCrc) & 0xff;
       final int c1 =(b[off+1] ^ (localCrc >>>= 8)) & 0xff;
       final int c2 =(b[off+2] ^ (localCrc >>>= 8)) & 0xff;
       final int c3 =(b[off+3] ^ (localCrc >>>= 8)) & 0xff;
-      localCrc = (T[T8_7_start + c0] ^ T[T8_6_start + c1])
-          ^ (T[T8_5_start + c2] ^ T[T8_4_start + c3]);
+      localCrc = (T[T16_15_start + c0] ^ T[T16_14_start + c1])
+          ^ (T[T16_13_start + c2] ^ T[T16_12_start + c3]);
+
+      localCrc ^= (T[T16_11_start + (b[off+4] & 0xff)]
+          ^ T[T16_10_start + (b[off+5] & 0xff)])
+          ^ (T[T16_9_start + (b[off+6] & 0xff)]
+          ^ T[T16_8_start + (b[off+7] & 0xff)]);
+      localCrc ^= (T[T16_7_start + (b[off+8] & 0xff)]
+          ^ T[T16_6_start + (b[off+9] & 0xff)])
+          ^ (T[T16_5_start + (b[off+10] & 0xff)]
+          ^ T[T16_4_start + (b[off+11] & 0xff)]);
+      localCrc ^= (T[T16_3_start + (b[off+12] & 0xff)]
+          ^ T[T16_2_start + (b[off+13] & 0xff)])
+          ^ (T[T16_1_start + (b[off+14] & 0xff)]
+          ^ T[T16_0_start + (b[off+15] & 0xff)]);
+
+      off += 16;
+      len -= 16;
+    }
+
+    if (len > 7) {
+      final int c0 =(b[off+0] ^ localCrc) & 0xff;
+      final int c1 =(b[off+1] ^ (localCrc >>>= 8)) & 0xff;
+      final int c2 =(b[off+2] ^ (localCrc >>>= 8)) & 0xff;
+      final int c3 =(b[off+3] ^ (localCrc >>>= 8)) & 0xff;
+      localCrc = (T[T16_7_start + c0] ^ T[T16_6_start + c1])
+          ^ (T[T16_5_start + c2] ^ T[T16_4_start + c3]);
 
       final int c4 = b[off+4] & 0xff;
       final int c5 = b[off+5] & 0xff;
       final int c6 = b[off+6] & 0xff;
       final int c7 = b[off+7] & 0xff;
 
-      localCrc ^= (T[T8_3_start + c4] ^ T[T8_2_start + c5])
-           ^ (T[T8_1_start + c6] ^ T[T8_0_start + c7]);
+      localCrc ^= (T[T16_3_start + c4] ^ T[T16_2_start + c5])
+           ^ (T[T16_1_start + c6] ^ T[T16_0_start + c7]);
 
       off += 8;
       len -= 8;
@@ -79,13 +104,13 @@ public void update(byte[] b, int off, int len) {
 
     /* loop unroll - duff's device style */
     switch(len) {
-      case 7: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 6: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 5: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 4: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 3: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 2: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
-      case 1: localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 7: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 6: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 5: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 4: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 3: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 2: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
+      case 1: localCrc = (localCrc >>> 8) ^ T[T16_0_start + ((localCrc ^ b[off++]) & 0xff)];
       default:
         /* nothing */
     }
@@ -96,24 +121,34 @@ public void update(byte[] b, int off, int len) {
 
   @Override
   final public void update(int b) {
-    crc = (crc >>> 8) ^ T[T8_0_start + ((crc ^ b) & 0xff)];
+    crc = (crc >>> 8) ^ T[T16_0_start + ((crc ^ b) & 0xff)];
   }
     
   // CRC polynomial tables generated by:
   // java -cp build/test/classes/:build/classes/ \
   //   org.apache.hadoop.util.TestPureJavaCrc32\$Table 82F63B78
+  // The tables T16_8 to T16_15, for slicing by 16 bytes, are derived from
+  // these when the class is loaded.
 
-  private static final int T8_0_start = 0*256;
-  private static final int T8_1_start = 1*256;
-  private static final int T8_2_start = 2*256;
-  private static final int T8_3_start = 3*256;
-  private static final int T8_4_start = 4*256;
-  private static final int T8_5_start = 5*256;
-  private static final int T8_6_start = 6*256;
-  private static final int T8_7_start = 7*256;
+  private static final int T16_0_start = 0*256;
+  private static final int T16_1_start = 1*256;
+  private static final int T16_2_start = 2*256;
+  private static final int T16_3_start = 3*256;
+  private static final int T16_4_start = 4*256;
+  private static final int T16_5_start = 5*256;
+  private static final int T16_6_start = 6*256;
+  private static final int T16_7_start = 7*256;
+  private static final int T16_8_start = 8*256;
+  private static final int T16_9_start = 9*256;
+  private static final int T16_10_start = 10*256;
+  private static final int T16_11_start = 11*256;
+  private static final int T16_12_start = 12*256;
+  private static final int T16_13_start = 13*256;
+  private static final int T16_14_start = 14*256;
+  private static final int T16_15_start = 15*256;
 
-  private static final int[] T = new int[] {
-    /* T8_0 */
+  private static final int[] T = extendTables(new int[] {
+    /* T16_0 */
     0x00000000, 0xF26B8303, 0xE13B70F7, 0x1350F3F4, 
     0xC79A971F, 0x35F1141C, 0x26A1E7E8, 0xD4CA64EB, 
     0x8AD958CF, 0x78B2DBCC, 0x6BE22838, 0x9989AB3B, 
@@ -178,7 +213,7 @@ final public void update(int b) {
     0x34F4F86A, 0xC69F7B69, 0xD5CF889D, 0x27A40B9E, 
     0x79B737BA, 0x8BDCB4B9, 0x988C474D, 0x6AE7C44E, 
     0xBE2DA0A5, 0x4C4623A6, 0x5F16D052, 0xAD7D5351, 
-    /* T8_1 */
+    /* T16_1 */
     0x00000000, 0x13A29877, 0x274530EE, 0x34E7A899, 
     0x4E8A61DC, 0x5D28F9AB, 0x69CF5132, 0x7A6DC945, 
     0x9D14C3B8, 0x8EB65BCF, 0xBA51F356, 0xA9F36B21, 
@@ -243,7 +278,7 @@ final public void update(int b) {
     0x0A104FA2, 0x19B2D7D5, 0x2D557F4C, 0x3EF7E73B, 
     0xD98EEDC6, 0xCA2C75B1, 0xFECBDD28, 0xED69455F, 
     0x97048C1A, 0x84A6146D, 0xB041BCF4, 0xA3E32483, 
-    /* T8_2 */
+    /* T16_2 */
     0x00000000, 0xA541927E, 0x4F6F520D, 0xEA2EC073, 
     0x9EDEA41A, 0x3B9F3664, 0xD1B1F617, 0x74F06469, 
     0x38513EC5, 0x9D10ACBB, 0x773E6CC8, 0xD27FFEB6, 
@@ -308,7 +343,7 @@ final public void update(int b) {
     0x437AD51E, 0xE63B4760, 0x0C158713, 0xA954156D, 
     0xE5F54FC1, 0x40B4DDBF, 0xAA9A1DCC, 0x0FDB8FB2, 
     0x7B2BEBDB, 0xDE6A79A5, 0x3444B9D6, 0x91052BA8, 
-    /* T8_3 */
+    /* T16_3 */
     0x00000000, 0xDD45AAB8, 0xBF672381, 0x62228939, 
     0x7B2231F3, 0xA6679B4B, 0xC4451272, 0x1900B8CA, 
     0xF64463E6, 0x2B01C95E, 0x49234067, 0x9466EADF, 
@@ -373,7 +408,7 @@ final public void update(int b) {
     0xBC65029D, 0x6120A825, 0x0302211C, 0xDE478BA4, 
     0x31035088, 0xEC46FA30, 0x8E647309, 0x5321D9B1, 
     0x4A21617B, 0x9764CBC3, 0xF54642FA, 0x2803E842, 
-    /* T8_4 */
+    /* T16_4 */
     0x00000000, 0x38116FAC, 0x7022DF58, 0x4833B0F4, 
     0xE045BEB0, 0xD854D11C, 0x906761E8, 0xA8760E44, 
     0xC5670B91, 0xFD76643D, 0xB545D4C9, 0x8D54BB65, 
@@ -438,7 +473,7 @@ final public void update(int b) {
     0x2D3CD5C6, 0x152DBA6A, 0x5D1E0A9E, 0x650F6532, 
     0x081E60E7, 0x300F0F4B, 0x783CBFBF, 0x402DD013, 
     0xE85BDE57, 0xD04AB1FB, 0x9879010F, 0xA0686EA3, 
-    /* T8_5 */
+    /* T16_5 */
     0x00000000, 0xEF306B19, 0xDB8CA0C3, 0x34BCCBDA, 
     0xB2F53777, 0x5DC55C6E, 0x697997B4, 0x8649FCAD, 
     0x6006181F, 0x8F367306, 0xBB8AB8DC, 0x54BAD3C5, 
@@ -503,7 +538,7 @@ final public void update(int b) {
     0xE501FDF9, 0x0A3196E0, 0x3E8D5D3A, 0xD1BD3623, 
     0x37F2D291, 0xD8C2B988, 0xEC7E7252, 0x034E194B, 
     0x8507E5E6, 0x6A378EFF, 0x5E8B4525, 0xB1BB2E3C, 
-    /* T8_6 */
+    /* T16_6 */
     0x00000000, 0x68032CC8, 0xD0065990, 0xB8057558, 
     0xA5E0C5D1, 0xCDE3E919, 0x75E69C41, 0x1DE5B089, 
     0x4E2DFD53, 0x262ED19B, 0x9E2BA4C3, 0xF628880B, 
@@ -568,7 +603,7 @@ final public void update(int b) {
     0x8B39B544, 0xE33A998C, 0x5B3FECD4, 0x333CC01C, 
     0x60F48DC6, 0x08F7A10E, 0xB0F2D456, 0xD8F1F89E, 
     0xC5144817, 0xAD1764DF, 0x15121187, 0x7D113D4F, 
-    /* T8_7 */
+    /* T16_7 */
     0x00000000, 0x493C7D27, 0x9278FA4E, 0xDB448769, 
     0x211D826D, 0x6821FF4A, 0xB3657823, 0xFA590504, 
     0x423B04DA, 0x0B0779FD, 0xD043FE94, 0x997F83B3, 
@@ -633,5 +668,19 @@ final public void update(int b) {
     0x866AB316, 0xCF56CE31, 0x14124958, 0x5D2E347F, 
     0xE54C35A1, 0xAC704886, 0x7734CFEF, 0x3E08B2C8, 
     0xC451B7CC, 0x8D6DCAEB, 0x56294D82, 0x1F1530A5 
-  };
+  });
+
+  /**
+   * Extend the tables for slicing by 8 bytes to slicing by 16 bytes. Every
+   * table is that of the one before it shifted by another zero byte.
+   */
+  private static int[] extendTables(int[] t8) {
+    final int[] t = new int[16 * 256];
+    System.arraycopy(t8, 0, t, 0, t8.length);
+    for (int i = t8.length; i < t.length; i++) {
+      final int prev = t[i - 256];
+      t[i] = (prev >>> 8) ^ t[prev & 0xff];
+    }
+    return t;
+  }
 }
@@ -27,7 +27,12 @@
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-/** A {@link Future} implemented using an {@link AsyncGet} object. */
+/**
+ * A {@link Future} implemented using an {@link AsyncGet} object. It is done
+ * once its result has been taken, by a get, by {@link #isDone()}, or by
+ * {@link #tryGet()} when the source of the result knows it is ready, so that
+ * the listeners of the future run then.
+ */
 public class AsyncGetFuture<T, E extends Throwable> extends AbstractFuture<T> {
   public static final Log LOG = LogFactory.getLog(AsyncGetFuture.class);
 
@@ -67,7 +72,12 @@ public T get(long timeout, TimeUnit unit)
 
   @Override
   public boolean isDone() {
-    callAsyncGet(0, TimeUnit.MILLISECONDS);
+    tryGet();
     return super.isDone();
   }
+
+  /** Take the result if it is available, completing this future. */
+  public void tryGet() {
+    callAsyncGet(0, TimeUnit.MILLISECONDS);
+  }
 }
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <config.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "org_apache_hadoop_io_compress_zstd.h"
+#include "org_apache_hadoop_io_compress_zstd_ZStandardCompressor.h"
+
+static jfieldID ZStandardCompressor_stream;
+static jfieldID ZStandardCompressor_uncompressedDirectBufOff;
+static jfieldID ZStandardCompressor_finished;
+
+static ZSTD_CStream* (*dlsym_ZSTD_createCStream)(void);
+static size_t (*dlsym_ZSTD_freeCStream)(ZSTD_CStream*);
+static size_t (*dlsym_ZSTD_initCStream)(ZSTD_CStream*, int);
+static size_t (*dlsym_ZSTD_initCStream_usingDict)(ZSTD_CStream*,
+    const void*, size_t, int);
+static size_t (*dlsym_ZSTD_compressStream)(ZSTD_CStream*, ZSTD_outBuffer*,
+    ZSTD_inBuffer*);
+static size_t (*dlsym_ZSTD_endStream)(ZSTD_CStream*, ZSTD_outBuffer*);
+static size_t (*dlsym_ZSTD_CStreamOutSize)(void);
+static unsigned (*dlsym_ZSTD_isError)(size_t);
+static const char* (*dlsym_ZSTD_getErrorName)(size_t);
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_initIDs(
+    JNIEnv *env, jclass clazz)
+{
+    // Load libzstd.so
+    void *libzstd = dlopen(HADOOP_ZSTD_LIBRARY, RTLD_LAZY | RTLD_GLOBAL);
+    if (!libzstd) {
+        char msg[1000];
+        snprintf(msg, sizeof(msg), "%s (%s)!", "Cannot load " HADOOP_ZSTD_LIBRARY, dlerror());
+        THROW(env, "java/lang/UnsatisfiedLinkError", msg);
+        return;
+    }
+
+    // Locate the requisite symbols from libzstd.so
+    dlerror();                                 // Clear any existing error
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_createCStream, env, libzstd, "ZSTD_createCStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_freeCStream, env, libzstd, "ZSTD_freeCStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_initCStream, env, libzstd, "ZSTD_initCStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_initCStream_usingDict, env, libzstd, "ZSTD_initCStream_usingDict");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_compressStream, env, libzstd, "ZSTD_compressStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_endStream, env, libzstd, "ZSTD_endStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_CStreamOutSize, env, libzstd, "ZSTD_CStreamOutSize");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_isError, env, libzstd, "ZSTD_isError");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_getErrorName, env, libzstd, "ZSTD_getErrorName");
+
+    // Initialize the requisite fieldIds
+    ZStandardCompressor_stream = (*env)->GetFieldID(env, clazz, "stream", "J");
+    ZStandardCompressor_uncompressedDirectBufOff = (*env)->GetFieldID(env, clazz,
+        "uncompressedDirectBufOff", "I");
+    ZStandardCompressor_finished = (*env)->GetFieldID(env, clazz, "finished", "Z");
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_create(
+    JNIEnv *env, jclass clazz)
+{
+    ZSTD_CStream *stream = dlsym_ZSTD_createCStream();
+    if (stream == NULL) {
+        THROW(env, "java/lang/OutOfMemoryError", "Error creating the zstd stream");
+        return (jlong) 0;
+    }
+    return JLONG(stream);
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_init(
+    JNIEnv *env, jclass clazz, jint level, jbyteArray dictionary, jlong stream)
+{
+    size_t result;
+    if (dictionary == NULL) {
+        result = dlsym_ZSTD_initCStream(ZSTD_CSTREAM(stream), level);
+    } else {
+        jsize length = (*env)->GetArrayLength(env, dictionary);
+        jbyte *dict = (*env)->GetByteArrayElements(env, dictionary, NULL);
+        if (dict == NULL) {
+            // Java code will get OutOfMemoryException thrown by GetByteArrayElements
+            return;
+        }
+        result = dlsym_ZSTD_initCStream_usingDict(ZSTD_CSTREAM(stream),
+            dict, length, level);
+        (*env)->ReleaseByteArrayElements(env, dictionary, dict, JNI_ABORT);
+    }
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_deflateBytesDirect(
+    JNIEnv *env, jobject this, jobject uncompressed_direct_buf,
+    jint uncompressed_direct_buf_off, jint uncompressed_direct_buf_len,
+    jobject compressed_direct_buf, jint compressed_direct_buf_len,
+    jboolean end)
+{
+    ZSTD_CStream *stream = ZSTD_CSTREAM(
+        (*env)->GetLongField(env, this, ZStandardCompressor_stream));
+    if (stream == NULL) {
+        THROW(env, "java/lang/NullPointerException", NULL);
+        return (jint) 0;
+    }
+
+    // Get the input and output direct buffers
+    void *uncompressed_bytes = (*env)->GetDirectBufferAddress(env,
+        uncompressed_direct_buf);
+    void *compressed_bytes = (*env)->GetDirectBufferAddress(env,
+        compressed_direct_buf);
+    if (uncompressed_bytes == NULL || compressed_bytes == NULL) {
+        THROW(env, "java/lang/InternalError", "Undefined memory address for direct buffer");
+        return (jint) 0;
+    }
+
+    ZSTD_inBuffer input = { uncompressed_bytes, uncompressed_direct_buf_len,
+        uncompressed_direct_buf_off };
+    ZSTD_outBuffer output = { compressed_bytes, compressed_direct_buf_len, 0 };
+
+    size_t result = dlsym_ZSTD_compressStream(stream, &output, &input);
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+        return (jint) 0;
+    }
+    if (end && input.pos == input.size) {
+        // flush the rest and write the end of the frame,
+        // which is done once nothing is left to flush
+        result = dlsym_ZSTD_endStream(stream, &output);
+        if (dlsym_ZSTD_isError(result)) {
+            THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+            return (jint) 0;
+        }
+        if (result == 0) {
+            (*env)->SetBooleanField(env, this, ZStandardCompressor_finished, JNI_TRUE);
+        }
+    }
+    (*env)->SetIntField(env, this, ZStandardCompressor_uncompressedDirectBufOff,
+        (jint) input.pos);
+    return (jint) output.pos;
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_end(
+    JNIEnv *env, jclass clazz, jlong stream)
+{
+    size_t result = dlsym_ZSTD_freeCStream(ZSTD_CSTREAM(stream));
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_getStreamSize(
+    JNIEnv *env, jclass clazz)
+{
+    return (jint) dlsym_ZSTD_CStreamOutSize();
+}
+
+JNIEXPORT jstring JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardCompressor_getLibraryName(
+    JNIEnv *env, jclass clazz)
+{
+    if (dlsym_ZSTD_compressStream) {
+        Dl_info dl_info;
+        if (dladdr(dlsym_ZSTD_compressStream, &dl_info)) {
+            return (*env)->NewStringUTF(env, dl_info.dli_fname);
+        }
+    }
+    return (*env)->NewStringUTF(env, HADOOP_ZSTD_LIBRARY);
+}
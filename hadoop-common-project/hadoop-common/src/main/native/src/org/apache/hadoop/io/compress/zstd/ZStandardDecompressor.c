@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <config.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "org_apache_hadoop_io_compress_zstd.h"
+#include "org_apache_hadoop_io_compress_zstd_ZStandardDecompressor.h"
+
+static jfieldID ZStandardDecompressor_stream;
+static jfieldID ZStandardDecompressor_compressedDirectBufOff;
+static jfieldID ZStandardDecompressor_finished;
+
+static ZSTD_DStream* (*dlsym_ZSTD_createDStream)(void);
+static size_t (*dlsym_ZSTD_freeDStream)(ZSTD_DStream*);
+static size_t (*dlsym_ZSTD_initDStream)(ZSTD_DStream*);
+static size_t (*dlsym_ZSTD_initDStream_usingDict)(ZSTD_DStream*,
+    const void*, size_t);
+static size_t (*dlsym_ZSTD_decompressStream)(ZSTD_DStream*, ZSTD_outBuffer*,
+    ZSTD_inBuffer*);
+static size_t (*dlsym_ZSTD_DStreamOutSize)(void);
+static unsigned (*dlsym_ZSTD_isError)(size_t);
+static const char* (*dlsym_ZSTD_getErrorName)(size_t);
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_initIDs(
+    JNIEnv *env, jclass clazz)
+{
+    // Load libzstd.so
+    void *libzstd = dlopen(HADOOP_ZSTD_LIBRARY, RTLD_LAZY | RTLD_GLOBAL);
+    if (!libzstd) {
+        char msg[1000];
+        snprintf(msg, sizeof(msg), "%s (%s)!", "Cannot load " HADOOP_ZSTD_LIBRARY, dlerror());
+        THROW(env, "java/lang/UnsatisfiedLinkError", msg);
+        return;
+    }
+
+    // Locate the requisite symbols from libzstd.so
+    dlerror();                                 // Clear any existing error
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_createDStream, env, libzstd, "ZSTD_createDStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_freeDStream, env, libzstd, "ZSTD_freeDStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_initDStream, env, libzstd, "ZSTD_initDStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_initDStream_usingDict, env, libzstd, "ZSTD_initDStream_usingDict");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_decompressStream, env, libzstd, "ZSTD_decompressStream");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_DStreamOutSize, env, libzstd, "ZSTD_DStreamOutSize");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_isError, env, libzstd, "ZSTD_isError");
+    LOAD_DYNAMIC_SYMBOL(dlsym_ZSTD_getErrorName, env, libzstd, "ZSTD_getErrorName");
+
+    // Initialize the requisite fieldIds
+    ZStandardDecompressor_stream = (*env)->GetFieldID(env, clazz, "stream", "J");
+    ZStandardDecompressor_compressedDirectBufOff = (*env)->GetFieldID(env, clazz,
+        "compressedDirectBufOff", "I");
+    ZStandardDecompressor_finished = (*env)->GetFieldID(env, clazz, "finished", "Z");
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_create(
+    JNIEnv *env, jclass clazz)
+{
+    ZSTD_DStream *stream = dlsym_ZSTD_createDStream();
+    if (stream == NULL) {
+        THROW(env, "java/lang/OutOfMemoryError", "Error creating the zstd stream");
+        return (jlong) 0;
+    }
+    return JLONG(stream);
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_init(
+    JNIEnv *env, jclass clazz, jbyteArray dictionary, jlong stream)
+{
+    size_t result;
+    if (dictionary == NULL) {
+        result = dlsym_ZSTD_initDStream(ZSTD_DSTREAM(stream));
+    } else {
+        jsize length = (*env)->GetArrayLength(env, dictionary);
+        jbyte *dict = (*env)->GetByteArrayElements(env, dictionary, NULL);
+        if (dict == NULL) {
+            // Java code will get OutOfMemoryException thrown by GetByteArrayElements
+            return;
+        }
+        result = dlsym_ZSTD_initDStream_usingDict(ZSTD_DSTREAM(stream),
+            dict, length);
+        (*env)->ReleaseByteArrayElements(env, dictionary, dict, JNI_ABORT);
+    }
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_inflateBytesDirect(
+    JNIEnv *env, jobject this, jobject compressed_direct_buf,
+    jint compressed_direct_buf_off, jint compressed_direct_buf_len,
+    jobject uncompressed_direct_buf, jint uncompressed_direct_buf_off,
+    jint uncompressed_direct_buf_len)
+{
+    ZSTD_DStream *stream = ZSTD_DSTREAM(
+        (*env)->GetLongField(env, this, ZStandardDecompressor_stream));
+    if (stream == NULL) {
+        THROW(env, "java/lang/NullPointerException", NULL);
+        return (jint) 0;
+    }
+
+    // Get the input and output direct buffers
+    void *compressed_bytes = (*env)->GetDirectBufferAddress(env,
+        compressed_direct_buf);
+    void *uncompressed_bytes = (*env)->GetDirectBufferAddress(env,
+        uncompressed_direct_buf);
+    if (uncompressed_bytes == NULL || compressed_bytes == NULL) {
+        THROW(env, "java/lang/InternalError", "Undefined memory address for direct buffer");
+        return (jint) 0;
+    }
+
+    ZSTD_inBuffer input = { compressed_bytes, compressed_direct_buf_len,
+        compressed_direct_buf_off };
+    ZSTD_outBuffer output = { uncompressed_bytes, uncompressed_direct_buf_len,
+        uncompressed_direct_buf_off };
+
+    size_t result = dlsym_ZSTD_decompressStream(stream, &output, &input);
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/io/IOException", dlsym_ZSTD_getErrorName(result));
+        return (jint) 0;
+    }
+    if (result == 0) {
+        // the end of a frame, which has been flushed completely
+        (*env)->SetBooleanField(env, this, ZStandardDecompressor_finished, JNI_TRUE);
+    }
+    (*env)->SetIntField(env, this, ZStandardDecompressor_compressedDirectBufOff,
+        (jint) input.pos);
+    return (jint) (output.pos - uncompressed_direct_buf_off);
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_end(
+    JNIEnv *env, jclass clazz, jlong stream)
+{
+    size_t result = dlsym_ZSTD_freeDStream(ZSTD_DSTREAM(stream));
+    if (dlsym_ZSTD_isError(result)) {
+        THROW(env, "java/lang/InternalError", dlsym_ZSTD_getErrorName(result));
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_io_compress_zstd_ZStandardDecompressor_getStreamSize(
+    JNIEnv *env, jclass clazz)
+{
+    return (jint) dlsym_ZSTD_DStreamOutSize();
+}
@@ -191,6 +191,9 @@ public void initializeMemberVariables() {
     // Keys with no corresponding variable
     // - org.apache.hadoop.io.compress.bzip2.Bzip2Factory
     xmlPropsToSkipCompare.add("io.compression.codec.bzip2.library");
+    // - the digit of CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_*
+    //   does not match the pattern of the properties compared
+    xmlPropsToSkipCompare.add("io.compression.codec.bzip2.threads");
     // - org.apache.hadoop.io.SequenceFile
     xmlPropsToSkipCompare.add("io.seqfile.local.dir");
 
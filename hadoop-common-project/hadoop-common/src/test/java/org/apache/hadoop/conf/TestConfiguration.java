@@ -29,6 +29,8 @@
 import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -450,6 +452,90 @@ public void testRelativeIncludes() throws Exception {
     new File(new File(relConfig).getParent()).delete();
   }
 
+  public void testChangedClasspathResource() throws Exception {
+    File dir = new File("./tmp/classpath-TestConfiguration").getAbsoluteFile();
+    dir.mkdirs();
+    String name = "test-changed-TestConfiguration.xml";
+    File file = new File(dir, name);
+    ClassLoader loader = new URLClassLoader(
+        new URL[] { dir.toURI().toURL() }, null);
+    try {
+      out = new BufferedWriter(new FileWriter(file));
+      startConfig();
+      appendProperty("a", "b");
+      appendProperty("c", "d", true);
+      endConfig();
+      for (int i = 0; i < 2; i++) {
+        Configuration conf = new Configuration(false);
+        conf.setClassLoader(loader);
+        conf.addResource(name);
+        assertEquals("b", conf.get("a"));
+        assertEquals(name, conf.getPropertySources("a")[0]);
+        assertTrue(conf.getFinalParameters().contains("c"));
+      }
+
+      // a resource that changed is parsed again
+      long lastModified = file.lastModified();
+      out = new BufferedWriter(new FileWriter(file));
+      startConfig();
+      appendProperty("a", "e");
+      endConfig();
+      file.setLastModified(lastModified + 2000);
+      Configuration conf = new Configuration(false);
+      conf.setClassLoader(loader);
+      conf.addResource(name);
+      assertEquals("e", conf.get("a"));
+      assertNull(conf.get("c"));
+      assertFalse(conf.getFinalParameters().contains("c"));
+    } finally {
+      file.delete();
+      dir.delete();
+    }
+  }
+
+  public void testSnapshotReads() throws Exception {
+    Configuration.addDeprecation("test.snapshot.old", "test.snapshot.new");
+    Configuration conf = new Configuration(false);
+    conf.setSnapshotReads(true);
+    conf.set("a", "b");
+    conf.set("c", "${a}/d");
+    assertEquals("b", conf.get("a"));
+    assertEquals("b/d", conf.get("c"));
+    assertEquals("${a}/d", conf.getRaw("c"));
+    assertEquals("x", conf.get("missing", "x"));
+
+    // changes are seen by the next read
+    conf.set("a", "e");
+    assertEquals("e/d", conf.get("c"));
+    conf.unset("a");
+    assertNull(conf.get("a"));
+    assertEquals("${a}/d", conf.get("c"));
+
+    // deprecated keys resolve to their replacements both ways
+    conf.set("test.snapshot.old", "f");
+    assertEquals("f", conf.get("test.snapshot.new"));
+    assertEquals("f", conf.get("test.snapshot.old"));
+    conf.set("test.snapshot.new", "g");
+    assertEquals("g", conf.get("test.snapshot.old"));
+
+    // as are resources added later, and the mode is kept on copies
+    conf.addResource(new ByteArrayInputStream(
+        ("<configuration><property><name>h</name><value>i</value>" +
+         "</property></configuration>").getBytes("UTF-8")));
+    assertEquals("i", conf.get("h"));
+    Configuration copy = new Configuration(conf);
+    assertTrue(copy.getSnapshotReads());
+    copy.set("h", "j");
+    assertEquals("j", copy.get("h"));
+    assertEquals("i", conf.get("h"));
+
+    conf.clear();
+    assertNull(conf.get("test.snapshot.new"));
+    conf.setSnapshotReads(false);
+    conf.set("a", "k");
+    assertEquals("k", conf.get("a"));
+  }
+
   BufferedWriter out;
 	
   public void testIntegerRanges() {
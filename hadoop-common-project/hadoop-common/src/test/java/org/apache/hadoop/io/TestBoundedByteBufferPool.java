@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestBoundedByteBufferPool {
+
+  @Test
+  public void testReuse() {
+    BoundedByteBufferPool pool = new BoundedByteBufferPool(2);
+    ByteBuffer a = pool.getBuffer(true, 100);
+    assertTrue(a.isDirect());
+    assertEquals(100, a.capacity());
+    a.putInt(0xdeadbeef);
+    pool.putBuffer(a);
+
+    // a smaller request gets the same buffer, reset
+    ByteBuffer b = pool.getBuffer(true, 50);
+    assertSame(a, b);
+    assertEquals(100, b.remaining());
+
+    // a larger one does not
+    pool.putBuffer(b);
+    ByteBuffer c = pool.getBuffer(true, 200);
+    assertNotSame(a, c);
+    assertEquals(1, pool.size(true));
+
+    // heap and direct buffers are kept apart
+    ByteBuffer d = pool.getBuffer(false, 100);
+    assertFalse(d.isDirect());
+    assertEquals(1, pool.size(true));
+  }
+
+  @Test
+  public void testBounded() {
+    BoundedByteBufferPool pool = new BoundedByteBufferPool(2);
+    ByteBuffer[] direct = new ByteBuffer[5];
+    ByteBuffer[] heap = new ByteBuffer[5];
+    for (int i = 0; i < direct.length; i++) {
+      direct[i] = pool.getBuffer(true, 100);
+      heap[i] = pool.getBuffer(false, 100);
+    }
+    for (int i = 0; i < direct.length; i++) {
+      pool.putBuffer(direct[i]);
+      pool.putBuffer(heap[i]);
+    }
+    assertEquals(2, pool.size(true));
+    assertEquals(2, pool.size(false));
+
+    // the pool only gives out what it kept, then allocates again
+    assertSame(direct[1], pool.getBuffer(true, 100));
+    assertSame(direct[0], pool.getBuffer(true, 100));
+    assertEquals(0, pool.size(true));
+  }
+}
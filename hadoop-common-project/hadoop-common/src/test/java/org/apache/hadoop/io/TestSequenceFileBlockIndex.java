@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.BlockIndex;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.SequenceFile.Reader;
+import org.apache.hadoop.io.SequenceFile.Writer;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSequenceFileBlockIndex {
+
+  private static final int RECORDS = 5000;
+
+  private static Configuration conf;
+  private static FileSystem fs;
+  private static Path ROOT_PATH =
+      new Path(GenericTestUtils.getTestDir().getAbsolutePath());
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    conf = new Configuration();
+    // many small blocks
+    conf.setInt("io.seqfile.compress.blocksize", 2000);
+    fs = FileSystem.getLocal(conf);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    fs.close();
+  }
+
+  /** Write the keys 0, 2, 4, ... with their value. */
+  private static void write(Path file, CompressionType compression,
+      boolean blockIndex) throws IOException {
+    fs.delete(file, true);
+    Writer writer = SequenceFile.createWriter(conf, Writer.file(file),
+        Writer.keyClass(IntWritable.class), Writer.valueClass(Text.class),
+        Writer.compression(compression, new DefaultCodec()),
+        Writer.blockIndex(blockIndex));
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.append(new IntWritable(2 * i), new Text("value" + i));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static byte version(Path file) throws IOException {
+    FSDataInputStream in = fs.open(file);
+    try {
+      in.skipBytes(3);
+      return in.readByte();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void readAll(Path file, boolean readAhead)
+      throws IOException {
+    Reader reader = new Reader(conf, Reader.file(file),
+        Reader.readAhead(readAhead));
+    try {
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      for (int i = 0; i < RECORDS; i++) {
+        assertTrue(reader.next(key, value));
+        assertEquals(2 * i, key.get());
+        assertEquals("value" + i, value.toString());
+      }
+      assertFalse(reader.next(key, value));
+      assertFalse(reader.next(key));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testReadWithIndex() throws Exception {
+    Path file = new Path(ROOT_PATH, "testblockindex.seq");
+    write(file, CompressionType.BLOCK, true);
+    assertEquals(7, version(file));
+    readAll(file, false);
+    readAll(file, true);
+
+    Reader reader = new Reader(conf, Reader.file(file));
+    try {
+      BlockIndex index = reader.getBlockIndex();
+      assertTrue(index.size() > 10);
+      int records = 0;
+      IntWritable firstKey = new IntWritable();
+      DataInputBuffer in = new DataInputBuffer();
+      for (int i = 0; i < index.size(); i++) {
+        byte[] b = index.getFirstKey(i);
+        in.reset(b, b.length);
+        firstKey.readFields(in);
+        assertEquals(2 * records, firstKey.get());
+        records += index.getRecordCount(i);
+      }
+      assertEquals(RECORDS, records);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testSeekToBlock() throws Exception {
+    Path file = new Path(ROOT_PATH, "testseektoblock.seq");
+    write(file, CompressionType.BLOCK, true);
+    for (boolean readAhead : new boolean[] { false, true }) {
+      Reader reader = new Reader(conf, Reader.file(file),
+          Reader.readAhead(readAhead));
+      try {
+        BlockIndex index = reader.getBlockIndex();
+        int maxRecords = 0;
+        for (int i = 0; i < index.size(); i++) {
+          maxRecords = Math.max(maxRecords, index.getRecordCount(i));
+        }
+        IntWritable key = new IntWritable();
+        for (int k = 2 * RECORDS - 2; k >= -1; k -= 37) {
+          assertTrue(reader.seekToBlock(new IntWritable(k)));
+          int read = 0;
+          do {
+            assertTrue("no key at or after " + k, reader.next(key));
+            read++;
+          } while (key.get() < k);
+          assertEquals(k < 0 ? 0 : k + (k & 1), key.get());
+          assertTrue("read " + read + " for " + k, read <= maxRecords);
+        }
+        assertTrue(reader.seekToBlock(new IntWritable(2 * RECORDS)));
+        while (reader.next(key)) {
+          assertTrue(key.get() < 2 * RECORDS);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testSplits() throws Exception {
+    Path file = new Path(ROOT_PATH, "testblockindexsplits.seq");
+    write(file, CompressionType.BLOCK, true);
+    long length = fs.getFileStatus(file).getLen();
+    for (boolean readAhead : new boolean[] { false, true }) {
+      int expected = 0;
+      long splitSize = length / 7;
+      for (long start = 0; start < length; start += splitSize) {
+        long end = Math.min(start + splitSize, length);
+        // as SequenceFileRecordReader reads a split
+        Reader reader = new Reader(conf, Reader.file(file),
+            Reader.readAhead(readAhead));
+        try {
+          if (start > reader.getPosition()) {
+            reader.sync(start);
+          }
+          IntWritable key = new IntWritable();
+          Text value = new Text();
+          while (true) {
+            long pos = reader.getPosition();
+            boolean more = reader.next(key, value);
+            if (!more || (pos >= end && reader.syncSeen())) {
+              break;
+            }
+            assertEquals(2 * expected, key.get());
+            expected++;
+          }
+        } finally {
+          reader.close();
+        }
+      }
+      assertEquals(RECORDS, expected);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testNoReadAheadPastEnd() throws Exception {
+    Path file = new Path(ROOT_PATH, "testreadaheadend.seq");
+    write(file, CompressionType.BLOCK, true);
+    BlockIndex index;
+    Reader reader = new Reader(conf, Reader.file(file));
+    try {
+      index = reader.getBlockIndex();
+    } finally {
+      reader.close();
+    }
+    // a reader ending where the fourth block starts
+    long end = index.getOffset(3);
+    reader = new Reader(conf, Reader.file(file), Reader.length(end),
+        Reader.readAhead(true));
+    try {
+      IntWritable key = new IntWritable();
+      reader.seek(index.getOffset(1));
+      assertTrue(reader.next(key));
+      assertTrue(reader.isReadingAhead());
+      reader.seek(index.getOffset(2));
+      assertTrue(reader.next(key));
+      assertFalse(reader.isReadingAhead());
+      // the blocks past the end are still read when asked for
+      int records = 1;
+      while (reader.next(key)) {
+        records++;
+      }
+      int expected = 0;
+      for (int i = 2; i < index.size(); i++) {
+        expected += index.getRecordCount(i);
+      }
+      assertEquals(expected, records);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testNoIndex() throws Exception {
+    Path file = new Path(ROOT_PATH, "testnoblockindex.seq");
+    for (CompressionType compression : new CompressionType[] {
+        CompressionType.NONE, CompressionType.RECORD }) {
+      write(file, compression, true);
+      assertEquals(6, version(file));
+    }
+
+    write(file, CompressionType.BLOCK, false);
+    assertEquals(6, version(file));
+    readAll(file, true);
+    Reader reader = new Reader(conf, Reader.file(file));
+    try {
+      assertNull(reader.getBlockIndex());
+      assertFalse(reader.seekToBlock(new IntWritable(100)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testAppendToIndexedFile() throws Exception {
+    Path file = new Path(ROOT_PATH, "testblockindexappend.seq");
+    write(file, CompressionType.BLOCK, true);
+    try {
+      SequenceFile.createWriter(conf, Writer.file(file),
+          Writer.keyClass(IntWritable.class), Writer.valueClass(Text.class),
+          Writer.compression(CompressionType.BLOCK, new DefaultCodec()),
+          Writer.appendIfExists(true));
+      fail("appended to a file with a block index");
+    } catch (VersionMismatchException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testMapFile() throws Exception {
+    Path dir = new Path(ROOT_PATH, "testblockindex.map");
+    fs.delete(dir, true);
+    MapFile.Writer writer = new MapFile.Writer(conf, dir,
+        MapFile.Writer.keyClass(IntWritable.class),
+        MapFile.Writer.valueClass(Text.class),
+        MapFile.Writer.compression(CompressionType.BLOCK),
+        Writer.blockIndex(true));
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.append(new IntWritable(2 * i), new Text("value" + i));
+      }
+    } finally {
+      writer.close();
+    }
+    MapFile.Reader reader = new MapFile.Reader(dir, conf);
+    try {
+      Text value = new Text();
+      for (int i = RECORDS - 1; i >= 0; i -= 13) {
+        assertEquals(value, reader.get(new IntWritable(2 * i), value));
+        assertEquals("value" + i, value.toString());
+        assertNull(reader.get(new IntWritable(2 * i + 1), value));
+      }
+    } finally {
+      reader.close();
+    }
+  }
+}
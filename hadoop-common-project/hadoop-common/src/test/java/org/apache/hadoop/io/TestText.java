@@ -22,7 +22,9 @@
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.MalformedInputException;
 import java.util.Random;
+import java.util.regex.Pattern;
 import com.google.common.base.Charsets;
 import com.google.common.primitives.Bytes;
 import org.junit.Test;
@@ -352,7 +354,92 @@ public void testCharAt() {
     }    
     assertEquals("testCharAt error2 !!!", -1, text.charAt(-1));    
     assertEquals("testCharAt error3 !!!", -1, text.charAt(100));
-  }    
+
+    text = new Text("a\u00e9\u20ac\ud83d\ude00");
+    assertEquals('a', text.charAt(0));
+    assertEquals(0xe9, text.charAt(1));
+    assertEquals(-1, text.charAt(2));
+    assertEquals(0x20ac, text.charAt(3));
+    assertEquals(0x1f600, text.charAt(6));
+    assertEquals(-1, text.charAt(text.getLength()));
+    // a character cut short by the length
+    text.set(text.getBytes(), 0, 8);
+    assertEquals(-1, text.charAt(6));
+  }
+
+  @Test
+  public void testFindFrom() throws Exception {
+    Text text = new Text("abc\u00e9abc\u00e9");
+    assertEquals(0, text.find("abc", -1));
+    assertEquals(5, text.find("abc", 1));
+    assertEquals(3, text.find("\u00e9a"));
+    assertEquals(-1, text.find("\u00e9a", 4));
+    assertEquals(4, text.find("", 4));
+    assertEquals(-1, text.find("c", text.getLength()));
+  }
+
+  @Test
+  public void testSetString() throws Exception {
+    Text text = new Text("a longer string than the next");
+    byte[] bytes = text.getBytes();
+    text.set("short \u20ac");
+    assertTrue("reallocated the bytes", bytes == text.getBytes());
+    assertEquals("short \u20ac", text.toString());
+
+    // unpaired surrogates are replaced as the encoder does
+    String bad = "a\ud800b\udc00\ud800";
+    text.set(bad);
+    assertEquals("a?b??", text.toString());
+    assertEquals(Text.encode(bad), ByteBuffer.wrap(text.copyBytes()));
+    try {
+      Text.encode(bad, false);
+      fail("encoded an unpaired surrogate");
+    } catch (MalformedInputException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDecodeMalformed() throws Exception {
+    byte[] utf8 = { 'a', (byte) 0xc3, 'b', (byte) 0xed, (byte) 0xa0,
+        (byte) 0x80, (byte) 0xe9 };
+    assertEquals(new String(utf8, Charsets.UTF_8), Text.decode(utf8));
+    try {
+      Text.decode(utf8, 0, utf8.length, false);
+      fail("decoded malformed input");
+    } catch (MalformedInputException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testAsCharSequence() throws Exception {
+    for (String s : new String[] { "", "ascii text", "\u00e9t\u00e9 \ud83d\ude00",
+        getTestString() }) {
+      Text text = new Text(s);
+      CharSequence chars = text.asCharSequence();
+      assertEquals(s.length(), chars.length());
+      for (int i = 0; i < s.length(); i++) {
+        assertEquals(s.charAt(i), chars.charAt(i));
+      }
+      assertEquals(s, chars.toString());
+      if (s.length() > 2) {
+        assertEquals(s.substring(1, 2), chars.subSequence(1, 2).toString());
+      }
+      try {
+        chars.charAt(s.length());
+        fail("read past the end");
+      } catch (IndexOutOfBoundsException e) {
+        // expected
+      }
+    }
+
+    Text text = new Text("key=value");
+    assertTrue(Pattern.matches("\\w+=\\w+", text.asCharSequence()));
+    text.set("\u00e9=\u00e9");
+    assertTrue("view was not updated",
+        Pattern.matches("\\W=\\W", text.asCharSequence()));
+  }
   
   /**
    * test {@code Text} readFields/write operations
@@ -104,6 +104,15 @@ public void testBZip2Codec() throws IOException {
     codecTest(conf, seed, count, "org.apache.hadoop.io.compress.BZip2Codec");
   }
   
+  @Test(timeout=20000)
+  public void testBZip2CodecThreads() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY,
+        3);
+    codecTest(conf, seed, 0, "org.apache.hadoop.io.compress.BZip2Codec");
+    codecTest(conf, seed, count, "org.apache.hadoop.io.compress.BZip2Codec");
+  }
+
   @Test(timeout=20000)
   public void testBZip2NativeCodec() throws IOException {
     Configuration conf = new Configuration();
@@ -151,6 +160,37 @@ public void testLz4Codec() throws IOException {
     }
   }
 
+  @Test
+  public void testZStandardCodec() throws IOException {
+    Configuration conf = new Configuration();
+    for (int level : new int[] { 1, 3, 19 }) {
+      conf.setInt(CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_LEVEL_KEY,
+          level);
+      codecTest(conf, seed, 0, "org.apache.hadoop.io.compress.ZStandardCodec");
+      codecTest(conf, seed, count,
+          "org.apache.hadoop.io.compress.ZStandardCodec");
+    }
+
+    // a dictionary both sides read from the configuration
+    File dictionary = new File(GenericTestUtils.getTestDir(), "zstd.dict");
+    DataOutputBuffer content = new DataOutputBuffer();
+    RandomDatum.Generator generator = new RandomDatum.Generator(seed);
+    for (int i = 0; i < 100; i++) {
+      generator.next();
+      generator.getKey().write(content);
+    }
+    FileOutputStream out = new FileOutputStream(dictionary);
+    try {
+      out.write(content.getData(), 0, content.getLength());
+    } finally {
+      out.close();
+    }
+    conf.set(CommonConfigurationKeys.IO_COMPRESSION_CODEC_ZSTD_DICTIONARY_KEY,
+        dictionary.toURI().toString());
+    codecTest(conf, seed, count, "org.apache.hadoop.io.compress.ZStandardCodec");
+    dictionary.delete();
+  }
+
   @Test
   public void testDeflateCodec() throws IOException {
     codecTest(conf, seed, 0, "org.apache.hadoop.io.compress.DeflateCodec");
@@ -496,6 +536,9 @@ public void testSequenceFileBZip2Codec() throws IOException, ClassNotFoundExcept
     sequenceFileCodecTest(conf, 0, "org.apache.hadoop.io.compress.BZip2Codec", 100);
     sequenceFileCodecTest(conf, 100, "org.apache.hadoop.io.compress.BZip2Codec", 100);
     sequenceFileCodecTest(conf, 200000, "org.apache.hadoop.io.compress.BZip2Codec", 1000000);
+    conf.setInt(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY,
+        3);
+    sequenceFileCodecTest(conf, 200000, "org.apache.hadoop.io.compress.BZip2Codec", 1000000);
   }
 
   @Test(timeout=20000)
@@ -519,6 +562,18 @@ public void testSequenceFileBZip2NativeCodec() throws IOException,
     }
   }
 
+  @Test(timeout=20000)
+  public void testSequenceFileZStandardCodec() throws IOException,
+      ClassNotFoundException, InstantiationException, IllegalAccessException {
+    Configuration conf = new Configuration();
+    sequenceFileCodecTest(conf, 0,
+        "org.apache.hadoop.io.compress.ZStandardCodec", 100);
+    sequenceFileCodecTest(conf, 100,
+        "org.apache.hadoop.io.compress.ZStandardCodec", 100);
+    sequenceFileCodecTest(conf, 200000,
+        "org.apache.hadoop.io.compress.ZStandardCodec", 1000000);
+  }
+
   @Test
   public void testSequenceFileDeflateCodec() throws IOException, ClassNotFoundException,
       InstantiationException, IllegalAccessException {
@@ -585,6 +640,11 @@ public void testSnappyMapFile() throws Exception {
     codecTestMapFile(SnappyCodec.class, CompressionType.BLOCK, 100);
   }
   
+  @Test
+  public void testZStandardMapFile() throws Exception {
+    codecTestMapFile(ZStandardCodec.class, CompressionType.BLOCK, 100);
+  }
+
   private void codecTestMapFile(Class<? extends CompressionCodec> clazz,
       CompressionType type, int records) throws Exception {
     
@@ -18,7 +18,11 @@
 package org.apache.hadoop.io.compress;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -189,4 +193,30 @@ public void testDecompressorNotReturnSameInstance() {
       CodecPool.returnDecompressor(decompressor);
     }
   }
+
+  @Test(timeout = 1000)
+  public void testDirectBufferPool() {
+    ByteBuffer buffer = CodecPool.getDirectBuffer(100);
+    assertTrue(buffer.isDirect());
+    assertEquals(0, buffer.position());
+    assertEquals(100, buffer.limit());
+    buffer.put(new byte[60]);
+    CodecPool.returnDirectBuffer(buffer);
+
+    // a smaller request reuses it, cleared
+    ByteBuffer reused = CodecPool.getDirectBuffer(50);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(50, reused.limit());
+
+    // it is leased, so a new one is allocated
+    ByteBuffer other = CodecPool.getDirectBuffer(50);
+    assertNotSame(buffer, other);
+    CodecPool.returnDirectBuffer(other);
+    CodecPool.returnDirectBuffer(reused);
+
+    // heap buffers are not pooled
+    CodecPool.returnDirectBuffer(ByteBuffer.allocate(1000));
+    assertTrue(CodecPool.getDirectBuffer(1000).isDirect());
+  }
 }
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestParallelBZip2 {
+
+  private static final int THREADS = 3;
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void setUp() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /** Lines of words, compressing to about a third. */
+  private static byte[] text(int length, long seed) {
+    Random random = new Random(seed);
+    String[] words = { "alpha", "beta", "gamma", "delta", "epsilon",
+        "zeta", "eta", "theta", "iota", "kappa", "lambda" };
+    StringBuilder b = new StringBuilder();
+    while (b.length() < length) {
+      b.append(random.nextInt(100000)).append('\t');
+      for (int i = random.nextInt(10); i >= 0; i--) {
+        b.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      b.append('\n');
+    }
+    return Arrays.copyOf(b.toString().getBytes(), length);
+  }
+
+  /** Long runs, which expand a block to many times its size. */
+  private static byte[] runs(int length, long seed) {
+    Random random = new Random(seed);
+    byte[] b = new byte[length];
+    for (int i = 0; i < length;) {
+      int n = Math.min(length - i, random.nextInt(2000));
+      Arrays.fill(b, i, i + n, (byte) random.nextInt(4));
+      i += n;
+    }
+    return b;
+  }
+
+  private static byte[] compress(byte[] data, int blockSize,
+      ExecutorService executor) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CBZip2OutputStream bzip2 =
+        new CBZip2OutputStream(out, blockSize, executor, THREADS);
+    // in pieces of all sizes, across the blocks
+    Random random = new Random(data.length);
+    for (int i = 0; i < data.length;) {
+      int n = Math.min(data.length - i, random.nextInt(100000));
+      bzip2.write(data, i, n);
+      i += n;
+    }
+    bzip2.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] decompress(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[7777];
+    int n;
+    while ((n = in.read(buf, 0, buf.length)) >= 0) {
+      out.write(buf, 0, n);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] readAhead(byte[] compressed) throws IOException {
+    return decompress(new CBZip2InputStream(
+        new ByteArrayInputStream(compressed), executor, THREADS));
+  }
+
+  @Test(timeout = 60000)
+  public void testSameAsSerial() throws Exception {
+    for (int blockSize : new int[] { 1, 9 }) {
+      for (byte[] data : new byte[][] { new byte[0], text(1000, 1),
+          text(2000000, 2), runs(2000000, 3) }) {
+        byte[] serial = compress(data, blockSize, null);
+        byte[] parallel = compress(data, blockSize, executor);
+        assertArrayEquals("block size " + blockSize + ", " + data.length
+            + " bytes", serial, parallel);
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadAhead() throws Exception {
+    for (byte[] data : new byte[][] { new byte[0], text(1000, 4),
+        text(3000000, 5), runs(2000000, 6) }) {
+      byte[] compressed = compress(data, 1, executor);
+      assertArrayEquals(data, readAhead(compressed));
+      assertArrayEquals(data, decompress(
+          new CBZip2InputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    // byte by byte
+    byte[] data = text(300000, 7);
+    CBZip2InputStream in = new CBZip2InputStream(
+        new ByteArrayInputStream(compress(data, 1, null)), executor, THREADS);
+    for (int i = 0; i < data.length; i++) {
+      assertEquals(data[i] & 0xff, in.read());
+    }
+    assertEquals(-1, in.read());
+    in.close();
+  }
+
+  @Test(timeout = 60000)
+  public void testFalseDelimiters() throws Exception {
+    byte[] data = text(1000000, 10);
+    byte[] compressed = compress(data, 1, null);
+    // inside blocks, so that their decodes are cut short and done again
+    long bits = (compressed.length - 20) * 8L;
+    ReadAheadDecoder decoder = new ReadAheadDecoder(
+        new ByteArrayInputStream(compressed), executor, THREADS);
+    decoder.setFalseDelimiters(bits / 7 + 3, bits / 3, bits / 2 + 5,
+        bits / 2 + 6, bits - 1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[7777];
+    int n;
+    while ((n = decoder.read(buf, 0, buf.length)) >= 0) {
+      out.write(buf, 0, n);
+    }
+    decoder.close();
+    assertArrayEquals(data, out.toByteArray());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcatenatedStreams() throws Exception {
+    byte[][] data = { text(300000, 11), new byte[0], runs(500000, 12),
+        text(1000, 13) };
+    ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        // the codec strips the "BZ" of the first stream only
+        concatenated.write('B');
+        concatenated.write('Z');
+      }
+      concatenated.write(compress(data[i], i % 2 == 0 ? 1 : 9, null));
+      expected.write(data[i]);
+    }
+    byte[] compressed = concatenated.toByteArray();
+    assertArrayEquals(expected.toByteArray(), readAhead(compressed));
+
+    ByteArrayOutputStream trailing = new ByteArrayOutputStream();
+    trailing.write(compressed);
+    trailing.write("trailing".getBytes());
+    try {
+      readAhead(trailing.toByteArray());
+      fail("read trailing data");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testCodecPositionWithThreads() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeys.IO_COMPRESSION_CODEC_BZIP2_THREADS_KEY,
+        THREADS);
+    BZip2Codec codec = new BZip2Codec();
+    codec.setConf(conf);
+    byte[] data = text(3000000, 14);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompressionOutputStream compressing = codec.createOutputStream(out);
+    compressing.write(data);
+    compressing.close();
+    byte[] compressed = out.toByteArray();
+
+    CompressionInputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed));
+    long pos = in.getPos();
+    int positions = 0;
+    byte[] buf = new byte[7777];
+    while (in.read(buf, 0, buf.length) >= 0) {
+      assertTrue(in.getPos() >= pos);
+      if (in.getPos() > pos) {
+        positions++;
+      }
+      pos = in.getPos();
+    }
+    in.close();
+    // a position at the end of each block
+    assertTrue("positions " + positions, positions >= 3);
+    // all but the end of stream delimiter and combined CRC
+    assertTrue("position " + pos, pos > compressed.length - 12);
+    assertTrue("position " + pos, pos <= compressed.length);
+  }
+
+  @Test(timeout = 60000)
+  public void testReadAheadCorrupt() throws Exception {
+    byte[] compressed = compress(text(1000000, 8), 1, executor);
+    Random random = new Random(9);
+    for (int i = 0; i < 20; i++) {
+      // not the header, nor the padding of the last byte
+      byte[] corrupt = compressed.clone();
+      corrupt[2 + random.nextInt(corrupt.length - 3)] ^=
+          1 << random.nextInt(8);
+      try {
+        readAhead(corrupt);
+        fail("read corrupt data");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+
+    try {
+      readAhead(Arrays.copyOf(compressed, compressed.length / 2));
+      fail("read truncated data");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -25,6 +25,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.apache.hadoop.io.DataInputBuffer;
@@ -35,7 +36,9 @@
 import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.apache.hadoop.io.compress.Lz4Codec;
 import org.apache.hadoop.io.compress.lz4.Lz4Compressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Compressor.Lz4DirectCompressor;
 import org.apache.hadoop.io.compress.lz4.Lz4Decompressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Decompressor.Lz4DirectDecompressor;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assume.*;
@@ -307,6 +310,65 @@ compressedDataBuffer, new Lz4Compressor(bufferSize), bufferSize,
     }
   }  
 
+  // test compress/decompress of direct buffers, and that the blocks are
+  // the same as the ones of the byte[] compressor
+  @Test
+  public void testDirectCompressDecompress() throws IOException {
+    int BYTE_SIZE = 1024 * 100;
+    byte[] bytes = generate(BYTE_SIZE);
+    for (boolean useLz4HC : new boolean[] { false, true }) {
+      Lz4DirectCompressor compressor = new Lz4DirectCompressor(useLz4HC);
+      ByteBuffer src = ByteBuffer.allocateDirect(BYTE_SIZE);
+      src.put(bytes);
+      src.flip();
+      // compress after a header
+      ByteBuffer compressed = ByteBuffer.allocateDirect(
+          4 + compressor.maxCompressedLength(BYTE_SIZE));
+      compressed.putInt(BYTE_SIZE);
+      compressor.compress(src, compressed);
+      assertEquals(0, src.remaining());
+      assertEquals(BYTE_SIZE, compressor.getBytesRead());
+      assertEquals(compressed.position() - 4, compressor.getBytesWritten());
+
+      compressed.flip();
+      assertEquals(BYTE_SIZE, compressed.getInt());
+      byte[] block = new byte[compressed.remaining()];
+      compressed.duplicate().get(block);
+      Lz4Decompressor decompressor = new Lz4Decompressor(BYTE_SIZE);
+      decompressor.setInput(block, 0, block.length);
+      byte[] decompressed = new byte[BYTE_SIZE];
+      assertEquals(BYTE_SIZE,
+          decompressor.decompress(decompressed, 0, decompressed.length));
+      assertArrayEquals(bytes, decompressed);
+
+      Lz4DirectDecompressor directDecompressor = new Lz4DirectDecompressor();
+      ByteBuffer dst = ByteBuffer.allocateDirect(BYTE_SIZE + 1);
+      dst.put((byte) 1);
+      directDecompressor.decompress(compressed, dst);
+      assertTrue(directDecompressor.finished());
+      assertEquals(0, compressed.remaining());
+      assertEquals(BYTE_SIZE + 1, dst.position());
+      dst.position(1);
+      dst.get(decompressed);
+      assertArrayEquals(bytes, decompressed);
+    }
+  }
+
+  @Test
+  public void testDirectCompressorSmallDestination() {
+    Lz4DirectCompressor compressor = new Lz4DirectCompressor();
+    ByteBuffer src = ByteBuffer.allocateDirect(1024);
+    ByteBuffer dst = ByteBuffer.allocateDirect(1024);
+    try {
+      compressor.compress(src, dst);
+      fail("compressed to a buffer smaller than the bound");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(1024, src.remaining());
+    assertEquals(0, dst.position());
+  }
+
   public static byte[] generate(int size) {
     byte[] array = new byte[size];
     for (int i = 0; i < size; i++)
@@ -39,6 +39,7 @@
 import org.apache.hadoop.io.compress.CompressionInputStream;
 import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.io.compress.snappy.SnappyCompressor.SnappyDirectCompressor;
 import org.apache.hadoop.io.compress.snappy.SnappyDecompressor.SnappyDirectDecompressor;
 import org.junit.Assert;
 import org.junit.Before;
@@ -328,6 +329,46 @@ public void testSnappyDirectBlockCompression() {
     }
   }
 
+  @Test
+  public void testSnappyDirectCompressDecompress() throws IOException {
+    int BYTE_SIZE = 1024 * 100;
+    byte[] bytes = BytesGenerator.get(BYTE_SIZE);
+    SnappyDirectCompressor compressor = new SnappyDirectCompressor();
+    ByteBuffer src = ByteBuffer.allocateDirect(BYTE_SIZE);
+    src.put(bytes);
+    src.flip();
+    // compress after a header
+    ByteBuffer compressed = ByteBuffer.allocateDirect(
+        4 + compressor.maxCompressedLength(BYTE_SIZE));
+    compressed.putInt(BYTE_SIZE);
+    compressor.compress(src, compressed);
+    assertEquals(0, src.remaining());
+    assertEquals(BYTE_SIZE, compressor.getBytesRead());
+    assertEquals(compressed.position() - 4, compressor.getBytesWritten());
+
+    compressed.flip();
+    assertEquals(BYTE_SIZE, compressed.getInt());
+    SnappyDirectDecompressor decompressor = new SnappyDirectDecompressor();
+    ByteBuffer dst = ByteBuffer.allocateDirect(BYTE_SIZE);
+    decompressor.decompress(compressed, dst);
+    assertTrue(decompressor.finished());
+    assertEquals(0, compressed.remaining());
+    assertEquals(BYTE_SIZE, dst.position());
+    dst.flip();
+    byte[] decompressed = new byte[BYTE_SIZE];
+    dst.get(decompressed);
+    Assert.assertArrayEquals(bytes, decompressed);
+
+    try {
+      src.rewind();
+      compressed.clear().limit(BYTE_SIZE);
+      compressor.compress(src, compressed);
+      fail("compressed to a buffer smaller than the bound");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testSnappyCompressorDecopressorLogicWithCompressionStreams() {
     int BYTE_SIZE = 1024 * 100;
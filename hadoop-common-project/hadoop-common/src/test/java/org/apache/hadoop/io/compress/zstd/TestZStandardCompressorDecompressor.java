@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress.zstd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+import org.junit.Test;
+
+public class TestZStandardCompressorDecompressor {
+
+  private static final Random rnd = new Random(12345L);
+
+  private static final int[] LEVELS = { 1, 3, 9, 19 };
+
+  /** The uncompressed content of the resources compressed by libzstd. */
+  private static byte[] lines() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      sb.append("key").append(i).append('\t')
+          .append("value").append(i * i).append('\n');
+    }
+    return sb.toString().getBytes();
+  }
+
+  private static byte[] text(int size) {
+    String[] words = { "alpha", "beta", "gamma", "delta", "epsilon", "\n" };
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < size) {
+      sb.append(words[rnd.nextInt(words.length)]).append(' ');
+      if (rnd.nextInt(20) == 0) {
+        sb.append(rnd.nextInt());
+      }
+    }
+    return sb.substring(0, size).getBytes();
+  }
+
+  private static byte[] random(int size) {
+    byte[] b = new byte[size];
+    rnd.nextBytes(b);
+    return b;
+  }
+
+  private static byte[] resource(String name) throws IOException {
+    InputStream in = TestZStandardCompressorDecompressor.class
+        .getClassLoader().getResourceAsStream("zstd/" + name);
+    assertTrue("no resource " + name, in != null);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      IOUtils.copyBytes(in, out, 4096);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Compress in pieces of the given size, into a small output buffer. */
+  private static byte[] compress(Compressor compressor, byte[] data,
+      int piece) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    for (int off = 0; off < data.length; off += piece) {
+      compressor.setInput(data, off, Math.min(piece, data.length - off));
+      while (!compressor.needsInput()) {
+        out.write(buf, 0, compressor.compress(buf, 0, buf.length));
+      }
+    }
+    compressor.finish();
+    while (!compressor.finished()) {
+      out.write(buf, 0, compressor.compress(buf, 0, buf.length));
+    }
+    assertEquals(data.length, compressor.getBytesRead());
+    assertEquals(out.size(), compressor.getBytesWritten());
+    return out.toByteArray();
+  }
+
+  /**
+   * Decompress in pieces of the given size, into a small output buffer, as
+   * the decompressor stream does: a frame that follows another is read
+   * after a reset.
+   */
+  private static byte[] decompress(Decompressor decompressor,
+      byte[] compressed, int piece) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[777];
+    int off = 0;
+    while (true) {
+      if (decompressor.finished()) {
+        off -= decompressor.getRemaining();
+        if (off == compressed.length) {
+          break;
+        }
+        decompressor.reset();
+      }
+      if (decompressor.needsInput()) {
+        if (off == compressed.length) {
+          throw new IOException("Unexpected end of input");
+        }
+        int n = Math.min(piece, compressed.length - off);
+        decompressor.setInput(compressed, off, n);
+        off += n;
+      }
+      out.write(buf, 0, decompressor.decompress(buf, 0, buf.length));
+    }
+    return out.toByteArray();
+  }
+
+  private static void roundTrip(Compressor compressor,
+      Decompressor decompressor, byte[] data) throws IOException {
+    for (int piece : new int[] { data.length + 1, 4099 }) {
+      compressor.reset();
+      decompressor.reset();
+      byte[] compressed = compress(compressor, data, piece);
+      assertArrayEquals(data, decompress(decompressor, compressed, piece));
+    }
+  }
+
+  private static void testRoundTrip(boolean nativeCompressor,
+      boolean nativeDecompressor) throws IOException {
+    byte[][] inputs = { new byte[0], new byte[] { 42 }, text(100000),
+        random(50000), new byte[300000], text(3 * 1024 * 1024) };
+    for (int level : LEVELS) {
+      Compressor compressor = nativeCompressor
+          ? new ZStandardCompressor(level, 64 * 1024)
+          : new BuiltInZStandardCompressor(level);
+      Decompressor decompressor = nativeDecompressor
+          ? new ZStandardDecompressor(64 * 1024)
+          : new BuiltInZStandardDecompressor();
+      for (byte[] data : inputs) {
+        roundTrip(compressor, decompressor, data);
+      }
+      compressor.end();
+      decompressor.end();
+    }
+  }
+
+  @Test
+  public void testBuiltInRoundTrip() throws IOException {
+    testRoundTrip(false, false);
+  }
+
+  @Test
+  public void testNativeRoundTrip() throws IOException {
+    assumeTrue(ZStandardCodec.isNativeCodeLoaded());
+    testRoundTrip(true, true);
+  }
+
+  @Test
+  public void testBuiltInAndNativeCompatible() throws IOException {
+    assumeTrue(ZStandardCodec.isNativeCodeLoaded());
+    testRoundTrip(true, false);
+    testRoundTrip(false, true);
+  }
+
+  @Test
+  public void testCompressionLevels() throws IOException {
+    byte[] data = text(500000);
+    int fastest = compress(new BuiltInZStandardCompressor(1), data,
+        data.length).length;
+    int strongest = compress(new BuiltInZStandardCompressor(19), data,
+        data.length).length;
+    assertTrue(fastest + " <= " + strongest, strongest < fastest);
+    assertTrue(fastest < data.length / 2);
+  }
+
+  /** Frames written by libzstd, one of several frames with a skippable one. */
+  @Test
+  public void testDecompressLibzstdFrames() throws IOException {
+    for (String name : new String[] { "lines.zst", "lines-concat.zst" }) {
+      byte[] compressed = resource(name);
+      for (int piece : new int[] { compressed.length, 1, 1000 }) {
+        assertArrayEquals(name, lines(),
+            decompress(new BuiltInZStandardDecompressor(), compressed, piece));
+        if (ZStandardCodec.isNativeCodeLoaded()) {
+          assertArrayEquals(name, lines(), decompress(
+              new ZStandardDecompressor(64 * 1024), compressed, piece));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDictionary() throws IOException {
+    byte[] dictionary = resource("lines.dict");
+    Decompressor decompressor = new BuiltInZStandardDecompressor();
+    decompressor.setDictionary(dictionary, 0, dictionary.length);
+    assertArrayEquals(lines(),
+        decompress(decompressor, resource("lines-dict.zst"), 1000));
+
+    byte[] data = lines();
+    Compressor compressor = new BuiltInZStandardCompressor(3);
+    int plain = compress(compressor, data, data.length).length;
+    compressor.setDictionary(dictionary, 0, dictionary.length);
+    byte[] compressed = compress(compressor, data, data.length);
+    assertTrue(compressed.length + " < " + plain, compressed.length < plain);
+    decompressor.reset();
+    assertArrayEquals(data, decompress(decompressor, compressed, 1000));
+    // the dictionary stays until it is replaced
+    roundTrip(compressor, decompressor, text(200000));
+
+    // content that is not in the format of a dictionary is taken as is
+    byte[] raw = text(10000);
+    compressor.setDictionary(raw, 0, raw.length);
+    decompressor.setDictionary(raw, 0, raw.length);
+    roundTrip(compressor, decompressor, data);
+
+    compressor.setDictionary(dictionary, 0, dictionary.length);
+    compressed = compress(compressor, data, data.length);
+    try {
+      decompress(new BuiltInZStandardDecompressor(), compressed, 1000);
+      fail("decompressed without the dictionary");
+    } catch (IOException e) {
+      // expected
+    }
+
+    if (ZStandardCodec.isNativeCodeLoaded()) {
+      decompressor = new ZStandardDecompressor(64 * 1024);
+      decompressor.setDictionary(dictionary, 0, dictionary.length);
+      assertArrayEquals(data, decompress(decompressor, compressed, 1000));
+      compressor = new ZStandardCompressor(3, 64 * 1024);
+      compressor.setDictionary(dictionary, 0, dictionary.length);
+      roundTrip(compressor, decompressor, data);
+    }
+  }
+
+  private static void assertCorrupt(String message, byte[] compressed) {
+    try {
+      decompress(new BuiltInZStandardDecompressor(), compressed, 1000);
+      fail(message);
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCorruptInput() throws IOException {
+    // caught by the checksum of the frame
+    byte[] compressed = resource("lines.zst");
+    compressed[compressed.length / 2] ^= 0x40;
+    assertCorrupt("decompressed corrupt input", compressed);
+
+    byte[] data = text(100000);
+    compressed = compress(new BuiltInZStandardCompressor(3), data,
+        data.length);
+    // the first block header follows the magic number and two header bytes
+    compressed[6] |= 0x06;
+    assertCorrupt("decompressed a reserved block type", compressed);
+    assertCorrupt("decompressed input without the magic number",
+        new byte[] { 1, 2, 3, 4 });
+  }
+
+  @Test
+  public void testCompressorSetInputNullPointerException() {
+    try {
+      new BuiltInZStandardCompressor(3).setInput(null, 0, 10);
+      fail("testCompressorSetInputNullPointerException error !!!");
+    } catch (NullPointerException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDecompressorSetInputNullPointerException() {
+    try {
+      new BuiltInZStandardDecompressor().setInput(null, 0, 10);
+      fail("testDecompressorSetInputNullPointerException error !!!");
+    } catch (NullPointerException ex) {
+      // expected
+    }
+  }
+}
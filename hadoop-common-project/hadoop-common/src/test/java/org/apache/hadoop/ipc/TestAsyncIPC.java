@@ -18,6 +18,9 @@
 
 package org.apache.hadoop.ipc;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -37,10 +40,12 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -236,6 +241,60 @@ public void testAsyncCallLimit() throws IOException,
     internalTestAsyncCallLimit(100, false, 5, 10, 500);
   }
 
+  @Test(timeout = 60000)
+  public void testAsyncCallWithSelectors() throws IOException,
+      InterruptedException, ExecutionException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY, 2);
+    internalTestAsyncCall(3, false, 2, 5, 100);
+    internalTestAsyncCall(3, true, 2, 5, 10);
+  }
+
+  @Test(timeout = 60000)
+  public void testAsyncCallback() throws IOException, InterruptedException {
+    final int callCount = 100;
+    final Server server = new TestIPC.TestServer(10, false, conf);
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+    final int asyncCallCount = client.getAsyncCallCount();
+
+    final CountDownLatch latch = new CountDownLatch(callCount);
+    final AtomicInteger failed = new AtomicInteger();
+    // the test runs on a thread of its own for the timeout
+    Client.setAsynchronousMode(true);
+    try {
+      for (int i = 0; i < callCount; i++) {
+        final long param = TestIPC.RANDOM.nextLong();
+        TestIPC.call(client, param, addr, conf);
+        ListenableFuture<LongWritable> future =
+            Client.getAsyncRpcResponseFuture();
+        Futures.addCallback(future, new FutureCallback<LongWritable>() {
+          @Override
+          public void onSuccess(LongWritable value) {
+            if (value.get() != param) {
+              failed.incrementAndGet();
+            }
+            latch.countDown();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOG.error("Async call failed", t);
+            failed.incrementAndGet();
+            latch.countDown();
+          }
+        });
+      }
+      // the callbacks run without the responses being taken
+      latch.await();
+      assertEquals(0, failed.get());
+      assertEquals(asyncCallCount, client.getAsyncCallCount());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   public void internalTestAsyncCall(int handlerCount, boolean handlerSleep,
       int clientCount, int callerCount, int callCount) throws IOException,
       InterruptedException, ExecutionException {
@@ -628,6 +628,48 @@ public void testIpcTimeout() throws IOException {
     client.stop();
   }
 
+  @Test(timeout=120000)
+  public void testSerialWithSelectors()
+      throws IOException, InterruptedException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY, 2);
+    internalTestSerial(3, false, 2, 5, 100);
+    internalTestSerial(3, true, 2, 5, 10);
+  }
+
+  @Test(timeout=60000)
+  public void testIpcTimeoutWithSelectors() throws IOException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY, 2);
+    testIpcTimeout();
+  }
+
+  @Test(timeout=60000)
+  public void testIdleConnectionWithSelectors() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SELECTOR_THREADS_KEY, 1);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
+        500);
+    Server server = new TestServer(1, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+
+    final Client client = new Client(LongWritable.class, conf);
+    try {
+      call(client, RANDOM.nextLong(), addr, conf);
+      assertEquals(1, client.getConnectionIds().size());
+      // the selector closes the idle connection
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return client.getConnectionIds().isEmpty();
+        }
+      }, 100, 10000);
+      call(client, RANDOM.nextLong(), addr, conf);
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testIpcConnectTimeout() throws IOException {
     // start server
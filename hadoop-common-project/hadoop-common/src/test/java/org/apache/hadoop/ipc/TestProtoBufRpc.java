@@ -25,6 +25,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -46,7 +47,9 @@
 import org.junit.After;
 
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.Message;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -222,6 +225,33 @@ public static void testProtoBufRpc(TestRpcService client) throws Exception {
     }
   }
   
+  @Test (timeout=5000)
+  public void testProtoBufRpcAsync() throws Exception {
+    TestRpcService client = getClient();
+    Client.setAsynchronousMode(true);
+    try {
+      EchoRequestProto echoRequest = EchoRequestProto.newBuilder()
+          .setMessage("hello").build();
+      client.echo(null, echoRequest);
+      ListenableFuture<Message> echo = ProtobufRpcEngine.getAsyncReturnFuture();
+      client.error(null, newEmptyRequest());
+      ListenableFuture<Message> error =
+          ProtobufRpcEngine.getAsyncReturnFuture();
+
+      assertEquals("hello", ((EchoResponseProto) echo.get()).getMessage());
+      try {
+        error.get();
+        Assert.fail("Expected exception is not thrown");
+      } catch (ExecutionException e) {
+        RemoteException re = (RemoteException) e.getCause();
+        Assert.assertTrue(re.getErrorCode().equals(
+            RpcErrorCodeProto.ERROR_RPC_SERVER));
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+    }
+  }
+
   @Test (timeout=5000)
   public void testProtoBufRpc2() throws Exception {
     TestRpcService2 client = getClient2();
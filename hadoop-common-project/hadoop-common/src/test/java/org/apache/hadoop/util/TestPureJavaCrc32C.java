@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import org.junit.Test;
+
+/**
+ * Check that PureJavaCrc32C and the CRC32C of DataChecksum agree with a
+ * bit at a time implementation of the CRC32-C polynomial.
+ */
+public class TestPureJavaCrc32C {
+
+  @Test
+  public void testKnownValue() throws Exception {
+    byte[] check = "123456789".getBytes("UTF-8");
+    assertEquals(0xE3069283L, crc(new PureJavaCrc32C(), check, 0,
+        check.length));
+    assertEquals(0xE3069283L, crc(DataChecksum.newCrc32C(), check, 0,
+        check.length));
+  }
+
+  @Test
+  public void testCorrectness() {
+    Random r = new Random();
+    byte[] bytes = new byte[4096];
+    r.nextBytes(bytes);
+    // every length around the 8 and 16 byte steps, at several offsets
+    for (int off = 0; off < 17; off++) {
+      for (int len = 0; len < 100; len++) {
+        checkSame(bytes, off, len);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      int off = r.nextInt(bytes.length);
+      checkSame(bytes, off, r.nextInt(bytes.length - off + 1));
+    }
+  }
+
+  @Test
+  public void testIncrementalUpdates() {
+    Random r = new Random();
+    byte[] bytes = new byte[1000];
+    r.nextBytes(bytes);
+    PureJavaCrc32C ours = new PureJavaCrc32C();
+    int off = 0;
+    while (off < bytes.length) {
+      int len = Math.min(r.nextInt(40), bytes.length - off);
+      if (len == 1) {
+        ours.update(bytes[off]);
+      } else {
+        ours.update(bytes, off, len);
+      }
+      off += len;
+    }
+    assertEquals(reference(bytes, 0, bytes.length), ours.getValue());
+  }
+
+  private static void checkSame(byte[] bytes, int off, int len) {
+    long expected = reference(bytes, off, len);
+    assertEquals("off=" + off + ", len=" + len, expected,
+        crc(new PureJavaCrc32C(), bytes, off, len));
+    assertEquals("off=" + off + ", len=" + len, expected,
+        crc(DataChecksum.newCrc32C(), bytes, off, len));
+  }
+
+  private static long crc(Checksum sum, byte[] b, int off, int len) {
+    sum.update(b, off, len);
+    return sum.getValue();
+  }
+
+  private static long reference(byte[] b, int off, int len) {
+    int crc = 0xffffffff;
+    for (int i = off; i < off + len; i++) {
+      crc ^= b[i] & 0xff;
+      for (int k = 0; k < 8; k++) {
+        crc = (crc >>> 1) ^ (0x82F63B78 & -(crc & 1));
+      }
+    }
+    return (~crc) & 0xffffffffL;
+  }
+}
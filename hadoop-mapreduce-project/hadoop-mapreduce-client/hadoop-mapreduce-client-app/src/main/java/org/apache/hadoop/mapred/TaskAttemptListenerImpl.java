@@ -22,9 +22,11 @@
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -82,6 +84,12 @@ public class TaskAttemptListenerImpl extends CompositeService
       = new ConcurrentHashMap<WrappedJvmID, org.apache.hadoop.mapred.Task>();
   private Set<WrappedJvmID> launchedJVMs = Collections
       .newSetFromMap(new ConcurrentHashMap<WrappedJvmID, Boolean>());
+  // The latest status of each launched attempt that the attempt has not
+  // taken yet. Updates queued while one is pending only replace its status.
+  private ConcurrentMap<org.apache.hadoop.mapreduce.v2.api.records.TaskAttemptId,
+      AtomicReference<TaskAttemptStatus>> attemptIdToStatus
+      = new ConcurrentHashMap<org.apache.hadoop.mapreduce.v2.api.records.TaskAttemptId,
+          AtomicReference<TaskAttemptStatus>>();
 
   private JobTokenSecretManager jobTokenSecretManager = null;
 
@@ -385,10 +393,41 @@ public boolean statusUpdate(TaskAttemptID taskAttemptID,
 //    // isn't ever changed by the Task itself.
 //    taskStatus.getIncludeCounters();
 
-    context.getEventHandler().handle(
-        new TaskAttemptStatusUpdateEvent(taskAttemptStatus.id,
-            taskAttemptStatus));
-    return true;
+    AtomicReference<TaskAttemptStatus> pendingStatus =
+        attemptIdToStatus.get(yarnAttemptID);
+    if (pendingStatus == null) {
+      // Not registered with this listener, so nothing to coalesce with
+      context.getEventHandler().handle(
+          new TaskAttemptStatusUpdateEvent(taskAttemptStatus.id,
+              taskAttemptStatus));
+      return true;
+    }
+
+    // Replace the status of an update still waiting in the dispatcher
+    // rather than queueing another one. The fetch failures it reports are
+    // carried over, as they are not repeated by the next report.
+    List<org.apache.hadoop.mapreduce.v2.api.records.TaskAttemptId>
+        fetchFailedMaps = taskAttemptStatus.fetchFailedMaps;
+    while (true) {
+      TaskAttemptStatus lastStatus = pendingStatus.get();
+      taskAttemptStatus.fetchFailedMaps = fetchFailedMaps;
+      if (lastStatus != null && lastStatus.fetchFailedMaps != null) {
+        taskAttemptStatus.fetchFailedMaps = new ArrayList<
+            org.apache.hadoop.mapreduce.v2.api.records.TaskAttemptId>(
+                lastStatus.fetchFailedMaps);
+        if (fetchFailedMaps != null) {
+          taskAttemptStatus.fetchFailedMaps.addAll(fetchFailedMaps);
+        }
+      }
+      if (pendingStatus.compareAndSet(lastStatus, taskAttemptStatus)) {
+        if (lastStatus == null) {
+          context.getEventHandler().handle(
+              new TaskAttemptStatusUpdateEvent(taskAttemptStatus.id,
+                  pendingStatus));
+        }
+        return true;
+      }
+    }
   }
 
   @Override
@@ -466,6 +505,7 @@ public void registerLaunchedTask(
     // The AM considers the task to be launched (Has asked the NM to launch it)
     // The JVM will only be given a task after this registartion.
     launchedJVMs.add(jvmId);
+    attemptIdToStatus.put(attemptID, new AtomicReference<TaskAttemptStatus>());
 
     taskHeartbeatHandler.register(attemptID);
   }
@@ -489,6 +529,7 @@ public void unregister(
 
     //unregister this attempt
     taskHeartbeatHandler.unregister(attemptID);
+    attemptIdToStatus.remove(attemptID);
   }
 
   @Override
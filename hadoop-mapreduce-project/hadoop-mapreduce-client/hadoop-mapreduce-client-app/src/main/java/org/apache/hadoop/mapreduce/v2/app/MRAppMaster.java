@@ -418,8 +418,18 @@ protected void serviceInit(final Configuration conf) throws Exception {
       //register the event dispatchers
       dispatcher.register(JobEventType.class, jobEventDispatcher);
       dispatcher.register(TaskEventType.class, new TaskEventDispatcher());
-      dispatcher.register(TaskAttemptEventType.class, 
-          new TaskAttemptEventDispatcher());
+      int taskAttemptDispatchers = conf.getInt(
+          MRJobConfig.MR_AM_TASK_ATTEMPT_DISPATCHER_THREADS,
+          MRJobConfig.DEFAULT_MR_AM_TASK_ATTEMPT_DISPATCHER_THREADS);
+      if (taskAttemptDispatchers > 1) {
+        PartitionedTaskAttemptEventDispatcher partitionedDispatcher =
+            new PartitionedTaskAttemptEventDispatcher(taskAttemptDispatchers);
+        addIfService(partitionedDispatcher);
+        dispatcher.register(TaskAttemptEventType.class, partitionedDispatcher);
+      } else {
+        dispatcher.register(TaskAttemptEventType.class,
+            new TaskAttemptEventDispatcher());
+      }
       dispatcher.register(CommitterEventType.class, committerEventHandler);
 
       if (conf.getBoolean(MRJobConfig.MAP_SPECULATIVE, false)
@@ -1408,6 +1418,33 @@ public void handle(TaskAttemptEvent event) {
     }
   }
 
+  /**
+   * Handles the events of task attempts on several threads. The events of
+   * all attempts of a task go to the same thread, so they stay ordered.
+   */
+  private class PartitionedTaskAttemptEventDispatcher extends CompositeService
+      implements EventHandler<TaskAttemptEvent> {
+    private final AsyncDispatcher[] dispatchers;
+
+    public PartitionedTaskAttemptEventDispatcher(int partitions) {
+      super(PartitionedTaskAttemptEventDispatcher.class.getName());
+      dispatchers = new AsyncDispatcher[partitions];
+      for (int i = 0; i < partitions; i++) {
+        dispatchers[i] = new AsyncDispatcher();
+        dispatchers[i].register(TaskAttemptEventType.class,
+            new TaskAttemptEventDispatcher());
+        addService(dispatchers[i]);
+      }
+    }
+
+    @Override
+    public void handle(TaskAttemptEvent event) {
+      int hash = event.getTaskAttemptID().getTaskId().hashCode();
+      dispatchers[(hash & Integer.MAX_VALUE) % dispatchers.length]
+          .getEventHandler().handle(event);
+    }
+  }
+
   private class SpeculatorEventDispatcher implements
       EventHandler<SpeculatorEvent> {
     private final Configuration conf;
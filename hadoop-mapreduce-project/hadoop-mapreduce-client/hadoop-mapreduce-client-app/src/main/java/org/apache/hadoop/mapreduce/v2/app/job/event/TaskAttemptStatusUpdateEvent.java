@@ -19,6 +19,7 @@
 package org.apache.hadoop.mapreduce.v2.app.job.event;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.v2.api.records.Phase;
@@ -27,16 +28,30 @@
 
 public class TaskAttemptStatusUpdateEvent extends TaskAttemptEvent {
 
-  private TaskAttemptStatus reportedTaskAttemptStatus;
+  private final AtomicReference<TaskAttemptStatus> reportedTaskAttemptStatus;
 
   public TaskAttemptStatusUpdateEvent(TaskAttemptId id,
       TaskAttemptStatus taskAttemptStatus) {
+    this(id, new AtomicReference<TaskAttemptStatus>(taskAttemptStatus));
+  }
+
+  /**
+   * Create an event for the latest status in the given reference. Until the
+   * event is handled, later reports replace the status in the reference
+   * instead of queueing events of their own.
+   */
+  public TaskAttemptStatusUpdateEvent(TaskAttemptId id,
+      AtomicReference<TaskAttemptStatus> taskAttemptStatusRef) {
     super(id, TaskAttemptEventType.TA_UPDATE);
-    this.reportedTaskAttemptStatus = taskAttemptStatus;
+    this.reportedTaskAttemptStatus = taskAttemptStatusRef;
   }
 
+  /**
+   * Take the latest reported status.
+   * @return the status, or null if it was taken already
+   */
   public TaskAttemptStatus getReportedTaskAttemptStatus() {
-    return reportedTaskAttemptStatus;
+    return reportedTaskAttemptStatus.getAndSet(null);
   }
 
   /**
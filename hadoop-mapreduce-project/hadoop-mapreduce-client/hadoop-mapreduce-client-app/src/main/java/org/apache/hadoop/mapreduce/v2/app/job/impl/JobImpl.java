@@ -52,6 +52,7 @@
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.JobACL;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobCounter;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.OutputCommitter;
 import org.apache.hadoop.mapreduce.TypeConverter;
@@ -638,6 +639,7 @@ JobEventType.JOB_KILL, new KillTasksTransition())
   private int killedReduceTaskCount = 0;
   private long startTime;
   private long finishTime;
+  private long commitStartTime;
   private float setupProgress;
   private float mapProgress;
   private float reduceProgress;
@@ -1108,6 +1110,7 @@ protected JobStateInternal checkReadyForCommit() {
     JobStateInternal currentState = getInternalState();
     if (completedTaskCount == tasks.size()
         && currentState == JobStateInternal.RUNNING) {
+      commitStartTime = clock.getTime();
       eventHandler.handle(new CommitterJobCommitEvent(jobId, getJobContext()));
       return JobStateInternal.COMMITTING;
     }
@@ -2061,6 +2064,8 @@ private static class CommitSucceededTransition implements
       SingleArcTransition<JobImpl, JobEvent> {
     @Override
     public void transition(JobImpl job, JobEvent event) {
+      job.jobCounters.findCounter(JobCounter.MILLIS_JOB_COMMIT).increment(
+          job.clock.getTime() - job.commitStartTime);
       job.logJobHistoryFinishedEvent();
       job.finished(JobStateInternal.SUCCEEDED);
     }
@@ -1972,6 +1972,9 @@ public void transition(TaskAttemptImpl taskAttempt,
       TaskAttemptStatus newReportedStatus =
           ((TaskAttemptStatusUpdateEvent) event)
               .getReportedTaskAttemptStatus();
+      if (newReportedStatus == null) {
+        return;
+      }
       // Now switch the information in the reportedStatus
       taskAttempt.reportedStatus = newReportedStatus;
       taskAttempt.reportedStatus.taskState = taskAttempt.getState();
@@ -31,6 +31,7 @@
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.Assert;
 
@@ -46,12 +47,18 @@
 import org.apache.hadoop.mapreduce.v2.app.AppContext;
 import org.apache.hadoop.mapreduce.v2.app.TaskHeartbeatHandler;
 import org.apache.hadoop.mapreduce.v2.app.job.Job;
+import org.apache.hadoop.mapreduce.v2.app.job.event.TaskAttemptEvent;
+import org.apache.hadoop.mapreduce.v2.app.job.event.TaskAttemptStatusUpdateEvent;
+import org.apache.hadoop.mapreduce.v2.app.job.event.TaskAttemptStatusUpdateEvent.TaskAttemptStatus;
 import org.apache.hadoop.mapreduce.v2.app.rm.RMHeartbeatHandler;
 import org.apache.hadoop.mapreduce.v2.util.MRBuilderUtils;
+import org.apache.hadoop.yarn.event.Event;
+import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.factories.RecordFactory;
 import org.apache.hadoop.yarn.factory.providers.RecordFactoryProvider;
 import org.apache.hadoop.yarn.util.SystemClock;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 public class TestTaskAttemptListenerImpl {
   public static class MockTaskAttemptListenerImpl extends TaskAttemptListenerImpl {
@@ -276,4 +283,70 @@ protected void registerHeartbeatHandler(Configuration conf) {
 
     listener.stop();
   }
+
+  @SuppressWarnings("unchecked")
+  @Test (timeout=10000)
+  public void testStatusUpdateCoalescing() throws Exception {
+    EventHandler<Event> ea = mock(EventHandler.class);
+    AppContext appCtx = mock(AppContext.class);
+    when(appCtx.getEventHandler()).thenReturn(ea);
+    JobTokenSecretManager secret = mock(JobTokenSecretManager.class);
+    RMHeartbeatHandler rmHeartbeatHandler =
+        mock(RMHeartbeatHandler.class);
+    TaskHeartbeatHandler hbHandler = mock(TaskHeartbeatHandler.class);
+    MockTaskAttemptListenerImpl listener =
+        new MockTaskAttemptListenerImpl(appCtx, secret,
+            rmHeartbeatHandler, hbHandler);
+    listener.init(new Configuration());
+    listener.start();
+
+    TaskAttemptID tid = new TaskAttemptID("12345", 1, TaskType.REDUCE, 1, 0);
+    TaskAttemptId attemptID = TypeConverter.toYarn(tid);
+    TaskAttemptID map1 = new TaskAttemptID("12345", 1, TaskType.MAP, 1, 0);
+    TaskAttemptID map2 = new TaskAttemptID("12345", 1, TaskType.MAP, 2, 0);
+    WrappedJvmID wid = new WrappedJvmID(tid.getJobID(), false, 1);
+    listener.registerLaunchedTask(attemptID, wid);
+
+    // updates sent while one is pending replace its status
+    TaskStatus status = createReduceStatus(tid, 0.1f);
+    status.addFetchFailedMap(map1);
+    listener.statusUpdate(tid, status);
+    status = createReduceStatus(tid, 0.2f);
+    status.addFetchFailedMap(map2);
+    listener.statusUpdate(tid, status);
+    listener.statusUpdate(tid, createReduceStatus(tid, 0.3f));
+    ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+    verify(ea, times(1)).handle(captor.capture());
+    TaskAttemptStatusUpdateEvent event =
+        (TaskAttemptStatusUpdateEvent) captor.getValue();
+    TaskAttemptStatus reported = event.getReportedTaskAttemptStatus();
+    assertEquals(0.3f, reported.progress, 0.0f);
+    // without losing the fetch failures reported by the earlier ones
+    assertEquals(Arrays.asList(TypeConverter.toYarn(map1),
+        TypeConverter.toYarn(map2)), reported.fetchFailedMaps);
+    assertNull(event.getReportedTaskAttemptStatus());
+
+    // once the status is taken, the next update is sent again
+    listener.statusUpdate(tid, createReduceStatus(tid, 0.4f));
+    verify(ea, times(2)).handle(captor.capture());
+    List<Event> events = captor.getAllValues();
+    event = (TaskAttemptStatusUpdateEvent) events.get(events.size() - 1);
+    reported = event.getReportedTaskAttemptStatus();
+    assertEquals(0.4f, reported.progress, 0.0f);
+    assertNull(reported.fetchFailedMaps);
+
+    // updates of attempts not registered are sent as they come
+    listener.unregister(attemptID, wid);
+    listener.statusUpdate(tid, createReduceStatus(tid, 0.5f));
+    listener.statusUpdate(tid, createReduceStatus(tid, 0.6f));
+    verify(ea, times(4)).handle(any(TaskAttemptEvent.class));
+
+    listener.stop();
+  }
+
+  private static TaskStatus createReduceStatus(TaskAttemptID tid,
+      float progress) {
+    return new ReduceTaskStatus(tid, progress, 1, TaskStatus.State.RUNNING,
+        "", "", "", TaskStatus.Phase.SHUFFLE, new Counters());
+  }
 }
@@ -345,7 +345,7 @@ public DataOutputStream getOutputStream(int length) throws IOException {
    *  key and value bytes to the BackupStore
    * @param length 
    */
-  public void updateCounters(int length) {
+  public void updateCounters(int length) throws IOException {
     if (fileCache.isActive) {
       fileCache.writer.updateCountersForExternalAppend(length);
     } else {
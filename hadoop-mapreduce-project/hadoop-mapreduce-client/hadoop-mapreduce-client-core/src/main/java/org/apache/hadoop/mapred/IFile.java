@@ -42,6 +42,7 @@
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapreduce.MRConfig;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -52,12 +53,36 @@
  *
  * There is a <code>Writer</code> to write out map-outputs in this format and 
  * a <code>Reader</code> to read files of this format.
+ *
+ * Version 1 of the format is the stream of records, compressed as a whole,
+ * followed by a checksum of the stored bytes. Version 2 splits the same
+ * stream into blocks that are compressed and checksummed one by one; see
+ * {@link IFileBlockOutputStream}. The version is chosen per job with
+ * {@link MRConfig#MAPRED_IFILE_VERSION}, and both the maps and the reduces
+ * of a job use the same one. Segments held in memory by the reduces are
+ * always kept in the record stream of version 1.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
 public class IFile {
   private static final Log LOG = LogFactory.getLog(IFile.class);
   public static final int EOF_MARKER = -1; // End of File Marker
+
+  /**
+   * Get the version of the format the files of a job are written in.
+   */
+  public static int getVersion(Configuration conf) {
+    if (conf == null) {
+      return MRConfig.DEFAULT_MAPRED_IFILE_VERSION;
+    }
+    int version = conf.getInt(MRConfig.MAPRED_IFILE_VERSION,
+                              MRConfig.DEFAULT_MAPRED_IFILE_VERSION);
+    if (version != 1 && version != 2) {
+      throw new IllegalArgumentException("Unsupported IFile version " +
+          version + " set in " + MRConfig.MAPRED_IFILE_VERSION);
+    }
+    return version;
+  }
   
   /**
    * <code>IFile.Writer</code> to write out intermediate map-outputs. 
@@ -82,6 +107,7 @@ public class IFile {
     private final Counters.Counter writtenRecordsCounter;
 
     IFileOutputStream checksumOut;
+    IFileBlockOutputStream blockOut;
 
     Class<K> keyClass;
     Class<V> valueClass;
@@ -107,10 +133,22 @@ public Writer(Configuration conf, FSDataOutputStream out,
         boolean ownOutputStream)
         throws IOException {
       this.writtenRecordsCounter = writesCounter;
-      this.checksumOut = new IFileOutputStream(out);
       this.rawOut = out;
       this.start = this.rawOut.getPos();
-      if (codec != null) {
+      if (getVersion(conf) == 2) {
+        if (codec != null) {
+          this.compressor = CodecPool.getCompressor(codec);
+          if (this.compressor != null) {
+            this.compressor.reset();
+            this.compressOutput = true;
+          }
+        }
+        this.blockOut = new IFileBlockOutputStream(out, codec, compressor,
+            conf.getInt(MRConfig.MAPRED_IFILE_BLOCK_SIZE,
+                        MRConfig.DEFAULT_MAPRED_IFILE_BLOCK_SIZE));
+        this.out = new FSDataOutputStream(blockOut, null);
+      } else if (codec != null) {
+        this.checksumOut = new IFileOutputStream(out);
         this.compressor = CodecPool.getCompressor(codec);
         if (this.compressor != null) {
           this.compressor.reset();
@@ -122,6 +160,7 @@ public Writer(Configuration conf, FSDataOutputStream out,
           this.out = new FSDataOutputStream(checksumOut,null);
         }
       } else {
+        this.checksumOut = new IFileOutputStream(out);
         this.out = new FSDataOutputStream(checksumOut,null);
       }
       
@@ -156,8 +195,8 @@ public void close() throws IOException {
       
       //Flush the stream
       out.flush();
-  
-      if (compressOutput) {
+
+      if (compressOutput && compressedOut != null) {
         // Flush
         compressedOut.finish();
         compressedOut.resetState();
@@ -167,6 +206,10 @@ public void close() throws IOException {
       if (ownOutputStream) {
         out.close();
       }
+      else if (blockOut != null) {
+        // Write the last block and the end of file header
+        blockOut.finish();
+      }
       else {
         // Write the checksum
         checksumOut.finish();
@@ -214,6 +257,9 @@ public void append(K key, V value) throws IOException {
       WritableUtils.writeVInt(out, keyLength);                  // key length
       WritableUtils.writeVInt(out, valueLength);                // value length
       out.write(buffer.getData(), 0, buffer.getLength());       // data
+      if (blockOut != null) {
+        blockOut.endRecord();
+      }
 
       // Reset
       buffer.reset();
@@ -243,6 +289,9 @@ public void append(DataInputBuffer key, DataInputBuffer value)
       WritableUtils.writeVInt(out, valueLength);
       out.write(key.getData(), key.getPosition(), keyLength); 
       out.write(value.getData(), value.getPosition(), valueLength); 
+      if (blockOut != null) {
+        blockOut.endRecord();
+      }
 
       // Update bytes written
       decompressedBytesWritten += keyLength + valueLength + 
@@ -257,7 +306,11 @@ public DataOutputStream getOutputStream () {
     }
     
     // Required for mark/reset
-    public void updateCountersForExternalAppend(long length) {
+    public void updateCountersForExternalAppend(long length)
+        throws IOException {
+      if (blockOut != null) {
+        blockOut.endRecord();
+      }
       ++numRecordsWritten;
       decompressedBytesWritten += length;
     }
@@ -290,6 +343,7 @@ public long getCompressedLength() {
     protected final long fileLength;
     protected boolean eof = false;
     final IFileInputStream checksumIn;
+    final IFileBlockInputStream blockIn;
     
     protected byte[] buffer = null;
     protected int bufferSize = DEFAULT_BUFFER_SIZE;
@@ -335,8 +389,16 @@ public Reader(Configuration conf, FSDataInputStream in, long length,
                   CompressionCodec codec,
                   Counters.Counter readsCounter) throws IOException {
       readRecordsCounter = readsCounter;
-      checksumIn = new IFileInputStream(in,length, conf);
-      if (codec != null) {
+      if (in != null && getVersion(conf) == 2) {
+        checksumIn = null;
+        if (codec != null) {
+          decompressor = CodecPool.getDecompressor(codec);
+        }
+        blockIn = new IFileBlockInputStream(in, length, codec, decompressor);
+        this.in = blockIn;
+      } else if (codec != null) {
+        blockIn = null;
+        checksumIn = new IFileInputStream(in,length, conf);
         decompressor = CodecPool.getDecompressor(codec);
         if (decompressor != null) {
           this.in = codec.createInputStream(checksumIn, decompressor);
@@ -345,6 +407,8 @@ public Reader(Configuration conf, FSDataInputStream in, long length,
           this.in = checksumIn;
         }
       } else {
+        blockIn = null;
+        checksumIn = new IFileInputStream(in,length, conf);
         this.in = checksumIn;
       }
       this.dataIn = new DataInputStream(this.in);
@@ -356,11 +420,12 @@ public Reader(Configuration conf, FSDataInputStream in, long length,
     }
     
     public long getLength() { 
-      return fileLength - checksumIn.getSize();
+      return blockIn != null ? fileLength : fileLength - checksumIn.getSize();
     }
     
     public long getPosition() throws IOException {    
-      return checksumIn.getPosition(); 
+      return blockIn != null ? blockIn.getPosition()
+                             : checksumIn.getPosition();
     }
     
     /**
@@ -473,7 +538,11 @@ public void reset(int offset) {
     }
 
     public void disableChecksumValidation() {
-      checksumIn.disableChecksumValidation();
+      if (blockIn != null) {
+        blockIn.disableChecksumValidation();
+      } else {
+        checksumIn.disableChecksumValidation();
+      }
     }
 
   }    
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Reads a version 2 IFile segment written by {@link IFileBlockOutputStream}.
+ *
+ * {@link #read(byte[], int, int)} returns the records, each block checked
+ * against its checksum and decompressed as a whole.
+ * {@link #readWithChecksum(byte[], int, int)} returns the segment exactly
+ * as it is stored, after checking the checksums of its blocks, for copying
+ * it elsewhere. The two must not be mixed on one stream. Both read no more
+ * than the length of the segment from the underlying stream.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class IFileBlockInputStream extends InputStream {
+
+  private final InputStream in;
+  private final DataInputStream dataIn;
+  private final long length;
+  private final CompressionCodec codec;
+  private final Decompressor decompressor;
+  private final DataInputBuffer compressedIn = new DataInputBuffer();
+  private CompressionInputStream inflateFilter;
+  private final CRC32 crc = new CRC32();
+  private boolean verifyChecksums = true;
+
+  // the header and the stored bytes of the current block
+  private int rawLength;
+  private int storedLength;
+  private int checksum;
+  private byte[] stored = new byte[0];
+
+  // the bytes being returned to the reader
+  private byte[] buffer = new byte[0];
+  private int bufferPos = 0;
+  private int bufferLimit = 0;
+  private final DataOutputBuffer storedBlock = new DataOutputBuffer();
+
+  private long position = 0;
+  private boolean eof = false;
+  private final byte[] oneByte = new byte[1];
+
+  /**
+   * Create a stream reading a segment of the given length from in.
+   * @param in the stream the segment is read from
+   * @param length the length of the segment
+   * @param codec the codec the blocks were compressed with, or null
+   * @param decompressor the decompressor to use, or null to let the codec
+   *                     create one. It is not returned to the pool on close.
+   */
+  public IFileBlockInputStream(InputStream in, long length,
+      CompressionCodec codec, Decompressor decompressor) {
+    this.in = in;
+    this.dataIn = new DataInputStream(in);
+    this.length = length;
+    this.codec = codec;
+    this.decompressor = decompressor;
+  }
+
+  /**
+   * Read the header and the stored bytes of the next block.
+   * @return false at the end of the blocks, after the end of file header
+   *         has been read
+   */
+  private boolean readBlock() throws IOException {
+    if (eof) {
+      return false;
+    }
+    final long offset = position;
+    if (length - position < IFileBlockOutputStream.HEADER_LENGTH) {
+      throw new IOException("Truncated IFile segment at " + offset +
+                            " of " + length);
+    }
+    rawLength = dataIn.readInt();
+    storedLength = dataIn.readInt();
+    checksum = dataIn.readInt();
+    position += IFileBlockOutputStream.HEADER_LENGTH;
+    if (rawLength == IFile.EOF_MARKER) {
+      if (position != length) {
+        throw new IOException("Corrupt IFile segment: " +
+                              (length - position) +
+                              " bytes past the end of file header at " +
+                              offset);
+      }
+      eof = true;
+      return false;
+    }
+    if (rawLength < 0 || storedLength < 0 ||
+        storedLength > length - position) {
+      throw new IOException("Corrupt IFile block header at " + offset +
+                            ": raw length " + rawLength +
+                            ", stored length " + storedLength);
+    }
+    if (stored.length < storedLength) {
+      stored = new byte[storedLength];
+    }
+    IOUtils.readFully(in, stored, 0, storedLength);
+    position += storedLength;
+    if (verifyChecksums) {
+      crc.reset();
+      crc.update(stored, 0, storedLength);
+      if ((int) crc.getValue() != checksum) {
+        throw new ChecksumException("Checksum error in IFile block at " +
+                                    offset, offset);
+      }
+    }
+    return true;
+  }
+
+  private boolean fill() throws IOException {
+    while (bufferPos == bufferLimit) {
+      if (!readBlock()) {
+        return false;
+      }
+      if (codec == null) {
+        if (storedLength != rawLength) {
+          throw new IOException("Compressed IFile block read without a " +
+                                "codec at " + (position - storedLength -
+                                IFileBlockOutputStream.HEADER_LENGTH));
+        }
+        // hand over the stored bytes, which are the records
+        byte[] b = buffer;
+        buffer = stored;
+        stored = b;
+      } else {
+        if (buffer.length < rawLength) {
+          buffer = new byte[rawLength];
+        }
+        compressedIn.reset(stored, storedLength);
+        if (inflateFilter == null) {
+          inflateFilter = decompressor != null
+              ? codec.createInputStream(compressedIn, decompressor)
+              : codec.createInputStream(compressedIn);
+        } else {
+          inflateFilter.resetState();
+        }
+        IOUtils.readFully(inflateFilter, buffer, 0, rawLength);
+      }
+      bufferPos = 0;
+      bufferLimit = rawLength;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n = read(oneByte, 0, 1);
+    return n < 0 ? -1 : (oneByte[0] & 0xff);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    final int n = Math.min(len, bufferLimit - bufferPos);
+    System.arraycopy(buffer, bufferPos, b, off, n);
+    bufferPos += n;
+    return n;
+  }
+
+  /**
+   * Read the segment as it is stored, checking the checksums of the blocks
+   * as they go by.
+   * @return the number of bytes read, or -1 at the end of the segment
+   */
+  public int readWithChecksum(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (bufferPos == bufferLimit) {
+      if (eof) {
+        return -1;
+      }
+      // the end of file header is returned like the header of a block
+      final boolean more = readBlock();
+      storedBlock.reset();
+      storedBlock.writeInt(rawLength);
+      storedBlock.writeInt(storedLength);
+      storedBlock.writeInt(checksum);
+      if (more) {
+        storedBlock.write(stored, 0, storedLength);
+      }
+      buffer = storedBlock.getData();
+      bufferPos = 0;
+      bufferLimit = storedBlock.getLength();
+    }
+    final int n = Math.min(len, bufferLimit - bufferPos);
+    System.arraycopy(buffer, bufferPos, b, off, n);
+    bufferPos += n;
+    return n;
+  }
+
+  /**
+   * @return the number of bytes of the segment read so far
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  public void disableChecksumValidation() {
+    verifyChecksums = false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+
+/**
+ * Writes the records of a version 2 IFile segment in blocks.
+ *
+ * The records are buffered until a block holds at least the block size,
+ * and then the block is compressed on its own and written after a header of
+ * its raw length, its stored length and the CRC32 of the stored bytes. A
+ * block always ends at a record boundary, so the caller tells the stream
+ * where records end with {@link #endRecord()}. {@link #finish()} ends the
+ * segment with a header with a raw length of {@link IFile#EOF_MARKER}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class IFileBlockOutputStream extends OutputStream {
+
+  static final int HEADER_LENGTH = 12;
+
+  private final DataOutputStream out;
+  private final CompressionCodec codec;
+  private final Compressor compressor;
+  private final int blockSize;
+
+  private final DataOutputBuffer block = new DataOutputBuffer();
+  private final DataOutputBuffer compressed;
+  private CompressionOutputStream deflateFilter;
+  private final CRC32 crc = new CRC32();
+  private final byte[] oneByte = new byte[1];
+
+  private boolean closed = false;
+  private boolean finished = false;
+
+  /**
+   * Create a stream writing blocks of the given size to out.
+   * @param out the stream the segment is written to
+   * @param codec the codec compressing the blocks, or null
+   * @param compressor the compressor to use, or null to let the codec
+   *                   create a new stream for every block
+   * @param blockSize the raw size from which a block is ended
+   */
+  public IFileBlockOutputStream(OutputStream out, CompressionCodec codec,
+      Compressor compressor, int blockSize) {
+    this.out = new DataOutputStream(out);
+    this.codec = codec;
+    this.compressor = compressor;
+    this.blockSize = blockSize;
+    this.compressed = codec != null ? new DataOutputBuffer() : null;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    oneByte[0] = (byte) b;
+    block.write(oneByte, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    block.write(b, off, len);
+  }
+
+  /**
+   * Mark the end of a record, which ends the current block once it has
+   * reached the block size.
+   */
+  public void endRecord() throws IOException {
+    if (block.getLength() >= blockSize) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Flush the blocks written so far. The current block is not ended, as
+   * blocks end at record boundaries only.
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void writeBlock() throws IOException {
+    final int rawLength = block.getLength();
+    if (rawLength == 0) {
+      return;
+    }
+    byte[] data = block.getData();
+    int length = rawLength;
+    if (codec != null) {
+      compressed.reset();
+      if (compressor != null) {
+        if (deflateFilter == null) {
+          deflateFilter = codec.createOutputStream(compressed, compressor);
+        }
+        deflateFilter.resetState();
+      } else {
+        deflateFilter = codec.createOutputStream(compressed);
+      }
+      deflateFilter.write(data, 0, rawLength);
+      deflateFilter.finish();
+      data = compressed.getData();
+      length = compressed.getLength();
+    }
+    crc.reset();
+    crc.update(data, 0, length);
+
+    out.writeInt(rawLength);
+    out.writeInt(length);
+    out.writeInt((int) crc.getValue());
+    out.write(data, 0, length);
+    block.reset();
+  }
+
+  /**
+   * Finish the segment by writing the last block and the end of file
+   * header. The underlying stream is not closed.
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    writeBlock();
+    out.writeInt(IFile.EOF_MARKER);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    finish();
+    out.close();
+  }
+}
@@ -116,7 +116,7 @@ private IndexInformation readIndexFileToCache(Path indexFileName,
     LOG.debug("IndexCache MISS: MapId " + mapId + " not found") ;
     SpillRecord tmp = null;
     try { 
-      tmp = new SpillRecord(indexFileName, conf, expectedIndexOwner);
+      tmp = readIndexFile(indexFileName, mapId, expectedIndexOwner);
     } catch (Throwable e) { 
       tmp = new SpillRecord(0);
       cache.remove(mapId);
@@ -135,6 +135,20 @@ private IndexInformation readIndexFileToCache(Path indexFileName,
     return newInd;
   }
 
+  /**
+   * Load the spill record of a map output on a cache miss. Subclasses may
+   * consult a faster store before falling back to the index file.
+   * @param indexFileName The index file of the map output
+   * @param mapId The taskID of the map
+   * @param expectedIndexOwner The expected owner of the index file
+   * @return The spill record of the map output
+   * @throws IOException
+   */
+  protected SpillRecord readIndexFile(Path indexFileName, String mapId,
+      String expectedIndexOwner) throws IOException {
+    return new SpillRecord(indexFileName, conf, expectedIndexOwner);
+  }
+
   /**
    * This method removes the map from the cache if index information for this
    * map is loaded(size>0), index information entry in cache will not be 
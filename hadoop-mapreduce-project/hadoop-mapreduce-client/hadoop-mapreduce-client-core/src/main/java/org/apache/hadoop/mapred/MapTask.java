@@ -18,17 +18,26 @@
 
 package org.apache.hadoop.mapred;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -75,6 +84,8 @@
 import org.apache.hadoop.util.StringInterner;
 import org.apache.hadoop.util.StringUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /** A Map task. */
 @InterfaceAudience.LimitedPrivate({"MapReduce"})
 @InterfaceStability.Unstable
@@ -924,6 +935,14 @@ private long getOutputBytes(List<Statistics> stats) {
     int numSpills = 0;
     private int minSpillsForCombine;
     private IndexedSorter sorter;
+    // key prefixes of the records being sorted, indexed from prefixBase;
+    // null when the spill is sorted with the comparator alone
+    private SortKeyPrefixer keyPrefixer;
+    private int maxKeyPrefixes;
+    private long[] keyPrefixes;
+    private int prefixBase;
+    // sorts partitions of a spill and merges partitions concurrently
+    private ExecutorService sortPool;
     final ReentrantLock spillLock = new ReentrantLock();
     final Condition spillDone = spillLock.newCondition();
     final Condition spillReady = spillLock.newCondition();
@@ -980,6 +999,14 @@ public void init(MapOutputCollector.Context context
       }
       sorter = ReflectionUtils.newInstance(job.getClass("map.sort.class",
             QuickSort.class, IndexedSorter.class), job);
+      final int sortThreads = job.getInt(MRJobConfig.MAP_SORT_THREADS,
+          MRJobConfig.DEFAULT_MAP_SORT_THREADS);
+      if (sortThreads > 1 && partitions > 1) {
+        sortPool = Executors.newFixedThreadPool(sortThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("MapOutputSort #%d").build());
+        LOG.info(MRJobConfig.MAP_SORT_THREADS + ": " + sortThreads);
+      }
       // buffers and accounting
       int maxMemUsage = sortmb << 20;
       maxMemUsage -= maxMemUsage % METASIZE;
@@ -1009,6 +1036,23 @@ public void init(MapOutputCollector.Context context
       keySerializer.open(bb);
       valSerializer = serializationFactory.getSerializer(valClass);
       valSerializer.open(bb);
+      if (job.getBoolean(MRJobConfig.MAP_SORT_KEY_PREFIX_ENABLED,
+          MRJobConfig.DEFAULT_MAP_SORT_KEY_PREFIX_ENABLED)) {
+        keyPrefixer = SortKeyPrefixer.get(comparator);
+        if (keyPrefixer == null) {
+          LOG.info("Key prefix sort is not supported for comparator "
+              + comparator.getClass().getName());
+        }
+        final float prefixper = job.getFloat(
+            MRJobConfig.MAP_SORT_KEY_PREFIX_MEMORY_PERCENT,
+            MRJobConfig.DEFAULT_MAP_SORT_KEY_PREFIX_MEMORY_PERCENT);
+        if (prefixper > 1.0f || prefixper < 0.0f) {
+          throw new IOException("Invalid \""
+              + MRJobConfig.MAP_SORT_KEY_PREFIX_MEMORY_PERCENT + "\": "
+              + prefixper);
+        }
+        maxKeyPrefixes = (int) ((long) (prefixper * kvbuffer.length) / 8);
+      }
 
       // output counters
       mapOutputByteCounter = reporter.getCounter(TaskCounter.MAP_OUTPUT_BYTES);
@@ -1256,6 +1300,11 @@ int offsetFor(int metapos) {
      * @see IndexedSortable#compare
      */
     public int compare(final int mi, final int mj) {
+      return compare(mi, mj, comparator);
+    }
+
+    private int compare(final int mi, final int mj,
+        final RawComparator<K> comparator) {
       final int kvi = offsetFor(mi % maxRec);
       final int kvj = offsetFor(mj % maxRec);
       final int kvip = kvmeta.get(kvi + PARTITION);
@@ -1264,6 +1313,16 @@ public int compare(final int mi, final int mj) {
       if (kvip != kvjp) {
         return kvip - kvjp;
       }
+      if (keyPrefixes != null) {
+        final long kvipre = keyPrefixes[mi - prefixBase];
+        final long kvjpre = keyPrefixes[mj - prefixBase];
+        if (kvipre != kvjpre) {
+          return kvipre < kvjpre ? -1 : 1;
+        }
+        if (keyPrefixer.isExact()) {
+          return 0;
+        }
+      }
       // sort by key
       return comparator.compare(kvbuffer,
           kvmeta.get(kvi + KEYSTART),
@@ -1279,11 +1338,133 @@ public int compare(final int mi, final int mj) {
      * @see IndexedSortable#swap
      */
     public void swap(final int mi, final int mj) {
+      swap(mi, mj, META_BUFFER_TMP);
+    }
+
+    private void swap(final int mi, final int mj, final byte[] tmpBuffer) {
       int iOff = (mi % maxRec) * METASIZE;
       int jOff = (mj % maxRec) * METASIZE;
-      System.arraycopy(kvbuffer, iOff, META_BUFFER_TMP, 0, METASIZE);
+      System.arraycopy(kvbuffer, iOff, tmpBuffer, 0, METASIZE);
       System.arraycopy(kvbuffer, jOff, kvbuffer, iOff, METASIZE);
-      System.arraycopy(META_BUFFER_TMP, 0, kvbuffer, jOff, METASIZE);
+      System.arraycopy(tmpBuffer, 0, kvbuffer, jOff, METASIZE);
+      if (keyPrefixes != null) {
+        final long tmp = keyPrefixes[mi - prefixBase];
+        keyPrefixes[mi - prefixBase] = keyPrefixes[mj - prefixBase];
+        keyPrefixes[mj - prefixBase] = tmp;
+      }
+    }
+
+    /**
+     * Compute the key prefixes of the records in logical range [mstart, mend)
+     * ahead of sorting them. The prefixes are not part of io.sort.mb, so
+     * they are only held while a spill is sorted, and a spill of more
+     * records than their share of io.sort.mb allows is sorted without them.
+     */
+    private void computeKeyPrefixes(int mstart, int mend) {
+      final int records = mend - mstart;
+      if (records > maxKeyPrefixes) {
+        LOG.info("Sorting " + records + " records without key prefixes, "
+            + "which are limited to " + maxKeyPrefixes + " records");
+        return;
+      }
+      keyPrefixes = new long[records];
+      prefixBase = mstart;
+      for (int m = mstart; m < mend; ++m) {
+        final int kvoff = offsetFor(m % maxRec);
+        final int keystart = kvmeta.get(kvoff + KEYSTART);
+        keyPrefixes[m - mstart] = keyPrefixer.prefix(kvbuffer, keystart,
+            kvmeta.get(kvoff + VALSTART) - keystart);
+      }
+    }
+
+    private int partitionOf(int m) {
+      return kvmeta.get(offsetFor(m % maxRec) + PARTITION);
+    }
+
+    /**
+     * Sort the records in logical range [mstart, mend) on the sort pool.
+     * The records are first grouped by partition in place, then the
+     * partitions are sorted by key concurrently.
+     */
+    private void sortPartitions(int mstart, int mend)
+        throws IOException, InterruptedException {
+      final int[] next = new int[partitions];
+      final int[] end = new int[partitions];
+      for (int m = mstart; m < mend; ++m) {
+        ++end[partitionOf(m)];
+      }
+      int pos = mstart;
+      for (int p = 0; p < partitions; ++p) {
+        next[p] = pos;
+        pos += end[p];
+        end[p] = pos;
+      }
+      // move every record into its partition's range
+      for (int p = 0; p < partitions; ++p) {
+        while (next[p] < end[p]) {
+          final int q = partitionOf(next[p]);
+          if (q == p) {
+            ++next[p];
+          } else {
+            swap(next[p], next[q]);
+            ++next[q];
+          }
+        }
+      }
+      final List<Future<?>> sorts = new ArrayList<Future<?>>(partitions);
+      int start = mstart;
+      for (int p = 0; p < partitions; ++p) {
+        if (end[p] - start > 1) {
+          sorts.add(sortPool.submit(new PartitionSort(start, end[p])));
+        }
+        start = end[p];
+      }
+      try {
+        for (Future<?> sort : sorts) {
+          sort.get();
+        }
+      } catch (ExecutionException e) {
+        throw new IOException("Sort of map output partition failed",
+            e.getCause());
+      } finally {
+        for (Future<?> sort : sorts) {
+          sort.cancel(true);
+        }
+      }
+    }
+
+    /**
+     * Sorts the records of one partition by key. Each instance has its own
+     * comparator and swap buffer so partitions can be sorted concurrently.
+     */
+    private class PartitionSort implements IndexedSortable, Runnable {
+      private final int start;
+      private final int end;
+      private final RawComparator<K> comparator;
+      private final byte[] tmpBuffer = new byte[METASIZE];
+
+      @SuppressWarnings("unchecked")
+      PartitionSort(int start, int end) {
+        this.start = start;
+        this.end = end;
+        this.comparator = job.getOutputKeyComparator();
+      }
+
+      @Override
+      public int compare(int mi, int mj) {
+        return MapOutputBuffer.this.compare(mi, mj, comparator);
+      }
+
+      @Override
+      public void swap(int mi, int mj) {
+        MapOutputBuffer.this.swap(mi, mj, tmpBuffer);
+      }
+
+      @Override
+      public void run() {
+        ReflectionUtils.newInstance(sorter.getClass(), job)
+            .sort(this, start, end, reporter);
+      }
     }
 
     /**
@@ -1508,12 +1689,27 @@ public void flush() throws IOException, ClassNotFoundException,
       }
       // release sort buffer before the merge
       kvbuffer = null;
-      mergeParts();
-      Path outputPath = mapOutputFile.getOutputFile();
-      fileOutputByteCounter.increment(rfs.getFileStatus(outputPath).getLen());
+      try {
+        mergeParts();
+      } finally {
+        close();
+      }
+      // the partitions merged concurrently may leave gaps in the output
+      // file, so only the bytes of the partitions themselves are counted
+      SpillRecord finalIndex =
+          new SpillRecord(mapOutputFile.getOutputIndexFile(), job);
+      long materialized = 0;
+      for (int i = 0; i < partitions; i++) {
+        materialized += finalIndex.getIndex(i).partLength;
+      }
+      fileOutputByteCounter.increment(materialized);
     }
 
-    public void close() { }
+    public void close() {
+      if (sortPool != null) {
+        sortPool.shutdownNow();
+      }
+    }
 
     protected class SpillThread extends Thread {
 
@@ -1597,7 +1793,18 @@ private void sortAndSpill() throws IOException, ClassNotFoundException,
           (kvstart >= kvend
           ? kvstart
           : kvmeta.capacity() + kvstart) / NMETA;
-        sorter.sort(MapOutputBuffer.this, mstart, mend, reporter);
+        if (keyPrefixer != null) {
+          computeKeyPrefixes(mstart, mend);
+        }
+        try {
+          if (sortPool != null) {
+            sortPartitions(mstart, mend);
+          } else {
+            sorter.sort(MapOutputBuffer.this, mstart, mend, reporter);
+          }
+        } finally {
+          keyPrefixes = null;
+        }
         int spindex = mstart;
         final IndexRecord rec = new IndexRecord();
         final InMemValBytes value = new InMemValBytes();
@@ -1842,10 +2049,9 @@ private void mergeParts() throws IOException, InterruptedException,
       Path finalIndexFile =
           mapOutputFile.getOutputIndexFileForWrite(finalIndexFileSize);
 
-      //The output stream for the final single output file
-      FSDataOutputStream finalOut = rfs.create(finalOutputFile, true, 4096);
-
       if (numSpills == 0) {
+        //The output stream for the final single output file
+        FSDataOutputStream finalOut = rfs.create(finalOutputFile, true, 4096);
         //create dummy files
         IndexRecord rec = new IndexRecord();
         SpillRecord sr = new SpillRecord(partitions);
@@ -1868,73 +2074,322 @@ private void mergeParts() throws IOException, InterruptedException,
         sortPhase.complete();
         return;
       }
-      {
+      if (sortPool != null) {
+        mergePartsConcurrently(filename, finalOutputFile, finalIndexFile);
+      } else {
+        //The output stream for the final single output file
+        FSDataOutputStream finalOut = rfs.create(finalOutputFile, true, 4096);
         sortPhase.addPhases(partitions); // Divide sort phase into sub-phases
-        
-        IndexRecord rec = new IndexRecord();
+
         final SpillRecord spillRec = new SpillRecord(partitions);
+        try {
+          for (int parts = 0; parts < partitions; parts++) {
+            boolean combine =
+                combinerRunner != null && numSpills >= minSpillsForCombine;
+            spillRec.putIndex(mergePartition(parts, filename, finalOut,
+                new Path(mapId.toString()), sortPhase.phase(),
+                spilledRecordsCounter, combine ? combinerRunner : null,
+                combineCollector), parts);
+            sortPhase.startNextPhase();
+          }
+        } finally {
+          finalOut.close();
+        }
+        spillRec.writeToFile(finalIndexFile, job);
+      }
+      for(int i = 0; i < numSpills; i++) {
+        rfs.delete(filename[i],true);
+      }
+    }
+
+    /**
+     * Merge one partition of all spills and append it to out.
+     * @return the index record of the merged partition
+     */
+    private IndexRecord mergePartition(int parts, Path[] filename,
+        FSDataOutputStream out, Path tmpDir, Progress mergePhase,
+        Counters.Counter writesCounter, CombinerRunner<K,V> combiner,
+        CombineOutputCollector<K,V> collector)
+        throws IOException, InterruptedException, ClassNotFoundException {
+      //create the segments to be merged
+      List<Segment<K,V>> segmentList =
+        new ArrayList<Segment<K, V>>(numSpills);
+      for(int i = 0; i < numSpills; i++) {
+        IndexRecord indexRecord = indexCacheList.get(i).getIndex(parts);
+
+        Segment<K,V> s =
+          new Segment<K,V>(job, rfs, filename[i], indexRecord.startOffset,
+                           indexRecord.partLength, codec, true);
+        segmentList.add(i, s);
+
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("MapId=" + getTaskID() + " Reducer=" + parts +
+              "Spill =" + i + "(" + indexRecord.startOffset + "," +
+              indexRecord.rawLength + ", " + indexRecord.partLength + ")");
+        }
+      }
+
+      int mergeFactor = job.getInt(JobContext.IO_SORT_FACTOR, 100);
+      // sort the segments only if there are intermediate merges
+      boolean sortSegments = segmentList.size() > mergeFactor;
+      //merge
+      @SuppressWarnings("unchecked")
+      RawKeyValueIterator kvIter = Merger.merge(job, rfs,
+                     keyClass, valClass, codec,
+                     segmentList, mergeFactor,
+                     tmpDir,
+                     job.getOutputKeyComparator(), reporter, sortSegments,
+                     null, writesCounter, mergePhase,
+                     TaskType.MAP);
+
+      //write merged output to disk
+      long segmentStart = out.getPos();
+      FSDataOutputStream partitionOut = CryptoUtils.wrapIfNecessary(job, out);
+      Writer<K, V> writer =
+          new Writer<K, V>(job, partitionOut, keyClass, valClass, codec,
+                           writesCounter);
+      if (combiner == null) {
+        Merger.writeFile(kvIter, writer, reporter, job);
+      } else {
+        collector.setWriter(writer);
+        combiner.combine(kvIter, collector);
+      }
+
+      //close
+      writer.close();
+
+      // record offsets
+      IndexRecord rec = new IndexRecord();
+      rec.startOffset = segmentStart;
+      rec.rawLength = writer.getRawLength() + CryptoUtils.cryptoPadding(job);
+      rec.partLength = writer.getCompressedLength() + CryptoUtils.cryptoPadding(job);
+      return rec;
+    }
+
+    /**
+     * Merge the partitions on the sort pool straight into the final output.
+     * Each partition is given a region of the file as large as its segments
+     * in the spills together, which its merge seldom outgrows. What does not
+     * fit goes to a file of its own, and the partition is moved past the
+     * data of the others once they are all merged. The file is then cut at
+     * the end of the data. Regions a merge did not fill are left as gaps;
+     * closing them would rewrite most of the output.
+     */
+    private void mergePartsConcurrently(final Path[] filename,
+        Path finalOutputFile, Path finalIndexFile)
+        throws IOException, InterruptedException {
+      sortPhase.addPhases(partitions); // Divide sort phase into sub-phases
+      final boolean combine =
+          combinerRunner != null && numSpills >= minSpillsForCombine;
+      final long[] regionStart = new long[partitions + 1];
+      for (int parts = 0; parts < partitions; parts++) {
+        long size = 0;
+        for (int i = 0; i < numSpills; i++) {
+          size += indexCacheList.get(i).getIndex(parts).partLength;
+        }
+        regionStart[parts + 1] = regionStart[parts] + size;
+      }
+
+      final RandomAccessFile finalOut = new RandomAccessFile(
+          new File(rfs.makeQualified(finalOutputFile).toUri().getPath()),
+          "rw");
+      final List<Future<MergedPartition>> merges =
+          new ArrayList<Future<MergedPartition>>(partitions);
+      final SpillRecord spillRec = new SpillRecord(partitions);
+      try {
+        finalOut.setLength(0);
+        final FileChannel out = finalOut.getChannel();
         for (int parts = 0; parts < partitions; parts++) {
-          //create the segments to be merged
-          List<Segment<K,V>> segmentList =
-            new ArrayList<Segment<K, V>>(numSpills);
-          for(int i = 0; i < numSpills; i++) {
-            IndexRecord indexRecord = indexCacheList.get(i).getIndex(parts);
-
-            Segment<K,V> s =
-              new Segment<K,V>(job, rfs, filename[i], indexRecord.startOffset,
-                               indexRecord.partLength, codec, true);
-            segmentList.add(i, s);
-
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("MapId=" + mapId + " Reducer=" + parts +
-                  "Spill =" + i + "(" + indexRecord.startOffset + "," +
-                  indexRecord.rawLength + ", " + indexRecord.partLength + ")");
+          final int partition = parts;
+          final Path overflowFile = finalOutputFile.suffix("." + parts);
+          merges.add(sortPool.submit(new Callable<MergedPartition>() {
+            @Override
+            public MergedPartition call() throws Exception {
+              MergedPartition merged = new MergedPartition(overflowFile);
+              CombinerRunner<K,V> combiner = null;
+              CombineOutputCollector<K,V> collector = null;
+              if (combine) {
+                combiner = CombinerRunner.create(job, getTaskID(),
+                    merged.combineInputCounter, reporter, null);
+                collector = new CombineOutputCollector<K,V>(
+                    merged.combineOutputCounter, reporter, job);
+              }
+              RegionOutputStream region = new RegionOutputStream(out,
+                  regionStart[partition], regionStart[partition + 1],
+                  overflowFile);
+              FSDataOutputStream partitionOut = new FSDataOutputStream(
+                  new BufferedOutputStream(region, 64 * 1024), null,
+                  regionStart[partition]);
+              try {
+                merged.rec = mergePartition(partition, filename,
+                    partitionOut, new Path(getTaskID().toString(),
+                        Integer.toString(partition)),
+                    null, merged.spilledRecordsCounter, combiner, collector);
+              } finally {
+                partitionOut.close();
+              }
+              merged.overflowed = region.overflowed();
+              return merged;
             }
+          }));
+        }
+
+        final MergedPartition[] mergedParts = new MergedPartition[partitions];
+        long end = 0;
+        for (int parts = 0; parts < partitions; parts++) {
+          MergedPartition merged;
+          try {
+            merged = merges.get(parts).get();
+          } catch (ExecutionException e) {
+            throw new IOException("Merge of map output partition " + parts
+                + " failed", e.getCause());
           }
+          mergedParts[parts] = merged;
+          spilledRecordsCounter.increment(
+              merged.spilledRecordsCounter.getValue());
+          if (combine) {
+            reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS).increment(
+                merged.combineInputCounter.getValue());
+            reporter.getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).increment(
+                merged.combineOutputCounter.getValue());
+          }
+          // a partition that overflowed fills its region
+          end = Math.max(end, merged.overflowed
+              ? regionStart[parts + 1]
+              : merged.rec.startOffset + merged.rec.partLength);
+          sortPhase.startNextPhase();
+        }
+        for (int parts = 0; parts < partitions; parts++) {
+          MergedPartition merged = mergedParts[parts];
+          if (merged.overflowed) {
+            LOG.info("Merged partition " + parts + " outgrew its "
+                + (regionStart[parts + 1] - regionStart[parts])
+                + " bytes, moving it to " + end);
+            moveOverflowed(out, regionStart[parts], regionStart[parts + 1],
+                merged.overflowFile, end);
+            merged.rec.startOffset = end;
+            end += merged.rec.partLength;
+          }
+          spillRec.putIndex(merged.rec, parts);
+        }
+        finalOut.setLength(end);
+      } finally {
+        finalOut.close();
+        for (Future<MergedPartition> merge : merges) {
+          merge.cancel(true);
+        }
+        for (int parts = 0; parts < partitions; parts++) {
+          rfs.delete(finalOutputFile.suffix("." + parts), false);
+        }
+      }
+      spillRec.writeToFile(finalIndexFile, job);
+    }
 
-          int mergeFactor = job.getInt(JobContext.IO_SORT_FACTOR, 100);
-          // sort the segments only if there are intermediate merges
-          boolean sortSegments = segmentList.size() > mergeFactor;
-          //merge
-          @SuppressWarnings("unchecked")
-          RawKeyValueIterator kvIter = Merger.merge(job, rfs,
-                         keyClass, valClass, codec,
-                         segmentList, mergeFactor,
-                         new Path(mapId.toString()),
-                         job.getOutputKeyComparator(), reporter, sortSegments,
-                         null, spilledRecordsCounter, sortPhase.phase(),
-                         TaskType.MAP);
-
-          //write merged output to disk
-          long segmentStart = finalOut.getPos();
-          FSDataOutputStream finalPartitionOut = CryptoUtils.wrapIfNecessary(job, finalOut);
-          Writer<K, V> writer =
-              new Writer<K, V>(job, finalPartitionOut, keyClass, valClass, codec,
-                               spilledRecordsCounter);
-          if (combinerRunner == null || numSpills < minSpillsForCombine) {
-            Merger.writeFile(kvIter, writer, reporter, job);
-          } else {
-            combineCollector.setWriter(writer);
-            combinerRunner.combine(kvIter, combineCollector);
+    /**
+     * Copy a partition that outgrew its region, the region first and then
+     * the overflow file, to the given position of the final output.
+     */
+    private void moveOverflowed(FileChannel out, long start, long end,
+        Path overflowFile, long dest) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+      long pos = start;
+      while (pos < end) {
+        buf.clear();
+        buf.limit((int) Math.min(buf.capacity(), end - pos));
+        int n = out.read(buf, pos);
+        if (n < 0) {
+          throw new EOFException("Unexpected end of map output at " + pos);
+        }
+        pos += n;
+        buf.flip();
+        while (buf.hasRemaining()) {
+          dest += out.write(buf, dest);
+        }
+      }
+      FSDataInputStream in = rfs.open(overflowFile);
+      try {
+        byte[] b = buf.array();
+        int n;
+        while ((n = in.read(b)) > 0) {
+          ByteBuffer wrapped = ByteBuffer.wrap(b, 0, n);
+          while (wrapped.hasRemaining()) {
+            dest += out.write(wrapped, dest);
           }
+        }
+      } finally {
+        in.close();
+      }
+    }
 
-          //close
-          writer.close();
+    /**
+     * Writes at a position of a channel that is shared with other writers,
+     * up to the end of a region, and what goes past it to an overflow file.
+     */
+    private class RegionOutputStream extends OutputStream {
+      private final FileChannel channel;
+      private final long end;
+      private final Path overflowFile;
+      private long position;
+      private OutputStream overflow;
+
+      RegionOutputStream(FileChannel channel, long start, long end,
+          Path overflowFile) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+        this.overflowFile = overflowFile;
+      }
 
-          sortPhase.startNextPhase();
-          
-          // record offsets
-          rec.startOffset = segmentStart;
-          rec.rawLength = writer.getRawLength() + CryptoUtils.cryptoPadding(job);
-          rec.partLength = writer.getCompressedLength() + CryptoUtils.cryptoPadding(job);
-          spillRec.putIndex(rec, parts);
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        int n = (int) Math.min(len, end - position);
+        if (n > 0) {
+          ByteBuffer buf = ByteBuffer.wrap(b, off, n);
+          while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+          }
         }
-        spillRec.writeToFile(finalIndexFile, job);
-        finalOut.close();
-        for(int i = 0; i < numSpills; i++) {
-          rfs.delete(filename[i],true);
+        if (n < len) {
+          if (overflow == null) {
+            overflow = rfs.create(overflowFile, true, 4096);
+          }
+          overflow.write(b, off + n, len - n);
         }
       }
+
+      @Override
+      public void close() throws IOException {
+        // the channel is closed once all the partitions are merged
+        if (overflow != null) {
+          overflow.close();
+        }
+      }
+
+      boolean overflowed() {
+        return overflow != null;
+      }
+    }
+
+    /**
+     * A partition merged into the final output, with the counters of the
+     * merge kept apart from the task's until the merge is done.
+     */
+    private static class MergedPartition {
+      final Path overflowFile;
+      IndexRecord rec;
+      boolean overflowed;
+      final Counters.Counter spilledRecordsCounter = new Counters.Counter();
+      final Counters.Counter combineInputCounter = new Counters.Counter();
+      final Counters.Counter combineOutputCounter = new Counters.Counter();
+
+      MergedPartition(Path overflowFile) {
+        this.overflowFile = overflowFile;
+      }
     }
     
     /**
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Computes a fixed width prefix of a serialized key such that comparing two
+ * prefixes as signed longs agrees with the key's raw comparator. Keys whose
+ * prefixes differ are ordered by the prefixes alone; keys with equal
+ * prefixes must still be compared in full unless the prefixer is
+ * {@link #isExact() exact}.
+ */
+abstract class SortKeyPrefixer {
+
+  /**
+   * Compute the prefix of the key serialized at b[s, s + l).
+   */
+  abstract long prefix(byte[] b, int s, int l);
+
+  /**
+   * Whether equal prefixes imply equal keys.
+   */
+  abstract boolean isExact();
+
+  /**
+   * Return the prefixer for keys ordered by the given comparator, or null if
+   * the comparator is not one of the known raw comparators.
+   */
+  static SortKeyPrefixer get(RawComparator<?> comparator) {
+    if (comparator == null) {
+      return null;
+    }
+    Class<?> clazz = comparator.getClass();
+    if (clazz == Text.Comparator.class) {
+      return TEXT;
+    } else if (clazz == BytesWritable.Comparator.class) {
+      return BYTES;
+    } else if (clazz == LongWritable.Comparator.class) {
+      return LONG;
+    } else if (clazz == IntWritable.Comparator.class) {
+      return INT;
+    }
+    return null;
+  }
+
+  /**
+   * The first eight bytes of b[s, s + l) as a big endian number, padded with
+   * zeros and shifted so that signed comparison matches unsigned byte order.
+   */
+  static long bytesPrefix(byte[] b, int s, int l) {
+    final int n = Math.min(8, l);
+    long p = 0;
+    for (int i = 0; i < n; i++) {
+      p = (p << 8) | (b[s + i] & 0xff);
+    }
+    if (n < 8) {
+      p <<= (8 - n) * 8;
+    }
+    return p ^ Long.MIN_VALUE;
+  }
+
+  static final SortKeyPrefixer TEXT = new SortKeyPrefixer() {
+    @Override
+    long prefix(byte[] b, int s, int l) {
+      final int n = WritableUtils.decodeVIntSize(b[s]);
+      return bytesPrefix(b, s + n, l - n);
+    }
+
+    @Override
+    boolean isExact() {
+      return false;
+    }
+  };
+
+  static final SortKeyPrefixer BYTES = new SortKeyPrefixer() {
+    @Override
+    long prefix(byte[] b, int s, int l) {
+      return bytesPrefix(b, s + 4, l - 4);
+    }
+
+    @Override
+    boolean isExact() {
+      return false;
+    }
+  };
+
+  static final SortKeyPrefixer LONG = new SortKeyPrefixer() {
+    @Override
+    long prefix(byte[] b, int s, int l) {
+      return WritableComparator.readLong(b, s);
+    }
+
+    @Override
+    boolean isExact() {
+      return true;
+    }
+  };
+
+  static final SortKeyPrefixer INT = new SortKeyPrefixer() {
+    @Override
+    long prefix(byte[] b, int s, int l) {
+      return WritableComparator.readInt(b, s);
+    }
+
+    @Override
+    boolean isExact() {
+      return true;
+    }
+  };
+}
@@ -1344,6 +1344,10 @@ public synchronized void setWriter(Writer<K, V> writer) {
       this.writer = writer;
     }
 
+    public Counters.Counter getOutCounter() {
+      return outCounter;
+    }
+
     public synchronized void collect(K key, V value)
         throws IOException {
       outCounter.increment(1);
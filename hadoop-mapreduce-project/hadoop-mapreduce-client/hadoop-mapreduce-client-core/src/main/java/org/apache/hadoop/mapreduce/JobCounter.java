@@ -51,5 +51,6 @@ public enum JobCounter {
   VCORES_MILLIS_MAPS,
   VCORES_MILLIS_REDUCES,
   MB_MILLIS_MAPS,
-  MB_MILLIS_REDUCES
+  MB_MILLIS_REDUCES,
+  MILLIS_JOB_COMMIT
 }
@@ -107,6 +107,25 @@ public interface MRConfig {
   public static final int DEFAULT_MAPRED_IFILE_READAHEAD_BYTES =
     4 * 1024 * 1024;
 
+  /**
+   * Configuration key to set the version of the IFile format written for
+   * map outputs and spills. Version 2 splits the data into checksummed,
+   * separately compressed blocks.
+   */
+  public static final String MAPRED_IFILE_VERSION =
+    "mapreduce.ifile.version";
+
+  public static final int DEFAULT_MAPRED_IFILE_VERSION = 1;
+
+  /**
+   * Configuration key to set the uncompressed size in bytes of the blocks
+   * of version 2 IFiles.
+   */
+  public static final String MAPRED_IFILE_BLOCK_SIZE =
+    "mapreduce.ifile.block.size";
+
+  public static final int DEFAULT_MAPRED_IFILE_BLOCK_SIZE = 64 * 1024;
+
   /**
    * Whether users are explicitly trying to control resource monitoring
    * configuration for the MiniMRCluster. Disabled by default.
@@ -251,6 +251,20 @@ public interface MRJobConfig {
 
   public static final String MAP_SORT_SPILL_PERCENT = "mapreduce.map.sort.spill.percent";
 
+  public static final String MAP_SORT_KEY_PREFIX_ENABLED =
+      "mapreduce.map.sort.key-prefix.enabled";
+
+  public static final boolean DEFAULT_MAP_SORT_KEY_PREFIX_ENABLED = false;
+
+  public static final String MAP_SORT_KEY_PREFIX_MEMORY_PERCENT =
+      "mapreduce.map.sort.key-prefix.memory.percent";
+
+  public static final float DEFAULT_MAP_SORT_KEY_PREFIX_MEMORY_PERCENT = 0.25f;
+
+  public static final String MAP_SORT_THREADS = "mapreduce.map.sort.threads";
+
+  public static final int DEFAULT_MAP_SORT_THREADS = 1;
+
   public static final String MAP_INPUT_FILE = "mapreduce.map.input.file";
 
   public static final String MAP_INPUT_PATH = "mapreduce.map.input.length";
@@ -321,6 +335,11 @@ public interface MRJobConfig {
 
   public static final String SHUFFLE_MERGE_PERCENT = "mapreduce.reduce.shuffle.merge.percent";
 
+  public static final String SHUFFLE_MEMORY_POOL_ENABLED =
+      "mapreduce.reduce.shuffle.memory.pool.enabled";
+
+  public static final boolean DEFAULT_SHUFFLE_MEMORY_POOL_ENABLED = false;
+
   public static final String REDUCE_FAILURES_MAXPERCENT = "mapreduce.reduce.failures.maxpercent";
 
   public static final String REDUCE_ENV = "mapreduce.reduce.env";
@@ -356,6 +375,14 @@ public interface MRJobConfig {
   
   public static final String SHUFFLE_FETCH_RETRY_ENABLED = "mapreduce.reduce.shuffle.fetch.retry.enabled";
 
+  /** Whether fetchers multiplex several hosts over non-blocking sockets. */
+  public static final String SHUFFLE_FETCHER_ASYNC_ENABLED = "mapreduce.reduce.shuffle.fetcher.async.enabled";
+  public static final boolean DEFAULT_SHUFFLE_FETCHER_ASYNC_ENABLED = false;
+
+  /** Maximum number of hosts an asynchronous fetcher copies from at once. */
+  public static final String SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS = "mapreduce.reduce.shuffle.fetcher.async.max-connections";
+  public static final int DEFAULT_SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS = 16;
+
   public static final String SHUFFLE_NOTIFY_READERROR = "mapreduce.reduce.shuffle.notify.readerror";
   
   public static final String MAX_SHUFFLE_FETCH_RETRY_DELAY = "mapreduce.reduce.shuffle.retry-delay.max.ms";
@@ -372,6 +399,16 @@ public interface MRJobConfig {
 
   public static final String REDUCE_MEMTOMEM_ENABLED = "mapreduce.reduce.merge.memtomem.enabled";
 
+  /**
+   * Whether the reduce runs the combiner in every merge it does while it
+   * shuffles, and merges on-disk map outputs as soon as there are enough of
+   * them to fill a merge.
+   */
+  public static final String REDUCE_MERGE_COMBINE_ENABLED =
+      "mapreduce.reduce.merge.combine.enabled";
+
+  public static final boolean DEFAULT_REDUCE_MERGE_COMBINE_ENABLED = false;
+
   public static final String COMBINE_RECORDS_BEFORE_PROGRESS = "mapreduce.task.combine.progress.records";
 
   public static final String JOB_NAMENODES = "mapreduce.job.hdfs-servers";
@@ -623,6 +660,11 @@ public interface MRJobConfig {
     MR_AM_PREFIX + "job.task.listener.thread-count";
   public static final int DEFAULT_MR_AM_TASK_LISTENER_THREAD_COUNT = 30;
 
+  /** The number of threads handling the events of task attempts.*/
+  public static final String MR_AM_TASK_ATTEMPT_DISPATCHER_THREADS =
+    MR_AM_PREFIX + "job.task-attempt.dispatcher.thread-count";
+  public static final int DEFAULT_MR_AM_TASK_ATTEMPT_DISPATCHER_THREADS = 1;
+
   /** How often the AM should send heartbeats to the RM.*/
   public static final String MR_AM_TO_RM_HEARTBEAT_INTERVAL_MS =
     MR_AM_PREFIX + "scheduler.heartbeat.interval-ms";
@@ -20,6 +20,15 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +48,7 @@
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /** An {@link OutputCommitter} that commits files specified 
  * in job output directory i.e. ${mapreduce.output.fileoutputformat.outputdir}.
@@ -85,11 +95,18 @@ public class FileOutputCommitter extends OutputCommitter {
   // default value to be 1 to keep consistent with previous behavior
   public static final int FILEOUTPUTCOMMITTER_FAILURE_ATTEMPTS_DEFAULT = 1;
 
+  // Number of threads merging the output of tasks and deleting the
+  // _temporary folder in commit job
+  public static final String FILEOUTPUTCOMMITTER_JOB_COMMIT_THREADS =
+      "mapreduce.fileoutputcommitter.job.commit.threads";
+  public static final int FILEOUTPUTCOMMITTER_JOB_COMMIT_THREADS_DEFAULT = 1;
+
   private Path outputPath = null;
   private Path workPath = null;
   private final int algorithmVersion;
   private final boolean skipCleanup;
   private final boolean ignoreCleanupFailures;
+  private final int jobCommitThreads;
 
   /**
    * Create a file output committer
@@ -139,6 +156,9 @@ public FileOutputCommitter(Path outputPath,
         "output directory:" + skipCleanup + ", ignore cleanup failures: " +
         ignoreCleanupFailures);
 
+    jobCommitThreads = conf.getInt(FILEOUTPUTCOMMITTER_JOB_COMMIT_THREADS,
+        FILEOUTPUTCOMMITTER_JOB_COMMIT_THREADS_DEFAULT);
+
     if (outputPath != null) {
       FileSystem fs = outputPath.getFileSystem(context.getConfiguration());
       this.outputPath = fs.makeQualified(outputPath);
@@ -388,8 +408,13 @@ protected void commitJobInternal(JobContext context) throws IOException {
       FileSystem fs = finalOutput.getFileSystem(context.getConfiguration());
 
       if (algorithmVersion == 1) {
-        for (FileStatus stat: getAllCommittedTaskPaths(context)) {
-          mergePaths(fs, stat, finalOutput);
+        FileStatus[] committedTaskPaths = getAllCommittedTaskPaths(context);
+        if (jobCommitThreads > 1 && committedTaskPaths.length > 1) {
+          mergePathsInParallel(fs, committedTaskPaths, finalOutput);
+        } else {
+          for (FileStatus stat: committedTaskPaths) {
+            mergePaths(fs, stat, finalOutput);
+          }
         }
       }
 
@@ -441,9 +466,47 @@ protected void commitJobInternal(JobContext context) throws IOException {
    */
   private void mergePaths(FileSystem fs, final FileStatus from,
       final Path to) throws IOException {
+    mergePaths(fs, from, to, null);
+  }
+
+  /**
+   * Merge two paths together, as {@link #mergePaths(FileSystem, FileStatus,
+   * Path)} does. Several merges into the same destination can run at once
+   * when given the same locks, which serialize the changes to each path
+   * under the destination.
+   * @param locks the lock of each destination path, or null when this is
+   * the only merge into the destination.
+   */
+  private void mergePaths(FileSystem fs, final FileStatus from,
+      final Path to, ConcurrentMap<Path, Object> locks) throws IOException {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Merging data from " + from + " to " + to);
     }
+    boolean mergeChildren;
+    if (locks == null) {
+      mergeChildren = moveOrPrepareMerge(fs, from, to);
+    } else {
+      Object lock = new Object();
+      Object existing = locks.putIfAbsent(to, lock);
+      synchronized (existing != null ? existing : lock) {
+        mergeChildren = moveOrPrepareMerge(fs, from, to);
+      }
+    }
+    if (mergeChildren) {
+      for (FileStatus subFrom : fs.listStatus(from.getPath())) {
+        Path subTo = new Path(to, subFrom.getPath().getName());
+        mergePaths(fs, subFrom, subTo, locks);
+      }
+    }
+  }
+
+  /**
+   * Move from to to, replacing what is there, unless the contents of from
+   * have to be merged into the directory to.
+   * @return true if the children of from have to be merged into to.
+   */
+  private boolean moveOrPrepareMerge(FileSystem fs, final FileStatus from,
+      final Path to) throws IOException {
     FileStatus toStat;
     try {
       toStat = fs.getFileStatus(to);
@@ -467,32 +530,115 @@ private void mergePaths(FileSystem fs, final FileStatus from,
           if (!fs.delete(to, true)) {
             throw new IOException("Failed to delete " + to);
           }
-          renameOrMerge(fs, from, to);
+          return renameOrMerge(fs, from, to);
         } else {
           //It is a directory so merge everything in the directories
-          for (FileStatus subFrom : fs.listStatus(from.getPath())) {
-            Path subTo = new Path(to, subFrom.getPath().getName());
-            mergePaths(fs, subFrom, subTo);
-          }
+          return true;
         }
       } else {
-        renameOrMerge(fs, from, to);
+        return renameOrMerge(fs, from, to);
       }
     }
+    return false;
   }
 
-  private void renameOrMerge(FileSystem fs, FileStatus from, Path to)
+  private boolean renameOrMerge(FileSystem fs, FileStatus from, Path to)
       throws IOException {
     if (algorithmVersion == 1) {
       if (!fs.rename(from.getPath(), to)) {
         throw new IOException("Failed to rename " + from + " to " + to);
       }
+      return false;
     } else {
       fs.mkdirs(to);
-      for (FileStatus subFrom : fs.listStatus(from.getPath())) {
-        Path subTo = new Path(to, subFrom.getPath().getName());
-        mergePaths(fs, subFrom, subTo);
+      return true;
+    }
+  }
+
+  /**
+   * Merge the output of every committed task into the final output on
+   * several threads.
+   */
+  private void mergePathsInParallel(final FileSystem fs,
+      FileStatus[] committedTaskPaths, final Path finalOutput)
+      throws IOException {
+    final ConcurrentMap<Path, Object> locks =
+        new ConcurrentHashMap<Path, Object>();
+    List<Callable<Void>> merges =
+        new ArrayList<Callable<Void>>(committedTaskPaths.length);
+    for (final FileStatus stat : committedTaskPaths) {
+      merges.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          mergePaths(fs, stat, finalOutput, locks);
+          return null;
+        }
+      });
+    }
+    runInParallel(merges);
+  }
+
+  /**
+   * Delete the task directories under the given _temporary folder on
+   * several threads, then the folder itself.
+   */
+  private void deleteInParallel(final FileSystem fs, Path pendingPath)
+      throws IOException {
+    FileStatus[] jobAttemptPaths;
+    try {
+      jobAttemptPaths = fs.listStatus(pendingPath);
+    } catch (FileNotFoundException e) {
+      // nothing to delete, as with a single delete
+      return;
+    }
+    List<Callable<Void>> deletes = new ArrayList<Callable<Void>>();
+    for (FileStatus jobAttemptPath : jobAttemptPaths) {
+      if (!jobAttemptPath.isDirectory()) {
+        continue;
+      }
+      for (final FileStatus taskPath :
+          fs.listStatus(jobAttemptPath.getPath())) {
+        deletes.add(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            fs.delete(taskPath.getPath(), true);
+            return null;
+          }
+        });
+      }
+    }
+    runInParallel(deletes);
+    fs.delete(pendingPath, true);
+  }
+
+  private void runInParallel(List<Callable<Void>> calls) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(jobCommitThreads, calls.size())),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("FileOutputCommitter #%d").build());
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(calls.size());
+      for (Callable<Void> call : calls) {
+        futures.add(executor.submit(call));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted in commit job", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      executor.shutdownNow();
     }
   }
 
@@ -507,7 +653,11 @@ public void cleanupJob(JobContext context) throws IOException {
       // deleted by previous AM, we should tolerate FileNotFoundException in
       // this case.
       try {
-        fs.delete(pendingJobAttemptsPath, true);
+        if (jobCommitThreads > 1) {
+          deleteInParallel(fs, pendingJobAttemptsPath);
+        } else {
+          fs.delete(pendingJobAttemptsPath, true);
+        }
       } catch (FileNotFoundException e) {
         if (!isCommitJobRepeatable(context)) {
           throw e;
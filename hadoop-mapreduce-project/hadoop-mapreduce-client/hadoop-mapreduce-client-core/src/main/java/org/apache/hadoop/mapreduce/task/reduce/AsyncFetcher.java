@@ -0,0 +1,814 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.mapred.IFile;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.CryptoUtils;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.security.SecureShuffleUtils;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link Fetcher} that copies from up to
+ * {@link MRJobConfig#SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS} hosts at once on
+ * a single thread, using non-blocking sockets. Map outputs that are shuffled
+ * into memory are read as data arrives, so a slow host only holds up its
+ * own connection. Uncompressed outputs are read straight into the memory of
+ * their {@link InMemoryMapOutput}; others are staged in a buffer that is
+ * charged to the {@link MergeManagerImpl} and decoded once complete.
+ * Outputs that go to disk are large enough to be bound by throughput rather
+ * than latency, and are copied with blocking reads on a separate thread.
+ *
+ * Only plain HTTP is supported; encrypted shuffle uses {@link Fetcher}.
+ */
+class AsyncFetcher<K,V> extends Fetcher<K,V> {
+
+  private static final Log LOG = LogFactory.getLog(AsyncFetcher.class);
+
+  /** How long to wait for I/O before looking for new hosts (in ms) */
+  private static final int SELECT_TIMEOUT = 100;
+
+  /** Per-connection read buffer; also bounds the response headers */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final TaskAttemptID[] EMPTY_ATTEMPT_ID_ARRAY =
+      new TaskAttemptID[0];
+
+  private final int maxConnections;
+  private final Selector selector;
+  private final List<HostConnection> connections =
+      new ArrayList<HostConnection>();
+  // whether map outputs are sent as they are held in memory, so that they
+  // can be read straight into the memory of an InMemoryMapOutput
+  private final boolean rawMapOutputs;
+  // copies map outputs with blocking reads, off the selector thread
+  private final ExecutorService copier;
+  // set when the merger had no memory for an output, so that no other hosts
+  // are asked for theirs until merges free some
+  private boolean reserveStalled = false;
+  // connections whose copy on the copier finished
+  private final ConcurrentLinkedQueue<HostConnection> copiesDone =
+      new ConcurrentLinkedQueue<HostConnection>();
+
+  public AsyncFetcher(JobConf job, TaskAttemptID reduceId,
+      ShuffleSchedulerImpl<K,V> scheduler, MergeManager<K,V> merger,
+      Reporter reporter, ShuffleClientMetrics metrics,
+      ExceptionReporter exceptionReporter, SecretKey shuffleKey)
+      throws IOException {
+    super(job, reduceId, scheduler, merger, reporter, metrics,
+        exceptionReporter, shuffleKey);
+    this.maxConnections = Math.max(1, job.getInt(
+        MRJobConfig.SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS,
+        MRJobConfig.DEFAULT_SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS));
+    this.rawMapOutputs = !job.getCompressMapOutput()
+        && !CryptoUtils.isEncryptedSpillEnabled(job)
+        && IFile.getVersion(job) == 1;
+    this.selector = Selector.open();
+    setName("asyncfetcher#" + id);
+    this.copier = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat(getName() + " copier #%d").build());
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!stopped && !Thread.currentThread().isInterrupted()) {
+        if (connections.isEmpty()) {
+          // Nothing in flight, so it is safe to block on merges and hosts
+          merger.waitForResource();
+          if (reserveStalled) {
+            // back off, so that a host is not asked again at once if no
+            // merge was running to free memory
+            reserveStalled = false;
+            Thread.sleep(SELECT_TIMEOUT);
+          }
+          startFetch(scheduler.getHost());
+        }
+        MapHost host;
+        while (!reserveStalled && connections.size() < maxConnections
+            && (host = scheduler.pollHost()) != null) {
+          startFetch(host);
+        }
+        pollConnections(SELECT_TIMEOUT);
+      }
+    } catch (InterruptedException ie) {
+      return;
+    } catch (Throwable t) {
+      exceptionReporter.reportException(t);
+    } finally {
+      for (HostConnection conn : new ArrayList<HostConnection>(connections)) {
+        conn.close();
+      }
+      copier.shutdownNow();
+      IOUtils.cleanup(LOG, selector);
+    }
+  }
+
+  @VisibleForTesting
+  int getNumConnections() {
+    return connections.size();
+  }
+
+  /**
+   * Start copying the known map outputs of the given host. The host is freed
+   * once its connection is closed.
+   */
+  @VisibleForTesting
+  void startFetch(MapHost host) {
+    List<TaskAttemptID> maps = scheduler.getMapsForHost(host);
+
+    // Sanity check to catch hosts with only 'OBSOLETE' maps,
+    // especially at the tail of large jobs
+    if (maps.size() == 0) {
+      scheduler.freeHost(host);
+      return;
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(getName() + " going to fetch from " + host + " for: " + maps);
+    }
+
+    HostConnection conn = new HostConnection(host, maps);
+    if (connections.isEmpty()) {
+      metrics.threadBusy();
+    }
+    connections.add(conn);
+    metrics.connectionOpened();
+    try {
+      conn.connect();
+    } catch (IOException ie) {
+      conn.failed(ie);
+    }
+  }
+
+  /**
+   * Wait up to <code>timeout</code> ms for I/O on any open connection and
+   * make as much progress as possible on those that are ready.
+   */
+  @VisibleForTesting
+  void pollConnections(long timeout) throws IOException {
+    selector.select(timeout);
+    HostConnection done;
+    while ((done = copiesDone.poll()) != null) {
+      done.copyDone();
+    }
+    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+    while (iter.hasNext()) {
+      SelectionKey key = iter.next();
+      iter.remove();
+      @SuppressWarnings("unchecked")
+      HostConnection conn = (HostConnection) key.attachment();
+      if (key.isValid()) {
+        conn.process(key);
+      }
+    }
+
+    long now = Time.monotonicNow();
+    for (HostConnection conn : new ArrayList<HostConnection>(connections)) {
+      conn.checkTimeout(now);
+    }
+  }
+
+  private enum State {CONNECTING, SENDING, RESPONSE, HEADER, BODY, COPY}
+
+  /**
+   * One HTTP request for the map outputs of a host, along with the output
+   * currently being copied.
+   */
+  private class HostConnection {
+    private final MapHost host;
+    // List of maps to be fetched yet
+    private final Set<TaskAttemptID> remaining;
+    private URL url;
+    private String encHash;
+    private SocketChannel channel;
+    private volatile State state;
+    private boolean verified = false;
+    // guarded by this, as the copier checks it when its copy finishes
+    private boolean closed = false;
+    private long lastActivity;
+    private ByteBuffer request;
+    // Holds unread response bytes between position and limit
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // The map output being copied
+    private TaskAttemptID mapId;
+    private MapOutput<K,V> mapOutput;
+    private long wireLength = -1;
+    private long compressedLength = -1;
+    private long decompressedLength = -1;
+    private long startTime;
+    // where the body of an in-memory output is read to, and the stream to
+    // decode it from once complete
+    private ByteBuffer[] body;
+    private InputStream bodyInput;
+    // the staging buffer charged to the merger, if any
+    private byte[] staging;
+    // the outcome of the copy on the copier
+    private boolean copyFinished;
+    private IOException copyError;
+
+    HostConnection(MapHost host, List<TaskAttemptID> maps) {
+      this.host = host;
+      this.remaining = new HashSet<TaskAttemptID>(maps);
+      buffer.flip();
+    }
+
+    void connect() throws IOException {
+      url = getMapOutputURL(host, remaining);
+      // generate hash of the url
+      String msgToEncode = SecureShuffleUtils.buildMsgFrom(url);
+      encHash = SecureShuffleUtils.hashFromString(msgToEncode,
+          shuffleSecretKey);
+      int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+      StringBuilder req = new StringBuilder();
+      req.append("GET ").append(url.getFile()).append(" HTTP/1.1\r\n");
+      req.append("Host: ").append(url.getHost()).append(':').append(port)
+          .append("\r\n");
+      req.append(SecureShuffleUtils.HTTP_HEADER_URL_HASH).append(": ")
+          .append(encHash).append("\r\n");
+      req.append(ShuffleHeader.HTTP_HEADER_NAME).append(": ")
+          .append(ShuffleHeader.DEFAULT_HTTP_HEADER_NAME).append("\r\n");
+      req.append(ShuffleHeader.HTTP_HEADER_VERSION).append(": ")
+          .append(ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION).append("\r\n");
+      req.append("\r\n");
+      request = ByteBuffer.wrap(req.toString().getBytes(Charsets.UTF_8));
+
+      InetSocketAddress addr = new InetSocketAddress(url.getHost(), port);
+      if (addr.isUnresolved()) {
+        throw new UnknownHostException(url.getHost());
+      }
+      lastActivity = Time.monotonicNow();
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      if (channel.connect(addr)) {
+        state = State.SENDING;
+        channel.register(selector, SelectionKey.OP_WRITE, this);
+      } else {
+        state = State.CONNECTING;
+        channel.register(selector, SelectionKey.OP_CONNECT, this);
+      }
+    }
+
+    void process(SelectionKey key) {
+      try {
+        lastActivity = Time.monotonicNow();
+        if (key.isConnectable() && channel.finishConnect()) {
+          state = State.SENDING;
+          key.interestOps(SelectionKey.OP_WRITE);
+        } else if (key.isWritable()) {
+          channel.write(request);
+          if (!request.hasRemaining()) {
+            state = State.RESPONSE;
+            key.interestOps(SelectionKey.OP_READ);
+          }
+        } else if (key.isReadable()) {
+          read();
+        }
+      } catch (IOException ie) {
+        failed(ie);
+      }
+    }
+
+    void checkTimeout(long now) {
+      if (state == State.COPY) {
+        // the copier times out its reads on its own
+        return;
+      }
+      int timeout = state == State.CONNECTING ? connectionTimeout : readTimeout;
+      if (timeout > 0 && now - lastActivity > timeout) {
+        failed(new SocketTimeoutException((state == State.CONNECTING ?
+            "connect" : "read") + " timed out after " + timeout + " ms"));
+      }
+    }
+
+    private void read() throws IOException {
+      long n;
+      if (state == State.BODY && !buffer.hasRemaining()) {
+        // read straight into where the body of the map output goes
+        n = channel.read(body);
+      } else {
+        buffer.compact();
+        n = channel.read(buffer);
+        buffer.flip();
+      }
+
+      processBuffered();
+
+      if (n < 0 && !closed && state != State.COPY) {
+        throw new EOFException("Unexpected end of stream from " + host);
+      }
+    }
+
+    /** Make as much progress as the bytes read so far allow. */
+    private void processBuffered() throws IOException {
+      boolean progress = true;
+      while (progress && !closed) {
+        switch (state) {
+        case RESPONSE:
+          progress = readResponse();
+          break;
+        case HEADER:
+          progress = readShuffleHeader();
+          break;
+        case BODY:
+          progress = readBody();
+          break;
+        default:
+          progress = false;
+        }
+      }
+    }
+
+    /** Parse and verify the HTTP response headers, as Fetcher does. */
+    private boolean readResponse() throws IOException {
+      byte[] a = buffer.array();
+      int start = buffer.position();
+      int end = buffer.limit();
+      int headerEnd = -1;
+      for (int i = start; i + 3 < end; i++) {
+        if (a[i] == '\r' && a[i + 1] == '\n' && a[i + 2] == '\r'
+            && a[i + 3] == '\n') {
+          headerEnd = i;
+          break;
+        }
+      }
+      if (headerEnd < 0) {
+        if (end - start == buffer.capacity()) {
+          throw new IOException("Response headers from " + url
+              + " exceed " + buffer.capacity() + " bytes");
+        }
+        return false;
+      }
+      String[] lines = new String(a, start, headerEnd - start,
+          Charsets.ISO_8859_1).split("\r\n");
+      buffer.position(headerEnd + 4);
+
+      String[] status = lines[0].split(" ", 3);
+      int rc;
+      try {
+        rc = Integer.parseInt(status[1]);
+      } catch (RuntimeException e) {
+        throw new IOException("Invalid response from " + url + ": "
+            + lines[0]);
+      }
+      if (rc != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Got invalid response code " + rc + " from "
+            + url + ": " + (status.length > 2 ? status[2] : ""));
+      }
+      Map<String, String> headers =
+          new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+      for (int i = 1; i < lines.length; i++) {
+        int colon = lines[i].indexOf(':');
+        if (colon > 0) {
+          headers.put(lines[i].substring(0, colon).trim(),
+              lines[i].substring(colon + 1).trim());
+        }
+      }
+      // get the shuffle version
+      if (!ShuffleHeader.DEFAULT_HTTP_HEADER_NAME.equals(
+          headers.get(ShuffleHeader.HTTP_HEADER_NAME))
+          || !ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION.equals(
+              headers.get(ShuffleHeader.HTTP_HEADER_VERSION))) {
+        throw new IOException("Incompatible shuffle response version");
+      }
+      // get the replyHash which is HMac of the encHash we sent to the server
+      String replyHash =
+          headers.get(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH);
+      if (replyHash == null) {
+        throw new IOException("security validation of TT Map output failed");
+      }
+      // verify that replyHash is HMac of encHash
+      SecureShuffleUtils.verifyReply(replyHash, encHash, shuffleSecretKey);
+      LOG.info("for url=" + url + " sent hash and received reply");
+
+      verified = true;
+      state = State.HEADER;
+      return true;
+    }
+
+    private boolean readShuffleHeader() throws IOException {
+      if (remaining.isEmpty()) {
+        close();
+        return false;
+      }
+
+      ByteArrayInputStream in = new ByteArrayInputStream(buffer.array(),
+          buffer.position(), buffer.remaining());
+      ShuffleHeader header = new ShuffleHeader();
+      try {
+        header.readFields(new DataInputStream(in));
+      } catch (EOFException e) {
+        if (buffer.remaining() == buffer.capacity()) {
+          throw e;
+        }
+        // wait for the rest of the header
+        return false;
+      }
+      buffer.position(buffer.limit() - in.available());
+
+      try {
+        mapId = TaskAttemptID.forName(header.mapId);
+      } catch (IllegalArgumentException e) {
+        badIdErrs.increment(1);
+        LOG.warn("Invalid map id ", e);
+        //Don't know which one was bad, so consider all of them as bad
+        failTasks(remaining.toArray(new TaskAttemptID[remaining.size()]));
+        return false;
+      }
+      startTime = Time.monotonicNow();
+      wireLength = header.compressedLength;
+      compressedLength =
+          header.compressedLength - CryptoUtils.cryptoPadding(jobConf);
+      decompressedLength =
+          header.uncompressedLength - CryptoUtils.cryptoPadding(jobConf);
+
+      // Do some basic sanity verification
+      if (!verifySanity(compressedLength, decompressedLength,
+          header.forReduce, remaining, mapId)) {
+        failTasks(new TaskAttemptID[] {mapId});
+        return false;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("header: " + mapId + ", len: " + compressedLength +
+            ", decomp len: " + decompressedLength);
+      }
+
+      // Get the location for the map output - either in-memory or on-disk
+      try {
+        mapOutput = merger.reserve(mapId, decompressedLength, id);
+      } catch (IOException ioe) {
+        // kill this reduce attempt
+        ioErrs.increment(1);
+        scheduler.reportLocalError(ioe);
+        failTasks(EMPTY_ATTEMPT_ID_ARRAY);
+        return false;
+      }
+
+      // Check if we can shuffle *now* ...
+      if (mapOutput == null) {
+        LOG.info(getName() + " - MergeManager returned status WAIT ...");
+        //Not an error but wait to process data.
+        reserveStalled = true;
+        close();
+        return false;
+      }
+      reserveStalled = false;
+
+      LOG.info(getName() + " about to shuffle output of map "
+          + mapOutput.getMapId() + " decomp: " + decompressedLength
+          + " len: " + compressedLength + " to " + mapOutput.getDescription());
+      if (mapOutput instanceof InMemoryMapOutput) {
+        return startBody((InMemoryMapOutput<K,V>) mapOutput);
+      }
+      startCopy();
+      return false;
+    }
+
+    private boolean startBody(InMemoryMapOutput<K,V> output) {
+      int size = (int) decompressedLength;
+      long trailerLength = wireLength - decompressedLength;
+      if (rawMapOutputs && trailerLength >= 0
+          && trailerLength <= buffer.capacity()) {
+        // the data goes straight to its place in memory, and only the
+        // checksum after it is read separately
+        byte[] memory = output.getMemory();
+        byte[] trailer = new byte[(int) trailerLength];
+        body = new ByteBuffer[] {
+            ByteBuffer.wrap(memory, 0, size), ByteBuffer.wrap(trailer) };
+        bodyInput = new SequenceInputStream(
+            new ByteArrayInputStream(memory, 0, size),
+            new ByteArrayInputStream(trailer));
+      } else if (merger instanceof MergeManagerImpl) {
+        staging = ((MergeManagerImpl<K,V>) merger).reserveStaging(
+            (int) wireLength);
+        body = new ByteBuffer[] {
+            ByteBuffer.wrap(staging, 0, (int) wireLength) };
+        bodyInput = new ByteArrayInputStream(staging, 0, (int) wireLength);
+      } else {
+        // there is no memory to charge a staging buffer to
+        startCopy();
+        return false;
+      }
+      state = State.BODY;
+      return true;
+    }
+
+    private boolean readBody() throws IOException {
+      for (ByteBuffer part : body) {
+        int n = Math.min(buffer.remaining(), part.remaining());
+        buffer.get(part.array(), part.arrayOffset() + part.position(), n);
+        part.position(part.position() + n);
+      }
+      if (body[body.length - 1].hasRemaining()) {
+        return false;
+      }
+      try {
+        shuffle(bodyInput);
+      } finally {
+        body = null;
+        bodyInput = null;
+        releaseStaging();
+      }
+      copySucceeded();
+      return true;
+    }
+
+    private void releaseStaging() {
+      if (staging != null) {
+        ((MergeManagerImpl<K,V>) merger).releaseStaging(staging);
+        staging = null;
+      }
+    }
+
+    /**
+     * Copy the map output on the copier, with blocking reads of the rest of
+     * the response. The connection is left alone until the copy is done.
+     */
+    private void startCopy() {
+      state = State.COPY;
+      copyFinished = false;
+      copyError = null;
+      channel.keyFor(selector).interestOps(0);
+      copier.execute(new Runnable() {
+        @Override
+        public void run() {
+          IOException error = null;
+          Selector readSelector = null;
+          try {
+            readSelector = Selector.open();
+            shuffle(new BlockingInputStream(readSelector));
+          } catch (IOException ie) {
+            error = ie;
+          } finally {
+            IOUtils.cleanup(LOG, readSelector);
+          }
+          synchronized (HostConnection.this) {
+            if (closed) {
+              // nobody will commit it
+              mapOutput.abort();
+              return;
+            }
+            copyFinished = true;
+            copyError = error;
+          }
+          copiesDone.add(HostConnection.this);
+          selector.wakeup();
+        }
+      });
+    }
+
+    /** Finish a copy of the copier, on the selector thread. */
+    void copyDone() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        copyFinished = false;
+      }
+      lastActivity = Time.monotonicNow();
+      if (copyError != null) {
+        failed(copyError);
+        return;
+      }
+      try {
+        copySucceeded();
+        channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+        processBuffered();
+      } catch (IOException ie) {
+        failed(ie);
+      }
+    }
+
+    private void shuffle(InputStream input) throws IOException {
+      // The codec for lz0,lz4,snappy,bz2,etc. throw java.lang.InternalError
+      // on decompression failures. Catching and re-throwing as IOException
+      // to allow fetch failure logic to be processed
+      try {
+        InputStream is =
+            CryptoUtils.wrapIfNecessary(jobConf, input, wireLength);
+        mapOutput.shuffle(host, is, compressedLength, decompressedLength,
+            metrics, reporter);
+      } catch (java.lang.InternalError | Exception e) {
+        LOG.warn("Failed to shuffle for " + getName(), e);
+        throw new IOException(e);
+      }
+    }
+
+    private void copySucceeded() throws IOException {
+      // Inform the shuffle scheduler
+      long endTime = Time.monotonicNow();
+      scheduler.copySucceeded(mapId, host, compressedLength,
+          startTime, endTime, mapOutput);
+      // Note successful shuffle
+      remaining.remove(mapId);
+      metrics.successFetch();
+      metrics.hostInputBytes(host.getHostName(), compressedLength,
+          endTime - startTime);
+
+      lastActivity = endTime;
+      mapId = null;
+      mapOutput = null;
+      state = State.HEADER;
+    }
+
+    /** Handle a failure, following Fetcher#copyFromHost. */
+    void failed(IOException ioe) {
+      if (closed) {
+        return;
+      }
+      releaseStaging();
+      if (!verified) {
+        ioErrs.increment(1);
+        LOG.warn("Failed to connect to " + host + " with " + remaining.size()
+            + " map outputs", ioe);
+
+        // If connect did not succeed, just mark all the maps as failed,
+        // indirectly penalizing the host
+        scheduler.hostFailed(host.getHostName());
+        for (TaskAttemptID left : remaining) {
+          scheduler.copyFailed(left, host, false,
+              ioe instanceof ConnectException);
+        }
+        close();
+        return;
+      }
+
+      if (mapOutput != null) {
+        mapOutput.abort();
+      }
+      ioErrs.increment(1);
+      if (mapId == null || mapOutput == null) {
+        LOG.warn(getName() + " failed to read map header" + mapId
+            + " decomp: " + decompressedLength + ", " + compressedLength, ioe);
+        if (mapId == null) {
+          failTasks(remaining.toArray(new TaskAttemptID[remaining.size()]));
+        } else {
+          failTasks(new TaskAttemptID[] {mapId});
+        }
+        return;
+      }
+
+      LOG.warn("Failed to shuffle output of " + mapId + " from "
+          + host.getHostName(), ioe);
+      // Inform the shuffle-scheduler
+      metrics.failedFetch();
+      failTasks(new TaskAttemptID[] {mapId});
+    }
+
+    private void failTasks(TaskAttemptID[] failedTasks) {
+      if (failedTasks.length > 0) {
+        LOG.warn("copyMapOutput failed for tasks "
+            + Arrays.toString(failedTasks));
+        scheduler.hostFailed(host.getHostName());
+        for (TaskAttemptID left : failedTasks) {
+          scheduler.copyFailed(left, host, true, false);
+        }
+      }
+      close();
+    }
+
+    /**
+     * Close the connection, put back the maps that were not copied and free
+     * the host.
+     */
+    void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (state == State.COPY && copyFinished) {
+          // the copier is done with it, but it is not committed
+          mapOutput.abort();
+        }
+      }
+      releaseStaging();
+      IOUtils.cleanup(LOG, channel);
+      for (TaskAttemptID left : remaining) {
+        scheduler.putBackKnownMapOutput(host, left);
+      }
+      scheduler.freeHost(host);
+      connections.remove(this);
+      metrics.connectionClosed();
+      if (connections.isEmpty()) {
+        metrics.threadFree();
+      }
+    }
+
+    /**
+     * Reads the rest of the response with blocking semantics, for copying
+     * a map output to disk.
+     */
+    private class BlockingInputStream extends InputStream {
+      private final Selector readSelector;
+
+      BlockingInputStream(Selector readSelector) {
+        this.readSelector = readSelector;
+      }
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        if (!buffer.hasRemaining()) {
+          buffer.clear();
+          int n;
+          try {
+            n = readBlocking();
+          } finally {
+            buffer.flip();
+          }
+          if (n < 0) {
+            return -1;
+          }
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+      }
+
+      private int readBlocking() throws IOException {
+        if (channel.keyFor(readSelector) == null) {
+          channel.register(readSelector, SelectionKey.OP_READ);
+        }
+        int n;
+        while ((n = channel.read(buffer)) == 0) {
+          if (readSelector.select(readTimeout) == 0) {
+            if (stopped || Thread.currentThread().isInterrupted()) {
+              throw new IOException(getName() + " was stopped");
+            }
+            throw new SocketTimeoutException("read timed out after "
+                + readTimeout + " ms");
+          }
+          readSelector.selectedKeys().clear();
+        }
+        return n;
+      }
+    }
+  }
+}
@@ -70,11 +70,11 @@
                                     CONNECTION, WRONG_REDUCE}
   
   private final static String SHUFFLE_ERR_GRP_NAME = "Shuffle Errors";
-  private final JobConf jobConf;
+  protected final JobConf jobConf;
   private final Counters.Counter connectionErrs;
-  private final Counters.Counter ioErrs;
+  protected final Counters.Counter ioErrs;
   private final Counters.Counter wrongLengthErrs;
-  private final Counters.Counter badIdErrs;
+  protected final Counters.Counter badIdErrs;
   private final Counters.Counter wrongMapErrs;
   private final Counters.Counter wrongReduceErrs;
   protected final MergeManager<K,V> merger;
@@ -85,18 +85,18 @@
   private static int nextId = 0;
   protected final int reduce;
   
-  private final int connectionTimeout;
-  private final int readTimeout;
+  protected final int connectionTimeout;
+  protected final int readTimeout;
   
   private final int fetchRetryTimeout;
   private final int fetchRetryInterval;
   
   private final boolean fetchRetryEnabled;
   
-  private final SecretKey shuffleSecretKey;
+  protected final SecretKey shuffleSecretKey;
 
   protected HttpURLConnection connection;
-  private volatile boolean stopped = false;
+  protected volatile boolean stopped = false;
   
   // Initiative value is 0, which means it hasn't retried yet.
   private long retryStartTime = 0;
@@ -551,6 +551,8 @@ private TaskAttemptID[] copyMapOutput(MapHost host,
       // Note successful shuffle
       remaining.remove(mapId);
       metrics.successFetch();
+      metrics.hostInputBytes(host.getHostName(), compressedLength,
+          endTime - startTime);
       return null;
     } catch (IOException ioe) {
       if (mapOutput != null) {
@@ -615,7 +617,7 @@ private void checkTimeoutOrRetry(MapHost host, IOException ioe)
    * @param mapId
    * @return true/false, based on if the verification succeeded or not
    */
-  private boolean verifySanity(long compressedLength, long decompressedLength,
+  protected boolean verifySanity(long compressedLength, long decompressedLength,
       int forReduce, Set<TaskAttemptID> remaining, TaskAttemptID mapId) {
     if (compressedLength < 0 || decompressedLength < 0) {
       wrongLengthErrs.increment(1);
@@ -651,7 +653,7 @@ private boolean verifySanity(long compressedLength, long decompressedLength,
    * @return
    * @throws MalformedURLException
    */
-  private URL getMapOutputURL(MapHost host, Collection<TaskAttemptID> maps
+  protected URL getMapOutputURL(MapHost host, Collection<TaskAttemptID> maps
                               )  throws MalformedURLException {
     // Get the base url
     StringBuffer url = new StringBuffer(host.getBaseUrl());
@@ -35,6 +35,8 @@
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 
+import org.apache.hadoop.mapred.IFile;
+import org.apache.hadoop.mapred.IFileBlockInputStream;
 import org.apache.hadoop.mapred.IFileInputStream;
 import org.apache.hadoop.mapred.Reporter;
 
@@ -56,12 +58,23 @@ public InMemoryMapOutput(Configuration conf, TaskAttemptID mapId,
                            MergeManagerImpl<K, V> merger,
                            int size, CompressionCodec codec,
                            boolean primaryMapOutput) {
+    this(conf, mapId, merger, new byte[size], size, codec, primaryMapOutput);
+  }
+
+  /**
+   * Create an in-memory map output of the given size in the first bytes of
+   * memory, which may be larger.
+   */
+  InMemoryMapOutput(Configuration conf, TaskAttemptID mapId,
+                    MergeManagerImpl<K, V> merger, byte[] memory,
+                    int size, CompressionCodec codec,
+                    boolean primaryMapOutput) {
     super(mapId, (long)size, primaryMapOutput);
     this.conf = conf;
     this.merger = merger;
     this.codec = codec;
-    byteStream = new BoundedByteArrayOutputStream(size);
-    memory = byteStream.getBuffer();
+    this.memory = memory;
+    byteStream = new MemoryOutputStream(memory, size);
     if (codec != null) {
       decompressor = CodecPool.getDecompressor(codec);
     } else {
@@ -82,22 +95,32 @@ public void shuffle(MapHost host, InputStream input,
                       long compressedLength, long decompressedLength,
                       ShuffleClientMetrics metrics,
                       Reporter reporter) throws IOException {
-    IFileInputStream checksumIn = 
-      new IFileInputStream(input, compressedLength, conf);
+    if (IFile.getVersion(conf) == 2) {
+      // The blocks carry their own checksums and are decompressed one by one
+      if (decompressor != null) {
+        decompressor.reset();
+      }
+      input = new IFileBlockInputStream(input, compressedLength, codec,
+                                        decompressor);
+    } else {
+      IFileInputStream checksumIn = 
+        new IFileInputStream(input, compressedLength, conf);
 
-    input = checksumIn;       
+      input = checksumIn;       
   
-    // Are map-outputs compressed?
-    if (codec != null) {
-      decompressor.reset();
-      input = codec.createInputStream(input, decompressor);
+      // Are map-outputs compressed?
+      if (codec != null) {
+        decompressor.reset();
+        input = codec.createInputStream(input, decompressor);
+      }
     }
   
     try {
-      IOUtils.readFully(input, memory, 0, memory.length);
-      metrics.inputBytes(memory.length);
+      final int size = (int) getSize();
+      IOUtils.readFully(input, memory, 0, size);
+      metrics.inputBytes(size);
       reporter.progress();
-      LOG.info("Read " + memory.length + " bytes from map-output for " +
+      LOG.info("Read " + size + " bytes from map-output for " +
                 getMapId());
 
       /**
@@ -130,11 +153,21 @@ public void commit() throws IOException {
   
   @Override
   public void abort() {
-    merger.unreserve(memory.length);
+    merger.release(memory);
   }
 
   @Override
   public String getDescription() {
     return "MEMORY";
   }
+
+  /**
+   * A stream over the first bytes of a possibly larger buffer.
+   */
+  private static class MemoryOutputStream
+      extends BoundedByteArrayOutputStream {
+    MemoryOutputStream(byte[] buf, int limit) {
+      super(buf, 0, limit);
+    }
+  }
 }
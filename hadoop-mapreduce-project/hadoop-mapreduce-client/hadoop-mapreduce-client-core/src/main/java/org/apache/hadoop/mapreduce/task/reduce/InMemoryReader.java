@@ -136,12 +136,12 @@ public void nextRawValue(DataInputBuffer value) throws IOException {
   }
     
   public void close() {
+    // Inform the MergeManager
+    if (merger != null && buffer != null) {
+      merger.release(buffer);
+    }
     // Release
     dataIn = null;
     buffer = null;
-      // Inform the MergeManager
-    if (merger != null) {
-      merger.unreserve(bufferSize);
-    }
   }
 }
@@ -19,12 +19,17 @@
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
 import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
 import org.apache.hadoop.mapred.IFile;
 import org.apache.hadoop.mapred.IFileOutputStream;
 import org.apache.hadoop.mapred.IFile.Writer;
@@ -33,16 +38,47 @@
 @InterfaceStability.Unstable
 public class InMemoryWriter<K, V> extends Writer<K, V> {
   private DataOutputStream out;
+  private Serializer<K> keySerializer;
+  private Serializer<V> valueSerializer;
+  private DataOutputBuffer buffer;
   
   public InMemoryWriter(BoundedByteArrayOutputStream arrayStream) {
     super(null);
     this.out = 
       new DataOutputStream(new IFileOutputStream(arrayStream));
   }
+
+  /**
+   * Create a writer that also appends keys and values given as objects,
+   * such as the output of a combiner.
+   */
+  public InMemoryWriter(OutputStream stream, Configuration conf,
+                        Class<K> keyClass, Class<V> valueClass)
+      throws IOException {
+    super(null);
+    this.out = new DataOutputStream(new IFileOutputStream(stream));
+    this.buffer = new DataOutputBuffer();
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keySerializer = serializationFactory.getSerializer(keyClass);
+    this.keySerializer.open(buffer);
+    this.valueSerializer = serializationFactory.getSerializer(valueClass);
+    this.valueSerializer.open(buffer);
+  }
   
   public void append(K key, V value) throws IOException {
-    throw new UnsupportedOperationException
-    ("InMemoryWriter.append(K key, V value");
+    if (keySerializer == null) {
+      throw new UnsupportedOperationException
+      ("InMemoryWriter.append(K key, V value");
+    }
+    keySerializer.serialize(key);
+    int keyLength = buffer.getLength();
+    valueSerializer.serialize(value);
+    int valueLength = buffer.getLength() - keyLength;
+
+    WritableUtils.writeVInt(out, keyLength);
+    WritableUtils.writeVInt(out, valueLength);
+    out.write(buffer.getData(), 0, buffer.getLength());
+    buffer.reset();
   }
   
   public void append(DataInputBuffer key, DataInputBuffer value)
@@ -66,6 +102,11 @@ public void append(DataInputBuffer key, DataInputBuffer value)
   }
 
   public void close() throws IOException {
+    if (keySerializer != null) {
+      keySerializer.close();
+      valueSerializer.close();
+    }
+
     // Write EOF_MARKER for key/value length
     WritableUtils.writeVInt(out, IFile.EOF_MARKER);
     WritableUtils.writeVInt(out, IFile.EOF_MARKER);
@@ -18,6 +18,7 @@
 package org.apache.hadoop.mapreduce.task.reduce;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -36,6 +37,7 @@
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapred.Counters;
@@ -100,6 +102,11 @@
   private long usedMemory;
   private long commitMemory;
 
+  /**
+   * Pool of the memory of in-memory map outputs, if enabled.
+   */
+  private final ShuffleBufferPool bufferPool;
+
   @VisibleForTesting
   final long maxSingleShuffleLimit;
   
@@ -117,10 +124,16 @@
   private final Class<? extends Reducer> combinerClass;
 
   /**
-   * Resettable collector used for combine.
+   * Collector of the task's combine output; the merges count their combine
+   * output records in it.
    */
   private final CombineOutputCollector<K,V> combineCollector;
 
+  /**
+   * Whether the combiner runs in all the merges during the shuffle.
+   */
+  private final boolean combineMerges;
+
   private final Counters.Counter spilledRecordsCounter;
 
   private final Counters.Counter reduceCombineInputCounter;
@@ -189,6 +202,13 @@ public MergeManagerImpl(TaskAttemptID reduceId, JobConf jobConf,
 
     usedMemory = 0L;
     commitMemory = 0L;
+    if (jobConf.getBoolean(MRJobConfig.SHUFFLE_MEMORY_POOL_ENABLED,
+        MRJobConfig.DEFAULT_SHUFFLE_MEMORY_POOL_ENABLED)) {
+      this.bufferPool = new ShuffleBufferPool(memoryLimit);
+      LOG.info("Pooling the memory of in-memory map outputs");
+    } else {
+      this.bufferPool = null;
+    }
     long maxSingleShuffleLimitConfiged =
         (long)(memoryLimit * singleShuffleMemoryLimitPercent);
     if(maxSingleShuffleLimitConfiged > Integer.MAX_VALUE) {
@@ -215,7 +235,14 @@ public MergeManagerImpl(TaskAttemptID reduceId, JobConf jobConf,
           + "mergeThreshold: " + this.mergeThreshold);
     }
 
-    boolean allowMemToMemMerge = 
+    this.combineMerges = combinerClass != null &&
+        jobConf.getBoolean(MRJobConfig.REDUCE_MERGE_COMBINE_ENABLED,
+            MRJobConfig.DEFAULT_REDUCE_MERGE_COMBINE_ENABLED);
+    if (combineMerges) {
+      LOG.info("Running the combiner in all merges of map outputs");
+    }
+
+    boolean allowMemToMemMerge = combineMerges ||
       jobConf.getBoolean(MRJobConfig.REDUCE_MEMTOMEM_ENABLED, false);
     if (allowMemToMemMerge) {
       this.memToMemMerger = 
@@ -305,7 +332,12 @@ public synchronized MapOutput<K,V> reserve(TaskAttemptID mapId,
    */
   private synchronized InMemoryMapOutput<K, V> unconditionalReserve(
       TaskAttemptID mapId, long requestedSize, boolean primaryMapOutput) {
-    usedMemory += requestedSize;
+    usedMemory += memorySize(requestedSize);
+    if (bufferPool != null) {
+      return new InMemoryMapOutput<K,V>(jobConf, mapId, this,
+          bufferPool.allocate((int)requestedSize), (int)requestedSize,
+          codec, primaryMapOutput);
+    }
     return new InMemoryMapOutput<K,V>(jobConf, mapId, this, (int)requestedSize,
                                       codec, primaryMapOutput);
   }
@@ -314,13 +346,48 @@ synchronized void unreserve(long size) {
     usedMemory -= size;
   }
 
+  /**
+   * Memory taken by a buffer for the given number of bytes. Pooled buffers
+   * are rounded up to their size class, and count as used with that size.
+   */
+  private long memorySize(long size) {
+    return bufferPool != null ? ShuffleBufferPool.bufferSize((int) size)
+                              : size;
+  }
+
+  /**
+   * Get a buffer for the bytes of a map output as they are received, before
+   * they are decoded into its {@link InMemoryMapOutput}. The buffer counts
+   * towards the used memory until it is given back with
+   * {@link #releaseStaging(byte[])}.
+   */
+  synchronized byte[] reserveStaging(int size) {
+    usedMemory += memorySize(size);
+    return bufferPool != null ? bufferPool.allocate(size) : new byte[size];
+  }
+
+  void releaseStaging(byte[] buffer) {
+    release(buffer);
+  }
+
+  /**
+   * Give back the memory of an in-memory map output that is no longer read.
+   * All of the buffer counted as used, whatever part of it held the output.
+   */
+  void release(byte[] memory) {
+    unreserve(memory.length);
+    if (bufferPool != null) {
+      bufferPool.release(memory);
+    }
+  }
+
   public synchronized void closeInMemoryFile(InMemoryMapOutput<K,V> mapOutput) { 
     inMemoryMapOutputs.add(mapOutput);
     LOG.info("closeInMemoryFile -> map-output of size: " + mapOutput.getSize()
         + ", inMemoryMapOutputs.size() -> " + inMemoryMapOutputs.size()
         + ", commitMemory -> " + commitMemory + ", usedMemory ->" + usedMemory);
 
-    commitMemory+= mapOutput.getSize();
+    commitMemory+= mapOutput.getMemory().length;
 
     // Can hang if mergeThreshold is really low.
     if (commitMemory >= mergeThreshold) {
@@ -351,7 +418,10 @@ public synchronized void closeInMemoryMergedFile(InMemoryMapOutput<K,V> mapOutpu
   public synchronized void closeOnDiskFile(CompressAwarePath file) {
     onDiskMapOutputs.add(file);
     
-    if (onDiskMapOutputs.size() >= (2 * ioSortFactor - 1)) {
+    // Combining merges shrink the data, so they start as soon as there is
+    // a full merge instead of leaving it to the final merge
+    if (onDiskMapOutputs.size() >=
+        (combineMerges ? ioSortFactor : 2 * ioSortFactor - 1)) {
       onDiskMerger.startMerge(onDiskMapOutputs);
     }
   }
@@ -393,17 +463,15 @@ public void merge(List<InMemoryMapOutput<K, V>> inputs) throws IOException {
       }
 
       TaskAttemptID dummyMapId = inputs.get(0).getMapId(); 
+      long inputMemory = 0;
+      for (InMemoryMapOutput<K, V> input : inputs) {
+        inputMemory += input.getMemory().length;
+      }
       List<Segment<K, V>> inMemorySegments = new ArrayList<Segment<K, V>>();
       long mergeOutputSize = 
         createInMemorySegments(inputs, inMemorySegments, 0);
       int noInMemorySegments = inMemorySegments.size();
       
-      InMemoryMapOutput<K, V> mergedMapOutputs = 
-        unconditionalReserve(dummyMapId, mergeOutputSize, false);
-      
-      Writer<K, V> writer = 
-        new InMemoryWriter<K, V>(mergedMapOutputs.getArrayStream());
-      
       LOG.info("Initiating Memory-to-Memory merge with " + noInMemorySegments +
                " segments of total-size: " + mergeOutputSize);
 
@@ -415,8 +483,61 @@ public void merge(List<InMemoryMapOutput<K, V>> inputs) throws IOException {
                      new Path(reduceId.toString()),
                      (RawComparator<K>)jobConf.getOutputKeyComparator(),
                      reporter, null, null, null);
-      Merger.writeFile(rIter, writer, reporter, jobConf);
-      writer.close();
+
+      InMemoryMapOutput<K, V> mergedMapOutputs;
+      if (combineMerges) {
+        // The combined output is written into memory reserved for the
+        // inputs; what the combiner saves is given back once it is done
+        InMemoryMapOutput<K, V> reserved =
+          unconditionalReserve(dummyMapId, mergeOutputSize, false);
+        CombinedOutputStream combined =
+          new CombinedOutputStream(reserved.getMemory(), mergeOutputSize);
+        Writer<K, V> writer = new InMemoryWriter<K, V>(combined, jobConf,
+            (Class<K>) jobConf.getMapOutputKeyClass(),
+            (Class<V>) jobConf.getMapOutputValueClass());
+        combineAndSpill(writer, rIter);
+        writer.close();
+        int combinedSize = combined.size();
+        if (combined.overflow == null
+            && memorySize(combinedSize) == reserved.getMemory().length) {
+          mergedMapOutputs = new InMemoryMapOutput<K, V>(jobConf,
+              dummyMapId, MergeManagerImpl.this, reserved.getMemory(),
+              combinedSize, codec, false);
+        } else if (combined.overflow == null) {
+          // Move the output into a buffer of its own size, so that what
+          // the combiner saved is given back
+          mergedMapOutputs =
+            unconditionalReserve(dummyMapId, combinedSize, false);
+          System.arraycopy(reserved.getMemory(), 0,
+              mergedMapOutputs.getMemory(), 0, combinedSize);
+          reserved.abort();
+        } else {
+          // The combiner grew its input, which is seldom the case
+          mergedMapOutputs =
+            unconditionalReserve(dummyMapId, combinedSize, false);
+          System.arraycopy(reserved.getMemory(), 0,
+              mergedMapOutputs.getMemory(), 0, (int) mergeOutputSize);
+          System.arraycopy(combined.overflow.getData(), 0,
+              mergedMapOutputs.getMemory(), (int) mergeOutputSize,
+              combined.overflow.getLength());
+          reserved.abort();
+        }
+        synchronized (MergeManagerImpl.this) {
+          // The inputs count towards the next merge to disk; the combined
+          // output takes less of the memory that merge frees
+          commitMemory = Math.max(0L, commitMemory
+              - (inputMemory - mergedMapOutputs.getMemory().length));
+        }
+        LOG.info("Combined the " + noInMemorySegments + " segments into " +
+                 combinedSize + " bytes");
+      } else {
+        mergedMapOutputs =
+          unconditionalReserve(dummyMapId, mergeOutputSize, false);
+        Writer<K, V> writer = 
+          new InMemoryWriter<K, V>(mergedMapOutputs.getArrayStream());
+        Merger.writeFile(rIter, writer, reporter, jobConf);
+        writer.close();
+      }
 
       LOG.info(reduceId +  
                " Memory-to-Memory merge of the " + noInMemorySegments +
@@ -427,6 +548,44 @@ public void merge(List<InMemoryMapOutput<K, V>> inputs) throws IOException {
     }
   }
   
+  /**
+   * A stream into memory reserved for a merge, which keeps what goes past
+   * the reservation in a growable buffer.
+   */
+  private static class CombinedOutputStream extends OutputStream {
+    private final byte[] memory;
+    private final int limit;
+    private int count;
+    private DataOutputBuffer overflow;
+
+    CombinedOutputStream(byte[] memory, long limit) {
+      this.memory = memory;
+      this.limit = (int) limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int n = Math.min(len, limit - count);
+      System.arraycopy(b, off, memory, count, n);
+      count += n;
+      if (n < len) {
+        if (overflow == null) {
+          overflow = new DataOutputBuffer();
+        }
+        overflow.write(b, off + n, len - n);
+      }
+    }
+
+    int size() {
+      return count + (overflow == null ? 0 : overflow.getLength());
+    }
+  }
+
   private class InMemoryMerger extends MergeThread<InMemoryMapOutput<K,V>, K,V> {
     
     public InMemoryMerger(MergeManagerImpl<K, V> manager) {
@@ -486,8 +645,7 @@ public void merge(List<InMemoryMapOutput<K,V>> inputs) throws IOException {
         if (null == combinerClass) {
           Merger.writeFile(rIter, writer, reporter, jobConf);
         } else {
-          combineCollector.setWriter(writer);
-          combineAndSpill(rIter, reduceCombineInputCounter);
+          combineAndSpill(writer, rIter);
         }
         writer.close();
         compressAwarePath = new CompressAwarePath(outputPath,
@@ -566,7 +724,11 @@ public void merge(List<CompressAwarePath> inputs) throws IOException {
                             reporter, spilledRecordsCounter, null, 
                             mergedMapOutputsCounter, null);
 
-        Merger.writeFile(iter, writer, reporter, jobConf);
+        if (combineMerges) {
+          combineAndSpill(writer, iter);
+        } else {
+          Merger.writeFile(iter, writer, reporter, jobConf);
+        }
         writer.close();
         compressAwarePath = new CompressAwarePath(outputPath,
             writer.getRawLength(), writer.getCompressedLength());
@@ -586,8 +748,31 @@ public void merge(List<CompressAwarePath> inputs) throws IOException {
     }
   }
   
+  /**
+   * Run the combiner over kvIter and write its output to writer. Each merge
+   * has a collector and counters of its own, so that merges combine at the
+   * same time, and adds its counts to the task's once done.
+   */
+  private void combineAndSpill(Writer<K, V> writer,
+      RawKeyValueIterator kvIter) throws IOException {
+    Counters.Counter inCounter = new Counters.Counter();
+    Counters.Counter outCounter = new Counters.Counter();
+    CombineOutputCollector<K, V> collector =
+      new CombineOutputCollector<K, V>(outCounter, reporter, jobConf);
+    collector.setWriter(writer);
+    try {
+      combineAndSpill(kvIter, collector, inCounter);
+    } finally {
+      synchronized (this) {
+        reduceCombineInputCounter.increment(inCounter.getValue());
+        combineCollector.getOutCounter().increment(outCounter.getValue());
+      }
+    }
+  }
+
   private void combineAndSpill(
       RawKeyValueIterator kvIter,
+      CombineOutputCollector<K, V> collector,
       Counters.Counter inCounter) throws IOException {
     JobConf job = jobConf;
     Reducer combiner = ReflectionUtils.newInstance(combinerClass, job);
@@ -600,7 +785,7 @@ private void combineAndSpill(
           kvIter, comparator, keyClass, valClass, job, Reporter.NULL,
           inCounter);
       while (values.more()) {
-        combiner.reduce(values.getKey(), values, combineCollector,
+        combiner.reduce(values.getKey(), values, collector,
                         Reporter.NULL);
         values.nextKey();
       }
@@ -618,12 +803,12 @@ private long createInMemorySegments(List<InMemoryMapOutput<K,V>> inMemoryMapOutp
     // closed but not yet present in inMemoryMapOutputs
     long fullSize = 0L;
     for (InMemoryMapOutput<K,V> mo : inMemoryMapOutputs) {
-      fullSize += mo.getMemory().length;
+      fullSize += mo.getSize();
     }
     while(fullSize > leaveBytes) {
       InMemoryMapOutput<K,V> mo = inMemoryMapOutputs.remove(0);
       byte[] data = mo.getMemory();
-      long size = data.length;
+      long size = mo.getSize();
       totalSize += size;
       fullSize -= size;
       Reader<K,V> reader = new InMemoryReader<K,V>(MergeManagerImpl.this, 
@@ -691,6 +876,10 @@ private RawKeyValueIterator finalMerge(JobConf job, FileSystem fs,
     LOG.info("finalMerge called with " +
         inMemoryMapOutputs.size() + " in-memory map-outputs and " +
         onDiskMapOutputs.size() + " on-disk map-outputs");
+    if (bufferPool != null) {
+      // Nothing is fetched anymore; the memory goes to the reduce
+      bufferPool.close();
+    }
     final long maxInMemReduce = getMaxInMemReduceLimit();
     // merge config params
     Class<K> keyClass = (Class<K>)job.getMapOutputKeyClass();
@@ -735,7 +924,11 @@ private RawKeyValueIterator finalMerge(JobConf job, FileSystem fs,
         Writer<K, V> writer = new Writer<K, V>(job, out, keyClass, valueClass,
             codec, null, true);
         try {
-          Merger.writeFile(rIter, writer, reporter, job);
+          if (combineMerges) {
+            combineAndSpill(writer, rIter);
+          } else {
+            Merger.writeFile(rIter, writer, reporter, job);
+          }
           writer.close();
           onDiskMapOutputs.add(new CompressAwarePath(outputPath,
               writer.getRawLength(), writer.getCompressedLength()));
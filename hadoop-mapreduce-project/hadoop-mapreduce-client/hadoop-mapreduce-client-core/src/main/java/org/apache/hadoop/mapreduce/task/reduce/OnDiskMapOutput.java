@@ -33,6 +33,8 @@
 
 import org.apache.hadoop.io.IOUtils;
 
+import org.apache.hadoop.mapred.IFile;
+import org.apache.hadoop.mapred.IFileBlockInputStream;
 import org.apache.hadoop.mapred.IFileInputStream;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Reporter;
@@ -93,14 +95,22 @@ public void shuffle(MapHost host, InputStream input,
                       long compressedLength, long decompressedLength,
                       ShuffleClientMetrics metrics,
                       Reporter reporter) throws IOException {
-    input = new IFileInputStream(input, compressedLength, conf);
+    final boolean blockFormat = IFile.getVersion(conf) == 2;
+    if (blockFormat) {
+      input = new IFileBlockInputStream(input, compressedLength, null, null);
+    } else {
+      input = new IFileInputStream(input, compressedLength, conf);
+    }
     // Copy data to local-disk
     long bytesLeft = compressedLength;
     try {
       final int BYTES_TO_READ = 64 * 1024;
       byte[] buf = new byte[BYTES_TO_READ];
       while (bytesLeft > 0) {
-        int n = ((IFileInputStream)input).readWithChecksum(buf, 0, (int) Math.min(bytesLeft, BYTES_TO_READ));
+        final int len = (int) Math.min(bytesLeft, BYTES_TO_READ);
+        int n = blockFormat
+            ? ((IFileBlockInputStream)input).readWithChecksum(buf, 0, len)
+            : ((IFileInputStream)input).readWithChecksum(buf, 0, len);
         if (n < 0) {
           throw new IOException("read past end of stream reading " + 
                                 getMapId());
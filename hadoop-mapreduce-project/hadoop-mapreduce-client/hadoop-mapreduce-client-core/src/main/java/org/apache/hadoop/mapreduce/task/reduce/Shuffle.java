@@ -20,6 +20,8 @@
 import java.io.IOException;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.mapred.JobConf;
@@ -30,6 +32,7 @@
 import org.apache.hadoop.mapred.TaskStatus;
 import org.apache.hadoop.mapred.TaskUmbilicalProtocol;
 import org.apache.hadoop.mapred.ShuffleConsumerPlugin;
+import org.apache.hadoop.mapreduce.MRConfig;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.util.Progress;
@@ -38,6 +41,7 @@
 @InterfaceStability.Unstable
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class Shuffle<K, V> implements ShuffleConsumerPlugin<K, V>, ExceptionReporter {
+  private static final Log LOG = LogFactory.getLog(Shuffle.class);
   private static final int PROGRESS_FREQUENCY = 2000;
   private static final int MAX_EVENTS_TO_FETCH = 10000;
   private static final int MIN_EVENTS_TO_FETCH = 100;
@@ -117,10 +121,24 @@ public RawKeyValueIterator run() throws IOException, InterruptedException {
           localMapFiles);
       fetchers[0].start();
     } else {
+      boolean async = jobConf.getBoolean(
+          MRJobConfig.SHUFFLE_FETCHER_ASYNC_ENABLED,
+          MRJobConfig.DEFAULT_SHUFFLE_FETCHER_ASYNC_ENABLED);
+      if (async && jobConf.getBoolean(MRConfig.SHUFFLE_SSL_ENABLED_KEY,
+          MRConfig.SHUFFLE_SSL_ENABLED_DEFAULT)) {
+        LOG.info("Asynchronous fetchers do not support encrypted shuffle,"
+            + " using blocking fetchers");
+        async = false;
+      }
       for (int i=0; i < numFetchers; ++i) {
-        fetchers[i] = new Fetcher<K,V>(jobConf, reduceId, scheduler, merger, 
-                                       reporter, metrics, this, 
-                                       reduceTask.getShuffleSecret());
+        if (async) {
+          fetchers[i] = new AsyncFetcher<K,V>(jobConf, reduceId, scheduler,
+              merger, reporter, metrics, this, reduceTask.getShuffleSecret());
+        } else {
+          fetchers[i] = new Fetcher<K,V>(jobConf, reduceId, scheduler, merger,
+                                         reporter, metrics, this,
+                                         reduceTask.getShuffleSecret());
+        }
         fetchers[i].start();
       }
     }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A pool of the byte arrays that hold in-memory map outputs on the reduce
+ * side, so that the shuffle reuses its memory instead of allocating a new
+ * array for every map output fetched.
+ *
+ * Requests are rounded up to a size class, eight classes per power of two,
+ * so a buffer wastes at most an eighth of its size and any released buffer
+ * serves every later request of its class. The pool holds on to released
+ * buffers as long as the buffers in use and the idle ones together fit in
+ * its capacity; the largest idle buffers are dropped first to make room for
+ * a buffer of a class that has none idle. Once the pool is closed, released
+ * buffers are left to the garbage collector.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+class ShuffleBufferPool {
+
+  @VisibleForTesting
+  static final int MIN_BUFFER_SIZE = 4096;
+
+  private final long capacity;
+  private final TreeMap<Integer, ArrayDeque<byte[]>> idle =
+      new TreeMap<Integer, ArrayDeque<byte[]>>();
+  private long idleBytes;
+  private long usedBytes;
+  private boolean closed = false;
+
+  ShuffleBufferPool(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Size of the buffer handed out for a request of the given size.
+   */
+  static int bufferSize(int size) {
+    if (size <= MIN_BUFFER_SIZE) {
+      return MIN_BUFFER_SIZE;
+    }
+    final long step = Integer.highestOneBit(size) >> 3;
+    final long rounded = (size + step - 1) / step * step;
+    return rounded > Integer.MAX_VALUE ? size : (int) rounded;
+  }
+
+  /**
+   * Get a buffer of at least the given size.
+   */
+  synchronized byte[] allocate(int size) {
+    final int bufferSize = bufferSize(size);
+    byte[] buffer = null;
+    ArrayDeque<byte[]> buffers = idle.get(bufferSize);
+    if (buffers != null) {
+      buffer = buffers.pop();
+      if (buffers.isEmpty()) {
+        idle.remove(bufferSize);
+      }
+      idleBytes -= bufferSize;
+    } else {
+      evict(usedBytes + idleBytes + bufferSize - capacity);
+      buffer = new byte[bufferSize];
+    }
+    usedBytes += bufferSize;
+    return buffer;
+  }
+
+  /**
+   * Return a buffer obtained from {@link #allocate(int)} to the pool.
+   */
+  synchronized void release(byte[] buffer) {
+    usedBytes -= buffer.length;
+    if (closed || usedBytes + idleBytes + buffer.length > capacity) {
+      return;
+    }
+    ArrayDeque<byte[]> buffers = idle.get(buffer.length);
+    if (buffers == null) {
+      buffers = new ArrayDeque<byte[]>();
+      idle.put(buffer.length, buffers);
+    }
+    buffers.push(buffer);
+    idleBytes += buffer.length;
+  }
+
+  /**
+   * Drop the idle buffers, and stop keeping released ones, once no more
+   * map outputs are fetched.
+   */
+  synchronized void close() {
+    closed = true;
+    idle.clear();
+    idleBytes = 0;
+  }
+
+  private void evict(long bytes) {
+    Iterator<Map.Entry<Integer, ArrayDeque<byte[]>>> it =
+        idle.descendingMap().entrySet().iterator();
+    while (bytes > 0 && it.hasNext()) {
+      Map.Entry<Integer, ArrayDeque<byte[]>> e = it.next();
+      ArrayDeque<byte[]> buffers = e.getValue();
+      while (bytes > 0 && !buffers.isEmpty()) {
+        buffers.pop();
+        idleBytes -= e.getKey();
+        bytes -= e.getKey();
+      }
+      if (buffers.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getIdleBytes() {
+    return idleBytes;
+  }
+
+  @VisibleForTesting
+  synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+}
@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.mapreduce.task.reduce;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 
@@ -37,7 +40,10 @@ public class ShuffleClientMetrics implements Updater {
   private int numSuccessFetches = 0;
   private long numBytes = 0;
   private int numThreadsBusy = 0;
+  private int numConnections = 0;
   private final int numCopiers;
+  // bytes and milliseconds spent copying from each host since the last update
+  private final Map<String, long[]> hostInput = new HashMap<String, long[]>();
   
   ShuffleClientMetrics(TaskAttemptID reduceId, JobConf jobConf) {
     this.numCopiers = jobConf.getInt(MRJobConfig.SHUFFLE_PARALLEL_COPIES, 5);
@@ -67,6 +73,36 @@ public synchronized void threadBusy() {
   public synchronized void threadFree() {
     --numThreadsBusy;
   }
+  public synchronized void connectionOpened() {
+    ++numConnections;
+  }
+  public synchronized void connectionClosed() {
+    --numConnections;
+  }
+  public synchronized void hostInputBytes(String host, long bytes,
+      long millis) {
+    long[] input = hostInput.get(host);
+    if (input == null) {
+      input = new long[2];
+      hostInput.put(host, input);
+    }
+    input[0] += bytes;
+    input[1] += millis;
+  }
+  synchronized int getNumConnections() {
+    return numConnections;
+  }
+  /**
+   * @return the copy rate in bytes per second of the given host since the
+   *         last metrics update, or -1 if nothing was copied from it.
+   */
+  synchronized float getHostThroughput(String host) {
+    long[] input = hostInput.get(host);
+    return input == null ? -1 : throughput(input);
+  }
+  private static float throughput(long[] input) {
+    return input[0] * 1000f / Math.max(1, input[1]);
+  }
   public void doUpdates(MetricsContext unused) {
     synchronized (this) {
       shuffleMetrics.incrMetric("shuffle_input_bytes", numBytes);
@@ -80,6 +116,23 @@ public void doUpdates(MetricsContext unused) {
       } else {
         shuffleMetrics.setMetric("shuffle_fetchers_busy_percent", 0);
       }
+      shuffleMetrics.setMetric("shuffle_connections_open", numConnections);
+      // per-host copy rates, so a few slow hosts stand out from the average
+      float minHostRate = Float.MAX_VALUE;
+      float totalHostRate = 0;
+      for (long[] input : hostInput.values()) {
+        float rate = throughput(input);
+        minHostRate = Math.min(minHostRate, rate);
+        totalHostRate += rate;
+      }
+      if (hostInput.isEmpty()) {
+        minHostRate = 0;
+      }
+      shuffleMetrics.setMetric("shuffle_host_min_bytes_per_sec", minHostRate);
+      shuffleMetrics.setMetric("shuffle_host_avg_bytes_per_sec",
+          hostInput.isEmpty() ? 0 : totalHostRate / hostInput.size());
+      shuffleMetrics.setMetric("shuffle_hosts_copied", hostInput.size());
+      hostInput.clear();
       numBytes = 0;
       numSuccessFetches = 0;
       numFailedFetches = 0;
@@ -410,7 +410,18 @@ public synchronized MapHost getHost() throws InterruptedException {
       while(pendingHosts.isEmpty()) {
         wait();
       }
+      return assignHost();
+  }
+
+  /**
+   * Non-blocking variant of {@link #getHost()}.
+   * @return a host to shuffle from, or null if no host is pending.
+   */
+  public synchronized MapHost pollHost() {
+    return pendingHosts.isEmpty() ? null : assignHost();
+  }
 
+  private MapHost assignHost() {
       MapHost host = null;
       Iterator<MapHost> iter = pendingHosts.iterator();
       int numToPick = random.nextInt(pendingHosts.size());
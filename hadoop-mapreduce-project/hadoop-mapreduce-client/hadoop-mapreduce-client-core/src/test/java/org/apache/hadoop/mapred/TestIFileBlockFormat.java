@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.junit.Test;
+
+public class TestIFileBlockFormat {
+
+  private static final int RECORDS = 5000;
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    checkRoundTrip(null);
+  }
+
+  @Test
+  public void testRoundTripWithCodec() throws Exception {
+    checkRoundTrip(new DefaultCodec());
+    checkRoundTrip(new GzipCodec());
+  }
+
+  @Test
+  public void testVersionOneByDefault() throws Exception {
+    Configuration conf = new Configuration();
+    byte[] v1 = write(conf, null);
+    conf.setInt(MRConfig.MAPRED_IFILE_VERSION, 2);
+    byte[] v2 = write(conf, null);
+    assertFalse(Arrays.equals(v1, v2));
+    readAndCheck(new Configuration(), v1, null);
+  }
+
+  @Test
+  public void testCorruptBlock() throws Exception {
+    Configuration conf = blockConf();
+    byte[] data = write(conf, null);
+    data[IFileBlockOutputStream.HEADER_LENGTH + 10] ^= 1;
+    try {
+      readAndCheck(conf, data, null);
+      fail("Expected a checksum error");
+    } catch (ChecksumException e) {
+      assertEquals(0, e.getPos());
+    }
+    try {
+      copyStored(data);
+      fail("Expected a checksum error");
+    } catch (ChecksumException e) {
+      assertEquals(0, e.getPos());
+    }
+  }
+
+  @Test
+  public void testStoredCopy() throws Exception {
+    Configuration conf = blockConf();
+    DefaultCodec codec = new DefaultCodec();
+    codec.setConf(conf);
+    byte[] data = write(conf, codec);
+    assertArrayEquals(data, copyStored(data));
+  }
+
+  /**
+   * The segment must be read up to its length and no further, as on the
+   * shuffle it is followed by the next one on the same connection.
+   */
+  @Test
+  public void testReadsSegmentOnly() throws Exception {
+    byte[] data = write(blockConf(), null);
+    byte[] stream = Arrays.copyOf(data, data.length + 3);
+    ByteArrayInputStream in = new ByteArrayInputStream(stream);
+    IFileBlockInputStream blockIn =
+        new IFileBlockInputStream(in, data.length, null, null);
+    byte[] buf = new byte[4096];
+    while (blockIn.read(buf, 0, buf.length) >= 0) {
+    }
+    assertEquals(data.length, blockIn.getPosition());
+    assertEquals(3, in.available());
+  }
+
+  @Test
+  public void testBytesPastEndOfFile() throws Exception {
+    byte[] data = write(blockConf(), null);
+    IFileBlockInputStream blockIn = new IFileBlockInputStream(
+        new ByteArrayInputStream(Arrays.copyOf(data, data.length + 3)),
+        data.length + 3, null, null);
+    byte[] buf = new byte[4096];
+    try {
+      while (blockIn.read(buf, 0, buf.length) >= 0) {
+      }
+      fail("Expected the extra bytes to be reported");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("3 bytes past"));
+    }
+  }
+
+  private void checkRoundTrip(CompressionCodec codec) throws Exception {
+    Configuration conf = blockConf();
+    if (codec != null) {
+      ((DefaultCodec) codec).setConf(conf);
+    }
+    byte[] data = write(conf, codec);
+    readAndCheck(conf, data, codec);
+
+    // walk the block headers up to the end of file header
+    int blocks = 0;
+    int pos = 0;
+    while (WritableComparator.readInt(data, pos) != IFile.EOF_MARKER) {
+      pos += IFileBlockOutputStream.HEADER_LENGTH +
+          WritableComparator.readInt(data, pos + 4);
+      ++blocks;
+    }
+    assertTrue("Expected several blocks: " + blocks, blocks > 10);
+    assertEquals(data.length, pos + IFileBlockOutputStream.HEADER_LENGTH);
+  }
+
+  private static Configuration blockConf() {
+    Configuration conf = new Configuration();
+    conf.setInt(MRConfig.MAPRED_IFILE_VERSION, 2);
+    conf.setInt(MRConfig.MAPRED_IFILE_BLOCK_SIZE, 1024);
+    return conf;
+  }
+
+  private static Text key(int i) {
+    return new Text(String.format("key%08d", i));
+  }
+
+  private static Text value(int i) {
+    return new Text("value" + (i * 31 % 997));
+  }
+
+  private static byte[] write(Configuration conf, CompressionCodec codec)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    IFile.Writer<Text, Text> writer = new IFile.Writer<Text, Text>(conf,
+        new FSDataOutputStream(bytes, null), Text.class, Text.class, codec,
+        null);
+    for (int i = 0; i < RECORDS; ++i) {
+      writer.append(key(i), value(i));
+    }
+    writer.close();
+    assertEquals(bytes.size(), writer.getCompressedLength());
+    return bytes.toByteArray();
+  }
+
+  private static void readAndCheck(Configuration conf, byte[] data,
+      CompressionCodec codec) throws IOException {
+    IFile.Reader<Text, Text> reader = new IFile.Reader<Text, Text>(conf,
+        new FSDataInputStream(new SeekableByteArrayInputStream(data)),
+        data.length, codec, null);
+    try {
+      DataInputBuffer keyIn = new DataInputBuffer();
+      DataInputBuffer valueIn = new DataInputBuffer();
+      Text key = new Text();
+      Text value = new Text();
+      int i = 0;
+      while (reader.nextRawKey(keyIn)) {
+        reader.nextRawValue(valueIn);
+        key.readFields(keyIn);
+        value.readFields(valueIn);
+        assertEquals(key(i), key);
+        assertEquals(value(i), value);
+        ++i;
+      }
+      assertEquals(RECORDS, i);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static byte[] copyStored(byte[] data) throws IOException {
+    IFileBlockInputStream in = new IFileBlockInputStream(
+        new ByteArrayInputStream(data), data.length, null, null);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    IOUtils.copyBytes(new ReadWithChecksum(in), out, 1000, true);
+    return out.toByteArray();
+  }
+
+  private static class ReadWithChecksum extends java.io.InputStream {
+    private final IFileBlockInputStream in;
+
+    ReadWithChecksum(IFileBlockInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return in.readWithChecksum(b, off, len);
+    }
+  }
+
+  private static class SeekableByteArrayInputStream
+      extends ByteArrayInputStream implements Seekable, PositionedReadable {
+
+    SeekableByteArrayInputStream(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public void seek(long pos) {
+      this.pos = (int) pos;
+    }
+
+    @Override
+    public long getPos() {
+      return pos;
+    }
+
+    @Override
+    public boolean seekToNewSource(long targetPos) {
+      return false;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer, int offset,
+        int length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.IndexedSorter;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.QuickSort;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestMapOutputKeyPrefixSort {
+
+  private static final int PARTITIONS = 3;
+  private static final File TEST_DIR = new File(
+      System.getProperty("test.build.data", "target/test-dir"),
+      TestMapOutputKeyPrefixSort.class.getSimpleName()).getAbsoluteFile();
+
+  @Before
+  public void setUp() {
+    FileUtil.fullyDelete(TEST_DIR);
+    TEST_DIR.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(TEST_DIR);
+  }
+
+  @Test
+  public void testPrefixOrder() throws Exception {
+    Random r = new Random();
+    long seed = r.nextLong();
+    r.setSeed(seed);
+    System.out.println("testPrefixOrder seed: " + seed);
+    for (int i = 0; i < 10000; ++i) {
+      // short random keys and long keys sharing a prefix
+      Text t1 = new Text(randomBytes(r, r.nextInt(12)));
+      Text t2 = new Text(randomBytes(r, r.nextInt(12)));
+      checkPrefixOrder(t1, t2);
+      byte[] b1 = randomBytes(r, 8 + r.nextInt(4));
+      byte[] b2 = b1.clone();
+      b2[b2.length - 1] ^= (byte) r.nextInt(256);
+      checkPrefixOrder(new BytesWritable(b1), new BytesWritable(b2));
+      checkPrefixOrder(new BytesWritable(b1),
+          new BytesWritable(randomBytes(r, r.nextInt(12))));
+      checkPrefixOrder(new LongWritable(r.nextLong()),
+          new LongWritable(r.nextLong()));
+      checkPrefixOrder(new IntWritable(r.nextInt()),
+          new IntWritable(r.nextInt()));
+    }
+    checkPrefixOrder(new Text(""), new Text(new byte[] { 0 }));
+    checkPrefixOrder(new LongWritable(Long.MIN_VALUE),
+        new LongWritable(Long.MAX_VALUE));
+    checkPrefixOrder(new IntWritable(-1), new IntWritable(0));
+  }
+
+  @Test
+  public void testUnsupportedComparator() {
+    assertNull(SortKeyPrefixer.get(new LongWritable.DecreasingComparator()));
+    assertNull(SortKeyPrefixer.get(
+        WritableComparator.get(NullWritable.class)));
+    assertNotNull(SortKeyPrefixer.get(WritableComparator.get(Text.class)));
+  }
+
+  @Test(timeout = 60000)
+  public void testSortText() throws Exception {
+    final Random r = new Random();
+    checkSort(Text.class, new KeyGenerator<Text>() {
+      @Override
+      public Text next() {
+        // keys longer than the prefix that often share their first 8 bytes
+        byte[] b = randomBytes(r, 8 + r.nextInt(8));
+        for (int i = 0; i < 7; ++i) {
+          b[i] = (byte) ('a' + r.nextInt(2));
+        }
+        return new Text(b);
+      }
+    });
+  }
+
+  @Test(timeout = 60000)
+  public void testSortBytesWritable() throws Exception {
+    final Random r = new Random();
+    checkSort(BytesWritable.class, new KeyGenerator<BytesWritable>() {
+      @Override
+      public BytesWritable next() {
+        return new BytesWritable(randomBytes(r, r.nextInt(12)));
+      }
+    });
+  }
+
+  @Test(timeout = 60000)
+  public void testSortLongWritable() throws Exception {
+    final Random r = new Random();
+    checkSort(LongWritable.class, new KeyGenerator<LongWritable>() {
+      @Override
+      public LongWritable next() {
+        return new LongWritable(r.nextInt(1000) - 500);
+      }
+    });
+  }
+
+  @Test(timeout = 60000)
+  public void testSortIntWritable() throws Exception {
+    final Random r = new Random();
+    checkSort(IntWritable.class, new KeyGenerator<IntWritable>() {
+      @Override
+      public IntWritable next() {
+        return new IntWritable(r.nextInt());
+      }
+    });
+  }
+
+  @Test(timeout = 60000)
+  public void testSortWithoutRoomForPrefixes() throws Exception {
+    final Random r = new Random();
+    JobConf job = createJobConf(Text.class);
+    // room for the prefixes of about a hundred records only
+    job.setFloat(MRJobConfig.MAP_SORT_KEY_PREFIX_MEMORY_PERCENT, 0.001f);
+    checkSort(job, new KeyGenerator<Text>() {
+      @Override
+      public Text next() {
+        return new Text(randomBytes(r, r.nextInt(12)));
+      }
+    });
+  }
+
+  interface KeyGenerator<K> {
+    K next();
+  }
+
+  private static byte[] randomBytes(Random r, int len) {
+    byte[] b = new byte[len];
+    r.nextBytes(b);
+    return b;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static void checkPrefixOrder(Writable k1, Writable k2)
+      throws IOException {
+    RawComparator comparator = WritableComparator.get(
+        k1.getClass().asSubclass(WritableComparable.class));
+    SortKeyPrefixer prefixer = SortKeyPrefixer.get(comparator);
+    DataOutputBuffer b1 = new DataOutputBuffer();
+    k1.write(b1);
+    DataOutputBuffer b2 = new DataOutputBuffer();
+    k2.write(b2);
+    int cmp = Integer.signum(comparator.compare(b1.getData(), 0,
+        b1.getLength(), b2.getData(), 0, b2.getLength()));
+    long p1 = prefixer.prefix(b1.getData(), 0, b1.getLength());
+    long p2 = prefixer.prefix(b2.getData(), 0, b2.getLength());
+    if (p1 != p2) {
+      assertEquals(k1 + " vs " + k2, cmp, p1 < p2 ? -1 : 1);
+    } else if (prefixer.isExact()) {
+      assertEquals(k1 + " vs " + k2, 0, cmp);
+    }
+  }
+
+  /**
+   * Collect records with the key prefix sort enabled, then check that every
+   * partition of the final map output is sorted by the key comparator.
+   */
+  private <K extends Writable> void checkSort(Class<K> keyClass,
+      KeyGenerator<K> keys) throws Exception {
+    checkSort(createJobConf(keyClass), keys);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <K extends Writable> void checkSort(JobConf job,
+      KeyGenerator<K> keys) throws Exception {
+    Class<K> keyClass = (Class<K>) job.getMapOutputKeyClass();
+    job.setBoolean(MRJobConfig.MAP_SORT_KEY_PREFIX_ENABLED, true);
+    // a small buffer, to go through several spills and the merge
+    job.setInt(MRJobConfig.IO_SORT_MB, 1);
+    final int records = 50000;
+    MapOutputFile output = collect(job, keyClass, keys, records);
+
+    RawComparator<?> comparator = job.getOutputKeyComparator();
+    FileSystem rfs = FileSystem.getLocal(job).getRaw();
+    SpillRecord index = new SpillRecord(output.getOutputIndexFile(), job);
+    int read = 0;
+    for (int p = 0; p < PARTITIONS; ++p) {
+      IndexRecord rec = index.getIndex(p);
+      FSDataInputStream in = rfs.open(output.getOutputFile());
+      in.seek(rec.startOffset);
+      IFile.Reader<K, NullWritable> reader = new IFile.Reader<K, NullWritable>(
+          job, in, rec.partLength, null, null);
+      try {
+        DataInputBuffer key = new DataInputBuffer();
+        DataInputBuffer value = new DataInputBuffer();
+        byte[] prev = null;
+        while (reader.nextRawKey(key)) {
+          reader.nextRawValue(value);
+          byte[] cur = new byte[key.getLength() - key.getPosition()];
+          System.arraycopy(key.getData(), key.getPosition(), cur, 0,
+              cur.length);
+          if (prev != null) {
+            assertTrue("Partition " + p + " is not sorted",
+                comparator.compare(prev, 0, prev.length, cur, 0,
+                    cur.length) <= 0);
+          }
+          prev = cur;
+          ++read;
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    assertEquals(records, read);
+  }
+
+  private static JobConf createJobConf(Class<?> keyClass) {
+    JobConf job = new JobConf();
+    job.set(MRConfig.LOCAL_DIR, TEST_DIR.getAbsolutePath());
+    job.setNumReduceTasks(PARTITIONS);
+    job.setMapOutputKeyClass(keyClass);
+    job.setMapOutputValueClass(NullWritable.class);
+    return job;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> MapTask.MapOutputBuffer<K, V> createBuffer(
+      JobConf job, MapOutputFile output) throws Exception {
+    output.setConf(job);
+    MapTask mapTask = Mockito.mock(MapTask.class);
+    Mockito.when(mapTask.getMapOutputFile()).thenReturn(output);
+    Mockito.when(mapTask.getSortPhase()).thenReturn(new Progress());
+    Mockito.when(mapTask.getTaskID()).thenReturn(
+        TaskAttemptID.forName("attempt_1_1_m_1_0"));
+    // a mock would record every call to progress() made by the buffer
+    Task.TaskReporter reporter =
+        new MapTask().new TaskReporter(new Progress(), null);
+    MapTask.MapOutputBuffer<K, V> buffer = new MapTask.MapOutputBuffer<K, V>();
+    buffer.init(new MapOutputCollector.Context(mapTask, job, reporter));
+    return buffer;
+  }
+
+  private static <K> MapOutputFile collect(JobConf job, Class<K> keyClass,
+      KeyGenerator<K> keys, int records) throws Exception {
+    MapOutputFile output = new MROutputFiles();
+    MapTask.MapOutputBuffer<K, NullWritable> buffer = createBuffer(job, output);
+    try {
+      for (int i = 0; i < records; ++i) {
+        K key = keys.next();
+        buffer.collect(key, NullWritable.get(),
+            (key.hashCode() & Integer.MAX_VALUE) % PARTITIONS);
+      }
+      buffer.flush();
+    } finally {
+      buffer.close();
+    }
+    return output;
+  }
+
+  /**
+   * Times the map side spill of terasort style records, 10 byte Text keys
+   * and 90 byte Text values, with and without the key prefix sort. The
+   * records go to a single spill; its time covers computing the prefixes,
+   * sorting and writing the spill, and the sort time is reported apart.
+   * Usage: TestMapOutputKeyPrefixSort [records] [io.sort.mb]
+   */
+  public static void main(String[] args) throws Exception {
+    final int records = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    final int sortmb = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+    for (int run = 0; run < 3; ++run) {
+      for (boolean prefix : new boolean[] { false, true }) {
+        FileUtil.fullyDelete(TEST_DIR);
+        TEST_DIR.mkdirs();
+        JobConf job = createJobConf(Text.class);
+        job.setMapOutputValueClass(Text.class);
+        job.setNumReduceTasks(1);
+        job.setInt(MRJobConfig.IO_SORT_MB, sortmb);
+        job.setFloat(MRJobConfig.MAP_SORT_SPILL_PERCENT, 1.0f);
+        job.setBoolean(MRJobConfig.MAP_SORT_KEY_PREFIX_ENABLED, prefix);
+        job.setClass("map.sort.class", TimedQuickSort.class,
+            IndexedSorter.class);
+        TimedQuickSort.nanos = 0;
+        final Random r = new Random(run);
+        final Text value = new Text(new byte[90]);
+        long spillNanos = collectTera(job, r, value, records);
+        System.out.println((prefix ? "prefix" : "comparator") + " spill of "
+            + records + " records: " + (spillNanos / 1000000) + " ms, sort "
+            + (TimedQuickSort.nanos / 1000000) + " ms");
+      }
+    }
+    FileUtil.fullyDelete(TEST_DIR);
+  }
+
+  /**
+   * Collect the records and return the time taken to spill them.
+   */
+  private static long collectTera(JobConf job, final Random r,
+      final Text value, int records) throws Exception {
+    MapTask.MapOutputBuffer<Text, Text> buffer =
+        createBuffer(job, new MROutputFiles());
+    try {
+      Text key = new Text();
+      byte[] b = new byte[10];
+      for (int i = 0; i < records; ++i) {
+        r.nextBytes(b);
+        key.set(b);
+        buffer.collect(key, value, 0);
+      }
+      long start = System.nanoTime();
+      buffer.flush();
+      return System.nanoTime() - start;
+    } finally {
+      buffer.close();
+    }
+  }
+
+  /**
+   * A QuickSort that accumulates the time spent sorting.
+   */
+  public static class TimedQuickSort implements IndexedSorter {
+    static volatile long nanos;
+    private final QuickSort sorter = new QuickSort();
+
+    @Override
+    public void sort(IndexedSortable s, int l, int r) {
+      sort(s, l, r, null);
+    }
+
+    @Override
+    public void sort(IndexedSortable s, int l, int r, Progressable rep) {
+      long start = System.nanoTime();
+      sorter.sort(s, l, r, rep);
+      nanos += System.nanoTime() - start;
+    }
+  }
+}
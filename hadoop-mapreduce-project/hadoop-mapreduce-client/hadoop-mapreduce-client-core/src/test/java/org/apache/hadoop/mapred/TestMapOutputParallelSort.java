@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.util.Progress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestMapOutputParallelSort {
+
+  private static final int PARTITIONS = 7;
+  private static final int RECORDS = 50000;
+  private static final File TEST_DIR = new File(
+      System.getProperty("test.build.data", "target/test-dir"),
+      TestMapOutputParallelSort.class.getSimpleName()).getAbsoluteFile();
+
+  @Before
+  public void setUp() {
+    FileUtil.fullyDelete(TEST_DIR);
+    TEST_DIR.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(TEST_DIR);
+  }
+
+  @Test(timeout = 60000)
+  public void testParallelSortAndMerge() throws Exception {
+    checkSameOutput(false);
+  }
+
+  @Test(timeout = 60000)
+  public void testParallelSortAndMergeWithCombiner() throws Exception {
+    checkSameOutput(true);
+  }
+
+  @Test(timeout = 60000)
+  public void testMergedPartitionOutgrowsItsSegments() throws Exception {
+    Output parallel =
+        collect(4, DuplicatingCombiner.class, new Random().nextLong());
+    // the combiner doubles what the merge reads, so no partition fits where
+    // its segments would and all are moved past them
+    long end = 0;
+    for (int p = 0; p < PARTITIONS; p++) {
+      IndexRecord rec = parallel.spillRec.getIndex(p);
+      assertTrue("Partition " + p + " not moved", rec.startOffset > 0);
+      assertTrue(rec.startOffset >= end);
+      end = rec.startOffset + rec.partLength;
+    }
+    assertEquals(end, parallel.data.length);
+    // twice by the combines of the spills, and twice more by the merge's
+    assertEquals(RECORDS * 6, parallel.counters.findCounter(
+        TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+    FileSystem fs = FileSystem.getLocal(new JobConf()).getRaw();
+    for (int p = 0; p < PARTITIONS; p++) {
+      IndexRecord rec = parallel.spillRec.getIndex(p);
+      FSDataInputStream in = fs.open(parallel.file);
+      in.seek(rec.startOffset);
+      IFile.Reader<IntWritable, LongWritable> reader =
+          new IFile.Reader<IntWritable, LongWritable>(new JobConf(), in,
+              rec.partLength, null, null);
+      DataInputBuffer keyIn = new DataInputBuffer();
+      DataInputBuffer valueIn = new DataInputBuffer();
+      IntWritable key = new IntWritable();
+      int last = -1;
+      try {
+        while (reader.nextRawKey(keyIn)) {
+          reader.nextRawValue(valueIn);
+          key.readFields(keyIn);
+          assertEquals(p, key.get() % PARTITIONS);
+          assertTrue(key.get() >= last);
+          last = key.get();
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Collect the same records with one and with several sort threads and
+   * check that the map outputs and their indexes are equal.
+   */
+  private void checkSameOutput(boolean combine) throws Exception {
+    final long seed = new Random().nextLong();
+    System.out.println("checkSameOutput seed: " + seed);
+    Class<? extends Reducer> combiner = combine ? LongSumReducer.class : null;
+    Output serial = collect(1, combiner, seed);
+    Output parallel = collect(4, combiner, seed);
+
+    // the partitions of the parallel merge may be apart in the file
+    long partLength = 0;
+    for (int p = 0; p < PARTITIONS; p++) {
+      IndexRecord serialRec = serial.spillRec.getIndex(p);
+      IndexRecord parallelRec = parallel.spillRec.getIndex(p);
+      assertEquals(serialRec.rawLength, parallelRec.rawLength);
+      assertEquals(serialRec.partLength, parallelRec.partLength);
+      assertArrayEquals(serial.partitions[p], parallel.partitions[p]);
+      partLength += parallelRec.partLength;
+    }
+    // but only the partitions count as materialized, not the gaps
+    assertEquals(serial.data.length, partLength);
+    for (Output output : new Output[] { serial, parallel }) {
+      assertEquals(partLength, output.counters.findCounter(
+          TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue());
+    }
+    // and the file ends with the last of them
+    IndexRecord last = parallel.spillRec.getIndex(PARTITIONS - 1);
+    assertEquals(last.startOffset + last.partLength, parallel.data.length);
+    if (combine) {
+      // where the spills end depends on timing, and with them how many
+      // records the combiner sees; it must run in both merges though
+      for (Output output : new Output[] { serial, parallel }) {
+        assertTrue("Expected a combine in the merge",
+            output.counters.findCounter(
+                TaskCounter.COMBINE_INPUT_RECORDS).getValue() > RECORDS);
+      }
+    } else {
+      assertTrue("Expected several spills",
+          serial.counters.findCounter(
+              TaskCounter.SPILLED_RECORDS).getValue() > RECORDS);
+      assertEquals(serial.counters.findCounter(
+              TaskCounter.SPILLED_RECORDS).getValue(),
+          parallel.counters.findCounter(
+              TaskCounter.SPILLED_RECORDS).getValue());
+    }
+  }
+
+  private static class Output {
+    Path file;
+    byte[] data;
+    SpillRecord spillRec;
+    byte[][] partitions;
+    Counters counters;
+  }
+
+  /** Emits every value it is given twice. */
+  public static class DuplicatingCombiner extends MapReduceBase
+      implements Reducer<IntWritable, LongWritable, IntWritable, LongWritable> {
+    @Override
+    public void reduce(IntWritable key, Iterator<LongWritable> values,
+        OutputCollector<IntWritable, LongWritable> output, Reporter reporter)
+        throws IOException {
+      while (values.hasNext()) {
+        LongWritable value = values.next();
+        output.collect(key, value);
+        output.collect(key, value);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Output collect(int threads,
+      Class<? extends Reducer> combiner, long seed) throws Exception {
+    File dir = new File(TEST_DIR, Integer.toString(threads));
+    // the allocator checks the local dirs only when they change
+    dir.mkdirs();
+    JobConf job = new JobConf();
+    job.set(MRConfig.LOCAL_DIR, dir.getAbsolutePath());
+    job.setNumReduceTasks(PARTITIONS);
+    job.setMapOutputKeyClass(IntWritable.class);
+    job.setMapOutputValueClass(LongWritable.class);
+    // a small buffer, to go through many spills and the merge
+    job.setInt(MRJobConfig.IO_SORT_MB, 1);
+    job.setFloat(MRJobConfig.MAP_SORT_SPILL_PERCENT, 0.25f);
+    job.setInt(MRJobConfig.MAP_SORT_THREADS, threads);
+    if (combiner != null) {
+      job.setCombinerClass(combiner);
+    }
+
+    MapOutputFile mapOutputFile = new MROutputFiles();
+    mapOutputFile.setConf(job);
+    MapTask mapTask = Mockito.mock(MapTask.class);
+    Mockito.when(mapTask.getMapOutputFile()).thenReturn(mapOutputFile);
+    Mockito.when(mapTask.getSortPhase()).thenReturn(new Progress());
+    Mockito.when(mapTask.getTaskID()).thenReturn(
+        TaskAttemptID.forName("attempt_1_1_m_1_0"));
+    final Output output = new Output();
+    output.counters = new Counters();
+    Task.TaskReporter reporter = Mockito.mock(Task.TaskReporter.class);
+    Mockito.when(reporter.getCounter(Mockito.any(TaskCounter.class)))
+        .thenAnswer(new Answer<Counters.Counter>() {
+          @Override
+          public Counters.Counter answer(InvocationOnMock invocation) {
+            return output.counters.findCounter(
+                (TaskCounter) invocation.getArguments()[0]);
+          }
+        });
+
+    MapTask.MapOutputBuffer<IntWritable, LongWritable> buffer =
+        new MapTask.MapOutputBuffer<IntWritable, LongWritable>();
+    buffer.init(new MapOutputCollector.Context(mapTask, job, reporter));
+    try {
+      Random r = new Random(seed);
+      IntWritable key = new IntWritable();
+      LongWritable value = new LongWritable();
+      for (int i = 0; i < RECORDS; ++i) {
+        // values depend on the key only, so that the output does not depend
+        // on the order in which records with equal keys are sorted
+        key.set(r.nextInt(5000));
+        value.set(key.get() % 13);
+        buffer.collect(key, value, key.get() % PARTITIONS);
+      }
+      buffer.flush();
+    } finally {
+      buffer.close();
+    }
+
+    output.file = mapOutputFile.getOutputFile();
+    output.data = readFile(output.file);
+    output.spillRec = new SpillRecord(mapOutputFile.getOutputIndexFile(), job);
+    output.partitions = new byte[PARTITIONS][];
+    for (int p = 0; p < PARTITIONS; p++) {
+      IndexRecord rec = output.spillRec.getIndex(p);
+      output.partitions[p] = Arrays.copyOfRange(output.data,
+          (int) rec.startOffset, (int) (rec.startOffset + rec.partLength));
+    }
+    File[] left = new File(dir, MRJobConfig.OUTPUT).listFiles();
+    assertEquals("Spill or partition files left behind", 2, left.length);
+    return output;
+  }
+
+  private static byte[] readFile(Path path) throws Exception {
+    return Files.readAllBytes(new File(path.toUri().getPath()).toPath());
+  }
+}
@@ -38,6 +38,7 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.MapFile;
@@ -731,6 +732,71 @@ public void testConcurrentCommitTaskWithSubDirV2() throws Exception {
     testConcurrentCommitTaskWithSubDir(2);
   }
 
+  private void testParallelCommitJob(int version) throws Exception {
+    final Job job = Job.getInstance();
+    FileOutputFormat.setOutputPath(job, outDir);
+    final Configuration conf = job.getConfiguration();
+    conf.setInt(FileOutputCommitter.FILEOUTPUTCOMMITTER_ALGORITHM_VERSION,
+        version);
+    conf.setInt(FileOutputCommitter.FILEOUTPUTCOMMITTER_JOB_COMMIT_THREADS, 4);
+    // drop any file system cached by the other tests
+    FileSystem.closeAll();
+
+    final JobContext jContext = new JobContextImpl(conf, taskID.getJobID());
+    final FileOutputCommitter amCommitter =
+        new FileOutputCommitter(outDir, jContext);
+    amCommitter.setupJob(jContext);
+
+    // every task writes into the same sub directory, which the job commit
+    // creates from the output of whichever task comes first
+    final int numTasks = 20;
+    for (int i = 0; i < numTasks; i++) {
+      TextOutputFormat tof = new TextOutputFormat() {
+        @Override
+        public Path getDefaultWorkFile(TaskAttemptContext context,
+            String extension) throws IOException {
+          final FileOutputCommitter foc = (FileOutputCommitter)
+              getOutputCommitter(context);
+          return new Path(new Path(foc.getWorkPath(), SUB_DIR),
+              getUniqueFile(context, getOutputName(context), extension));
+        }
+      };
+      TaskAttemptContext tContext = new TaskAttemptContextImpl(conf,
+          new TaskAttemptID(taskID.getJobID().getJtIdentifier(),
+              taskID.getJobID().getId(), taskID.getTaskType(), i, 0));
+      OutputCommitter committer = tof.getOutputCommitter(tContext);
+      committer.setupTask(tContext);
+      writeOutput(tof.getRecordWriter(tContext), tContext);
+      committer.commitTask(tContext);
+    }
+
+    amCommitter.commitJob(jContext);
+    final RawLocalFileSystem lfs = new RawLocalFileSystem();
+    lfs.setConf(conf);
+    assertFalse("Must not end up with sub_dir/sub_dir",
+        lfs.exists(new Path(OUT_SUB_DIR, SUB_DIR)));
+    assertEquals(numTasks, lfs.listStatus(OUT_SUB_DIR, new PathFilter() {
+      @Override
+      public boolean accept(Path path) {
+        return path.getName().startsWith("part-");
+      }
+    }).length);
+    validateContent(OUT_SUB_DIR);
+    assertFalse("_temporary must be deleted", lfs.exists(
+        new Path(outDir, FileOutputCommitter.PENDING_DIR_NAME)));
+    assertTrue(lfs.exists(
+        new Path(outDir, FileOutputCommitter.SUCCEEDED_FILE_NAME)));
+    FileUtil.fullyDelete(new File(outDir.toString()));
+  }
+
+  public void testParallelCommitJobV1() throws Exception {
+    testParallelCommitJob(1);
+  }
+
+  public void testParallelCommitJobV2() throws Exception {
+    testParallelCommitJob(2);
+  }
+
   public static String slurp(File f) throws IOException {
     int len = (int) f.length();
     byte[] buf = new byte[len];
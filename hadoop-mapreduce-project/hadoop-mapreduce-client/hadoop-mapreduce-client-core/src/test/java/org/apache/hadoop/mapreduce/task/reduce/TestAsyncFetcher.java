@@ -0,0 +1,544 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.crypto.SecretKey;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.IFileInputStream;
+import org.apache.hadoop.mapred.IFileOutputStream;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.security.SecureShuffleUtils;
+import org.apache.hadoop.mapreduce.security.token.JobTokenSecretManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Test that the AsyncFetcher copies from several hosts at once.
+ */
+public class TestAsyncFetcher {
+  private JobConf job;
+  private TaskAttemptID id;
+  private ShuffleSchedulerImpl<Text, Text> ss;
+  private MergeManagerImpl<Text, Text> mm;
+  private Reporter r;
+  private ShuffleClientMetrics metrics;
+  private ExceptionReporter except;
+  private SecretKey key;
+  private Counters.Counter allErrs;
+  private CompressionCodec codec;
+  private final Set<TaskAttemptID> copied = Collections.newSetFromMap(
+      new ConcurrentHashMap<TaskAttemptID, Boolean>());
+  private final Map<TaskAttemptID, MapOutput<Text, Text>> reserved =
+      new ConcurrentHashMap<TaskAttemptID, MapOutput<Text, Text>>();
+  private final List<ShuffleServer> servers = new ArrayList<ShuffleServer>();
+
+  @Before
+  @SuppressWarnings("unchecked") // mocked generics
+  public void setup() throws IOException {
+    job = new JobConf();
+    job.setInt(MRJobConfig.SHUFFLE_FETCHER_ASYNC_MAX_CONNECTIONS, 4);
+    id = TaskAttemptID.forName("attempt_0_1_r_1_1");
+    ss = mock(ShuffleSchedulerImpl.class);
+    mm = mock(MergeManagerImpl.class);
+    r = mock(Reporter.class);
+    metrics = mock(ShuffleClientMetrics.class);
+    except = mock(ExceptionReporter.class);
+    key = JobTokenSecretManager.createSecretKey(new byte[]{0,0,0,0});
+    allErrs = mock(Counters.Counter.class);
+    when(r.getCounter(anyString(), anyString())).thenReturn(allErrs);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        copied.add((TaskAttemptID) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(ss).copySucceeded(any(TaskAttemptID.class), any(MapHost.class),
+        anyLong(), anyLong(), anyLong(), any(MapOutput.class));
+    when(mm.reserve(any(TaskAttemptID.class), anyLong(), anyInt()))
+        .thenAnswer(new Answer<MapOutput<Text, Text>>() {
+          @Override
+          public MapOutput<Text, Text> answer(InvocationOnMock invocation) {
+            TaskAttemptID mapId = (TaskAttemptID) invocation.getArguments()[0];
+            int size = ((Long) invocation.getArguments()[1]).intValue();
+            if (mapId.getTaskID().getId() >= 20) {
+              // no memory for it until merges free some
+              return null;
+            }
+            MapOutput<Text, Text> out = mapId.getTaskID().getId() < 10
+                ? new InMemoryMapOutput<Text, Text>(job, mapId, mm, size,
+                    codec, true)
+                : new ByteArrayMapOutput(mapId, size);
+            reserved.put(mapId, out);
+            return out;
+          }
+        });
+    when(mm.reserveStaging(anyInt())).thenAnswer(new Answer<byte[]>() {
+      @Override
+      public byte[] answer(InvocationOnMock invocation) {
+        return new byte[(Integer) invocation.getArguments()[0]];
+      }
+    });
+  }
+
+  @After
+  public void teardown() {
+    for (ShuffleServer server : servers) {
+      server.shutdown();
+    }
+  }
+
+  @Test(timeout=30000)
+  public void testSlowHostDoesNotBlockOthers() throws Exception {
+    CountDownLatch slow = new CountDownLatch(1);
+    MapHost slowHost = addHost(slow, 200, 1, 2);
+    MapHost fastHost = addHost(null, 200, 3, 4);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(slowHost);
+    underTest.startFetch(fastHost);
+    assertEquals(2, underTest.getNumConnections());
+
+    for (int i = 0; i < 100 && copied.size() < 2; i++) {
+      underTest.pollConnections(100);
+    }
+    assertEquals(2, copied.size());
+    assertTrue(copied.contains(mapId(3)));
+    assertTrue(copied.contains(mapId(4)));
+    // the slow host is still stuck half way through its first output
+    assertEquals(1, underTest.getNumConnections());
+    verify(ss).freeHost(fastHost);
+    verify(ss, never()).freeHost(slowHost);
+
+    slow.countDown();
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    assertEquals(0, underTest.getNumConnections());
+    assertEquals(4, copied.size());
+    for (int map = 1; map <= 4; map++) {
+      InMemoryMapOutput<Text, Text> out =
+          (InMemoryMapOutput<Text, Text>) reserved.get(mapId(map));
+      assertArrayEquals(mapData(map), out.getMemory());
+    }
+    verify(ss).freeHost(slowHost);
+    verify(ss, never()).copyFailed(any(TaskAttemptID.class),
+        any(MapHost.class), anyBoolean(), anyBoolean());
+    verify(ss, never()).putBackKnownMapOutput(any(MapHost.class),
+        any(TaskAttemptID.class));
+    verify(metrics, times(4)).successFetch();
+    verify(metrics, times(2)).connectionOpened();
+    verify(metrics, times(2)).connectionClosed();
+    verify(metrics, times(1)).threadBusy();
+    verify(metrics, times(1)).threadFree();
+  }
+
+  @Test(timeout=30000)
+  public void testCopyToDisk() throws Exception {
+    MapHost host = addHost(null, 200, 1, 11, 2);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(host);
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    assertEquals(3, copied.size());
+    ByteArrayMapOutput onDisk = (ByteArrayMapOutput) reserved.get(mapId(11));
+    assertArrayEquals(mapData(11), onDisk.data.toByteArray());
+    InMemoryMapOutput<Text, Text> inMemory =
+        (InMemoryMapOutput<Text, Text>) reserved.get(mapId(2));
+    assertArrayEquals(mapData(2), inMemory.getMemory());
+    verify(ss).freeHost(host);
+  }
+
+  @Test(timeout=30000)
+  public void testCopyToDiskDoesNotBlockOthers() throws Exception {
+    CountDownLatch slow = new CountDownLatch(1);
+    MapHost slowHost = addHost(slow, 200, 11);
+    MapHost fastHost = addHost(null, 200, 3, 4);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(slowHost);
+    underTest.startFetch(fastHost);
+    for (int i = 0; i < 100 && copied.size() < 2; i++) {
+      underTest.pollConnections(100);
+    }
+    // the copy to disk is stuck half way through on the copier
+    assertEquals(2, copied.size());
+    assertTrue(copied.contains(mapId(3)));
+    assertTrue(copied.contains(mapId(4)));
+    assertEquals(1, underTest.getNumConnections());
+
+    slow.countDown();
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    assertEquals(3, copied.size());
+    ByteArrayMapOutput onDisk = (ByteArrayMapOutput) reserved.get(mapId(11));
+    assertArrayEquals(mapData(11), onDisk.data.toByteArray());
+    verify(ss).freeHost(slowHost);
+    verify(ss, never()).copyFailed(any(TaskAttemptID.class),
+        any(MapHost.class), anyBoolean(), anyBoolean());
+  }
+
+  @Test(timeout=30000)
+  public void testCompressedMapOutputs() throws Exception {
+    job.setCompressMapOutput(true);
+    codec = new DefaultCodec();
+    ((DefaultCodec) codec).setConf(job);
+    MapHost host = addHost(null, 200, 1, 2);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(host);
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    assertEquals(2, copied.size());
+    for (int map = 1; map <= 2; map++) {
+      InMemoryMapOutput<Text, Text> out =
+          (InMemoryMapOutput<Text, Text>) reserved.get(mapId(map));
+      assertArrayEquals(mapData(map), out.getMemory());
+    }
+    // the compressed bytes were staged in memory charged to the merger
+    verify(mm, times(2)).reserveStaging(anyInt());
+    verify(mm, times(2)).releaseStaging(any(byte[].class));
+  }
+
+  @Test(timeout=30000)
+  public void testWaitBacksOff() throws Exception {
+    MapHost host = addHost(null, 200, 20);
+    when(ss.getHost()).thenReturn(host);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.start();
+    Thread.sleep(1000);
+    underTest.shutDown();
+    // the host is asked again only after waiting for merges and backing off
+    verify(ss, atMost(12)).getHost();
+    verify(mm, atLeast(2)).waitForResource();
+    verify(ss, atLeast(2)).putBackKnownMapOutput(host, mapId(20));
+    assertTrue(copied.isEmpty());
+  }
+
+  @Test(timeout=30000)
+  public void testInvalidResponseCode() throws Exception {
+    MapHost host = addHost(null, 500, 1, 2);
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(host);
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    verify(allErrs).increment(1);
+    verify(ss).hostFailed(host.getHostName());
+    verify(ss).copyFailed(mapId(1), host, false, false);
+    verify(ss).copyFailed(mapId(2), host, false, false);
+    verify(ss).putBackKnownMapOutput(host, mapId(1));
+    verify(ss).putBackKnownMapOutput(host, mapId(2));
+    verify(ss).freeHost(host);
+    assertTrue(copied.isEmpty());
+  }
+
+  @Test(timeout=30000)
+  public void testConnectionRefused() throws Exception {
+    ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    int port = socket.getLocalPort();
+    socket.close();
+    MapHost host = new MapHost("127.0.0.1:" + port, "http://127.0.0.1:" + port
+        + "/mapOutput?job=job_0_0001&reduce=1&map=");
+    when(ss.getMapsForHost(host)).thenReturn(Arrays.asList(mapId(1)));
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(host);
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    verify(ss).copyFailed(mapId(1), host, false, true);
+    verify(ss).putBackKnownMapOutput(host, mapId(1));
+    verify(ss).freeHost(host);
+  }
+
+  @Test(timeout=30000)
+  public void testOutputForOtherReduce() throws Exception {
+    MapHost host = addHost(null, 200, 1, 2);
+    // answer as if reduce 2 was asked for as well, with its partition first
+    servers.get(0).otherReduce = 2;
+
+    AsyncFetcher<Text, Text> underTest = new AsyncFetcher<Text, Text>(job,
+        id, ss, mm, r, metrics, except, key);
+    underTest.startFetch(host);
+    for (int i = 0; i < 100 && underTest.getNumConnections() > 0; i++) {
+      underTest.pollConnections(100);
+    }
+    // only the partition of this reduce is asked for
+    assertEquals(Arrays.asList(1), servers.get(0).requestedReduces);
+    // and the partition of reduce 2 is never taken for it
+    assertTrue(reserved.isEmpty());
+    assertTrue(copied.isEmpty());
+    verify(ss).copyFailed(any(TaskAttemptID.class), eq(host), eq(true),
+        eq(false));
+    verify(ss).putBackKnownMapOutput(host, mapId(1));
+    verify(ss).putBackKnownMapOutput(host, mapId(2));
+    verify(ss).freeHost(host);
+  }
+
+  private static TaskAttemptID mapId(int map) {
+    return TaskAttemptID.forName("attempt_0_1_m_" + map + "_1");
+  }
+
+  private static byte[] mapData(int map) {
+    byte[] data = new byte[1000 * map];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * map);
+    }
+    return data;
+  }
+
+  private MapHost addHost(CountDownLatch stall, int status, int... maps)
+      throws IOException {
+    ShuffleServer server = new ShuffleServer(stall, status);
+    servers.add(server);
+    server.start();
+    int port = server.socket.getLocalPort();
+    MapHost host = new MapHost("127.0.0.1:" + port, "http://127.0.0.1:" + port
+        + "/mapOutput?job=job_0_0001&reduce=1&map=");
+    List<TaskAttemptID> mapIds = new ArrayList<TaskAttemptID>();
+    for (int map : maps) {
+      mapIds.add(mapId(map));
+    }
+    when(ss.getMapsForHost(host)).thenReturn(mapIds);
+    return host;
+  }
+
+  /** A map output shuffled with blocking reads, like OnDiskMapOutput. */
+  private static class ByteArrayMapOutput extends MapOutput<Text, Text> {
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    ByteArrayMapOutput(TaskAttemptID mapId, long size) {
+      super(mapId, size, true);
+    }
+
+    @Override
+    public void shuffle(MapHost host, InputStream input,
+        long compressedLength, long decompressedLength,
+        ShuffleClientMetrics metrics, Reporter reporter) throws IOException {
+      IFileInputStream in = new IFileInputStream(input, compressedLength,
+          new JobConf());
+      byte[] buf = new byte[100];
+      int n;
+      while ((n = in.read(buf, 0, buf.length)) > 0) {
+        data.write(buf, 0, n);
+      }
+      assertEquals(decompressedLength, data.size());
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void abort() {
+    }
+
+    @Override
+    public String getDescription() {
+      return "BYTES";
+    }
+  }
+
+  /**
+   * Serves map outputs the way the ShuffleHandler does. With a stall latch,
+   * it waits half way through the first output until the latch is released.
+   * With another reduce set, every map output is preceded by the partition
+   * of that reduce, as in a response for several reduces.
+   */
+  private class ShuffleServer extends Thread {
+    private final ServerSocket socket;
+    private final CountDownLatch stall;
+    private final int status;
+    private final List<Integer> requestedReduces =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private volatile int otherReduce = -1;
+    private volatile boolean stopped = false;
+
+    ShuffleServer(CountDownLatch stall, int status) throws IOException {
+      this.socket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+      this.stall = stall;
+      this.status = status;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!stopped) {
+        try {
+          Socket s = socket.accept();
+          try {
+            serve(s);
+          } finally {
+            s.close();
+          }
+        } catch (Exception e) {
+          // shutting down
+        }
+      }
+    }
+
+    void shutdown() {
+      stopped = true;
+      if (stall != null) {
+        stall.countDown();
+      }
+      IOUtils.closeStream(socket);
+    }
+
+    private void serve(Socket s) throws Exception {
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(s.getInputStream(), Charsets.UTF_8));
+      String path = in.readLine().split(" ")[1];
+      Map<String, String> headers = new LinkedHashMap<String, String>();
+      String line;
+      while ((line = in.readLine()) != null && !line.isEmpty()) {
+        int colon = line.indexOf(':');
+        headers.put(line.substring(0, colon), line.substring(colon + 1).trim());
+      }
+      String urlHash = headers.get(SecureShuffleUtils.HTTP_HEADER_URL_HASH);
+      String replyHash = SecureShuffleUtils.generateHash(
+          urlHash.getBytes(Charsets.UTF_8), key);
+
+      OutputStream out = s.getOutputStream();
+      StringBuilder response = new StringBuilder();
+      response.append("HTTP/1.1 ").append(status).append(" OK\r\n");
+      response.append(ShuffleHeader.HTTP_HEADER_NAME).append(": ")
+          .append(ShuffleHeader.DEFAULT_HTTP_HEADER_NAME).append("\r\n");
+      response.append(ShuffleHeader.HTTP_HEADER_VERSION).append(": ")
+          .append(ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION).append("\r\n");
+      response.append(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH)
+          .append(": ").append(replyHash).append("\r\n");
+      response.append("Connection: close\r\n\r\n");
+      out.write(response.toString().getBytes(Charsets.UTF_8));
+      if (status != 200) {
+        out.flush();
+        return;
+      }
+
+      int reduce = -1;
+      String maps = null;
+      for (String param : path.substring(path.indexOf('?') + 1).split("&")) {
+        if (param.startsWith("reduce=")) {
+          reduce = Integer.parseInt(param.substring(7));
+        } else if (param.startsWith("map=")) {
+          maps = param.substring(4);
+        }
+      }
+      requestedReduces.add(reduce);
+
+      boolean first = true;
+      for (String map : maps.split(",")) {
+        TaskAttemptID mapId = TaskAttemptID.forName(map);
+        byte[] data = mapData(mapId.getTaskID().getId());
+        if (otherReduce >= 0) {
+          byte[] otherData = mapData(otherReduce);
+          byte[] other = toIFile(otherData);
+          writeHeader(out, map, otherReduce, other.length, otherData.length);
+          out.write(other);
+        }
+        byte[] ifile = toIFile(data);
+        writeHeader(out, map, reduce, ifile.length, data.length);
+        if (first && stall != null) {
+          out.write(ifile, 0, ifile.length / 2);
+          out.flush();
+          stall.await();
+          out.write(ifile, ifile.length / 2, ifile.length - ifile.length / 2);
+        } else {
+          out.write(ifile);
+        }
+        first = false;
+      }
+      out.flush();
+    }
+
+    private byte[] toIFile(byte[] data) throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      IFileOutputStream ios = new IFileOutputStream(bout);
+      if (codec != null) {
+        CompressionOutputStream cos = codec.createOutputStream(ios);
+        cos.write(data);
+        cos.finish();
+      } else {
+        ios.write(data);
+      }
+      ios.finish();
+      return bout.toByteArray();
+    }
+
+    private void writeHeader(OutputStream out, String map, int reduce,
+        long compressedLength, long uncompressedLength) throws IOException {
+      DataOutputStream dos = new DataOutputStream(out);
+      new ShuffleHeader(map, compressedLength, uncompressedLength, reduce)
+          .write(dos);
+      dos.flush();
+    }
+  }
+}
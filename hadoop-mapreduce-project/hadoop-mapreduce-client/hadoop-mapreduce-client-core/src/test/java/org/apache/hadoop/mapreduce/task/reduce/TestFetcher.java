@@ -308,7 +308,43 @@ public void testCopyFromHostWait() throws Exception {
     verify(ss).putBackKnownMapOutput(any(MapHost.class), eq(map1ID));
     verify(ss).putBackKnownMapOutput(any(MapHost.class), eq(map2ID));
   }
-  
+
+  @Test(timeout=10000)
+  public void testCopyFromHostOtherReduce() throws Exception {
+    Fetcher<Text,Text> underTest = new FakeFetcher<Text,Text>(job, id, ss, mm,
+        r, metrics, except, key, connection);
+
+    String replyHash = SecureShuffleUtils.generateHash(encHash.getBytes(), key);
+
+    when(connection.getResponseCode()).thenReturn(200);
+    when(connection.getHeaderField(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH))
+        .thenReturn(replyHash);
+    // a response covering reduces 2 and 1, as the ShuffleHandler sends for
+    // reduce=2,1: the partition of reduce 2 comes first
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bout);
+    new ShuffleHeader(map1ID.toString(), 10, 10, 2).write(dos);
+    dos.write(new byte[10]);
+    new ShuffleHeader(map1ID.toString(), 10, 10, 1).write(dos);
+    dos.write(new byte[10]);
+    ByteArrayInputStream in = new ByteArrayInputStream(bout.toByteArray());
+    when(connection.getInputStream()).thenReturn(in);
+    when(connection.getHeaderField(ShuffleHeader.HTTP_HEADER_NAME))
+        .thenReturn(ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    when(connection.getHeaderField(ShuffleHeader.HTTP_HEADER_VERSION))
+        .thenReturn(ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+
+    underTest.copyFromHost(host);
+
+    // the partition of reduce 2 is never taken as the output for reduce 1
+    verify(mm, never()).reserve(any(TaskAttemptID.class), anyLong(), anyInt());
+    verify(ss).copyFailed(map1ID, host, true, false);
+    verify(ss, never()).copySucceeded(any(TaskAttemptID.class),
+        any(MapHost.class), anyLong(), anyLong(), anyLong(),
+        any(MapOutput.class));
+    verify(ss).putBackKnownMapOutput(any(MapHost.class), eq(map2ID));
+  }
+
   @SuppressWarnings("unchecked")
   @Test(timeout=10000) 
   public void testCopyFromHostCompressFailure() throws Exception {
@@ -18,15 +18,19 @@
 package org.apache.hadoop.mapreduce.task.reduce;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,12 +39,24 @@
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MROutputFiles;
 import org.apache.hadoop.mapred.MapOutputFile;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.Task.CombineOutputCollector;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
 import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskCounter;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.task.reduce.MergeManagerImpl.CompressAwarePath;
 import org.junit.Assert;
@@ -123,6 +139,265 @@ public void testMemoryMerge() throws Exception {
         0, reporter.getNumExceptions());
   }
 
+  @Test(timeout=10000)
+  public void testPooledMemory() throws Throwable {
+    JobConf conf = new JobConf();
+    conf.setBoolean(MRJobConfig.SHUFFLE_MEMORY_POOL_ENABLED, true);
+    conf.setLong(MRJobConfig.REDUCE_MEMORY_TOTAL_BYTES, 1 << 20);
+    conf.setFloat(MRJobConfig.SHUFFLE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setFloat(MRJobConfig.REDUCE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setMapOutputKeyClass(Text.class);
+    conf.setMapOutputValueClass(Text.class);
+    TestExceptionReporter reporter = new TestExceptionReporter();
+    MergeManagerImpl<Text, Text> mgr = new MergeManagerImpl<Text, Text>(
+        TaskAttemptID.forName("attempt_0_1_r_1_1"), conf,
+        FileSystem.getLocal(conf), null, null, null, null, null, null, null,
+        null, reporter, null, new MROutputFiles());
+    ShuffleBufferPool pool =
+        (ShuffleBufferPool) Whitebox.getInternalState(mgr, "bufferPool");
+
+    // an aborted fetch leaves its memory to the next one
+    final int records = 100;
+    byte[] data = createMapOutput(0, records);
+    TaskAttemptID mapId = TaskAttemptID.forName("attempt_0_1_m_0_0");
+    InMemoryMapOutput<Text, Text> out =
+        (InMemoryMapOutput<Text, Text>) mgr.reserve(mapId, data.length, 0);
+    byte[] memory = out.getMemory();
+    out.abort();
+    out = (InMemoryMapOutput<Text, Text>) mgr.reserve(mapId, data.length, 0);
+    assertSame(memory, out.getMemory());
+    assertEquals(data.length, out.getArrayStream().getLimit());
+    out.getArrayStream().write(data);
+    out.commit();
+
+    data = createMapOutput(1, records);
+    mapId = TaskAttemptID.forName("attempt_0_1_m_1_0");
+    out = (InMemoryMapOutput<Text, Text>) mgr.reserve(mapId, data.length, 0);
+    out.getArrayStream().write(data);
+    out.commit();
+    assertEquals(2 * ShuffleBufferPool.bufferSize(data.length),
+        pool.getUsedBytes());
+    // the memory counted as used is that of the rounded up buffers
+    assertEquals(pool.getUsedBytes(),
+        Whitebox.getInternalState(mgr, "usedMemory"));
+    assertEquals(pool.getUsedBytes(),
+        Whitebox.getInternalState(mgr, "commitMemory"));
+
+    // the merge reads the pooled memory and gives it back when done
+    RawKeyValueIterator iter = mgr.close();
+    Text key = new Text();
+    int read = 0;
+    while (iter.next()) {
+      DataInputBuffer in = iter.getKey();
+      key.readFields(in);
+      assertEquals(String.format("%05d", read), key.toString());
+      ++read;
+    }
+    iter.close();
+    assertEquals(2 * records, read);
+    assertEquals(0, pool.getUsedBytes());
+    assertEquals(0L, Whitebox.getInternalState(mgr, "usedMemory"));
+    // and the pool keeps none of it for the reduce
+    assertEquals(0, pool.getIdleBytes());
+    assertEquals("exception reporter invoked",
+        0, reporter.getNumExceptions());
+  }
+
+  @Test(timeout=10000)
+  public void testCombiningMerges() throws Throwable {
+    final int maps = 8;
+    final int keys = 50;
+    JobConf conf = new JobConf();
+    conf.setBoolean(MRJobConfig.REDUCE_MERGE_COMBINE_ENABLED, true);
+    conf.setInt(MRJobConfig.REDUCE_MEMTOMEM_THRESHOLD, 4);
+    conf.setLong(MRJobConfig.REDUCE_MEMORY_TOTAL_BYTES, 1 << 20);
+    conf.setFloat(MRJobConfig.SHUFFLE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setFloat(MRJobConfig.REDUCE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setMapOutputKeyClass(Text.class);
+    conf.setMapOutputValueClass(LongWritable.class);
+    Counters counters = new Counters();
+    TestExceptionReporter reporter = new TestExceptionReporter();
+    MergeManagerImpl<Text, LongWritable> mgr =
+        new MergeManagerImpl<Text, LongWritable>(
+            TaskAttemptID.forName("attempt_0_1_r_1_1"), conf,
+            FileSystem.getLocal(conf), null, null, null,
+            LongSumReducer.class,
+            new CombineOutputCollector<Text, LongWritable>(
+                counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS),
+                Reporter.NULL, conf),
+            null, counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS),
+            null, reporter, null, new MROutputFiles());
+
+    // every four outputs fetched are combined into one
+    for (int map = 0; map < maps; ++map) {
+      byte[] data = createCombinableOutput(conf, keys);
+      TaskAttemptID mapId =
+          TaskAttemptID.forName("attempt_0_1_m_" + map + "_0");
+      InMemoryMapOutput<Text, LongWritable> out =
+          (InMemoryMapOutput<Text, LongWritable>) mgr.reserve(mapId,
+              data.length, 0);
+      out.getArrayStream().write(data);
+      out.commit();
+    }
+
+    RawKeyValueIterator iter = mgr.close();
+    Text key = new Text();
+    LongWritable value = new LongWritable();
+    long sum = 0;
+    int read = 0;
+    while (iter.next()) {
+      key.readFields(iter.getKey());
+      value.readFields(iter.getValue());
+      assertEquals(String.format("%05d", read / 2), key.toString());
+      assertEquals(maps / 2, value.get());
+      sum += value.get();
+      ++read;
+    }
+    iter.close();
+    assertEquals(2 * keys, read);
+    assertEquals(maps * keys, sum);
+    assertEquals(maps * keys,
+        counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+    assertEquals("exception reporter invoked",
+        0, reporter.getNumExceptions());
+  }
+
+  @Test(timeout=10000)
+  public void testCombinedOutputKeepsOnlyItsMemory() throws Throwable {
+    checkCombinedOutputMemory(LongSumReducer.class, 50, 200);
+  }
+
+  @Test(timeout=10000)
+  public void testCombinedOutputLargerThanItsInputs() throws Throwable {
+    checkCombinedOutputMemory(DuplicatingCombiner.class, 400, 400);
+  }
+
+  /**
+   * Combine four map outputs in memory and check that the merged output is
+   * all that the manager counts as used, and that the given numbers of
+   * records and sum of values come out of it.
+   */
+  @SuppressWarnings("unchecked")
+  private void checkCombinedOutputMemory(Class<? extends Reducer> combiner,
+      int records, long expectedSum) throws Throwable {
+    final int maps = 4;
+    final int keys = 50;
+    JobConf conf = new JobConf();
+    conf.setBoolean(MRJobConfig.REDUCE_MERGE_COMBINE_ENABLED, true);
+    conf.setInt(MRJobConfig.REDUCE_MEMTOMEM_THRESHOLD, maps);
+    conf.setLong(MRJobConfig.REDUCE_MEMORY_TOTAL_BYTES, 1 << 20);
+    conf.setFloat(MRJobConfig.SHUFFLE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setFloat(MRJobConfig.REDUCE_INPUT_BUFFER_PERCENT, 1.0f);
+    conf.setMapOutputKeyClass(Text.class);
+    conf.setMapOutputValueClass(LongWritable.class);
+    Counters counters = new Counters();
+    TestExceptionReporter reporter = new TestExceptionReporter();
+    MergeManagerImpl<Text, LongWritable> mgr =
+        new MergeManagerImpl<Text, LongWritable>(
+            TaskAttemptID.forName("attempt_0_1_r_1_1"), conf,
+            FileSystem.getLocal(conf), null, null, null, combiner,
+            new CombineOutputCollector<Text, LongWritable>(
+                counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS),
+                Reporter.NULL, conf),
+            null, counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS),
+            null, reporter, null, new MROutputFiles());
+
+    for (int map = 0; map < maps; ++map) {
+      byte[] data = createCombinableOutput(conf, keys);
+      InMemoryMapOutput<Text, LongWritable> out =
+          (InMemoryMapOutput<Text, LongWritable>) mgr.reserve(
+              TaskAttemptID.forName("attempt_0_1_m_" + map + "_0"),
+              data.length, 0);
+      out.getArrayStream().write(data);
+      out.commit();
+    }
+    Set<InMemoryMapOutput<Text, LongWritable>> merged =
+        mgr.inMemoryMergedMapOutputs;
+    while (true) {
+      synchronized (mgr) {
+        if (!merged.isEmpty()) {
+          assertEquals(merged.iterator().next().getSize(),
+              Whitebox.getInternalState(mgr, "usedMemory"));
+          break;
+        }
+      }
+      Thread.sleep(10);
+    }
+
+    RawKeyValueIterator iter = mgr.close();
+    LongWritable value = new LongWritable();
+    long sum = 0;
+    int read = 0;
+    while (iter.next()) {
+      value.readFields(iter.getValue());
+      sum += value.get();
+      ++read;
+    }
+    iter.close();
+    assertEquals(records, read);
+    assertEquals(expectedSum, sum);
+    assertEquals(records, counters.findCounter(
+        TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+    assertEquals(maps * keys, counters.findCounter(
+        TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+    assertEquals("exception reporter invoked",
+        0, reporter.getNumExceptions());
+  }
+
+  /** Emits every value it is given twice. */
+  public static class DuplicatingCombiner extends MapReduceBase
+      implements Reducer<Text, LongWritable, Text, LongWritable> {
+    @Override
+    public void reduce(Text key, Iterator<LongWritable> values,
+        OutputCollector<Text, LongWritable> output, Reporter reporter)
+        throws IOException {
+      while (values.hasNext()) {
+        LongWritable value = values.next();
+        output.collect(key, value);
+        output.collect(key, value);
+      }
+    }
+  }
+
+  private static byte[] createCombinableOutput(JobConf conf, int keys)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    InMemoryWriter<Text, LongWritable> writer =
+        new InMemoryWriter<Text, LongWritable>(out, conf, Text.class,
+            LongWritable.class);
+    for (int i = 0; i < keys; ++i) {
+      writer.append(new Text(String.format("%05d", i)), new LongWritable(1));
+    }
+    writer.close();
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /**
+   * Serialize the map output of the given map of two, with the keys of the
+   * two maps interleaving.
+   */
+  private static byte[] createMapOutput(int map, int records)
+      throws IOException {
+    BoundedByteArrayOutputStream stream =
+        new BoundedByteArrayOutputStream(64 * 1024);
+    InMemoryWriter<Text, Text> writer = new InMemoryWriter<Text, Text>(stream);
+    DataOutputBuffer key = new DataOutputBuffer();
+    DataOutputBuffer value = new DataOutputBuffer();
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valueIn = new DataInputBuffer();
+    for (int i = 0; i < records; ++i) {
+      key.reset();
+      new Text(String.format("%05d", 2 * i + map)).write(key);
+      value.reset();
+      new Text("value").write(value);
+      keyIn.reset(key.getData(), key.getLength());
+      valueIn.reset(value.getData(), value.getLength());
+      writer.append(keyIn, valueIn);
+    }
+    writer.close();
+    return Arrays.copyOf(stream.getBuffer(), stream.size());
+  }
+
   private void fillOutput(InMemoryMapOutput<Text, Text> output) throws IOException {
     BoundedByteArrayOutputStream stream = output.getArrayStream();
     int count = stream.getLimit();
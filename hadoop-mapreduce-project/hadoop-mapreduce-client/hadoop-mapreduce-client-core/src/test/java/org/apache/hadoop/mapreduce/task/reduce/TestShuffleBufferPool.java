@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestShuffleBufferPool {
+
+  @Test
+  public void testBufferSize() {
+    assertEquals(ShuffleBufferPool.MIN_BUFFER_SIZE,
+        ShuffleBufferPool.bufferSize(0));
+    assertEquals(ShuffleBufferPool.MIN_BUFFER_SIZE,
+        ShuffleBufferPool.bufferSize(ShuffleBufferPool.MIN_BUFFER_SIZE));
+    assertEquals(1 << 20, ShuffleBufferPool.bufferSize(1 << 20));
+    assertEquals((1 << 20) + (1 << 17),
+        ShuffleBufferPool.bufferSize((1 << 20) + 1));
+    assertEquals(Integer.MAX_VALUE,
+        ShuffleBufferPool.bufferSize(Integer.MAX_VALUE));
+    Random r = new Random();
+    for (int i = 0; i < 10000; ++i) {
+      int size = ShuffleBufferPool.MIN_BUFFER_SIZE + r.nextInt(1 << 30);
+      int bufferSize = ShuffleBufferPool.bufferSize(size);
+      assertTrue(size + " -> " + bufferSize, bufferSize >= size);
+      assertTrue(size + " -> " + bufferSize,
+          bufferSize - size < size / 8 + 1);
+      assertEquals(bufferSize, ShuffleBufferPool.bufferSize(bufferSize));
+    }
+  }
+
+  @Test
+  public void testReuse() {
+    ShuffleBufferPool pool = new ShuffleBufferPool(1 << 20);
+    byte[] b1 = pool.allocate(100000);
+    assertEquals(ShuffleBufferPool.bufferSize(100000), b1.length);
+    assertEquals(b1.length, pool.getUsedBytes());
+    pool.release(b1);
+    assertEquals(0, pool.getUsedBytes());
+    assertEquals(b1.length, pool.getIdleBytes());
+
+    // any request of the same size class gets the released buffer
+    assertSame(b1, pool.allocate(b1.length - 10));
+    assertEquals(0, pool.getIdleBytes());
+    assertNotSame(b1, pool.allocate(b1.length - 10));
+  }
+
+  @Test
+  public void testCapacity() {
+    final int size = 64 * 1024;
+    ShuffleBufferPool pool = new ShuffleBufferPool(4 * size);
+    byte[][] buffers = new byte[6][];
+    for (int i = 0; i < buffers.length; ++i) {
+      buffers[i] = pool.allocate(size);
+    }
+    // the pool keeps no more than its capacity
+    for (byte[] b : buffers) {
+      pool.release(b);
+    }
+    assertEquals(0, pool.getUsedBytes());
+    assertEquals(4 * size, pool.getIdleBytes());
+
+    // a buffer of another size class makes room for itself
+    byte[] large = pool.allocate(2 * size);
+    assertEquals(2 * size, pool.getIdleBytes());
+    pool.allocate(size);
+    pool.allocate(size);
+    assertEquals(0, pool.getIdleBytes());
+
+    // and is kept on release as it fits beside the buffers in use
+    pool.release(large);
+    assertEquals(2 * size, pool.getIdleBytes());
+    assertEquals(2 * size, pool.getUsedBytes());
+    assertSame(large, pool.allocate(2 * size - 1));
+  }
+
+  @Test
+  public void testClose() {
+    ShuffleBufferPool pool = new ShuffleBufferPool(1 << 20);
+    byte[] b1 = pool.allocate(100000);
+    byte[] b2 = pool.allocate(100000);
+    pool.release(b1);
+    assertEquals(b1.length, pool.getIdleBytes());
+
+    // a closed pool drops its idle buffers and keeps no released ones
+    pool.close();
+    assertEquals(0, pool.getIdleBytes());
+    pool.release(b2);
+    assertEquals(0, pool.getUsedBytes());
+    assertEquals(0, pool.getIdleBytes());
+    assertNotSame(b2, pool.allocate(100000));
+  }
+}
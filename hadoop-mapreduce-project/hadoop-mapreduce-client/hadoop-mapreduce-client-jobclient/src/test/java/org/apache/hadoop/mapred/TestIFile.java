@@ -23,9 +23,11 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.ZStandardCodec;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -75,4 +77,40 @@ public void testIFileReaderWithCodec() throws Exception {
     assertEquals( readed,reader.checksumIn.getChecksum().length);
     
   }
+
+  @Test
+  /** Write records compressed with zstd and read them back. */
+  public void testIFileWithZStandardCodec() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem localFs = FileSystem.getLocal(conf);
+    FileSystem rfs = ((LocalFileSystem)localFs).getRaw();
+    Path path = new Path(new Path("build/test.ifile"), "zstd");
+    ZStandardCodec codec = new ZStandardCodec();
+    codec.setConf(conf);
+    IFile.Writer<Text, Text> writer =
+        new IFile.Writer<Text, Text>(conf, rfs.create(path), Text.class,
+                                     Text.class, codec, null);
+    for (int i = 0; i < 1000; i++) {
+      writer.append(new Text("key" + i), new Text("value" + i));
+    }
+    writer.close();
+    assertTrue(writer.getCompressedLength() < writer.getRawLength());
+
+    IFile.Reader<Text, Text> reader =
+        new IFile.Reader<Text, Text>(conf, rfs.open(path),
+            rfs.getFileStatus(path).getLen(), codec, null);
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    Text text = new Text();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(reader.nextRawKey(key));
+      text.readFields(key);
+      assertEquals("key" + i, text.toString());
+      reader.nextRawValue(value);
+      text.readFields(value);
+      assertEquals("value" + i, text.toString());
+    }
+    assertFalse(reader.nextRawKey(key));
+    reader.close();
+  }
 }
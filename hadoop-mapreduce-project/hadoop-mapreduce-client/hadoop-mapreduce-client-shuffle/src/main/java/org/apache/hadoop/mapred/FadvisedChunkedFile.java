@@ -18,15 +18,26 @@
 
 package org.apache.hadoop.mapred;
 
+import java.io.EOFException;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.ReadaheadPool;
 import org.apache.hadoop.io.ReadaheadPool.ReadaheadRequest;
 import org.apache.hadoop.io.nativeio.NativeIO;
+import org.jboss.netty.buffer.ByteBufferBackedChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
 import org.jboss.netty.handler.stream.ChunkedFile;
 
 public class FadvisedChunkedFile extends ChunkedFile {
@@ -38,18 +49,54 @@ public class FadvisedChunkedFile extends ChunkedFile {
   private final ReadaheadPool readaheadPool;
   private final FileDescriptor fd;
   private final String identifier;
+  private final FileChannel channel;
+  private final int chunkSize;
+  private final ByteBufferPool bufferPool;
+  private long offset;
 
   private ReadaheadRequest readaheadRequest;
 
   public FadvisedChunkedFile(RandomAccessFile file, long position, long count,
       int chunkSize, boolean manageOsCache, int readaheadLength,
       ReadaheadPool readaheadPool, String identifier) throws IOException {
+    this(file, position, count, chunkSize, manageOsCache, readaheadLength,
+        readaheadPool, identifier, null);
+  }
+
+  /**
+   * @param bufferPool if not null, chunks are read into direct buffers from
+   *        this pool. They go back to the pool once written, so the channel
+   *        pipeline must contain a {@link PooledChunkReleaser}.
+   */
+  public FadvisedChunkedFile(RandomAccessFile file, long position, long count,
+      int chunkSize, boolean manageOsCache, int readaheadLength,
+      ReadaheadPool readaheadPool, String identifier,
+      ByteBufferPool bufferPool) throws IOException {
     super(file, position, count, chunkSize);
     this.manageOsCache = manageOsCache;
     this.readaheadLength = readaheadLength;
     this.readaheadPool = readaheadPool;
     this.fd = file.getFD();
     this.identifier = identifier;
+    this.channel = file.getChannel();
+    this.chunkSize = chunkSize;
+    this.bufferPool = bufferPool;
+    this.offset = position;
+  }
+
+  @Override
+  public long getCurrentOffset() {
+    return offset;
+  }
+
+  @Override
+  public boolean hasNextChunk() throws Exception {
+    return offset < getEndOffset() && channel.isOpen();
+  }
+
+  @Override
+  public boolean isEndOfInput() throws Exception {
+    return !hasNextChunk();
   }
 
   @Override
@@ -59,7 +106,34 @@ public Object nextChunk() throws Exception {
           .readaheadStream(identifier, fd, getCurrentOffset(), readaheadLength,
               getEndOffset(), readaheadRequest);
     }
-    return super.nextChunk();
+    if (bufferPool == null) {
+      Object chunk = super.nextChunk();
+      offset = super.getCurrentOffset();
+      return chunk;
+    }
+
+    long position = offset;
+    if (position >= getEndOffset()) {
+      return null;
+    }
+    int size = (int) Math.min(chunkSize, getEndOffset() - position);
+    ByteBuffer buffer = bufferPool.getBuffer(true, chunkSize);
+    buffer.clear();
+    buffer.limit(size);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new EOFException("Unexpected end of " + identifier + " at "
+              + (position + buffer.position()));
+        }
+      }
+    } catch (IOException e) {
+      bufferPool.putBuffer(buffer);
+      throw e;
+    }
+    offset = position + size;
+    buffer.flip();
+    return new PooledChunk(buffer, bufferPool);
   }
 
   @Override
@@ -79,4 +153,42 @@ public void close() throws Exception {
     }
     super.close();
   }
+
+  /** A chunk read into a buffer that goes back to its pool once written. */
+  static class PooledChunk extends ByteBufferBackedChannelBuffer {
+    private final ByteBuffer pooled;
+    private final ByteBufferPool pool;
+
+    PooledChunk(ByteBuffer pooled, ByteBufferPool pool) {
+      super(pooled);
+      this.pooled = pooled;
+      this.pool = pool;
+    }
+
+    void release() {
+      pool.putBuffer(pooled);
+    }
+  }
+
+  /**
+   * Returns {@link PooledChunk}s to their pool once the write completes. By
+   * then an SslHandler further down the pipeline has encrypted the chunk.
+   */
+  @ChannelHandler.Sharable
+  static class PooledChunkReleaser extends SimpleChannelDownstreamHandler {
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
+        throws Exception {
+      if (e.getMessage() instanceof PooledChunk) {
+        final PooledChunk chunk = (PooledChunk) e.getMessage();
+        e.getFuture().addListener(new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture future) {
+            chunk.release();
+          }
+        });
+      }
+      super.writeRequested(ctx, e);
+    }
+  }
 }
@@ -43,11 +43,15 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -60,6 +64,8 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.LocalDirAllocator;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BoundedByteBufferPool;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.DataInputByteBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.ReadaheadPool;
@@ -67,6 +73,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.proto.ShuffleHandlerRecoveryProtos.JobShuffleInfoProto;
 import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.security.SecureShuffleUtils;
 import org.apache.hadoop.mapreduce.security.token.JobTokenIdentifier;
 import org.apache.hadoop.mapreduce.security.token.JobTokenSecretManager;
@@ -99,6 +106,7 @@
 import org.iq80.leveldb.DBException;
 import org.iq80.leveldb.Logger;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -159,6 +167,7 @@ public class ShuffleHandler extends AuxiliaryService {
 
   private static final String STATE_DB_NAME = "mapreduce_shuffle_state";
   private static final String STATE_DB_SCHEMA_VERSION_KEY = "shuffle-schema-version";
+  private static final String STATE_DB_MAP_INDEX_PREFIX = "mapindex/";
   protected static final Version CURRENT_VERSION_INFO = 
       Version.newInstance(1, 0);
 
@@ -181,6 +190,8 @@ public class ShuffleHandler extends AuxiliaryService {
   private int shuffleBufferSize;
   private boolean shuffleTransferToAllowed;
   private int maxSessionOpenFiles;
+  private int maxReducesPerRequest = DEFAULT_SHUFFLE_MAX_REDUCES_PER_REQUEST;
+  private boolean indexCacheRecoveryEnabled;
   private ReadaheadPool readaheadPool = ReadaheadPool.getInstance();
 
   private Map<String,String> userRsrc;
@@ -188,6 +199,15 @@ public class ShuffleHandler extends AuxiliaryService {
 
   private DB stateDb = null;
 
+  // map index records waiting to be written to the state store, so that
+  // the Netty workers that read them never wait for the store
+  private final Map<String, byte[]> pendingMapIndexes =
+      new HashMap<String, byte[]>();
+  // held while map indexes are written or removed, so that the indexes of
+  // a job that is removed are not written back after it
+  private final Object mapIndexWriteLock = new Object();
+  private ExecutorService mapIndexWriter = null;
+
   public static final String MAPREDUCE_SHUFFLE_SERVICEID =
       "mapreduce_shuffle";
 
@@ -214,6 +234,16 @@ public class ShuffleHandler extends AuxiliaryService {
 
   public static final int DEFAULT_SUFFLE_SSL_FILE_BUFFER_SIZE = 60 * 1024;
 
+  public static final String SHUFFLE_SSL_FILE_BUFFER_POOLED_KEY =
+    "mapreduce.shuffle.ssl.file.buffer.pooled";
+
+  public static final boolean DEFAULT_SHUFFLE_SSL_FILE_BUFFER_POOLED = false;
+
+  public static final String SHUFFLE_SSL_FILE_BUFFER_POOL_MAX_KEY =
+    "mapreduce.shuffle.ssl.file.buffer.pool.max";
+
+  public static final int DEFAULT_SHUFFLE_SSL_FILE_BUFFER_POOL_MAX = 256;
+
   public static final String MAX_SHUFFLE_CONNECTIONS = "mapreduce.shuffle.max.connections";
   public static final int DEFAULT_MAX_SHUFFLE_CONNECTIONS = 0; // 0 implies no limit
   
@@ -238,6 +268,20 @@ public class ShuffleHandler extends AuxiliaryService {
       "mapreduce.shuffle.max.session-open-files";
   public static final int DEFAULT_SHUFFLE_MAX_SESSION_OPEN_FILES = 3;
 
+  /* the maximum number of reduce ids a single GET request can ask for
+   */
+  public static final String SHUFFLE_MAX_REDUCES_PER_REQUEST =
+      "mapreduce.shuffle.max.reduces-per-request";
+  public static final int DEFAULT_SHUFFLE_MAX_REDUCES_PER_REQUEST = 256;
+
+  /* whether map output index records are kept in the recovery state store
+   so they survive a NodeManager restart
+   */
+  public static final String SHUFFLE_INDEX_CACHE_RECOVERY_ENABLED =
+      "mapreduce.shuffle.index-cache.recovery.enabled";
+  public static final boolean DEFAULT_SHUFFLE_INDEX_CACHE_RECOVERY_ENABLED =
+      false;
+
   boolean connectionKeepAliveEnabled = false;
   int connectionKeepAliveTimeOut;
   int mapOutputMetaInfoCacheSize;
@@ -299,26 +343,28 @@ private static class ReduceContext {
     private List<String> mapIds;
     private AtomicInteger mapsToWait;
     private AtomicInteger mapsToSend;
-    private int reduceId;
+    private List<Integer> reduceIds;
+    private int numOutputs;
     private ChannelHandlerContext ctx;
     private String user;
-    private Map<String, Shuffle.MapOutputInfo> infoMap;
+    private Map<Integer, Map<String, Shuffle.MapOutputInfo>> infoMaps;
     private String jobId;
 
-    public ReduceContext(List<String> mapIds, int rId,
-                         ChannelHandlerContext context, String usr,
-                         Map<String, Shuffle.MapOutputInfo> mapOutputInfoMap,
-                         String jobId) {
+    public ReduceContext(List<String> mapIds, List<Integer> rIds,
+        ChannelHandlerContext context, String usr,
+        Map<Integer, Map<String, Shuffle.MapOutputInfo>> mapOutputInfoMaps,
+        String jobId) {
 
       this.mapIds = mapIds;
-      this.reduceId = rId;
+      this.reduceIds = rIds;
+      this.numOutputs = mapIds.size() * rIds.size();
       /**
       * Atomic count for tracking the no. of map outputs that are yet to
       * complete. Multiple futureListeners' operationComplete() can decrement
       * this value asynchronously. It is used to decide when the channel should
       * be closed.
       */
-      this.mapsToWait = new AtomicInteger(mapIds.size());
+      this.mapsToWait = new AtomicInteger(numOutputs);
       /**
       * Atomic count for tracking the no. of map outputs that have been sent.
       * Multiple sendMap() calls can increment this value
@@ -327,12 +373,16 @@ public ReduceContext(List<String> mapIds, int rId,
       this.mapsToSend = new AtomicInteger(0);
       this.ctx = context;
       this.user = usr;
-      this.infoMap = mapOutputInfoMap;
+      this.infoMaps = mapOutputInfoMaps;
       this.jobId = jobId;
     }
 
-    public int getReduceId() {
-      return reduceId;
+    public List<Integer> getReduceIds() {
+      return reduceIds;
+    }
+
+    public int getNumOutputs() {
+      return numOutputs;
     }
 
     public ChannelHandlerContext getCtx() {
@@ -343,8 +393,8 @@ public String getUser() {
       return user;
     }
 
-    public Map<String, Shuffle.MapOutputInfo> getInfoMap() {
-      return infoMap;
+    public Map<String, Shuffle.MapOutputInfo> getInfoMap(int reduce) {
+      return infoMaps.get(reduce);
     }
 
     public String getJobId() {
@@ -476,6 +526,13 @@ protected void serviceInit(Configuration conf) throws Exception {
     maxSessionOpenFiles = conf.getInt(SHUFFLE_MAX_SESSION_OPEN_FILES,
         DEFAULT_SHUFFLE_MAX_SESSION_OPEN_FILES);
 
+    maxReducesPerRequest = conf.getInt(SHUFFLE_MAX_REDUCES_PER_REQUEST,
+        DEFAULT_SHUFFLE_MAX_REDUCES_PER_REQUEST);
+
+    indexCacheRecoveryEnabled = conf.getBoolean(
+        SHUFFLE_INDEX_CACHE_RECOVERY_ENABLED,
+        DEFAULT_SHUFFLE_INDEX_CACHE_RECOVERY_ENABLED);
+
     ThreadFactory bossFactory = new ThreadFactoryBuilder()
       .setNameFormat("ShuffleHandler Netty Boss #%d")
       .build();
@@ -497,6 +554,13 @@ protected void serviceStart() throws Exception {
     userRsrc = new ConcurrentHashMap<String,String>();
     secretManager = new JobTokenSecretManager();
     recoverState(conf);
+    if (indexCacheRecoveryEnabled && stateDb != null) {
+      mapIndexWriter = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder()
+            .setNameFormat("ShuffleHandler Map Index Writer #%d")
+            .setDaemon(true)
+            .build());
+    }
     ServerBootstrap bootstrap = new ServerBootstrap(selector);
     try {
       pipelineFact = new HttpPipelineFactory(conf);
@@ -537,6 +601,13 @@ protected void serviceStop() throws Exception {
     if (pipelineFact != null) {
       pipelineFact.destroy();
     }
+    if (mapIndexWriter != null) {
+      // write out what is pending before the store is closed
+      mapIndexWriter.shutdown();
+      if (!mapIndexWriter.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Timed out writing map indexes to the state store");
+      }
+    }
     if (stateDb != null) {
       stateDb.close();
     }
@@ -727,6 +798,7 @@ private void removeJobShuffleInfo(JobID jobId) throws IOException {
     if (stateDb != null) {
       try {
         stateDb.delete(bytes(jobIdStr));
+        removeMapIndexes(jobIdStr);
       } catch (DBException e) {
         throw new IOException("Unable to remove " + jobId
             + " from state store", e);
@@ -734,6 +806,185 @@ private void removeJobShuffleInfo(JobID jobId) throws IOException {
     }
   }
 
+  private static String getMapIndexKey(String mapId) {
+    try {
+      return STATE_DB_MAP_INDEX_PREFIX
+          + TaskAttemptID.forName(mapId).getJobID() + "/" + mapId;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Look up the index records of a map output in the state store.
+   * @param mapId the map attempt
+   * @return the index records, or null if they were never stored
+   */
+  private SpillRecord loadMapIndex(String mapId) {
+    String key = getMapIndexKey(mapId);
+    if (key == null) {
+      return null;
+    }
+    byte[] data;
+    synchronized (pendingMapIndexes) {
+      data = pendingMapIndexes.get(key);
+    }
+    try {
+      if (data == null) {
+        data = stateDb.get(bytes(key));
+      }
+    } catch (DBException e) {
+      LOG.warn("Unable to load index of " + mapId + " from state store", e);
+      return null;
+    }
+    if (data == null) {
+      return null;
+    }
+    ByteBuffer buf = ByteBuffer.wrap(data);
+    int partitions = data.length / MapTask.MAP_OUTPUT_INDEX_RECORD_LENGTH;
+    SpillRecord record = new SpillRecord(partitions);
+    for (int i = 0; i < partitions; i++) {
+      record.putIndex(
+          new IndexRecord(buf.getLong(), buf.getLong(), buf.getLong()), i);
+    }
+    return record;
+  }
+
+  /**
+   * Queue the index records of a map output to be written to the state
+   * store. The records that pile up while a write is under way are written
+   * together in the next batch.
+   */
+  private void storeMapIndex(String mapId, SpillRecord record) {
+    String key = getMapIndexKey(mapId);
+    if (key == null) {
+      return;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(
+        record.size() * MapTask.MAP_OUTPUT_INDEX_RECORD_LENGTH);
+    for (int i = 0; i < record.size(); i++) {
+      IndexRecord rec = record.getIndex(i);
+      buf.putLong(rec.startOffset).putLong(rec.rawLength)
+          .putLong(rec.partLength);
+    }
+    synchronized (pendingMapIndexes) {
+      pendingMapIndexes.put(key, buf.array());
+      if (pendingMapIndexes.size() > 1) {
+        // a write is already scheduled
+        return;
+      }
+    }
+    try {
+      mapIndexWriter.execute(new Runnable() {
+        @Override
+        public void run() {
+          writePendingMapIndexes();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // the handler is stopping
+      LOG.warn("Unable to store index of " + mapId + " in state store", e);
+    }
+  }
+
+  private void writePendingMapIndexes() {
+    while (true) {
+      synchronized (mapIndexWriteLock) {
+        Map<String, byte[]> written;
+        synchronized (pendingMapIndexes) {
+          if (pendingMapIndexes.isEmpty()) {
+            return;
+          }
+          written = new HashMap<String, byte[]>(pendingMapIndexes);
+        }
+        WriteBatch batch = stateDb.createWriteBatch();
+        try {
+          for (Map.Entry<String, byte[]> e : written.entrySet()) {
+            batch.put(bytes(e.getKey()), e.getValue());
+          }
+          stateDb.write(batch);
+        } catch (DBException e) {
+          LOG.warn("Unable to store " + written.size()
+              + " map indexes in state store", e);
+        } finally {
+          try {
+            batch.close();
+          } catch (IOException e) {
+            LOG.warn("Unable to close state store batch", e);
+          }
+        }
+        // keep what was stored again while the batch was written
+        synchronized (pendingMapIndexes) {
+          for (Map.Entry<String, byte[]> e : written.entrySet()) {
+            if (pendingMapIndexes.get(e.getKey()) == e.getValue()) {
+              pendingMapIndexes.remove(e.getKey());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void removeMapIndexes(String jobIdStr) throws IOException {
+    synchronized (mapIndexWriteLock) {
+      removeMapIndexesLocked(jobIdStr);
+    }
+  }
+
+  private void removeMapIndexesLocked(String jobIdStr) throws IOException {
+    String prefix = STATE_DB_MAP_INDEX_PREFIX + jobIdStr + "/";
+    synchronized (pendingMapIndexes) {
+      Iterator<String> it = pendingMapIndexes.keySet().iterator();
+      while (it.hasNext()) {
+        if (it.next().startsWith(prefix)) {
+          it.remove();
+        }
+      }
+    }
+    LeveldbIterator iter = null;
+    WriteBatch batch = stateDb.createWriteBatch();
+    try {
+      iter = new LeveldbIterator(stateDb);
+      iter.seek(bytes(prefix));
+      while (iter.hasNext()) {
+        byte[] key = iter.next().getKey();
+        if (!asString(key).startsWith(prefix)) {
+          break;
+        }
+        batch.delete(key);
+      }
+      stateDb.write(batch);
+    } finally {
+      if (iter != null) {
+        iter.close();
+      }
+      batch.close();
+    }
+  }
+
+  /**
+   * An index cache that keeps the index records it loads in the state store,
+   * so that after a restart they are read back from there rather than from
+   * every map output's index file.
+   */
+  private class RecoverableIndexCache extends IndexCache {
+
+    RecoverableIndexCache(JobConf conf) {
+      super(conf);
+    }
+
+    @Override
+    protected SpillRecord readIndexFile(Path indexFileName, String mapId,
+        String expectedIndexOwner) throws IOException {
+      SpillRecord record = loadMapIndex(mapId);
+      if (record == null) {
+        record = super.readIndexFile(indexFileName, mapId, expectedIndexOwner);
+        storeMapIndex(mapId, record);
+      }
+      return record;
+    }
+  }
+
   private static class LevelDBLogger implements Logger {
     private static final Log LOG = LogFactory.getLog(LevelDBLogger.class);
 
@@ -747,6 +998,10 @@ class HttpPipelineFactory implements ChannelPipelineFactory {
 
     final Shuffle SHUFFLE;
     private SSLFactory sslFactory;
+    // direct buffers that spills are read into before encryption
+    private ByteBufferPool sslBufferPool;
+    private final FadvisedChunkedFile.PooledChunkReleaser chunkReleaser =
+        new FadvisedChunkedFile.PooledChunkReleaser();
 
     public HttpPipelineFactory(Configuration conf) throws Exception {
       SHUFFLE = getShuffle(conf);
@@ -755,6 +1010,12 @@ public HttpPipelineFactory(Configuration conf) throws Exception {
         LOG.info("Encrypted shuffle is enabled.");
         sslFactory = new SSLFactory(SSLFactory.Mode.SERVER, conf);
         sslFactory.init();
+        if (conf.getBoolean(SHUFFLE_SSL_FILE_BUFFER_POOLED_KEY,
+                            DEFAULT_SHUFFLE_SSL_FILE_BUFFER_POOLED)) {
+          sslBufferPool = new BoundedByteBufferPool(
+              conf.getInt(SHUFFLE_SSL_FILE_BUFFER_POOL_MAX_KEY,
+                          DEFAULT_SHUFFLE_SSL_FILE_BUFFER_POOL_MAX));
+        }
       }
     }
 
@@ -773,6 +1034,9 @@ public ChannelPipeline getPipeline() throws Exception {
       ChannelPipeline pipeline = Channels.pipeline();
       if (sslFactory != null) {
         pipeline.addLast("ssl", new SslHandler(sslFactory.createSSLEngine()));
+        if (sslBufferPool != null) {
+          pipeline.addLast("releaser", chunkReleaser);
+        }
       }
       pipeline.addLast("decoder", new HttpRequestDecoder());
       pipeline.addLast("aggregator", new HttpChunkAggregator(1 << 16));
@@ -842,7 +1106,11 @@ public AttemptPathInfo load(AttemptPathIdentifier key) throws
 
     public Shuffle(Configuration conf) {
       this.conf = conf;
-      indexCache = new IndexCache(new JobConf(conf));
+      if (indexCacheRecoveryEnabled && stateDb != null) {
+        indexCache = new RecoverableIndexCache(new JobConf(conf));
+      } else {
+        indexCache = new IndexCache(new JobConf(conf));
+      }
       this.port = conf.getInt(SHUFFLE_PORT_CONFIG_KEY, DEFAULT_SHUFFLE_PORT);
     }
 
@@ -861,6 +1129,33 @@ private List<String> splitMaps(List<String> mapq) {
       return ret;
     }
 
+    /**
+     * Parse a comma separated list of reduce ids. The ids are returned in
+     * ascending order, which is the order their partitions are laid out in
+     * each map output file.
+     * @throws IllegalArgumentException if there are more ids than
+     *         {@link #SHUFFLE_MAX_REDUCES_PER_REQUEST} allows, or an id is
+     *         not a number, is negative or is repeated
+     */
+    private List<Integer> splitReduces(String reduceq) {
+      final String[] ids = reduceq.split(",");
+      if (ids.length > maxReducesPerRequest) {
+        throw new IllegalArgumentException(ids.length + " reduce ids, more"
+            + " than the " + maxReducesPerRequest + " allowed");
+      }
+      final TreeSet<Integer> ret = new TreeSet<Integer>();
+      for (String s : ids) {
+        int reduce = Integer.parseInt(s);
+        if (reduce < 0) {
+          throw new IllegalArgumentException("Negative reduce id " + s);
+        }
+        if (!ret.add(reduce)) {
+          throw new IllegalArgumentException("Repeated reduce id " + s);
+        }
+      }
+      return new ArrayList<Integer>(ret);
+    }
+
     @Override
     public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent evt) 
         throws Exception {
@@ -921,14 +1216,17 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
         sendError(ctx, "Too many job/reduce parameters", BAD_REQUEST);
         return;
       }
-      int reduceId;
+      List<Integer> reduceIds;
+      try {
+        reduceIds = splitReduces(reduceQ.get(0));
+      } catch (IllegalArgumentException e) {
+        sendError(ctx, "Bad reduce parameter: " + e.getMessage(),
+            BAD_REQUEST);
+        return;
+      }
       String jobId;
       try {
-        reduceId = Integer.parseInt(reduceQ.get(0));
         jobId = jobQ.get(0);
-      } catch (NumberFormatException e) {
-        sendError(ctx, "Bad reduce parameter", BAD_REQUEST);
-        return;
       } catch (IllegalArgumentException e) {
         sendError(ctx, "Bad job parameter", BAD_REQUEST);
         return;
@@ -949,14 +1247,23 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
         return;
       }
 
-      Map<String, MapOutputInfo> mapOutputInfoMap =
-          new HashMap<String, MapOutputInfo>();
+      Map<Integer, Map<String, MapOutputInfo>> mapOutputInfoMaps =
+          new HashMap<Integer, Map<String, MapOutputInfo>>();
+      for (int reduceId : reduceIds) {
+        mapOutputInfoMaps.put(reduceId, new HashMap<String, MapOutputInfo>());
+      }
       Channel ch = evt.getChannel();
       String user = userRsrc.get(jobId);
 
       try {
-        populateHeaders(mapIds, jobId, user, reduceId, request,
-          response, keepAliveParam, mapOutputInfoMap);
+        if (reduceIds.size() == 1) {
+          int reduceId = reduceIds.get(0);
+          populateHeaders(mapIds, jobId, user, reduceId, request,
+            response, keepAliveParam, mapOutputInfoMaps.get(reduceId));
+        } else {
+          populateHeaders(mapIds, jobId, user, reduceIds, request,
+            response, keepAliveParam, mapOutputInfoMaps);
+        }
       } catch(IOException e) {
         ch.write(response);
         LOG.error("Shuffle error in populating headers :", e);
@@ -966,9 +1273,11 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
       }
       ch.write(response);
       //Initialize one ReduceContext object per messageReceived call
-      ReduceContext reduceContext = new ReduceContext(mapIds, reduceId, ctx,
-          user, mapOutputInfoMap, jobId);
-      for (int i = 0; i < Math.min(maxSessionOpenFiles, mapIds.size()); i++) {
+      ReduceContext reduceContext = new ReduceContext(mapIds, reduceIds, ctx,
+          user, mapOutputInfoMaps, jobId);
+      for (int i = 0;
+          i < Math.min(maxSessionOpenFiles, reduceContext.getNumOutputs());
+          i++) {
         ChannelFuture nextMap = sendMap(reduceContext);
         if(nextMap == null) {
           return;
@@ -991,21 +1300,25 @@ public ChannelFuture sendMap(ReduceContext reduceContext)
 
       ChannelFuture nextMap = null;
       if (reduceContext.getMapsToSend().get() <
-          reduceContext.getMapIds().size()) {
+          reduceContext.getNumOutputs()) {
         int nextIndex = reduceContext.getMapsToSend().getAndIncrement();
-        String mapId = reduceContext.getMapIds().get(nextIndex);
+        // send all requested partitions of one map output before moving on
+        // to the next, so each file is read front to back
+        List<Integer> reduceIds = reduceContext.getReduceIds();
+        String mapId =
+            reduceContext.getMapIds().get(nextIndex / reduceIds.size());
+        int reduce = reduceIds.get(nextIndex % reduceIds.size());
 
         try {
-          MapOutputInfo info = reduceContext.getInfoMap().get(mapId);
+          MapOutputInfo info = reduceContext.getInfoMap(reduce).get(mapId);
           if (info == null) {
-            info = getMapOutputInfo(mapId, reduceContext.getReduceId(),
+            info = getMapOutputInfo(mapId, reduce,
                 reduceContext.getJobId(), reduceContext.getUser());
           }
           nextMap = sendMapOutput(
               reduceContext.getCtx(),
               reduceContext.getCtx().getChannel(),
-              reduceContext.getUser(), mapId,
-              reduceContext.getReduceId(), info);
+              reduceContext.getUser(), mapId, reduce, info);
           if (null == nextMap) {
             sendError(reduceContext.getCtx(), NOT_FOUND);
             return null;
@@ -1081,10 +1394,41 @@ protected void populateHeaders(List<String> mapIds, String jobId,
         boolean keepAliveParam, Map<String, MapOutputInfo> mapOutputInfoMap)
         throws IOException {
 
+      long contentLength = getContentLength(mapIds, jobId, user, reduce,
+          mapOutputInfoMap, mapOutputMetaInfoCacheSize);
+
+      // Now set the response headers.
+      setResponseHeaders(response, keepAliveParam, contentLength);
+    }
+
+    /**
+     * Populate the response headers for a request that covers several
+     * partitions of every map output.
+     */
+    protected void populateHeaders(List<String> mapIds, String jobId,
+        String user, List<Integer> reduces, HttpRequest request,
+        HttpResponse response, boolean keepAliveParam,
+        Map<Integer, Map<String, MapOutputInfo>> mapOutputInfoMaps)
+        throws IOException {
+
+      long contentLength = 0;
+      // share the meta info cache between the partitions
+      int maxCachedPerReduce = mapOutputMetaInfoCacheSize / reduces.size();
+      for (int reduce : reduces) {
+        contentLength += getContentLength(mapIds, jobId, user, reduce,
+            mapOutputInfoMaps.get(reduce), maxCachedPerReduce);
+      }
+
+      setResponseHeaders(response, keepAliveParam, contentLength);
+    }
+
+    private long getContentLength(List<String> mapIds, String jobId,
+        String user, int reduce, Map<String, MapOutputInfo> mapOutputInfoMap,
+        int maxCached) throws IOException {
       long contentLength = 0;
       for (String mapId : mapIds) {
         MapOutputInfo outputInfo = getMapOutputInfo(mapId, reduce, jobId, user);
-        if (mapOutputInfoMap.size() < mapOutputMetaInfoCacheSize) {
+        if (mapOutputInfoMap.size() < maxCached) {
           mapOutputInfoMap.put(mapId, outputInfo);
         }
 
@@ -1097,9 +1441,7 @@ protected void populateHeaders(List<String> mapIds, String jobId,
         contentLength += outputInfo.indexRecord.partLength;
         contentLength += dob.getLength();
       }
-
-      // Now set the response headers.
-      setResponseHeaders(response, keepAliveParam, contentLength);
+      return contentLength;
     }
 
     protected void setResponseHeaders(HttpResponse response,
@@ -1209,7 +1551,7 @@ public void operationComplete(ChannelFuture future) {
         final FadvisedChunkedFile chunk = new FadvisedChunkedFile(spill,
             info.startOffset, info.partLength, sslFileBufferSize,
             manageOsCache, readaheadLength, readaheadPool,
-            spillfile.getAbsolutePath());
+            spillfile.getAbsolutePath(), pipelineFact.sslBufferPool);
         writeFuture = ch.write(chunk);
       }
       metrics.shuffleConnections.incr();
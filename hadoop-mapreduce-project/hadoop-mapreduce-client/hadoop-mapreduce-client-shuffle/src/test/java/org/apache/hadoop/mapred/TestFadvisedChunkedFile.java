@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestFadvisedChunkedFile {
+  private static final int FILE_SIZE = 1024 * 1024;
+  private static final Log LOG =
+      LogFactory.getLog(TestFadvisedChunkedFile.class);
+
+  @Test(timeout = 100000)
+  public void testReadChunks() throws Exception {
+    readChunks(null);
+  }
+
+  @Test(timeout = 100000)
+  public void testReadPooledChunks() throws Exception {
+    readChunks(new ElasticByteBufferPool());
+  }
+
+  private void readChunks(ByteBufferPool pool) throws Exception {
+    File testDir = new File("target",
+        TestFadvisedChunkedFile.class.getSimpleName()).getAbsoluteFile();
+    testDir.mkdirs();
+    File inFile = new File(testDir, "fileIn.out");
+
+    byte[] initBuff = new byte[FILE_SIZE];
+    new Random().nextBytes(initBuff);
+    FileOutputStream out = new FileOutputStream(inFile);
+    try {
+      out.write(initBuff);
+    } finally {
+      IOUtils.cleanup(LOG, out);
+    }
+
+    int position = 100 * 1024 + 7;
+    int count = 300 * 1024 + 11;
+    int chunkSize = 60 * 1024;
+    RandomAccessFile inputFile = new RandomAccessFile(inFile, "r");
+    FadvisedChunkedFile chunkedFile = new FadvisedChunkedFile(inputFile,
+        position, count, chunkSize, false, 0, null, inFile.getAbsolutePath(),
+        pool);
+    try {
+      int read = 0;
+      while (chunkedFile.hasNextChunk()) {
+        Assert.assertEquals(position + read, chunkedFile.getCurrentOffset());
+        ChannelBuffer chunk = (ChannelBuffer) chunkedFile.nextChunk();
+        Assert.assertEquals(Math.min(chunkSize, count - read),
+            chunk.readableBytes());
+        Assert.assertEquals(pool != null, chunk.isDirect());
+        while (chunk.readable()) {
+          Assert.assertEquals(initBuff[position + read++], chunk.readByte());
+        }
+      }
+      Assert.assertEquals(count, read);
+      Assert.assertTrue(chunkedFile.isEndOfInput());
+      Assert.assertNull(chunkedFile.nextChunk());
+    } finally {
+      chunkedFile.close();
+    }
+    Assert.assertFalse(inputFile.getChannel().isOpen());
+
+    inFile.delete();
+    testDir.delete();
+  }
+
+  @Test(timeout = 100000)
+  public void testPooledChunkReleasedAfterWrite() throws Exception {
+    File testDir = new File("target",
+        TestFadvisedChunkedFile.class.getSimpleName()).getAbsoluteFile();
+    testDir.mkdirs();
+    File inFile = new File(testDir, "pooled.out");
+    FileOutputStream out = new FileOutputStream(inFile);
+    try {
+      out.write(new byte[1000]);
+    } finally {
+      IOUtils.cleanup(LOG, out);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+    ByteBufferPool pool = Mockito.mock(ByteBufferPool.class);
+    Mockito.when(pool.getBuffer(true, 1024)).thenReturn(buffer);
+    RandomAccessFile inputFile = new RandomAccessFile(inFile, "r");
+    FadvisedChunkedFile chunkedFile = new FadvisedChunkedFile(inputFile,
+        0, 1000, 1024, false, 0, null, inFile.getAbsolutePath(), pool);
+    try {
+      Object chunk = chunkedFile.nextChunk();
+      Channel channel = Mockito.mock(Channel.class);
+      ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+      ChannelFuture future = new DefaultChannelFuture(channel, false);
+      MessageEvent e = new DownstreamMessageEvent(channel, future, chunk, null);
+      new FadvisedChunkedFile.PooledChunkReleaser().handleDownstream(ctx, e);
+      Mockito.verify(ctx).sendDownstream(e);
+
+      // the buffer stays out of the pool until the write completes
+      Mockito.verify(pool, Mockito.never()).putBuffer(buffer);
+      future.setSuccess();
+      Mockito.verify(pool).putBuffer(buffer);
+    } finally {
+      chunkedFile.close();
+    }
+
+    inFile.delete();
+    testDir.delete();
+  }
+
+  @Test(timeout = 100000)
+  public void testTruncatedFile() throws Exception {
+    File testDir = new File("target",
+        TestFadvisedChunkedFile.class.getSimpleName()).getAbsoluteFile();
+    testDir.mkdirs();
+    File inFile = new File(testDir, "truncated.out");
+    FileOutputStream out = new FileOutputStream(inFile);
+    try {
+      out.write(new byte[1000]);
+    } finally {
+      IOUtils.cleanup(LOG, out);
+    }
+
+    RandomAccessFile inputFile = new RandomAccessFile(inFile, "r");
+    FadvisedChunkedFile chunkedFile = new FadvisedChunkedFile(inputFile,
+        0, 1000, 1024, false, 0, null, inFile.getAbsolutePath(),
+        new ElasticByteBufferPool());
+    // the file shrinks after the map output was indexed
+    RandomAccessFile truncate = new RandomAccessFile(inFile, "rw");
+    try {
+      truncate.setLength(500);
+    } finally {
+      IOUtils.cleanup(LOG, truncate);
+    }
+    try {
+      chunkedFile.nextChunk();
+      Assert.fail("Expected an EOFException");
+    } catch (IOException e) {
+      LOG.info("Expected - file was truncated", e);
+    } finally {
+      chunkedFile.close();
+    }
+
+    inFile.delete();
+    testDir.delete();
+  }
+}
@@ -939,6 +939,242 @@ private static int getShuffleResponseCode(ShuffleHandler shuffle,
     return rc;
   }
 
+  @Test(timeout = 100000)
+  public void testBatchedReduces() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    File absLogDir = new File("target", TestShuffleHandler.class.
+        getSimpleName() + "BatchDir").getAbsoluteFile();
+    conf.set(YarnConfiguration.NM_LOCAL_DIRS, absLogDir.getAbsolutePath());
+    ApplicationId appId = ApplicationId.newInstance(12345, 1);
+    String user = "randomUser";
+    String[] maps = { "attempt_12345_1_m_1_0", "attempt_12345_1_m_2_0" };
+    for (String map : maps) {
+      createPartitionedMapOutput(absLogDir, user, appId.toString(), map, conf,
+          map + "-p0", map + "-p1", map + "-p2");
+    }
+    ShuffleHandler shuffleHandler = new ShuffleHandler() {
+      @Override
+      protected Shuffle getShuffle(Configuration conf) {
+        return new Shuffle(conf) {
+          @Override
+          protected void verifyRequest(String appid, ChannelHandlerContext ctx,
+              HttpRequest request, HttpResponse response, URL requestUri)
+              throws IOException {
+          }
+        };
+      }
+    };
+    shuffleHandler.init(conf);
+    try {
+      shuffleHandler.start();
+      DataOutputBuffer outputBuffer = new DataOutputBuffer();
+      Token<JobTokenIdentifier> jt = new Token<JobTokenIdentifier>(
+          "identifier".getBytes(), "password".getBytes(), new Text(user),
+          new Text("shuffleService"));
+      jt.write(outputBuffer);
+      shuffleHandler.initializeApplication(new ApplicationInitializationContext(
+          user, appId, ByteBuffer.wrap(outputBuffer.getData(), 0,
+              outputBuffer.getLength())));
+
+      // partitions come back map by map, in ascending reduce order
+      byte[] response = fetchMapOutput(shuffleHandler, jt, "2,0",
+          maps[0] + "," + maps[1]);
+      DataOutputBuffer expected = new DataOutputBuffer();
+      for (String map : maps) {
+        for (int reduce : new int[] { 0, 2 }) {
+          writeExpectedOutput(expected, map, reduce, map + "-p" + reduce);
+        }
+      }
+      Assert.assertArrayEquals(
+          Arrays.copyOf(expected.getData(), expected.getLength()), response);
+    } finally {
+      shuffleHandler.stop();
+      FileUtil.fullyDelete(absLogDir);
+    }
+  }
+
+  /**
+   * Validate that lists of reduce ids that are too long, or have negative
+   * or repeated ids, are rejected.
+   *
+   * @throws Exception exception
+   */
+  @Test (timeout = 10000)
+  public void testBadReduceIds() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    conf.setInt(ShuffleHandler.SHUFFLE_MAX_REDUCES_PER_REQUEST, 2);
+    ShuffleHandler shuffleHandler = new ShuffleHandler();
+    shuffleHandler.init(conf);
+    shuffleHandler.start();
+    try {
+      for (String reduces : new String[] { "0,1,2", "0,-1", "1,1", "1,x" }) {
+        URL url = new URL("http://127.0.0.1:"
+            + shuffleHandler.getConfig().get(
+                ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY)
+            + "/mapOutput?job=job_12345_1&reduce=" + reduces
+            + "&map=attempt_12345_1_m_1_0");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+            ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+        conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+            ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+        conn.connect();
+        Assert.assertEquals("reduce=" + reduces,
+            HttpURLConnection.HTTP_BAD_REQUEST, conn.getResponseCode());
+        conn.disconnect();
+      }
+    } finally {
+      shuffleHandler.stop();
+      shuffleHandler.close();
+    }
+  }
+
+  @Test(timeout = 100000)
+  public void testIndexCacheRecovery() throws Exception {
+    final String user = "someuser";
+    final ApplicationId appId = ApplicationId.newInstance(12345, 1);
+    final String map = "attempt_12345_1_m_1_0";
+    final File tmpDir = new File(System.getProperty("test.build.data",
+        System.getProperty("java.io.tmpdir")),
+        TestShuffleHandler.class.getName());
+    File absLogDir = new File("target", TestShuffleHandler.class.
+        getSimpleName() + "IndexDir").getAbsoluteFile();
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    conf.setBoolean(ShuffleHandler.SHUFFLE_INDEX_CACHE_RECOVERY_ENABLED, true);
+    conf.set(YarnConfiguration.NM_LOCAL_DIRS, absLogDir.getAbsolutePath());
+    File indexFile = createPartitionedMapOutput(absLogDir, user,
+        appId.toString(), map, conf, "first", "second");
+    DataOutputBuffer expected = new DataOutputBuffer();
+    writeExpectedOutput(expected, map, 1, "second");
+    byte[] expectedBytes =
+        Arrays.copyOf(expected.getData(), expected.getLength());
+
+    ShuffleHandler shuffle = new ShuffleHandler();
+    shuffle.setRecoveryPath(new Path(tmpDir.toString()));
+    tmpDir.mkdirs();
+    try {
+      shuffle.init(conf);
+      shuffle.start();
+      DataOutputBuffer outputBuffer = new DataOutputBuffer();
+      Token<JobTokenIdentifier> jt = new Token<JobTokenIdentifier>(
+          "identifier".getBytes(), "password".getBytes(), new Text(user),
+          new Text("shuffleService"));
+      jt.write(outputBuffer);
+      ApplicationInitializationContext initContext =
+          new ApplicationInitializationContext(user, appId, ByteBuffer.wrap(
+              outputBuffer.getData(), 0, outputBuffer.getLength()));
+      shuffle.initializeApplication(initContext);
+      Assert.assertArrayEquals(expectedBytes,
+          fetchMapOutput(shuffle, jt, "1", map));
+
+      // corrupt the index file, then restart: the index must come from
+      // the state store
+      byte[] garbage = new byte[(int) indexFile.length()];
+      FileOutputStream out = new FileOutputStream(indexFile);
+      try {
+        out.write(garbage);
+      } finally {
+        out.close();
+      }
+      shuffle.close();
+      shuffle = new ShuffleHandler();
+      shuffle.setRecoveryPath(new Path(tmpDir.toString()));
+      shuffle.init(conf);
+      shuffle.start();
+      Assert.assertArrayEquals(expectedBytes,
+          fetchMapOutput(shuffle, jt, "1", map));
+
+      // stopping the application drops the stored index
+      shuffle.stopApplication(new ApplicationTerminationContext(appId));
+      shuffle.close();
+      shuffle = new ShuffleHandler();
+      shuffle.setRecoveryPath(new Path(tmpDir.toString()));
+      shuffle.init(conf);
+      shuffle.start();
+      shuffle.initializeApplication(initContext);
+      Assert.assertFalse(Arrays.equals(expectedBytes,
+          fetchMapOutput(shuffle, jt, "1", map)));
+    } finally {
+      if (shuffle != null) {
+        shuffle.close();
+      }
+      FileUtil.fullyDelete(tmpDir);
+      FileUtil.fullyDelete(absLogDir);
+    }
+  }
+
+  private static byte[] fetchMapOutput(ShuffleHandler shuffle,
+      Token<JobTokenIdentifier> jt, String reduces, String maps)
+      throws IOException {
+    URL url = new URL("http://127.0.0.1:"
+        + shuffle.getConfig().get(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY)
+        + "/mapOutput?job=job_12345_0001&reduce=" + reduces + "&map=" + maps);
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    String encHash = SecureShuffleUtils.hashFromString(
+        SecureShuffleUtils.buildMsgFrom(url),
+        JobTokenSecretManager.createSecretKey(jt.getPassword()));
+    conn.addRequestProperty(
+        SecureShuffleUtils.HTTP_HEADER_URL_HASH, encHash);
+    conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+    conn.connect();
+    DataOutputBuffer body = new DataOutputBuffer();
+    try {
+      DataInputStream in = new DataInputStream(conn.getInputStream());
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        body.write(buf, 0, n);
+      }
+      in.close();
+    } catch (IOException e) {
+      LOG.info("Shuffle request failed", e);
+    } finally {
+      conn.disconnect();
+    }
+    return Arrays.copyOf(body.getData(), body.getLength());
+  }
+
+  private static void writeExpectedOutput(DataOutputBuffer out, String map,
+      int reduce, String data) throws IOException {
+    byte[] bytes = data.getBytes();
+    new ShuffleHeader(map, bytes.length, bytes.length, reduce).write(out);
+    out.write(bytes);
+  }
+
+  private static File createPartitionedMapOutput(File logDir, String user,
+      String appId, String appAttemptId, Configuration conf,
+      String... partitions) throws IOException {
+    File appAttemptDir = new File(StringUtils.join(Path.SEPARATOR,
+        Arrays.asList(new String[] { logDir.getAbsolutePath(),
+            ContainerLocalizer.USERCACHE, user,
+            ContainerLocalizer.APPCACHE, appId, "output", appAttemptId })));
+    appAttemptDir.mkdirs();
+    SpillRecord record = new SpillRecord(partitions.length);
+    FileOutputStream out =
+        new FileOutputStream(new File(appAttemptDir, "file.out"));
+    try {
+      long offset = 0;
+      for (int i = 0; i < partitions.length; i++) {
+        byte[] bytes = partitions[i].getBytes();
+        out.write(bytes);
+        record.putIndex(new IndexRecord(offset, bytes.length, bytes.length), i);
+        offset += bytes.length;
+      }
+    } finally {
+      out.close();
+    }
+    File indexFile = new File(appAttemptDir, "file.out.index");
+    record.writeToFile(new Path(indexFile.getAbsolutePath()),
+        new JobConf(conf));
+    return indexFile;
+  }
+
   @Test(timeout = 100000)
   public void testGetMapOutputInfo() throws Exception {
     final ArrayList<Throwable> failures = new ArrayList<Throwable>(1);
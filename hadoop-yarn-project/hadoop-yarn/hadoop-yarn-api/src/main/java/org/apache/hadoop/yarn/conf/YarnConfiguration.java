@@ -410,6 +410,15 @@ public static boolean isAclEnabled(Configuration conf) {
   public static final int DEFAULT_RM_SYSTEM_METRICS_PUBLISHER_DISPATCHER_POOL_SIZE =
       10;
 
+  /**
+   * Number of dispatcher threads that process RMNode events, such as node
+   * heartbeats. Events of one node are always handled by the same thread. If
+   * 0, node events are handled on the central RM dispatcher.
+   */
+  public static final String RM_NODE_EVENT_DISPATCHER_POOL_SIZE =
+      RM_PREFIX + "node-event-dispatcher.pool-size";
+  public static final int DEFAULT_RM_NODE_EVENT_DISPATCHER_POOL_SIZE = 0;
+
   /**
    * The {@code AMLauncher.createAMContainerLaunchContext()} method will log the
    * command being executed to the RM log if this property is true. Commands
@@ -444,6 +453,14 @@ public static boolean isAclEnabled(Configuration conf) {
   public static final String RECOVERY_ENABLED = RM_PREFIX + "recovery.enabled";
   public static final boolean DEFAULT_RM_RECOVERY_ENABLED = false;
 
+  /**
+   * Number of threads used to recover completed applications from the state
+   * store. A value of 1 recovers all applications serially.
+   */
+  public static final String RM_RECOVERY_APP_THREADS =
+      RM_PREFIX + "recovery.app-threads";
+  public static final int DEFAULT_RM_RECOVERY_APP_THREADS = 1;
+
   public static final String YARN_FAIL_FAST = YARN_PREFIX + "fail-fast";
   public static final boolean DEFAULT_YARN_FAIL_FAST = false;
 
@@ -493,6 +510,39 @@ public static boolean isAclEnabled(Configuration conf) {
   public static final String ZK_RM_STATE_STORE_ROOT_NODE_ACL =
       ZK_STATE_STORE_PREFIX + "root-node.acl";
 
+  /**
+   * Whether ZKRMStateStore coalesces application and attempt writes into
+   * ZooKeeper multi transactions.
+   */
+  public static final String ZK_RM_STATE_STORE_BATCH_ENABLED =
+      ZK_STATE_STORE_PREFIX + "batch.enabled";
+  public static final boolean DEFAULT_ZK_RM_STATE_STORE_BATCH_ENABLED = false;
+
+  /** Maximum number of znode operations in one batched transaction */
+  public static final String ZK_RM_STATE_STORE_BATCH_MAX_OPS =
+      ZK_STATE_STORE_PREFIX + "batch.max-ops";
+  public static final int DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_OPS = 100;
+
+  /** Maximum payload size of one batched transaction */
+  public static final String ZK_RM_STATE_STORE_BATCH_MAX_BYTES =
+      ZK_STATE_STORE_PREFIX + "batch.max-bytes";
+  public static final int DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_BYTES =
+      512 * 1024;
+
+  /** Maximum time an operation waits in a batch before it is written */
+  public static final String ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS =
+      ZK_STATE_STORE_PREFIX + "batch.max-latency-ms";
+  public static final long DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS =
+      10;
+
+  /**
+   * Maximum number of asynchronous ZooKeeper reads in flight while loading
+   * the application state during recovery.
+   */
+  public static final String ZK_RM_STATE_STORE_LOAD_PIPELINE_DEPTH =
+      ZK_STATE_STORE_PREFIX + "load.pipeline-depth";
+  public static final int DEFAULT_ZK_RM_STATE_STORE_LOAD_PIPELINE_DEPTH = 100;
+
   /** HA related configs */
   public static final String RM_HA_PREFIX = RM_PREFIX + "ha.";
   public static final String RM_HA_ENABLED = RM_HA_PREFIX + "enabled";
@@ -773,6 +823,20 @@ public static boolean isAclEnabled(Configuration conf) {
     NM_PREFIX + "localizer.fetch.thread-count";
   public static final int DEFAULT_NM_LOCALIZER_FETCH_THREAD_COUNT = 4;
 
+  /**
+   * Number of threads used to download a single large resource in chunks,
+   * 1 to download every resource with a single stream.
+   */
+  public static final String NM_LOCALIZER_FETCH_CHUNK_THREADS =
+    NM_PREFIX + "localizer.fetch.chunk-threads";
+  public static final int DEFAULT_NM_LOCALIZER_FETCH_CHUNK_THREADS = 1;
+
+  /** Size of the chunks a large resource is downloaded in.*/
+  public static final String NM_LOCALIZER_FETCH_CHUNK_SIZE =
+    NM_PREFIX + "localizer.fetch.chunk-size";
+  public static final long DEFAULT_NM_LOCALIZER_FETCH_CHUNK_SIZE =
+      128 * 1024 * 1024;
+
   /** Where to store container logs.*/
   public static final String NM_LOG_DIRS = NM_PREFIX + "log-dirs";
   public static final String DEFAULT_NM_LOG_DIRS = "/tmp/logs";
@@ -1035,6 +1099,10 @@ public static boolean isAclEnabled(Configuration conf) {
       "container-monitor.procfs-tree.smaps-based-rss.enabled";
   public static final boolean DEFAULT_PROCFS_USE_SMAPS_BASED_RSS_ENABLED =
       false;
+  /** Share one procfs scan between all the container process trees. */
+  public static final String PROCFS_SHARED_SCAN_ENABLED = NM_PREFIX +
+      "container-monitor.procfs-tree.shared-scan.enabled";
+  public static final boolean DEFAULT_PROCFS_SHARED_SCAN_ENABLED = false;
 
   /** Enable/disable container metrics. */
   @Private
@@ -21,10 +21,17 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
@@ -34,6 +41,8 @@
 import org.apache.hadoop.classification.InterfaceAudience.LimitedPrivate;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileContext;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -43,17 +52,20 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.RunJar;
 import org.apache.hadoop.util.Shell;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.LocalResourceVisibility;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Download a single URL to the local disk.
@@ -264,11 +276,99 @@ private Path copy(Path sCopy, Path dstdir) throws IOException {
       }
     }
 
-    FileUtil.copy(sourceFs, sStat, FileSystem.getLocal(conf), dCopy, false,
-        true, conf);
+    int chunkThreads = conf.getInt(
+        YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_THREADS,
+        YarnConfiguration.DEFAULT_NM_LOCALIZER_FETCH_CHUNK_THREADS);
+    long chunkSize = conf.getLongBytes(
+        YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_SIZE,
+        YarnConfiguration.DEFAULT_NM_LOCALIZER_FETCH_CHUNK_SIZE);
+    LocalFileSystem localFs = FileSystem.getLocal(conf);
+    // Sources that keep their checksums in .crc files are copied as before.
+    // Other file systems verify what they return on every read, positional
+    // reads included.
+    if (chunkThreads > 1 && chunkSize > 0 && sStat.isFile()
+        && sStat.getLen() > chunkSize
+        && !(sourceFs instanceof ChecksumFileSystem)) {
+      // create the copy with the permissions FileUtil.copy would give it
+      FileSystem.create(localFs.getRawFileSystem(), dCopy,
+          FsPermission.getFileDefault().applyUMask(
+              FsPermission.getUMask(conf))).close();
+      copyInChunks(sourceFs, sCopy, sStat.getLen(),
+          localFs.pathToFile(dCopy), chunkSize, chunkThreads);
+    } else {
+      FileUtil.copy(sourceFs, sStat, localFs, dCopy, false, true, conf);
+    }
     return dCopy;
   }
 
+  /**
+   * Download a large file with several readers at once. Every reader fetches
+   * its own range of the source with positional reads and writes it at the
+   * same offset of the local copy.
+   */
+  private static void copyInChunks(final FileSystem sourceFs, final Path src,
+      long len, File dst, long chunkSize, int threads) throws IOException {
+    long numChunks = (len + chunkSize - 1) / chunkSize;
+    RandomAccessFile raf = new RandomAccessFile(dst, "rw");
+    ExecutorService exec = Executors.newFixedThreadPool(
+        (int) Math.min(threads, numChunks), new ThreadFactoryBuilder()
+            .setNameFormat("FSDownload chunk #%d").setDaemon(true).build());
+    try {
+      raf.setLength(len);
+      final FileChannel channel = raf.getChannel();
+      List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+      for (long offset = 0; offset < len; offset += chunkSize) {
+        final long start = offset;
+        final long end = Math.min(len, offset + chunkSize);
+        chunks.add(exec.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            copyRange(sourceFs, src, channel, start, end);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> chunk : chunks) {
+        try {
+          chunk.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException(cause);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+    } finally {
+      exec.shutdownNow();
+      raf.close();
+    }
+  }
+
+  private static void copyRange(FileSystem sourceFs, Path src,
+      FileChannel channel, long start, long end) throws IOException {
+    FSDataInputStream in = sourceFs.open(src);
+    try {
+      byte[] buf = new byte[64 * 1024];
+      long pos = start;
+      while (pos < end) {
+        int n = (int) Math.min(buf.length, end - pos);
+        in.readFully(pos, buf, 0, n);
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+        long writePos = pos;
+        while (bb.hasRemaining()) {
+          writePos += channel.write(bb, writePos);
+        }
+        pos += n;
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
   private long unpack(File localrsrc, File dst) throws IOException {
     switch (resource.getType()) {
     case ARCHIVE: {
@@ -27,10 +27,13 @@
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -105,6 +108,21 @@ public static MemInfo getMemInfoByName(String name) {
 
   private boolean smapsEnabled;
 
+  // how long a shared scan of procfs may be reused by other trees, or -1 if
+  // every tree scans procfs on its own
+  private long sharedScanMaxAgeMs = -1;
+
+  private static final Map<String, ProcfsSnapshot> SHARED_SCANS =
+      new HashMap<String, ProcfsSnapshot>();
+
+  // root pids of the trees using the shared scan of each procfs directory,
+  // guarded by SHARED_SCANS
+  private static final Map<String, Set<String>> SHARED_ROOTS =
+      new HashMap<String, Set<String>>();
+
+  // the previous scan of this tree when it does not use the shared scan
+  private ProcfsSnapshot lastScan;
+
   protected Map<String, ProcessTreeSmapMemInfo> processSMAPTree =
       new HashMap<String, ProcessTreeSmapMemInfo>();
 
@@ -156,6 +174,20 @@ public void setConf(Configuration conf) {
       smapsEnabled =
           conf.getBoolean(YarnConfiguration.PROCFS_USE_SMAPS_BASED_RSS_ENABLED,
             YarnConfiguration.DEFAULT_PROCFS_USE_SMAPS_BASED_RSS_ENABLED);
+      // All the trees of a NodeManager are updated back to back once per
+      // monitoring interval, so a scan younger than half an interval
+      // belongs to the current round.
+      if (conf.getBoolean(YarnConfiguration.PROCFS_SHARED_SCAN_ENABLED,
+          YarnConfiguration.DEFAULT_PROCFS_SHARED_SCAN_ENABLED)) {
+        sharedScanMaxAgeMs = conf.getInt(
+            YarnConfiguration.NM_CONTAINER_MON_INTERVAL_MS,
+            YarnConfiguration.DEFAULT_NM_CONTAINER_MON_INTERVAL_MS) / 2;
+        if (!pid.equals(deadPid)) {
+          addSharedRoot(procfsDir, pid);
+        }
+      } else {
+        sharedScanMaxAgeMs = -1;
+      }
     }
   }
 
@@ -208,65 +240,24 @@ public static boolean isAvailable() {
   @Override
   public void updateProcessTree() {
     if (!pid.equals(deadPid)) {
-      // Get the list of processes
-      List<String> processList = getProcessList();
-
-      Map<String, ProcessInfo> allProcessInfo = new HashMap<String, ProcessInfo>();
-
       // cache the processTree to get the age for processes
       Map<String, ProcessInfo> oldProcs =
               new HashMap<String, ProcessInfo>(processTree);
       processTree.clear();
 
-      ProcessInfo me = null;
-      for (String proc : processList) {
-        // Get information for each process
-        ProcessInfo pInfo = new ProcessInfo(proc);
-        if (constructProcessInfo(pInfo, procfsDir) != null) {
-          allProcessInfo.put(proc, pInfo);
-          if (proc.equals(this.pid)) {
-            me = pInfo; // cache 'me'
-            processTree.put(proc, pInfo);
-          }
-        }
+      boolean found;
+      if (sharedScanMaxAgeMs >= 0) {
+        found = constructTreeFromSnapshot(getSharedSnapshot(procfsDir, pid,
+            clock.getTime(), sharedScanMaxAgeMs));
+      } else {
+        lastScan = ProcfsSnapshot.scan(procfsDir, clock.getTime(), lastScan,
+            Collections.singleton(pid));
+        found = constructTreeFromSnapshot(lastScan);
       }
-
-      if (me == null) {
+      if (!found) {
         return;
       }
 
-      // Add each process to its parent.
-      for (Map.Entry<String, ProcessInfo> entry : allProcessInfo.entrySet()) {
-        String pID = entry.getKey();
-        if (!pID.equals("1")) {
-          ProcessInfo pInfo = entry.getValue();
-          String ppid = pInfo.getPpid();
-          // If parent is init and process is not session leader,
-          // attach to sessionID
-          if (ppid.equals("1")) {
-              String sid = pInfo.getSessionId().toString();
-              if (!pID.equals(sid)) {
-                 ppid = sid;
-              }
-          }
-          ProcessInfo parentPInfo = allProcessInfo.get(ppid);
-          if (parentPInfo != null) {
-            parentPInfo.addChild(pInfo);
-          }
-        }
-      }
-
-      // now start constructing the process-tree
-      LinkedList<ProcessInfo> pInfoQueue = new LinkedList<ProcessInfo>();
-      pInfoQueue.addAll(me.getChildren());
-      while (!pInfoQueue.isEmpty()) {
-        ProcessInfo pInfo = pInfoQueue.remove();
-        if (!processTree.containsKey(pInfo.getPid())) {
-          processTree.put(pInfo.getPid(), pInfo);
-        }
-        pInfoQueue.addAll(pInfo.getChildren());
-      }
-
       // update age values and compute the number of jiffies since last update
       for (Map.Entry<String, ProcessInfo> procs : processTree.entrySet()) {
         ProcessInfo oldInfo = oldProcs.get(procs.getKey());
@@ -282,18 +273,66 @@ public void updateProcessTree() {
         // Log.debug the ProcfsBasedProcessTree
         LOG.debug(this.toString());
       }
-      if (smapsEnabled) {
-        //Update smaps info
-        processSMAPTree.clear();
-        for (ProcessInfo p : processTree.values()) {
-          if (p != null) {
-            // Get information for each process
-            ProcessTreeSmapMemInfo memInfo = new ProcessTreeSmapMemInfo(p.getPid());
-            constructProcessSMAPInfo(memInfo, procfsDir);
-            processSMAPTree.put(p.getPid(), memInfo);
-          }
-        }
+      // smaps are read lazily, only for the processes whose rss is asked for
+      processSMAPTree.clear();
+    }
+  }
+
+  /**
+   * Copy the processes of this tree out of a procfs snapshot. The snapshot
+   * may be shared with other trees, so its entries are not modified.
+   *
+   * @return false if the root process is not in the snapshot.
+   */
+  private boolean constructTreeFromSnapshot(ProcfsSnapshot snapshot) {
+    ProcessInfo me = snapshot.processes.get(pid);
+    if (me == null) {
+      return false;
+    }
+    processTree.put(pid, me.copyStat());
+
+    // now start constructing the process-tree
+    LinkedList<ProcessInfo> pInfoQueue = new LinkedList<ProcessInfo>();
+    pInfoQueue.addAll(me.getChildren());
+    while (!pInfoQueue.isEmpty()) {
+      ProcessInfo pInfo = pInfoQueue.remove();
+      if (!processTree.containsKey(pInfo.getPid())) {
+        processTree.put(pInfo.getPid(), pInfo.copyStat());
       }
+      pInfoQueue.addAll(pInfo.getChildren());
+    }
+    return true;
+  }
+
+  private static void addSharedRoot(String procfsDir, String rootPid) {
+    synchronized (SHARED_SCANS) {
+      Set<String> roots = SHARED_ROOTS.get(procfsDir);
+      if (roots == null) {
+        roots = new HashSet<String>();
+        SHARED_ROOTS.put(procfsDir, roots);
+      }
+      roots.add(rootPid);
+    }
+  }
+
+  private static ProcfsSnapshot getSharedSnapshot(String procfsDir,
+      String rootPid, long now, long maxAgeMs) {
+    synchronized (SHARED_SCANS) {
+      addSharedRoot(procfsDir, rootPid);
+      ProcfsSnapshot snapshot = SHARED_SCANS.get(procfsDir);
+      // a tree that was not known at the time of the scan would get stale
+      // stats for its processes, so it scans again
+      if (snapshot == null || now < snapshot.scanTime
+          || now - snapshot.scanTime > maxAgeMs
+          || (snapshot.processes.containsKey(rootPid)
+              && !snapshot.roots.contains(rootPid))) {
+        Set<String> roots = SHARED_ROOTS.get(procfsDir);
+        snapshot = ProcfsSnapshot.scan(procfsDir, now, snapshot, roots);
+        // forget the trees whose root process has exited
+        roots.retainAll(snapshot.processes.keySet());
+        SHARED_SCANS.put(procfsDir, snapshot);
+      }
+      return snapshot;
     }
   }
 
@@ -420,25 +459,28 @@ private long getSmapBasedRssMemorySize(int olderThanAge) {
         }
         if (p.getAge() > olderThanAge) {
           ProcessTreeSmapMemInfo procMemInfo = processSMAPTree.get(p.getPid());
-          if (procMemInfo != null) {
-            for (ProcessSmapMemoryInfo info : procMemInfo.getMemoryInfoList()) {
-              // Do not account for r--s or r-xs mappings
-              if (info.getPermission().trim()
-                .equalsIgnoreCase(READ_ONLY_WITH_SHARED_PERMISSION)
-                  || info.getPermission().trim()
-                    .equalsIgnoreCase(READ_EXECUTE_WITH_SHARED_PERMISSION)) {
-                continue;
-              }
-
-              // Account for anonymous to know the amount of
-              // memory reclaimable by killing the process
-              total += info.anonymous;
-
-              if (LOG.isDebugEnabled()) {
-                LOG.debug(" total(" + olderThanAge + "): PID : " + p.getPid()
-                    + ", info : " + info.toString()
-                    + ", total : " + (total * KB_TO_BYTES));
-              }
+          if (procMemInfo == null) {
+            procMemInfo = new ProcessTreeSmapMemInfo(p.getPid());
+            constructProcessSMAPInfo(procMemInfo, procfsDir);
+            processSMAPTree.put(p.getPid(), procMemInfo);
+          }
+          for (ProcessSmapMemoryInfo info : procMemInfo.getMemoryInfoList()) {
+            // Do not account for r--s or r-xs mappings
+            if (info.getPermission().trim()
+              .equalsIgnoreCase(READ_ONLY_WITH_SHARED_PERMISSION)
+                || info.getPermission().trim()
+                  .equalsIgnoreCase(READ_EXECUTE_WITH_SHARED_PERMISSION)) {
+              continue;
+            }
+
+            // Account for anonymous to know the amount of
+            // memory reclaimable by killing the process
+            total += info.anonymous;
+
+            if (LOG.isDebugEnabled()) {
+              LOG.debug(" total(" + olderThanAge + "): PID : " + p.getPid()
+                  + ", info : " + info.toString()
+                  + ", total : " + (total * KB_TO_BYTES));
             }
           }
         
@@ -510,7 +552,7 @@ private static String getValidPID(String pid) {
   /**
    * Get the list of all processes in the system.
    */
-  private List<String> getProcessList() {
+  private static List<String> getProcessList(String procfsDir) {
     String[] processDirs = (new File(procfsDir)).list();
     List<String> processList = new ArrayList<String>();
 
@@ -541,40 +583,37 @@ private List<String> getProcessList() {
    */
   private static ProcessInfo constructProcessInfo(ProcessInfo pinfo,
                                                     String procfsDir) {
-    ProcessInfo ret = null;
-    // Read "procfsDir/<pid>/stat" file - typically /proc/<pid>/stat
+    String str = readStatFile(pinfo.getPid(), procfsDir);
+    if (str == null || !parseStatLine(pinfo, str)) {
+      return null;
+    }
+    return pinfo;
+  }
+
+  /**
+   * Read "procfsDir/&lt;pid&gt;/stat", typically /proc/&lt;pid&gt;/stat.
+   *
+   * @return the single line of the stat file, null on errors.
+   */
+  private static String readStatFile(String pid, String procfsDir) {
     BufferedReader in = null;
     InputStreamReader fReader = null;
     try {
-      File pidDir = new File(procfsDir, pinfo.getPid());
+      File pidDir = new File(procfsDir, pid);
       fReader = new InputStreamReader(
           new FileInputStream(
               new File(pidDir, PROCFS_STAT_FILE)), Charset.forName("UTF-8"));
       in = new BufferedReader(fReader);
     } catch (FileNotFoundException f) {
       // The process vanished in the interim!
-      return ret;
+      return null;
     }
 
-    ret = pinfo;
+    String str = null;
     try {
-      String str = in.readLine(); // only one line
-      Matcher m = PROCFS_STAT_FILE_FORMAT.matcher(str);
-      boolean mat = m.find();
-      if (mat) {
-        // Set (name) (ppid) (pgrpId) (session) (utime) (stime) (vsize) (rss)
-        pinfo.updateProcessInfo(m.group(2), m.group(3),
-                Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)),
-                Long.parseLong(m.group(7)), new BigInteger(m.group(8)),
-                Long.parseLong(m.group(10)), Long.parseLong(m.group(11)));
-      } else {
-        LOG.warn("Unexpected: procfs stat file is not in the expected format"
-            + " for process with pid " + pinfo.getPid());
-        ret = null;
-      }
+      str = in.readLine(); // only one line
     } catch (IOException io) {
       LOG.warn("Error reading the stream " + io);
-      ret = null;
     } finally {
       // Close the streams
       try {
@@ -588,9 +627,103 @@ private static ProcessInfo constructProcessInfo(ProcessInfo pinfo,
         LOG.warn("Error closing the stream " + fReader);
       }
     }
+    return str;
+  }
+
+  private static boolean parseStatLine(ProcessInfo pinfo, String str) {
+    Matcher m = PROCFS_STAT_FILE_FORMAT.matcher(str);
+    if (m.find()) {
+      // Set (name) (ppid) (pgrpId) (session) (utime) (stime) (vsize) (rss)
+      pinfo.updateProcessInfo(m.group(2), m.group(3),
+              Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)),
+              Long.parseLong(m.group(7)), new BigInteger(m.group(8)),
+              Long.parseLong(m.group(10)), Long.parseLong(m.group(11)));
+      return true;
+    }
+    LOG.warn("Unexpected: procfs stat file is not in the expected format"
+        + " for process with pid " + pinfo.getPid());
+    return false;
+  }
+
+  /**
+   * Add each process to its parent.
+   */
+  private static void linkChildren(Map<String, ProcessInfo> allProcessInfo) {
+    for (Map.Entry<String, ProcessInfo> entry : allProcessInfo.entrySet()) {
+      String pID = entry.getKey();
+      if (!pID.equals("1")) {
+        ProcessInfo pInfo = entry.getValue();
+        String ppid = pInfo.getPpid();
+        // If parent is init and process is not session leader,
+        // attach to sessionID
+        if (ppid.equals("1")) {
+            String sid = pInfo.getSessionId().toString();
+            if (!pID.equals(sid)) {
+               ppid = sid;
+            }
+        }
+        ProcessInfo parentPInfo = allProcessInfo.get(ppid);
+        if (parentPInfo != null) {
+          parentPInfo.addChild(pInfo);
+        }
+      }
+    }
+  }
+
+  /**
+   * Parsed stat files of the processes under a procfs directory, with each
+   * process linked to its children, taken for the trees rooted at the given
+   * pids. When the shared scan is enabled the trees of a NodeManager
+   * use one snapshot per monitoring interval instead of each scanning procfs
+   * again.
+   */
+  private static final class ProcfsSnapshot {
+    private final long scanTime;
+    private final Set<String> roots;
+    private final Map<String, String> statLines =
+        new HashMap<String, String>();
+    private final Map<String, ProcessInfo> processes =
+        new HashMap<String, ProcessInfo>();
+
+    private ProcfsSnapshot(long scanTime, Set<String> roots) {
+      this.scanTime = scanTime;
+      this.roots = new HashSet<String>(roots);
+    }
 
-    return ret;
+    /**
+     * Scan procfs for the trees rooted at the given pids. The stat file of
+     * every process is read, as a pid may have been reused since the previous
+     * snapshot; stat lines that did not change since then are not parsed
+     * again.
+     */
+    static ProcfsSnapshot scan(String procfsDir, long now,
+        ProcfsSnapshot previous, Set<String> roots) {
+      ProcfsSnapshot snapshot = new ProcfsSnapshot(now, roots);
+      for (String proc : getProcessList(procfsDir)) {
+        String statLine = readStatFile(proc, procfsDir);
+        if (statLine == null) {
+          continue;
+        }
+        ProcessInfo pInfo;
+        ProcessInfo oldInfo =
+            previous == null ? null : previous.processes.get(proc);
+        if (oldInfo != null
+            && statLine.equals(previous.statLines.get(proc))) {
+          pInfo = oldInfo.copyStat();
+        } else {
+          pInfo = new ProcessInfo(proc);
+          if (!parseStatLine(pInfo, statLine)) {
+            continue;
+          }
+        }
+        snapshot.statLines.put(proc, statLine);
+        snapshot.processes.put(proc, pInfo);
+      }
+      linkChildren(snapshot.processes);
+      return snapshot;
+    }
   }
+
   /**
    * Returns a string printing PIDs of process present in the
    * ProcfsBasedProcessTree. Output format : [pid pid ..]
@@ -702,6 +835,17 @@ public void updateProcessInfo(String name, String ppid, Integer pgrpId,
       this.rssmemPage = rssmem;
     }
 
+    /**
+     * @return a new ProcessInfo with the stat fields of this one, but no age,
+     * jiffies or children.
+     */
+    public ProcessInfo copyStat() {
+      ProcessInfo copy = new ProcessInfo(pid);
+      copy.updateProcessInfo(name, ppid, pgrpId, sessionId, utime, stime,
+          vmem, rssmemPage);
+      return copy;
+    }
+
     public void updateJiffy(ProcessInfo oldInfo) {
       if (oldInfo == null) {
         BigInteger sum = this.stime.add(BigInteger.valueOf(this.utime));
@@ -28,8 +28,11 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -60,18 +63,22 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileContext;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalDirAllocator;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.LocalResourceType;
 import org.apache.hadoop.yarn.api.records.LocalResourceVisibility;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.factories.RecordFactory;
 import org.apache.hadoop.yarn.factory.providers.RecordFactoryProvider;
 import org.junit.AfterClass;
@@ -452,6 +459,119 @@ public void testDownload() throws IOException, URISyntaxException,
     }
   }
 
+  @Test (timeout=10000)
+  public void testDownloadInChunks() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(CommonConfigurationKeys.FS_PERMISSIONS_UMASK_KEY, "077");
+    conf.setInt(YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_THREADS, 3);
+    conf.setLong(YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_SIZE, 4096);
+    conf.setClass("fs." + UncheckedFileSystem.SCHEME + ".impl",
+        UncheckedFileSystem.class, FileSystem.class);
+    FileContext files = FileContext.getLocalFSFileContext(conf);
+    final Path basedir = files.makeQualified(new Path("target",
+      TestFSDownload.class.getSimpleName()));
+    files.mkdir(basedir, null, true);
+    conf.setStrings(TestFSDownload.class.getName(), basedir.toString());
+
+    Random rand = new Random();
+    long sharedSeed = rand.nextLong();
+    rand.setSeed(sharedSeed);
+    System.out.println("SEED: " + sharedSeed);
+
+    // not a multiple of the chunk size, so the last chunk is short
+    int size = 4096 * 5 + 123;
+    Path p = new Path(basedir, "chunked");
+    LocalResource rsrc =
+        createFile(files, p, size, rand, LocalResourceVisibility.PRIVATE);
+    // read the source through a file system without .crc files
+    rsrc.setResource(ConverterUtils.getYarnUrlFromPath(
+        new Path(UncheckedFileSystem.SCHEME, null, p.toUri().getPath())));
+    Path destPath = new Path(basedir,
+        Long.toString(uniqueNumberGenerator.incrementAndGet()));
+    FSDownload fsd =
+        new FSDownload(files, UserGroupInformation.getCurrentUser(), conf,
+            destPath, rsrc);
+    UncheckedFileSystem.opens.set(0);
+    Path localized = fsd.call();
+
+    // one stream for each chunk
+    assertEquals(6, UncheckedFileSystem.opens.get());
+    assertEquals(size, files.getFileStatus(localized).getLen());
+    Assert.assertTrue("Localized file does not match the source",
+        Arrays.equals(readFile(files, p, size),
+            readFile(files, localized, size)));
+  }
+
+  @Test (timeout=10000)
+  public void testDownloadChecksummedFile() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_THREADS, 3);
+    conf.setLong(YarnConfiguration.NM_LOCALIZER_FETCH_CHUNK_SIZE, 4096);
+    FileContext files = FileContext.getLocalFSFileContext(conf);
+    final Path basedir = files.makeQualified(new Path("target",
+      TestFSDownload.class.getSimpleName()));
+    files.mkdir(basedir, null, true);
+    conf.setStrings(TestFSDownload.class.getName(), basedir.toString());
+
+    int size = 4096 * 5 + 123;
+    Path p = new Path(basedir, "checksummed");
+    LocalResource rsrc = createFile(files, p, size, new Random(),
+        LocalResourceVisibility.PRIVATE);
+    // corrupt the source behind its .crc file, keeping its timestamp
+    File src = new File(p.toUri().getPath());
+    RandomAccessFile raf = new RandomAccessFile(src, "rw");
+    try {
+      raf.seek(size - 10);
+      int b = raf.read();
+      raf.seek(size - 10);
+      raf.write(~b);
+    } finally {
+      raf.close();
+    }
+    assertTrue(src.setLastModified(rsrc.getTimestamp()));
+
+    Path destPath = new Path(basedir,
+        Long.toString(uniqueNumberGenerator.incrementAndGet()));
+    FSDownload fsd =
+        new FSDownload(files, UserGroupInformation.getCurrentUser(), conf,
+            destPath, rsrc);
+    try {
+      fsd.call();
+      Assert.fail("Corrupt resource was localized");
+    } catch (ChecksumException e) {
+      // the copy still checks the source against its .crc file
+    }
+  }
+
+  /** The local file system without .crc files, counting opened streams. */
+  public static class UncheckedFileSystem extends RawLocalFileSystem {
+    static final String SCHEME = "unchecked";
+    static final AtomicInteger opens = new AtomicInteger();
+
+    @Override
+    public URI getUri() {
+      return URI.create(SCHEME + ":///");
+    }
+
+    @Override
+    public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+      opens.incrementAndGet();
+      return super.open(f, bufferSize);
+    }
+  }
+
+  private static byte[] readFile(FileContext files, Path p, int len)
+      throws IOException {
+    byte[] bytes = new byte[len];
+    FSDataInputStream in = files.open(p);
+    try {
+      in.readFully(bytes);
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
   private void downloadWithFileType(TEST_FILE_TYPE fileType) throws IOException, 
       URISyntaxException, InterruptedException{
     Configuration conf = new Configuration();
@@ -546,6 +546,157 @@ public void testMemForOlderProcesses() throws IOException {
     testMemForOlderProcesses(true);
   }
 
+  /**
+   * Tests that process trees with the shared scan enabled read procfs once
+   * per monitoring interval.
+   *
+   * @throws IOException
+   *           if there was a problem setting up the fake procfs directories or
+   *           files.
+   */
+  @Test(timeout = 30000)
+  public void testSharedProcfsScan() throws IOException {
+    String[] pids = { "100", "200", "300", "400" };
+    ControlledClock testClock = new ControlledClock(new SystemClock());
+    testClock.setTime(0);
+    // create the fake procfs root directory.
+    File procfsRootDir = new File(TEST_ROOT_DIR, "proc");
+
+    try {
+      setupProcfsRootDir(procfsRootDir);
+      setupPidDirs(procfsRootDir, pids);
+
+      // two trees: 100 with child 200, and 300 with child 400.
+      ProcessStatInfo[] procInfos = new ProcessStatInfo[4];
+      procInfos[0] =
+          new ProcessStatInfo(new String[] { "100", "proc1", "1", "100", "100",
+              "100000", "100" });
+      procInfos[1] =
+          new ProcessStatInfo(new String[] { "200", "proc2", "100", "100",
+              "100", "200000", "200" });
+      procInfos[2] =
+          new ProcessStatInfo(new String[] { "300", "proc3", "1", "300", "300",
+              "300000", "300" });
+      procInfos[3] =
+          new ProcessStatInfo(new String[] { "400", "proc4", "300", "300",
+              "300", "400000", "400" });
+      ProcessTreeSmapMemInfo[] memInfo = new ProcessTreeSmapMemInfo[4];
+      for (int i = 0; i < pids.length; i++) {
+        memInfo[i] = new ProcessTreeSmapMemInfo(pids[i]);
+      }
+      createMemoryMappingInfo(memInfo);
+      writeStatFiles(procfsRootDir, pids, procInfos, memInfo);
+
+      Configuration conf = new Configuration();
+      conf.setBoolean(YarnConfiguration.PROCFS_SHARED_SCAN_ENABLED, true);
+      conf.setInt(YarnConfiguration.NM_CONTAINER_MON_INTERVAL_MS, 1000);
+      ProcfsBasedProcessTree tree1 =
+          createProcessTree("100", procfsRootDir.getAbsolutePath(), testClock);
+      tree1.setConf(conf);
+      ProcfsBasedProcessTree tree2 =
+          createProcessTree("300", procfsRootDir.getAbsolutePath(), testClock);
+      tree2.setConf(conf);
+
+      tree1.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 300000L,
+          tree1.getVirtualMemorySize());
+
+      // 400 exits, but tree2 still uses the scan of the current interval.
+      FileUtil.fullyDelete(new File(procfsRootDir, "400"));
+      tree2.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 700000L,
+          tree2.getVirtualMemorySize());
+
+      // the next interval scans procfs again.
+      testClock.setTime(1000);
+      tree2.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 300000L,
+          tree2.getVirtualMemorySize());
+      tree1.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 300000L,
+          tree1.getVirtualMemorySize());
+      Assert.assertEquals("Virtual memory of old processes does not match",
+          300000L, tree1.getVirtualMemorySize(1));
+    } finally {
+      FileUtil.fullyDelete(procfsRootDir);
+    }
+  }
+
+  /**
+   * Tests that a scan reads the stat files of the processes in the tree and
+   * of the new processes only.
+   *
+   * @throws IOException
+   *           if there was a problem setting up the fake procfs directories or
+   *           files.
+   */
+  @Test(timeout = 30000)
+  public void testScanOfTreeProcesses() throws IOException {
+    String[] pids = { "100", "200", "300" };
+    // create the fake procfs root directory.
+    File procfsRootDir = new File(TEST_ROOT_DIR, "proc");
+
+    try {
+      setupProcfsRootDir(procfsRootDir);
+      setupPidDirs(procfsRootDir, pids);
+
+      // 100 with child 200 is the tree, 300 is not in it.
+      ProcessStatInfo[] procInfos = new ProcessStatInfo[3];
+      procInfos[0] =
+          new ProcessStatInfo(new String[] { "100", "proc1", "1", "100", "100",
+              "100000", "100" });
+      procInfos[1] =
+          new ProcessStatInfo(new String[] { "200", "proc2", "100", "100",
+              "100", "200000", "200" });
+      procInfos[2] =
+          new ProcessStatInfo(new String[] { "300", "proc3", "1", "300", "300",
+              "300000", "300" });
+      ProcessTreeSmapMemInfo[] memInfo = new ProcessTreeSmapMemInfo[3];
+      for (int i = 0; i < pids.length; i++) {
+        memInfo[i] = new ProcessTreeSmapMemInfo(pids[i]);
+      }
+      createMemoryMappingInfo(memInfo);
+      writeStatFiles(procfsRootDir, pids, procInfos, memInfo);
+
+      ProcfsBasedProcessTree tree =
+          createProcessTree("100", procfsRootDir.getAbsolutePath(),
+              new SystemClock());
+      tree.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 300000L,
+          tree.getVirtualMemorySize());
+
+      // 200 grows and forks 400, and 300 exits with its pid reused by a
+      // new child of 200.
+      String[] newPids = { "200", "300", "400" };
+      setupPidDirs(procfsRootDir, new String[] { "400" });
+      ProcessStatInfo[] newProcInfos = new ProcessStatInfo[3];
+      newProcInfos[0] =
+          new ProcessStatInfo(new String[] { "200", "proc2", "100", "100",
+              "100", "250000", "250" });
+      newProcInfos[1] =
+          new ProcessStatInfo(new String[] { "300", "proc5", "200", "100",
+              "100", "300000", "300" });
+      newProcInfos[2] =
+          new ProcessStatInfo(new String[] { "400", "proc4", "200", "100",
+              "100", "400000", "400" });
+      ProcessTreeSmapMemInfo[] newMemInfo = new ProcessTreeSmapMemInfo[3];
+      for (int i = 0; i < newPids.length; i++) {
+        newMemInfo[i] = new ProcessTreeSmapMemInfo(newPids[i]);
+      }
+      createMemoryMappingInfo(newMemInfo);
+      writeStatFiles(procfsRootDir, newPids, newProcInfos, newMemInfo);
+
+      // 300 was not in the tree, but its stat file is read again.
+      tree.updateProcessTree();
+      Assert.assertEquals("Virtual memory does not match", 1050000L,
+          tree.getVirtualMemorySize());
+      Assert.assertTrue("300 should be in the tree", tree.contains("300"));
+      Assert.assertTrue("400 should be in the tree", tree.contains("400"));
+    } finally {
+      FileUtil.fullyDelete(procfsRootDir);
+    }
+  }
+
   @SuppressWarnings("deprecation")
   private void testMemForOlderProcesses(boolean smapEnabled) throws IOException {
     // initial list of processes
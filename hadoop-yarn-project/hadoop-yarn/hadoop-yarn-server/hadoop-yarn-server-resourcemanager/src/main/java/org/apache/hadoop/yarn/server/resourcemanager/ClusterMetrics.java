@@ -30,6 +30,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import com.google.common.annotations.VisibleForTesting;
 
@@ -46,6 +47,12 @@ public class ClusterMetrics {
   @Metric("# of Rebooted NMs") MutableGaugeInt numRebootedNMs;
   @Metric("AM container launch delay") MutableRate aMLaunchDelay;
   @Metric("AM register delay") MutableRate aMRegisterDelay;
+  @Metric("Time to load RM state on recovery in ms")
+  MutableGaugeLong rmStateLoadTime;
+  @Metric("Time to recover RM secret managers in ms")
+  MutableGaugeLong rmSecretManagerRecoveryTime;
+  @Metric("Time to recover applications in ms")
+  MutableGaugeLong rmAppRecoveryTime;
 
   private static final MetricsInfo RECORD_INFO = info("ClusterMetrics",
   "Metrics for the Yarn Cluster");
@@ -158,4 +165,28 @@ public void addAMRegisterDelay(long delay) {
     aMRegisterDelay.add(delay);
   }
 
+  public long getRMStateLoadTime() {
+    return rmStateLoadTime.value();
+  }
+
+  public void setRMStateLoadTime(long time) {
+    rmStateLoadTime.set(time);
+  }
+
+  public long getRMSecretManagerRecoveryTime() {
+    return rmSecretManagerRecoveryTime.value();
+  }
+
+  public void setRMSecretManagerRecoveryTime(long time) {
+    rmSecretManagerRecoveryTime.set(time);
+  }
+
+  public long getRMAppRecoveryTime() {
+    return rmAppRecoveryTime.value();
+  }
+
+  public void setRMAppRecoveryTime(long time) {
+    rmAppRecoveryTime.set(time);
+  }
+
 }
@@ -18,6 +18,7 @@
 package org.apache.hadoop.yarn.server.resourcemanager;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -63,8 +64,19 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class manages the list of applications for the resource manager. 
@@ -78,6 +90,12 @@ public class RMAppManager implements EventHandler<RMAppManagerEvent>,
   private int maxCompletedAppsInStateStore;
   protected int completedAppsInStateStore = 0;
   private LinkedList<ApplicationId> completedApps = new LinkedList<ApplicationId>();
+  // Completed apps recovered in parallel; their APP_COMPLETED events may
+  // arrive out of order and are put back in application id order.
+  private final Set<ApplicationId> recoveredCompletedApps =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<ApplicationId, Boolean>());
+  private final int recoveryThreads;
 
   private final RMContext rmContext;
   private final ApplicationMasterService masterService;
@@ -105,6 +123,9 @@ public RMAppManager(RMContext context,
       this.maxCompletedAppsInStateStore = this.maxCompletedAppsInMemory;
     }
     this.authorizer = YarnAuthorizationProvider.getInstance(conf);
+    this.recoveryThreads = Math.max(1,
+        conf.getInt(YarnConfiguration.RM_RECOVERY_APP_THREADS,
+            YarnConfiguration.DEFAULT_RM_RECOVERY_APP_THREADS));
   }
 
   /**
@@ -215,12 +236,34 @@ protected synchronized void finishApplication(ApplicationId applicationId) {
         rmContext.getDelegationTokenRenewer().applicationFinished(applicationId);
       }
       
-      completedApps.add(applicationId);
+      if (recoveredCompletedApps.remove(applicationId)) {
+        addRecoveredCompletedApp(applicationId);
+      } else {
+        completedApps.add(applicationId);
+      }
       completedAppsInStateStore++;
       writeAuditLog(applicationId);
     }
   }
 
+  /**
+   * Insert an app recovered in a final state so that recovered apps stay
+   * ordered by application id, as they would with serial recovery. Events
+   * only arrive out of order by about the number of recovery threads, so the
+   * scan from the tail is short.
+   */
+  private void addRecoveredCompletedApp(ApplicationId applicationId) {
+    ListIterator<ApplicationId> it =
+        completedApps.listIterator(completedApps.size());
+    while (it.hasPrevious()) {
+      if (it.previous().compareTo(applicationId) < 0) {
+        it.next();
+        break;
+      }
+    }
+    it.add(applicationId);
+  }
+
   protected void writeAuditLog(ApplicationId appId) {
     RMApp app = rmContext.getRMApps().get(appId);
     String operation = "UNKONWN";
@@ -463,11 +506,73 @@ public void recover(RMState state) throws Exception {
     Map<ApplicationId, ApplicationStateData> appStates =
         state.getApplicationState();
     LOG.info("Recovering " + appStates.size() + " applications");
+    if (recoveryThreads <= 1 || appStates.size() <= 1) {
+      for (ApplicationStateData appState : appStates.values()) {
+        recoverApplication(appState, state);
+      }
+      return;
+    }
+
+    // Completed apps never reach the scheduler, so they can be rebuilt
+    // concurrently. Apps that are still running are added to the scheduler
+    // synchronously during recovery and are replayed serially afterwards, in
+    // application id order.
+    List<ApplicationStateData> runningApps =
+        new ArrayList<ApplicationStateData>();
+    List<ApplicationStateData> completedAppStates =
+        new ArrayList<ApplicationStateData>();
     for (ApplicationStateData appState : appStates.values()) {
+      if (appState.getState() == null) {
+        runningApps.add(appState);
+      } else {
+        completedAppStates.add(appState);
+      }
+    }
+    LOG.info("Recovering " + completedAppStates.size()
+        + " completed applications using " + recoveryThreads + " threads");
+    recoverApplicationsInParallel(completedAppStates, state);
+    for (ApplicationStateData appState : runningApps) {
       recoverApplication(appState, state);
     }
   }
 
+  private void recoverApplicationsInParallel(
+      List<ApplicationStateData> appStates, final RMState state)
+      throws Exception {
+    for (ApplicationStateData appState : appStates) {
+      recoveredCompletedApps.add(
+          appState.getApplicationSubmissionContext().getApplicationId());
+    }
+    ExecutorService recoveryPool = Executors.newFixedThreadPool(
+        recoveryThreads, new ThreadFactoryBuilder()
+            .setNameFormat("RMAppRecovery #%d").setDaemon(true).build());
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final ApplicationStateData appState : appStates) {
+        futures.add(recoveryPool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            recoverApplication(appState, state);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Exception) {
+            throw (Exception) cause;
+          }
+          throw e;
+        }
+      }
+    } finally {
+      recoveryPool.shutdownNow();
+    }
+  }
+
   @Override
   public void handle(RMAppManagerEvent event) {
     ApplicationId applicationId = event.getApplicationId();
@@ -107,6 +107,7 @@
 import java.io.PrintStream;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -506,8 +507,19 @@ protected void serviceInit(Configuration configuration) throws Exception {
           new ApplicationAttemptEventDispatcher(rmContext));
 
       // Register event handler for RmNodes
-      rmDispatcher.register(
-          RMNodeEventType.class, new NodeEventDispatcher(rmContext));
+      EventHandler<RMNodeEvent> nodeEventDispatcher =
+          new NodeEventDispatcher(rmContext);
+      int nodeEventDispatcherPoolSize = conf.getInt(
+          YarnConfiguration.RM_NODE_EVENT_DISPATCHER_POOL_SIZE,
+          YarnConfiguration.DEFAULT_RM_NODE_EVENT_DISPATCHER_POOL_SIZE);
+      if (nodeEventDispatcherPoolSize > 0) {
+        ShardedNodeEventDispatcher shardedNodeEventDispatcher =
+            new ShardedNodeEventDispatcher(nodeEventDispatcher,
+                nodeEventDispatcherPoolSize);
+        addService(shardedNodeEventDispatcher);
+        nodeEventDispatcher = shardedNodeEventDispatcher;
+      }
+      rmDispatcher.register(RMNodeEventType.class, nodeEventDispatcher);
 
       nmLivelinessMonitor = createNMLivelinessMonitor();
       addService(nmLivelinessMonitor);
@@ -600,7 +612,10 @@ protected void serviceStart() throws Exception {
           if (rmContext.isWorkPreservingRecoveryEnabled()) {
             rmContext.setEpoch(rmStore.getAndIncrementEpoch());
           }
+          long loadStart = System.currentTimeMillis();
           RMState state = rmStore.loadState();
+          ClusterMetrics.getMetrics().setRMStateLoadTime(
+              System.currentTimeMillis() - loadStart);
           recover(state);
           LOG.info("Recovery ended");
         } catch (Exception e) {
@@ -952,6 +967,38 @@ public void handle(RMNodeEvent event) {
     }
   }
 
+  /**
+   * Hands RMNode events off to a pool of dispatchers so that node heartbeats
+   * are not processed on the central RM dispatcher thread. Events are sharded
+   * by node id, so all the events of one node are handled in order by one
+   * thread.
+   */
+  @Private
+  public static final class ShardedNodeEventDispatcher extends
+      CompositeService implements EventHandler<RMNodeEvent> {
+
+    private final List<AsyncDispatcher> dispatchers =
+        new ArrayList<AsyncDispatcher>();
+
+    public ShardedNodeEventDispatcher(EventHandler<RMNodeEvent> handler,
+        int num) {
+      super(ShardedNodeEventDispatcher.class.getName());
+      for (int i = 0; i < num; ++i) {
+        AsyncDispatcher dispatcher = new AsyncDispatcher();
+        dispatcher.register(RMNodeEventType.class, handler);
+        dispatchers.add(dispatcher);
+        addService(dispatcher);
+      }
+    }
+
+    @Override
+    public void handle(RMNodeEvent event) {
+      int index = (event.getNodeId().hashCode() & Integer.MAX_VALUE)
+          % dispatchers.size();
+      dispatchers.get(index).getEventHandler().handle(event);
+    }
+  }
+
   protected void startWepApp() {
 
     Configuration conf = getConfig();
@@ -1252,14 +1299,21 @@ WebApp getWebapp() {
 
   @Override
   public void recover(RMState state) throws Exception {
+    ClusterMetrics metrics = ClusterMetrics.getMetrics();
+    long start = System.currentTimeMillis();
+
     // recover RMdelegationTokenSecretManager
     rmContext.getRMDelegationTokenSecretManager().recover(state);
 
     // recover AMRMTokenSecretManager
     rmContext.getAMRMTokenSecretManager().recover(state);
+    long secretManagersRecovered = System.currentTimeMillis();
+    metrics.setRMSecretManagerRecoveryTime(secretManagersRecovered - start);
 
     // recover applications
     rmAppManager.recover(state);
+    metrics.setRMAppRecoveryTime(
+        System.currentTimeMillis() - secretManagersRecovered);
 
     setSchedulerRecoveryStartAndWaitTime(state, conf);
   }
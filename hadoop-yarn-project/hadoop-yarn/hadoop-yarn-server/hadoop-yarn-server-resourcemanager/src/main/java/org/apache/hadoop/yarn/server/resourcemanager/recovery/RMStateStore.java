@@ -49,6 +49,7 @@
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.event.AsyncDispatcher;
 import org.apache.hadoop.yarn.event.Dispatcher;
+import org.apache.hadoop.yarn.event.Event;
 import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.security.client.RMDelegationTokenIdentifier;
 import org.apache.hadoop.yarn.server.records.Version;
@@ -1012,7 +1013,7 @@ private boolean notifyStoreOperationFailedInternal(
    * @param event App event containing the app id and event type
    */
   private void notifyApplication(RMAppEvent event) {
-    rmDispatcher.getEventHandler().handle(event);
+    notifyStoreOperationDone(event);
   }
   
   @SuppressWarnings("unchecked")
@@ -1023,6 +1024,19 @@ private void notifyApplication(RMAppEvent event) {
    * id and event type
    */
   private void notifyApplicationAttempt(RMAppAttemptEvent event) {
+    notifyStoreOperationDone(event);
+  }
+
+  @SuppressWarnings("unchecked")
+  /**
+   * This method is called once a blocking store call has returned, with the
+   * event telling the application or attempt that its state is saved.
+   * Derived classes that queue writes instead of performing them in the
+   * blocking call override this to hold the event back until the queued
+   * write is durable.
+   * @param event App or app attempt event to send to the RM dispatcher
+   */
+  protected void notifyStoreOperationDone(Event event) {
     rmDispatcher.getEventHandler().handle(event);
   }
   
@@ -28,7 +28,9 @@
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -40,6 +42,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.security.token.delegation.DelegationKey;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.ZKUtil;
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
@@ -115,6 +118,26 @@ public class ZKRMStateStore extends RMStateStore {
   private List<ACL> zkAcl;
   private List<ZKUtil.ZKAuthInfo> zkAuths;
 
+  /**
+   * Application and attempt writes waiting to be committed in one multi
+   * transaction, and the completion events to send once they are. All
+   * guarded by the store monitor.
+   */
+  private boolean batchEnabled;
+  private int batchMaxOps;
+  private int batchMaxBytes;
+  private long batchMaxLatencyMs;
+  private final List<PendingWrite> pendingOps = new ArrayList<PendingWrite>();
+  private final Set<String> pendingCreatePaths = new HashSet<String>();
+  private final List<org.apache.hadoop.yarn.event.Event> pendingNotifications =
+      new ArrayList<org.apache.hadoop.yarn.event.Event>();
+  private int pendingBytes;
+  private long pendingBatchStartTime;
+  private boolean flushingBatch;
+  private Thread batchFlusherThread;
+
+  private int loadPipelineDepth;
+
   class ZKSyncOperationCallback implements AsyncCallback.VoidCallback {
     @Override
     public void processResult(int rc, String path, Object ctx){
@@ -256,6 +279,25 @@ public synchronized void initInternal(Configuration conf) throws Exception {
     zkAcl = RMZKUtils.getZKAcls(conf);
     zkAuths = RMZKUtils.getZKAuths(conf);
 
+    batchEnabled =
+        conf.getBoolean(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_ENABLED,
+            YarnConfiguration.DEFAULT_ZK_RM_STATE_STORE_BATCH_ENABLED);
+    batchMaxOps =
+        conf.getInt(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_OPS,
+            YarnConfiguration.DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_OPS);
+    batchMaxBytes =
+        conf.getInt(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_BYTES,
+            YarnConfiguration.DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_BYTES);
+    batchMaxLatencyMs =
+        conf.getLong(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS,
+            YarnConfiguration.DEFAULT_ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS);
+    loadPipelineDepth =
+        conf.getInt(YarnConfiguration.ZK_RM_STATE_STORE_LOAD_PIPELINE_DEPTH,
+            YarnConfiguration.DEFAULT_ZK_RM_STATE_STORE_LOAD_PIPELINE_DEPTH);
+    Preconditions.checkArgument(batchMaxOps > 0 && batchMaxBytes > 0
+        && batchMaxLatencyMs > 0 && loadPipelineDepth > 0,
+        "ZK state store batch and load limits must be positive");
+
     zkRootNodePath = getNodePath(znodeWorkingPath, ROOT_ZNODE_NAME);
     rmAppRoot = getNodePath(zkRootNodePath, RM_APP_ROOT);
 
@@ -315,6 +357,10 @@ public synchronized void startInternal() throws Exception {
     createRootDir(dtSequenceNumberPath);
     createRootDir(amrmTokenSecretManagerRoot);
     syncInternal(zkRootNodePath);
+    if (batchEnabled) {
+      batchFlusherThread = new BatchFlusherThread();
+      batchFlusherThread.start();
+    }
   }
 
   private void createRootDir(final String rootPath) throws Exception {
@@ -408,6 +454,20 @@ protected synchronized void closeInternal() throws Exception {
       verifyActiveStatusThread.interrupt();
       verifyActiveStatusThread.join(1000);
     }
+    if (batchFlusherThread != null) {
+      // It only runs holding the store monitor, which is held here, so it
+      // sees the interrupt as soon as it gets it and cannot be joined.
+      batchFlusherThread.interrupt();
+      batchFlusherThread = null;
+    }
+    if (!pendingOps.isEmpty() && !isFencedState()) {
+      try {
+        flushPendingBatch();
+      } catch (Exception e) {
+        LOG.error("Failed to write " + pendingOps.size()
+            + " batched operations while closing the store", e);
+      }
+    }
     closeZkClients();
   }
 
@@ -582,48 +642,57 @@ private void loadRMDelegationTokenState(RMState rmState) throws Exception {
 
   private synchronized void loadRMAppState(RMState rmState) throws Exception {
     List<String> childNodes = getChildrenWithRetries(rmAppRoot, false);
+    List<ApplicationId> appIds = new ArrayList<ApplicationId>();
+    List<String> appPaths = new ArrayList<String>();
     for (String childNodeName : childNodes) {
-      String childNodePath = getNodePath(rmAppRoot, childNodeName);
-      byte[] childData = getDataWithRetries(childNodePath, false);
       if (childNodeName.startsWith(ApplicationId.appIdStrPrefix)) {
-        // application
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Loading application from znode: " + childNodeName);
-        }
-        ApplicationId appId = ConverterUtils.toApplicationId(childNodeName);
-        ApplicationStateDataPBImpl appState =
-            new ApplicationStateDataPBImpl(
-                ApplicationStateDataProto.parseFrom(childData));
-        if (!appId.equals(
-            appState.getApplicationSubmissionContext().getApplicationId())) {
-          throw new YarnRuntimeException("The child node name is different " +
-              "from the application id");
-        }
-        rmState.appState.put(appId, appState);
-        loadApplicationAttemptState(appState, appId);
+        appIds.add(ConverterUtils.toApplicationId(childNodeName));
+        appPaths.add(getNodePath(rmAppRoot, childNodeName));
       } else {
         LOG.info("Unknown child node with name: " + childNodeName);
       }
     }
-  }
 
-  private void loadApplicationAttemptState(ApplicationStateData appState,
-      ApplicationId appId)
-      throws Exception {
-    String appPath = getNodePath(rmAppRoot, appId.toString());
-    List<String> attempts = getChildrenWithRetries(appPath, false);
-    for (String attemptIDStr : attempts) {
-      if (attemptIDStr.startsWith(ApplicationAttemptId.appAttemptIdStrPrefix)) {
-        String attemptPath = getNodePath(appPath, attemptIDStr);
-        byte[] attemptData = getDataWithRetries(attemptPath, false);
-
-        ApplicationAttemptStateDataPBImpl attemptState =
-            new ApplicationAttemptStateDataPBImpl(
-                ApplicationAttemptStateDataProto.parseFrom(attemptData));
-
-        appState.attempts.put(attemptState.getAttemptId(), attemptState);
+    // The app znodes and their attempt lists are read with pipelined
+    // asynchronous calls instead of one round trip per znode.
+    List<byte[]> appData = new PipelinedGetData().readAll(appPaths);
+    List<List<String>> appChildren =
+        new PipelinedGetChildren().readAll(appPaths);
+
+    List<ApplicationStateData> attemptOwners =
+        new ArrayList<ApplicationStateData>();
+    List<String> attemptPaths = new ArrayList<String>();
+    for (int i = 0; i < appIds.size(); i++) {
+      ApplicationId appId = appIds.get(i);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Loading application from znode: " + appPaths.get(i));
+      }
+      ApplicationStateDataPBImpl appState =
+          new ApplicationStateDataPBImpl(
+              ApplicationStateDataProto.parseFrom(appData.get(i)));
+      if (!appId.equals(
+          appState.getApplicationSubmissionContext().getApplicationId())) {
+        throw new YarnRuntimeException("The child node name is different " +
+            "from the application id");
+      }
+      rmState.appState.put(appId, appState);
+      for (String attemptIDStr : appChildren.get(i)) {
+        if (attemptIDStr.startsWith(
+            ApplicationAttemptId.appAttemptIdStrPrefix)) {
+          attemptOwners.add(appState);
+          attemptPaths.add(getNodePath(appPaths.get(i), attemptIDStr));
+        }
       }
     }
+
+    List<byte[]> attemptData = new PipelinedGetData().readAll(attemptPaths);
+    for (int i = 0; i < attemptPaths.size(); i++) {
+      ApplicationAttemptStateDataPBImpl attemptState =
+          new ApplicationAttemptStateDataPBImpl(
+              ApplicationAttemptStateDataProto.parseFrom(attemptData.get(i)));
+      attemptOwners.get(i).attempts.put(attemptState.getAttemptId(),
+          attemptState);
+    }
     LOG.debug("Done loading applications from ZK state store");
   }
 
@@ -636,9 +705,7 @@ public synchronized void storeApplicationStateInternal(ApplicationId appId,
       LOG.debug("Storing info for app: " + appId + " at: " + nodeCreatePath);
     }
     byte[] appStateData = appStateDataPB.getProto().toByteArray();
-    createWithRetries(nodeCreatePath, appStateData, zkAcl,
-      CreateMode.PERSISTENT);
-
+    createOrBatch(nodeCreatePath, appStateData);
   }
 
   @Override
@@ -652,11 +719,7 @@ public synchronized void updateApplicationStateInternal(ApplicationId appId,
     }
     byte[] appStateData = appStateDataPB.getProto().toByteArray();
 
-    if (existsWithRetries(nodeUpdatePath, false) != null) {
-      setDataWithRetries(nodeUpdatePath, appStateData, -1);
-    } else {
-      createWithRetries(nodeUpdatePath, appStateData, zkAcl,
-        CreateMode.PERSISTENT);
+    if (!updateOrBatch(nodeUpdatePath, appStateData)) {
       LOG.debug(appId + " znode didn't exist. Created a new znode to"
           + " update the application state.");
     }
@@ -676,8 +739,7 @@ public synchronized void storeApplicationAttemptStateInternal(
           + nodeCreatePath);
     }
     byte[] attemptStateData = attemptStateDataPB.getProto().toByteArray();
-    createWithRetries(nodeCreatePath, attemptStateData, zkAcl,
-      CreateMode.PERSISTENT);
+    createOrBatch(nodeCreatePath, attemptStateData);
   }
 
   @Override
@@ -695,11 +757,7 @@ public synchronized void updateApplicationAttemptStateInternal(
     }
     byte[] attemptStateData = attemptStateDataPB.getProto().toByteArray();
 
-    if (existsWithRetries(nodeUpdatePath, false) != null) {
-      setDataWithRetries(nodeUpdatePath, attemptStateData, -1);
-    } else {
-      createWithRetries(nodeUpdatePath, attemptStateData, zkAcl,
-        CreateMode.PERSISTENT);
+    if (!updateOrBatch(nodeUpdatePath, attemptStateData)) {
       LOG.debug(appAttemptId + " znode didn't exist. Created a new znode to"
           + " update the application attempt state.");
     }
@@ -988,6 +1046,7 @@ Void run() throws KeeperException, InterruptedException {
    */
   private synchronized void doStoreMultiWithRetries(
       final List<Op> opList) throws Exception {
+    flushPendingBatch();
     final List<Op> execOpList = new ArrayList<Op>(opList.size() + 2);
     execOpList.add(createFencingNodePathOp);
     execOpList.addAll(opList);
@@ -1015,6 +1074,7 @@ private void doStoreMultiWithRetries(final Op op) throws Exception {
    */
   private synchronized void doDeleteMultiWithRetries(
       final List<Op> opList) throws Exception {
+    flushPendingBatch();
     final List<Op> execOpList = new ArrayList<Op>(opList.size() + 2);
     execOpList.add(createFencingNodePathOp);
     execOpList.addAll(opList);
@@ -1033,6 +1093,195 @@ private void doDeleteMultiWithRetries(final Op op) throws Exception {
     doDeleteMultiWithRetries(Collections.singletonList(op));
   }
 
+  /**
+   * Creates the znode, or adds the create to the pending batch when batching
+   * is enabled.
+   */
+  private synchronized void createOrBatch(String path, byte[] data)
+      throws Exception {
+    if (batchEnabled) {
+      addToBatch(new PendingWrite(path, data, true, false));
+    } else {
+      createWithRetries(path, data, zkAcl, CreateMode.PERSISTENT);
+    }
+  }
+
+  /**
+   * Sets the znode data, creating the znode if it is missing, or adds the
+   * write to the pending batch when batching is enabled.
+   * @return false if the znode was missing
+   */
+  private synchronized boolean updateOrBatch(String path, byte[] data)
+      throws Exception {
+    if (!batchEnabled) {
+      return updateWithRetries(path, data);
+    }
+    boolean exists = pendingCreatePaths.contains(path)
+        || existsWithRetries(path, false) != null;
+    addToBatch(new PendingWrite(path, data, !exists, true));
+    return exists;
+  }
+
+  /**
+   * Sets the znode data, or creates the znode if it is missing.
+   * @return false if the znode was missing
+   */
+  private synchronized boolean updateWithRetries(String path, byte[] data)
+      throws Exception {
+    if (existsWithRetries(path, false) != null) {
+      setDataWithRetries(path, data, -1);
+      return true;
+    }
+    createWithRetries(path, data, zkAcl, CreateMode.PERSISTENT);
+    return false;
+  }
+
+  private synchronized void addToBatch(PendingWrite write) throws Exception {
+    if (pendingBytes + write.data.length > batchMaxBytes) {
+      flushPendingBatch();
+    }
+    if (pendingOps.isEmpty()) {
+      pendingBatchStartTime = Time.monotonicNow();
+      // wake up the flusher
+      notifyAll();
+    }
+    pendingOps.add(write);
+    if (write.create) {
+      pendingCreatePaths.add(write.path);
+    }
+    pendingBytes += write.data.length;
+    if (pendingOps.size() >= batchMaxOps || pendingBytes >= batchMaxBytes) {
+      flushPendingBatch();
+    }
+  }
+
+  /**
+   * Holds back the completion event of a batched operation until the batch
+   * holding it has been committed. Operations that are already durable,
+   * because their batch was flushed or because they were not batched, are
+   * notified right away.
+   */
+  @Override
+  protected synchronized void notifyStoreOperationDone(
+      org.apache.hadoop.yarn.event.Event event) {
+    if (pendingOps.isEmpty()) {
+      super.notifyStoreOperationDone(event);
+    } else {
+      pendingNotifications.add(event);
+    }
+  }
+
+  /**
+   * Writes all pending batched operations in one fenced multi transaction
+   * and then sends their completion events. If the transaction fails because
+   * a znode already exists or is missing, the operations are replayed one at
+   * a time as unbatched writes. Operations stay pending until they are
+   * written, and their events until all of them are, so a failed flush is
+   * resumed by the next one.
+   */
+  @VisibleForTesting
+  synchronized void flushPendingBatch() throws Exception {
+    // the replay flushes the batch it is part of
+    if (pendingOps.isEmpty() || flushingBatch) {
+      return;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Writing batch of " + pendingOps.size() + " operations, "
+          + pendingNotifications.size() + " waiting for completion");
+    }
+    flushingBatch = true;
+    try {
+      List<Op> opList = new ArrayList<Op>(pendingOps.size());
+      for (PendingWrite write : pendingOps) {
+        opList.add(write.create
+            ? Op.create(write.path, write.data, zkAcl, CreateMode.PERSISTENT)
+            : Op.setData(write.path, write.data, -1));
+      }
+      if (doBatchMultiWithRetries(opList)) {
+        pendingOps.clear();
+      } else {
+        LOG.info("Batched transaction of " + opList.size() + " operations "
+            + "hit an existing or missing znode. Replaying them one by one.");
+        while (!pendingOps.isEmpty()) {
+          PendingWrite write = pendingOps.get(0);
+          if (write.update) {
+            updateWithRetries(write.path, write.data);
+          } else {
+            createWithRetries(write.path, write.data, zkAcl,
+                CreateMode.PERSISTENT);
+          }
+          pendingOps.remove(0);
+        }
+      }
+    } finally {
+      flushingBatch = false;
+    }
+    pendingCreatePaths.clear();
+    pendingBytes = 0;
+    List<org.apache.hadoop.yarn.event.Event> notifications =
+        new ArrayList<org.apache.hadoop.yarn.event.Event>(pendingNotifications);
+    pendingNotifications.clear();
+    for (org.apache.hadoop.yarn.event.Event event : notifications) {
+      super.notifyStoreOperationDone(event);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getPendingBatchSize() {
+    return pendingOps.size();
+  }
+
+  /**
+   * Waits until there is a pending batch and its oldest operation has waited
+   * for the configured latency, and flushes it.
+   */
+  private synchronized void awaitAndFlushPendingBatch() throws Exception {
+    while (true) {
+      if (pendingOps.isEmpty()) {
+        wait();
+      } else {
+        long waited = Time.monotonicNow() - pendingBatchStartTime;
+        if (waited >= batchMaxLatencyMs) {
+          flushPendingBatch();
+          return;
+        }
+        wait(batchMaxLatencyMs - waited);
+      }
+    }
+  }
+
+  private synchronized void restartPendingBatchWait() {
+    pendingBatchStartTime = Time.monotonicNow();
+  }
+
+  /**
+   * Helper method that creates fencing node, executes the passed batch of
+   * operations, and deletes the fencing node.
+   * @return false if the transaction was rejected because one of the
+   *         operations hit an existing or a missing znode
+   */
+  private synchronized boolean doBatchMultiWithRetries(
+      final List<Op> opList) throws Exception {
+    final List<Op> execOpList = new ArrayList<Op>(opList.size() + 2);
+    execOpList.add(createFencingNodePathOp);
+    execOpList.addAll(opList);
+    execOpList.add(deleteFencingNodePathOp);
+    Boolean committed = new ZKAction<Boolean>() {
+      @Override
+      public Boolean run() throws KeeperException, InterruptedException {
+        try {
+          zkClient.multi(execOpList);
+          return true;
+        } catch (KeeperException.NodeExistsException nee) {
+          return false;
+        } catch (KeeperException.NoNodeException nne) {
+          return false;
+        }
+      }
+    }.runWithRetries();
+    return committed != null && committed;
+  }
+
   @VisibleForTesting
   @Private
   @Unstable
@@ -1096,6 +1345,7 @@ Stat run() throws KeeperException, InterruptedException {
 
   private void deleteWithRetries(
       final String path, final boolean watch) throws Exception {
+    flushPendingBatch();
     new ZKAction<Void>() {
       @Override
       Void run() throws KeeperException, InterruptedException {
@@ -1151,6 +1401,147 @@ public void run() {
     }
   }
 
+  /**
+   * Helper class that writes the pending batch once its oldest operation has
+   * waited for the configured latency.
+   */
+  private class BatchFlusherThread extends Thread {
+
+    BatchFlusherThread() {
+      super(BatchFlusherThread.class.getName());
+      setDaemon(true);
+    }
+
+    public void run() {
+      try {
+        while (!isFencedState()) {
+          try {
+            awaitAndFlushPendingBatch();
+          } catch (InterruptedException ie) {
+            throw ie;
+          } catch (Exception e) {
+            // the batch stays pending, and is retried once it has waited
+            // for the latency again, unless the store was fenced
+            LOG.error("Failed to write batch of " + getPendingBatchSize()
+                + " operations", e);
+            notifyStoreOperationFailed(e);
+            restartPendingBatchWait();
+          }
+        }
+      } catch (InterruptedException ie) {
+        LOG.info(BatchFlusherThread.class.getName() + " thread " +
+            "interrupted! Exiting!");
+      }
+    }
+  }
+
+  /**
+   * Reads a list of znodes with asynchronous ZooKeeper calls, keeping up to
+   * loadPipelineDepth requests in flight. It must be run while holding the
+   * store monitor. Waiting is done with wait() on that monitor, so the
+   * ZooKeeper event thread, which runs both these callbacks and
+   * processWatchEvent, is never blocked behind the loading thread. Reads
+   * that fail asynchronously are redone synchronously with retries.
+   */
+  private abstract class PipelinedZKRead<T> {
+    private List<T> results;
+    private boolean[] completed;
+    private int outstanding = 0;
+
+    abstract void readAsync(ZooKeeper zk, String path, int index);
+
+    abstract T readWithRetries(String path) throws Exception;
+
+    void complete(int rc, int index, T result) {
+      synchronized (ZKRMStateStore.this) {
+        if (rc == Code.OK.intValue()) {
+          results.set(index, result);
+          completed[index] = true;
+        }
+        outstanding--;
+        ZKRMStateStore.this.notifyAll();
+      }
+    }
+
+    List<T> readAll(List<String> paths) throws Exception {
+      results = new ArrayList<T>(Collections.<T>nCopies(paths.size(), null));
+      completed = new boolean[paths.size()];
+      ZooKeeper zk = zkClient;
+      for (int i = 0; i < paths.size() && zk != null; i++) {
+        while (outstanding >= loadPipelineDepth) {
+          ZKRMStateStore.this.wait();
+        }
+        outstanding++;
+        readAsync(zk, paths.get(i), i);
+      }
+      while (outstanding > 0) {
+        ZKRMStateStore.this.wait();
+      }
+      for (int i = 0; i < paths.size(); i++) {
+        if (!completed[i]) {
+          results.set(i, readWithRetries(paths.get(i)));
+        }
+      }
+      return results;
+    }
+  }
+
+  private class PipelinedGetData extends PipelinedZKRead<byte[]> {
+    @Override
+    void readAsync(ZooKeeper zk, String path, int index) {
+      zk.getData(path, false, new AsyncCallback.DataCallback() {
+        @Override
+        public void processResult(int rc, String path, Object ctx,
+            byte[] data, Stat stat) {
+          complete(rc, (Integer) ctx, data);
+        }
+      }, index);
+    }
+
+    @Override
+    byte[] readWithRetries(String path) throws Exception {
+      return getDataWithRetries(path, false);
+    }
+  }
+
+  private class PipelinedGetChildren extends PipelinedZKRead<List<String>> {
+    @Override
+    void readAsync(ZooKeeper zk, String path, int index) {
+      zk.getChildren(path, false, new AsyncCallback.ChildrenCallback() {
+        @Override
+        public void processResult(int rc, String path, Object ctx,
+            List<String> children) {
+          complete(rc, (Integer) ctx, children);
+        }
+      }, index);
+    }
+
+    @Override
+    List<String> readWithRetries(String path) throws Exception {
+      return getChildrenWithRetries(path, false);
+    }
+  }
+
+  /** An application or attempt write waiting in the batch. */
+  private static final class PendingWrite {
+    final String path;
+    final byte[] data;
+    /** Whether it is batched as a create, or else as a setData. */
+    final boolean create;
+    /**
+     * Whether it is an update, which creates the znode if it is missing when
+     * it is written on its own, or else a store, which always creates it.
+     */
+    final boolean update;
+
+    PendingWrite(String path, byte[] data, boolean create, boolean update) {
+      this.path = path;
+      this.data = data;
+      this.create = create;
+      this.update = update;
+    }
+  }
+
   private abstract class ZKAction<T> {
     private boolean hasDeleteNodeOp = false;
     void setHasDeleteNodeOp(boolean hasDeleteOp) {
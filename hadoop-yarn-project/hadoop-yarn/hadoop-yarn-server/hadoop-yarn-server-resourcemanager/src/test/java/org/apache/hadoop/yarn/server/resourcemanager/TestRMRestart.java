@@ -1592,6 +1592,58 @@ public void testFinishedAppRemovalAfterRMRestart() throws Exception {
     Assert.assertNull(rmAppState.get(app0.getApplicationId()));
   }
 
+  @Test (timeout = 60000)
+  public void testParallelAppRecoveryOnRMRestart() throws Exception {
+    MemoryRMStateStore memStore = new MemoryRMStateStore();
+    conf.setInt(YarnConfiguration.RM_RECOVERY_APP_THREADS, 4);
+    conf.setInt(YarnConfiguration.RM_MAX_COMPLETED_APPLICATIONS, 4);
+    memStore.init(conf);
+
+    // start RM
+    MockRM rm1 = createMockRM(conf, memStore);
+    rm1.start();
+    MockNM nm1 =
+        new MockNM("127.0.0.1:1234", 15120, rm1.getResourceTrackerService());
+    nm1.registerNode();
+
+    // finish one app, kill a few more and leave the last one pending.
+    RMApp app0 = rm1.submitApp(200);
+    MockAM am0 = launchAM(app0, rm1, nm1);
+    finishApplicationMaster(app0, rm1, nm1, am0);
+    List<RMApp> killedApps = new ArrayList<RMApp>();
+    for (int i = 0; i < 3; i++) {
+      RMApp app = rm1.submitApp(200);
+      rm1.killApp(app.getApplicationId());
+      rm1.waitForState(app.getApplicationId(), RMAppState.KILLED);
+      killedApps.add(app);
+    }
+    RMApp pendingApp = rm1.submitApp(200);
+
+    // restart rm
+    MockRM rm2 = createMockRM(conf, memStore);
+    rm2.start();
+    nm1.setResourceTrackerService(rm2.getResourceTrackerService());
+    nm1 = rm2.registerNode("127.0.0.1:1234", 15120);
+
+    rm2.waitForState(app0.getApplicationId(), RMAppState.FINISHED);
+    for (RMApp app : killedApps) {
+      rm2.waitForState(app.getApplicationId(), RMAppState.KILLED);
+    }
+    rm2.waitForState(pendingApp.getApplicationId(), RMAppState.ACCEPTED);
+
+    // the recovered apps are kept in id order, so completing one more app
+    // evicts the oldest recovered one.
+    rm2.killApp(pendingApp.getApplicationId());
+    rm2.waitForState(pendingApp.getApplicationId(), RMAppState.KILLED);
+    rm2.drainEvents();
+    Assert.assertNull(rm2.getRMContext().getRMApps()
+        .get(app0.getApplicationId()));
+    for (RMApp app : killedApps) {
+      Assert.assertNotNull(rm2.getRMContext().getRMApps()
+          .get(app.getApplicationId()));
+    }
+  }
+
   // This is to test RM does not get hang on shutdown.
   @Test (timeout = 10000)
   public void testRMShutdown() throws Exception {
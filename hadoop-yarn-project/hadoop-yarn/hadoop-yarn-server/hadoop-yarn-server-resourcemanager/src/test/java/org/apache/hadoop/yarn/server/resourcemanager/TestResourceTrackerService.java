@@ -64,6 +64,7 @@
 import org.apache.hadoop.yarn.server.resourcemanager.nodelabels.RMNodeLabelsManager;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.RMApp;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.attempt.RMAppAttemptImpl;
+import org.apache.hadoop.yarn.server.resourcemanager.rmapp.attempt.RMAppAttemptState;
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNode;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.QueueMetrics;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.SchedulerEvent;
@@ -896,6 +897,35 @@ public void testUnhealthyNodeStatus() throws Exception {
     checkUnealthyNMCount(rm, nm1, false, 0);
   }
   
+  @Test
+  public void testNodeHeartbeatWithShardedNodeEventDispatcher()
+      throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(YarnConfiguration.RM_NODE_EVENT_DISPATCHER_POOL_SIZE, 2);
+    rm = new MockRM(conf);
+    rm.start();
+
+    MockNM nm1 = rm.registerNode("127.0.0.1:1234", 5120);
+    MockNM nm2 = rm.registerNode("127.0.0.1:2345", 5120);
+    MockNM nm3 = rm.registerNode("127.0.0.1:3456", 5120);
+    nm1.nodeHeartbeat(true);
+    nm2.nodeHeartbeat(true);
+    nm3.nodeHeartbeat(true);
+    rm.NMwaitForState(nm1.getNodeId(), NodeState.RUNNING);
+    rm.NMwaitForState(nm2.getNodeId(), NodeState.RUNNING);
+    rm.NMwaitForState(nm3.getNodeId(), NodeState.RUNNING);
+
+    // containers are still allocated through the sharded node updates
+    RMApp app = rm.submitApp(1024);
+    MockAM am = MockRM.launchAndRegisterAM(app, rm, nm1);
+    rm.waitForState(am.getApplicationAttemptId(), RMAppAttemptState.RUNNING);
+
+    nm2.nodeHeartbeat(false);
+    checkUnealthyNMCount(rm, nm2, true, 1);
+    nm2.nodeHeartbeat(true);
+    checkUnealthyNMCount(rm, nm2, false, 0);
+  }
+
   private void checkUnealthyNMCount(MockRM rm, MockNM nm1, boolean health,
       int count) throws Exception {
     
@@ -18,8 +18,11 @@
 
 package org.apache.hadoop.yarn.server.resourcemanager.recovery;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doThrow;
@@ -32,6 +35,8 @@
 
 import javax.crypto.SecretKey;
 
+import com.google.common.base.Supplier;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -41,6 +46,7 @@
 import org.apache.hadoop.security.token.delegation.DelegationKey;
 import org.apache.hadoop.service.Service;
 import org.apache.hadoop.service.ServiceStateException;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.hadoop.yarn.api.records.ApplicationSubmissionContext;
@@ -58,6 +64,7 @@
 import org.apache.hadoop.yarn.server.resourcemanager.ResourceManager;
 import org.apache.hadoop.yarn.server.resourcemanager.recovery.records.ApplicationAttemptStateData;
 import org.apache.hadoop.yarn.server.resourcemanager.recovery.records.ApplicationStateData;
+import org.apache.hadoop.yarn.server.resourcemanager.recovery.records.impl.pb.ApplicationStateDataPBImpl;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.RMApp;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.attempt.AggregateAppResourceUsage;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.attempt.RMAppAttempt;
@@ -66,6 +73,7 @@
 import org.apache.hadoop.yarn.server.resourcemanager.security.ClientToAMTokenSecretManagerInRM;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooDefs.Perms;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.CreateMode;
@@ -185,6 +193,151 @@ public void testZKRMStateStoreRealZK() throws Exception {
     testAMRMTokenSecretManagerStateStore(zkTester);
   }
 
+  @Test (timeout = 60000)
+  public void testZKRMStateStoreBatchedWrites() throws Exception {
+    TestZKRMStateStoreTester zkTester = new TestZKRMStateStoreTester() {
+      @Override
+      public RMStateStore getRMStateStore() throws Exception {
+        YarnConfiguration conf = new YarnConfiguration();
+        conf.set(YarnConfiguration.RM_ZK_ADDRESS, hostPort);
+        conf.set(YarnConfiguration.ZK_RM_STATE_STORE_PARENT_PATH, workingZnode);
+        conf.setBoolean(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_ENABLED,
+            true);
+        conf.setInt(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_OPS, 2);
+        conf.setLong(
+            YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS, 50);
+        conf.setInt(
+            YarnConfiguration.ZK_RM_STATE_STORE_LOAD_PIPELINE_DEPTH, 1);
+        this.client = createClient();
+        this.store = new TestZKRMStateStoreInternal(conf, workingZnode);
+        return this.store;
+      }
+    };
+    testRMAppStateStore(zkTester);
+    testAppDeletion(zkTester);
+    testRemoveApplication(zkTester);
+    testRemoveAttempt(zkTester);
+  }
+
+  @Test (timeout = 60000)
+  public void testZKRMStateStoreBatchCommit() throws Exception {
+    TestZKRMStateStoreTester zkTester = new TestZKRMStateStoreTester() {
+      @Override
+      public RMStateStore getRMStateStore() throws Exception {
+        YarnConfiguration conf = new YarnConfiguration();
+        conf.set(YarnConfiguration.RM_ZK_ADDRESS, hostPort);
+        conf.set(YarnConfiguration.ZK_RM_STATE_STORE_PARENT_PATH, workingZnode);
+        conf.setBoolean(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_ENABLED,
+            true);
+        // only flushed by the test
+        conf.setLong(
+            YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS, 3600000);
+        this.client = createClient();
+        this.store = new TestZKRMStateStoreInternal(conf, workingZnode);
+        return this.store;
+      }
+    };
+    final TestZKRMStateStoreTester.TestZKRMStateStoreInternal store =
+        (TestZKRMStateStoreTester.TestZKRMStateStoreInternal)
+            zkTester.getRMStateStore();
+    ZooKeeper client = zkTester.client;
+    TestDispatcher dispatcher = new TestDispatcher();
+    store.setRMDispatcher(dispatcher);
+
+    // the writes and their events wait in the batch
+    ApplicationId appId1 = ApplicationId.newInstance(1000, 1);
+    ApplicationId appId2 = ApplicationId.newInstance(1000, 2);
+    storeApp(store, appId1, 1, 2);
+    storeApp(store, appId2, 1, 2);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return store.getPendingBatchSize() == 2;
+      }
+    }, 10, 10000);
+    assertFalse(dispatcher.notified);
+    String appNode1 = store.getAppNode(appId1.toString());
+    String appNode2 = store.getAppNode(appId2.toString());
+    assertNull(client.exists(appNode1, false));
+    assertNull(client.exists(appNode2, false));
+
+    store.flushPendingBatch();
+    assertTrue(dispatcher.notified);
+    assertEquals(0, store.getPendingBatchSize());
+    // created by the same transaction
+    Stat stat1 = client.exists(appNode1, false);
+    Stat stat2 = client.exists(appNode2, false);
+    assertEquals(stat1.getCzxid(), stat2.getCzxid());
+
+    // an update batched as a create is replayed as an update when the
+    // znode was created in the meantime
+    ApplicationId appId3 = ApplicationId.newInstance(1000, 3);
+    ApplicationSubmissionContext context =
+        new ApplicationSubmissionContextPBImpl();
+    context.setApplicationId(appId3);
+    ApplicationStateDataPBImpl appState = (ApplicationStateDataPBImpl)
+        ApplicationStateData.newInstance(1, 2, context, "test");
+    store.updateApplicationStateInternal(appId3, appState);
+    String appNode3 = store.getAppNode(appId3.toString());
+    client.create(appNode3, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE,
+        CreateMode.PERSISTENT);
+    store.flushPendingBatch();
+    assertEquals(0, store.getPendingBatchSize());
+    assertArrayEquals(appState.getProto().toByteArray(),
+        client.getData(appNode3, false, null));
+    store.close();
+  }
+
+  @Test (timeout = 60000)
+  public void testZKRMStateStoreBatchFlusherSurvivesFailure()
+      throws Exception {
+    TestZKRMStateStoreTester zkTester = new TestZKRMStateStoreTester() {
+      @Override
+      public RMStateStore getRMStateStore() throws Exception {
+        YarnConfiguration conf = new YarnConfiguration();
+        conf.set(YarnConfiguration.RM_ZK_ADDRESS, hostPort);
+        conf.set(YarnConfiguration.ZK_RM_STATE_STORE_PARENT_PATH, workingZnode);
+        conf.setBoolean(YarnConfiguration.ZK_RM_STATE_STORE_BATCH_ENABLED,
+            true);
+        conf.setLong(
+            YarnConfiguration.ZK_RM_STATE_STORE_BATCH_MAX_LATENCY_MS, 50);
+        this.client = createClient();
+        this.store = new TestZKRMStateStoreInternal(conf, workingZnode);
+        return this.store;
+      }
+    };
+    final TestZKRMStateStoreTester.TestZKRMStateStoreInternal store =
+        (TestZKRMStateStoreTester.TestZKRMStateStoreInternal)
+            zkTester.getRMStateStore();
+    ZooKeeper client = zkTester.client;
+    TestDispatcher dispatcher = new TestDispatcher();
+    store.setRMDispatcher(dispatcher);
+
+    // the attempt cannot be created before its application znode
+    ApplicationId appId = ApplicationId.newInstance(1000, 1);
+    ApplicationAttemptId attemptId =
+        ApplicationAttemptId.newInstance(appId, 1);
+    store.storeApplicationAttemptStateInternal(attemptId,
+        ApplicationAttemptStateData.newInstance(attemptId, null, null, 0, 0,
+            0));
+    waitNotify(dispatcher);
+    assertEquals(1, store.getPendingBatchSize());
+
+    // the flusher is still running and writes the batch once it can
+    String appNode = store.getAppNode(appId.toString());
+    client.create(appNode, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE,
+        CreateMode.PERSISTENT);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return store.getPendingBatchSize() == 0;
+      }
+    }, 10, 10000);
+    assertNotNull(client.exists(
+        appNode + "/" + attemptId.toString(), false));
+    store.close();
+  }
+
   @Test (timeout = 60000)
   public void testCheckMajorVersionChange() throws Exception {
     TestZKRMStateStoreTester zkTester = new TestZKRMStateStoreTester() {